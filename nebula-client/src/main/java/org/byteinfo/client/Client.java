@@ -0,0 +1,260 @@
+package org.byteinfo.client;
+
+import org.byteinfo.web.Header;
+import org.byteinfo.web.HeaderName;
+import org.byteinfo.web.HeaderValue;
+import org.byteinfo.web.Headers;
+import org.byteinfo.web.HttpCodec;
+import org.byteinfo.web.HttpMethod;
+import org.byteinfo.web.StatusCode;
+import org.byteinfo.web.StatusLine;
+import org.byteinfo.web.WebException;
+
+import java.io.EOFException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * HTTP/1.1 client with a pool of keep-alive connections per origin, framing messages with {@link HttpCodec}. Request
+ * and response bodies are streamed, and each call blocks its thread, which is cheap on virtual threads.
+ * <pre>{@code
+ * try (ClientResponse response = client.get("http://127.0.0.1:8080/users/1")) {
+ *     String text = response.text();
+ * }
+ * }</pre>
+ * Idempotent requests without body are retried once on a new connection if a pooled connection was closed by the
+ * server meanwhile, before any byte of the response.
+ */
+public class Client implements AutoCloseable {
+	private final int maxConnections;
+	private final int connectTimeout;
+	private final int readTimeout;
+	private final long idleTimeout;
+	private final Map<String, ConnectionPool> pools = new ConcurrentHashMap<>();
+
+	/**
+	 * Creates a new Client with at most 256 connections per origin, 3s connect timeout, 30s read timeout and 60s idle
+	 * timeout.
+	 */
+	public Client() {
+		this(256, 3000, 30000, 60000);
+	}
+
+	/**
+	 * Creates a new Client.
+	 *
+	 * @param maxConnections max connections per origin, callers beyond wait for a connection up to the connect timeout
+	 * @param connectTimeout connect timeout in milliseconds
+	 * @param readTimeout read timeout in milliseconds
+	 * @param idleTimeout pooled connections idle for longer are closed, in milliseconds
+	 */
+	public Client(int maxConnections, int connectTimeout, int readTimeout, long idleTimeout) {
+		if (maxConnections <= 0) {
+			throw new IllegalArgumentException("maxConnections: " + maxConnections + " (expected: > 0)");
+		}
+		this.maxConnections = maxConnections;
+		this.connectTimeout = connectTimeout;
+		this.readTimeout = readTimeout;
+		this.idleTimeout = idleTimeout;
+	}
+
+	public ClientResponse get(String uri) throws IOException {
+		return send(ClientRequest.get(uri));
+	}
+
+	public ClientResponse post(String uri, String type, byte[] body) throws IOException {
+		return send(ClientRequest.post(uri, type, body));
+	}
+
+	/**
+	 * Sends the request and receives the response head, the response body is then streamed from the connection.
+	 *
+	 * @param request the request
+	 * @return the response, to be read to the end or closed
+	 * @throws IOException if an io error occurs or the response can't be parsed
+	 */
+	public ClientResponse send(ClientRequest request) throws IOException {
+		ConnectionPool pool = pool(request.uri());
+		Headers headers = headers(request);
+		boolean retryable = request.body() == null && HttpCodec.isIdempotent(request.method());
+		Connection conn = pool.acquire();
+		while (true) {
+			boolean responding = false;
+			try {
+				HttpCodec.sendRequest(conn.out, request.method(), request.target(), headers, request.length(), request.body());
+				awaitResponse(conn);
+				responding = true;
+				return receive(pool, conn, request.method());
+			} catch (IOException | WebException e) {
+				pool.discard(conn);
+				if (conn.reused && !responding && retryable && !(e instanceof InterruptedIOException)) {
+					conn = pool.open(); // the pooled connection was closed by the server meanwhile
+					continue;
+				}
+				throw e instanceof IOException ex ? ex : new IOException(e.getMessage(), e);
+			}
+		}
+	}
+
+	/**
+	 * Sends the requests back to back on one connection without waiting for responses, then receives the responses in
+	 * order. The requests must have the same origin, and the response bodies are read into memory.
+	 *
+	 * @param requests requests to the same origin
+	 * @return the responses in the order of the requests
+	 * @throws IOException if an io error occurs, or the server closes the connection before answering all requests
+	 */
+	public List<ClientResponse> pipeline(List<ClientRequest> requests) throws IOException {
+		if (requests.isEmpty()) {
+			return List.of();
+		}
+		String origin = origin(requests.getFirst().uri());
+		for (ClientRequest request : requests) {
+			if (!origin(request.uri()).equals(origin)) {
+				throw new IllegalArgumentException("Pipelined requests must have the same origin: " + origin + ", " + request.uri());
+			}
+		}
+
+		ConnectionPool pool = pool(requests.getFirst().uri());
+		Connection conn = pool.acquire();
+		List<ClientResponse> responses = new ArrayList<>(requests.size());
+		boolean reusable = false;
+		try {
+			// write all requests with one flush at the end
+			OutputStream batch = new FilterOutputStream(conn.out) {
+				@Override
+				public void write(byte[] b, int off, int len) throws IOException {
+					out.write(b, off, len);
+				}
+
+				@Override
+				public void flush() {
+				}
+			};
+			for (ClientRequest request : requests) {
+				HttpCodec.sendRequest(batch, request.method(), request.target(), headers(request), request.length(), request.body());
+			}
+			conn.out.flush();
+
+			for (ClientRequest request : requests) {
+				if (!responses.isEmpty() && !reusable) {
+					throw new IOException("Connection closed after " + responses.size() + " of " + requests.size() + " pipelined responses");
+				}
+				StatusLine status = readStatus(conn);
+				Headers headers = HttpCodec.readHeaders(conn.in);
+				InputStream body = HttpCodec.responseBody(request.method(), status.status(), headers, conn.in);
+				reusable = isReusable(status, headers, body, conn);
+				responses.add(new ClientResponse(status.status(), headers, body.readAllBytes()));
+			}
+		} catch (WebException e) {
+			throw new IOException(e.getMessage(), e);
+		} finally {
+			if (reusable && responses.size() == requests.size()) {
+				pool.release(conn);
+			} else {
+				pool.discard(conn);
+			}
+		}
+		return responses;
+	}
+
+	public int maxConnections() {
+		return maxConnections;
+	}
+
+	public int connectTimeout() {
+		return connectTimeout;
+	}
+
+	public int readTimeout() {
+		return readTimeout;
+	}
+
+	public long idleTimeout() {
+		return idleTimeout;
+	}
+
+	/**
+	 * Closes the idle connections, connections in use are closed once released.
+	 */
+	@Override
+	public void close() {
+		for (ConnectionPool pool : pools.values()) {
+			pool.close();
+		}
+	}
+
+	private ClientResponse receive(ConnectionPool pool, Connection conn, String method) throws IOException {
+		StatusLine status = readStatus(conn);
+		Headers headers = HttpCodec.readHeaders(conn.in);
+		InputStream in = HttpCodec.responseBody(method, status.status(), headers, conn.in);
+		ClientResponse.Body body = new ClientResponse.Body(pool, conn, in, isReusable(status, headers, in, conn));
+		boolean chunked = HeaderValue.CHUNKED.equals(headers.get(HeaderName.TRANSFER_ENCODING));
+		if (HttpMethod.HEAD.equals(method) || status.status() == StatusCode.NO_CONTENT || status.status() == StatusCode.NOT_MODIFIED || !chunked && "0".equals(headers.get(HeaderName.CONTENT_LENGTH))) {
+			body.finish(isReusable(status, headers, in, conn)); // no body to wait for
+		}
+		return new ClientResponse(status.status(), headers, body);
+	}
+
+	// skips interim responses
+	private static StatusLine readStatus(Connection conn) throws IOException {
+		StatusLine status;
+		do {
+			status = HttpCodec.readStatusLine(conn.in);
+			if (status.status() < 200) {
+				HttpCodec.readHeaders(conn.in);
+			}
+		} while (status.status() < 200);
+		return status;
+	}
+
+	// waits for the first byte of the response, so that a connection closed before responding is told apart
+	private static void awaitResponse(Connection conn) throws IOException {
+		conn.in.mark(1);
+		if (conn.in.read() == -1) {
+			throw new EOFException("Connection closed before responding");
+		}
+		conn.in.reset();
+	}
+
+	private static boolean isReusable(StatusLine status, Headers headers, InputStream body, Connection conn) {
+		return body != conn.in && "HTTP/1.1".equals(status.version()) && !HeaderValue.CLOSE.equalsIgnoreCase(headers.get(HeaderName.CONNECTION));
+	}
+
+	private static Headers headers(ClientRequest request) {
+		Headers headers = new Headers();
+		if (request.headers() != null) {
+			for (Header header : request.headers().values()) {
+				headers.add(header.name(), header.value());
+			}
+		}
+		if (!headers.has(HeaderName.HOST)) {
+			URI uri = request.uri();
+			headers.set(HeaderName.HOST, uri.getPort() == -1 ? uri.getHost() : uri.getHost() + ":" + uri.getPort());
+		}
+		return headers;
+	}
+
+	private ConnectionPool pool(URI uri) {
+		String scheme = uri.getScheme();
+		if (!"http".equals(scheme) && !"https".equals(scheme) || uri.getHost() == null) {
+			throw new IllegalArgumentException("Invalid uri: " + uri + " (expected: http[s]://host[:port]/...)");
+		}
+		return pools.computeIfAbsent(origin(uri), k -> {
+			boolean secure = "https".equals(scheme);
+			return new ConnectionPool(uri.getHost(), uri.getPort() == -1 ? (secure ? 443 : 80) : uri.getPort(), secure, this);
+		});
+	}
+
+	private static String origin(URI uri) {
+		return uri.getScheme() + "://" + uri.getHost() + ":" + uri.getPort();
+	}
+}
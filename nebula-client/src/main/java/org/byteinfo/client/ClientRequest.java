@@ -0,0 +1,41 @@
+package org.byteinfo.client;
+
+import org.byteinfo.web.HeaderName;
+import org.byteinfo.web.Headers;
+import org.byteinfo.web.HttpMethod;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.URI;
+
+/**
+ * An HTTP request sent by {@link Client}.
+ *
+ * @param method request method
+ * @param uri absolute http or https uri
+ * @param headers request headers, Host is added if absent
+ * @param length request content length, or -1 to send the body chunked
+ * @param body request body streamed to the server, or null if none
+ */
+public record ClientRequest(String method, URI uri, Headers headers, long length, InputStream body) {
+	public static ClientRequest get(String uri) {
+		return new ClientRequest(HttpMethod.GET, URI.create(uri), new Headers(), 0, null);
+	}
+
+	public static ClientRequest post(String uri, String type, byte[] body) {
+		Headers headers = new Headers();
+		headers.set(HeaderName.CONTENT_TYPE, type);
+		return new ClientRequest(HttpMethod.POST, URI.create(uri), headers, body.length, new ByteArrayInputStream(body));
+	}
+
+	/**
+	 * Gets the request target in origin-form.
+	 */
+	public String target() {
+		String path = uri.getRawPath();
+		if (path == null || path.isEmpty()) {
+			path = "/";
+		}
+		return uri.getRawQuery() == null ? path : path + "?" + uri.getRawQuery();
+	}
+}
@@ -0,0 +1,131 @@
+package org.byteinfo.client;
+
+import org.byteinfo.web.Headers;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * An HTTP response received by {@link Client}, whose body is streamed from the connection. The connection returns to
+ * the pool as soon as the body is read to the end, closing the response before that closes the connection.
+ */
+public class ClientResponse implements AutoCloseable {
+	private final int status;
+	private final Headers headers;
+	private final InputStream body;
+
+	ClientResponse(int status, Headers headers, InputStream body) {
+		this.status = status;
+		this.headers = headers;
+		this.body = body;
+	}
+
+	ClientResponse(int status, Headers headers, byte[] body) {
+		this(status, headers, new ByteArrayInputStream(body));
+	}
+
+	public int status() {
+		return status;
+	}
+
+	public Headers headers() {
+		return headers;
+	}
+
+	public InputStream body() {
+		return body;
+	}
+
+	/**
+	 * Reads the whole body and closes the response.
+	 */
+	public byte[] bytes() throws IOException {
+		try (body) {
+			return body.readAllBytes();
+		}
+	}
+
+	/**
+	 * Reads the whole body as UTF-8 text and closes the response.
+	 */
+	public String text() throws IOException {
+		return new String(bytes(), StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public void close() throws IOException {
+		body.close();
+	}
+
+	@Override
+	public String toString() {
+		return "ClientResponse[status=" + status + "]";
+	}
+
+	/**
+	 * Response body on a pooled connection.
+	 */
+	static class Body extends InputStream {
+		private final ConnectionPool pool;
+		private final Connection conn;
+		private final InputStream in;
+		private final boolean reusable;
+		private boolean done;
+
+		Body(ConnectionPool pool, Connection conn, InputStream in, boolean reusable) {
+			this.pool = pool;
+			this.conn = conn;
+			this.in = in;
+			this.reusable = reusable;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (done) {
+				return -1;
+			}
+			int b = in.read();
+			if (b == -1) {
+				finish(reusable);
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (done) {
+				return -1;
+			}
+			int n = in.read(b, off, len);
+			if (n == -1) {
+				finish(reusable);
+			}
+			return n;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return done ? 0 : in.available();
+		}
+
+		@Override
+		public void close() {
+			finish(false);
+		}
+
+		// returns the connection once the body is read to the end, otherwise closes it
+		void finish(boolean reuse) {
+			if (done) {
+				return;
+			}
+			done = true;
+			if (reuse) {
+				pool.release(conn);
+			} else {
+				pool.discard(conn);
+			}
+		}
+	}
+}
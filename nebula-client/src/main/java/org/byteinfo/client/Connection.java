@@ -0,0 +1,35 @@
+package org.byteinfo.client;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+
+/**
+ * A keep-alive connection to an origin server.
+ */
+class Connection implements Closeable {
+	final Socket socket;
+	final InputStream in;
+	final OutputStream out;
+	boolean reused;
+	long idleSince;
+
+	Connection(Socket socket) throws IOException {
+		this.socket = socket;
+		this.in = new BufferedInputStream(socket.getInputStream());
+		this.out = new BufferedOutputStream(socket.getOutputStream());
+	}
+
+	@Override
+	public void close() {
+		try {
+			socket.close();
+		} catch (IOException e) {
+			// ignore
+		}
+	}
+}
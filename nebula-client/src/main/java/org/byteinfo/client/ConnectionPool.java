@@ -0,0 +1,177 @@
+package org.byteinfo.client;
+
+import javax.net.ssl.SNIHostName;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keep-alive connections to one origin. At most maxConnections are open at a time, and callers beyond that wait for a
+ * connection to be released, which only parks them when they are virtual threads. Idle connections are reused most
+ * recently released first, so that the least used ones expire after the idle timeout, and expired ones are evicted
+ * from the tail whenever a connection is acquired or released.
+ */
+class ConnectionPool {
+	private final String host;
+	private final int port;
+	private final boolean secure;
+	private final Client client;
+	private final Semaphore permits;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Deque<Connection> idle = new ArrayDeque<>();
+	private boolean closed;
+
+	ConnectionPool(String host, int port, boolean secure, Client client) {
+		this.host = host;
+		this.port = port;
+		this.secure = secure;
+		this.client = client;
+		this.permits = new Semaphore(client.maxConnections());
+	}
+
+	Connection acquire() throws IOException {
+		permit();
+		long now = System.currentTimeMillis();
+		evict(now);
+		while (true) {
+			Connection conn;
+			lock.lock();
+			try {
+				conn = idle.pollFirst();
+			} finally {
+				lock.unlock();
+			}
+			if (conn == null) {
+				break;
+			}
+			if (now - conn.idleSince < client.idleTimeout()) {
+				conn.reused = true;
+				return conn;
+			}
+			conn.close();
+		}
+		return connectOrRelease();
+	}
+
+	/**
+	 * Opens a new connection bypassing the idle ones.
+	 */
+	Connection open() throws IOException {
+		permit();
+		return connectOrRelease();
+	}
+
+	void release(Connection conn) {
+		conn.idleSince = System.currentTimeMillis();
+		boolean pooled = false;
+		lock.lock();
+		try {
+			if (!closed) {
+				idle.addFirst(conn);
+				pooled = true;
+			}
+		} finally {
+			lock.unlock();
+		}
+		if (!pooled) {
+			conn.close();
+		}
+		permits.release();
+		evict(conn.idleSince);
+	}
+
+	void discard(Connection conn) {
+		conn.close();
+		permits.release();
+	}
+
+	void close() {
+		lock.lock();
+		try {
+			closed = true;
+			for (Connection conn : idle) {
+				conn.close();
+			}
+			idle.clear();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	// closes the expired connections at the tail, which are not reached by acquire() while the head is reused
+	private void evict(long now) {
+		while (true) {
+			Connection conn;
+			lock.lock();
+			try {
+				conn = idle.peekLast();
+				if (conn == null || now - conn.idleSince < client.idleTimeout()) {
+					return;
+				}
+				idle.pollLast();
+			} finally {
+				lock.unlock();
+			}
+			conn.close();
+		}
+	}
+
+	private void permit() throws IOException {
+		try {
+			if (!permits.tryAcquire(client.connectTimeout(), TimeUnit.MILLISECONDS)) {
+				throw new ConnectException("Timed out waiting for a connection to " + host + ":" + port);
+			}
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException("Interrupted waiting for a connection to " + host + ":" + port);
+		}
+	}
+
+	private Connection connectOrRelease() throws IOException {
+		try {
+			return connect();
+		} catch (IOException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	private Connection connect() throws IOException {
+		Socket socket = new Socket();
+		try {
+			socket.setTcpNoDelay(true);
+			socket.connect(new InetSocketAddress(host, port), client.connectTimeout());
+			socket.setSoTimeout(client.readTimeout());
+			if (secure) {
+				SSLSocket ssl = (SSLSocket) ((SSLSocketFactory) SSLSocketFactory.getDefault()).createSocket(socket, host, port, true);
+				SSLParameters parameters = ssl.getSSLParameters();
+				parameters.setEndpointIdentificationAlgorithm("HTTPS"); // verifies the certificate matches the host
+				if (!isIpLiteral(host)) {
+					parameters.setServerNames(List.of(new SNIHostName(host)));
+				}
+				ssl.setSSLParameters(parameters);
+				ssl.startHandshake();
+				socket = ssl;
+			}
+			return new Connection(socket);
+		} catch (IOException e) {
+			socket.close();
+			throw e;
+		}
+	}
+
+	// SNI carries host names only
+	private static boolean isIpLiteral(String host) {
+		return host.indexOf(':') != -1 || host.chars().allMatch(c -> c == '.' || c >= '0' && c <= '9');
+	}
+}
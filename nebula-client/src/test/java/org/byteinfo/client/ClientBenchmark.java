@@ -0,0 +1,109 @@
+package org.byteinfo.client;
+
+import org.byteinfo.util.function.CheckedRunnable;
+import org.byteinfo.web.HttpMethod;
+import org.byteinfo.web.Server;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Client against the JDK HttpClient (HTTP/1.1) on loopback: sequential requests on one connection, concurrent requests
+ * from virtual threads, and pipelined batches.
+ * <p>
+ * Usage: ClientBenchmark [concurrency] [seconds] [batch]
+ */
+public class ClientBenchmark {
+	public static void main(String[] args) throws Exception {
+		int concurrency = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+		int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		int batch = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+
+		int port;
+		try (ServerSocket probe = new ServerSocket(0)) {
+			port = probe.getLocalPort();
+		}
+		System.setProperty("http.port", String.valueOf(port));
+		Server server = new Server();
+		server.get("/", ctx -> "Hello, World!");
+		server.post("/echo", ctx -> ctx.body());
+		server.start();
+		String uri = "http://127.0.0.1:" + port + "/";
+
+		Client client = new Client();
+		HttpClient jdk = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).executor(Executors.newVirtualThreadPerTaskExecutor()).build();
+		HttpRequest jdkRequest = HttpRequest.newBuilder(URI.create(uri)).build();
+
+		// streamed echo of 16MB in both directions
+		byte[] data = new byte[16 * 1024 * 1024];
+		try (ClientResponse response = client.send(new ClientRequest(HttpMethod.POST, URI.create(uri + "echo"), null, -1, new ByteArrayInputStream(data)))) {
+			System.out.printf("echo: status=%d, %d bytes chunked%n", response.status(), response.body().transferTo(OutputStream.nullOutputStream()));
+		}
+
+		System.out.printf("%d cores, %d clients, pipeline batch %d%n", Runtime.getRuntime().availableProcessors(), concurrency, batch);
+		System.out.println("sequential nebula: " + run(1, seconds, () -> client.get(uri).bytes()));
+		System.out.println("sequential jdk:    " + run(1, seconds, () -> jdk.send(jdkRequest, HttpResponse.BodyHandlers.ofByteArray())));
+		System.out.println("concurrent nebula: " + run(concurrency, seconds, () -> client.get(uri).bytes()));
+		System.out.println("concurrent jdk:    " + run(concurrency, seconds, () -> jdk.send(jdkRequest, HttpResponse.BodyHandlers.ofByteArray())));
+
+		List<ClientRequest> requests = new ArrayList<>();
+		for (int i = 0; i < batch; i++) {
+			requests.add(ClientRequest.get(uri));
+		}
+		System.out.println("pipelined nebula:  " + run(1, seconds, () -> client.pipeline(requests)).replace("requests/s", "batches/s"));
+
+		client.close();
+		server.stop();
+		System.exit(0);
+	}
+
+	private static String run(int concurrency, int seconds, CheckedRunnable request) throws Exception {
+		for (long warmup = System.nanoTime() + 1_000_000_000L; System.nanoTime() < warmup; ) {
+			request.run();
+		}
+		LongAdder count = new LongAdder();
+		LongAdder errors = new LongAdder();
+		ConcurrentLinkedQueue<long[]> samples = new ConcurrentLinkedQueue<>();
+		long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+		try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			for (int i = 0; i < concurrency; i++) {
+				executor.execute(() -> {
+					long[] nanos = new long[1024];
+					int n = 0;
+					while (System.nanoTime() < deadline) {
+						long start = System.nanoTime();
+						try {
+							request.run();
+							count.increment();
+						} catch (Exception e) {
+							errors.increment();
+							continue;
+						}
+						if (n == nanos.length) {
+							nanos = Arrays.copyOf(nanos, n * 2);
+						}
+						nanos[n++] = System.nanoTime() - start;
+					}
+					samples.add(Arrays.copyOf(nanos, n));
+				});
+			}
+		}
+		long[] all = samples.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+		if (all.length == 0) {
+			return "no requests, errors=" + errors.sum();
+		}
+		return "%,.0f requests/s, p50=%.3fms, p99=%.3fms, errors=%d".formatted(count.sum() / (double) seconds, all[all.length / 2] / 1e6, all[(int) (all.length * 0.99)] / 1e6, errors.sum());
+	}
+}
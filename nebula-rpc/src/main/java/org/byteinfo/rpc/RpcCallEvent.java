@@ -0,0 +1,33 @@
+package org.byteinfo.rpc;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event of an RPC call made by {@link RpcClient}, from sending the request until the response arrives.
+ */
+@Name("org.byteinfo.rpc.RpcCall")
+@Label("RPC Call")
+@Category({"Nebula", "RPC"})
+@StackTrace(false)
+class RpcCallEvent extends Event {
+	@Label("Id")
+	long id;
+
+	@Label("Address")
+	String address;
+
+	@Label("Service")
+	String service;
+
+	@Label("Method")
+	String method;
+
+	@Label("Error")
+	@Description("Error returned by the server, null if succeeded")
+	String error;
+}
@@ -52,11 +52,22 @@ public class RpcClient implements AutoCloseable {
 
 	public <T> T of(Class<T> serviceInterface) {
 		return (T) Proxy.newProxyInstance(serviceInterface.getClassLoader(), new Class<?>[] {serviceInterface}, (proxy, method, args) -> {
+			var event = new RpcCallEvent();
+			event.begin();
 			var request = new RpcRequest(ID_GENERATOR.incrementAndGet(), serviceInterface.getName(), method.getName(), method.getParameterTypes(), args);
 			node.writeMessage(0, Serializer.serialize(request));
 			var future = new RpcFuture<RpcResponse>();
 			map.put(request.id(), future);
 			var response = future.get();
+			event.end();
+			if (event.shouldCommit()) {
+				event.id = request.id();
+				event.address = String.valueOf(node.address());
+				event.service = request.service();
+				event.method = request.method();
+				event.error = response.error();
+				event.commit();
+			}
 			if (response.error() != null) {
 				throw new RpcException(response.error());
 			}
@@ -0,0 +1,33 @@
+package org.byteinfo.rpc;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event of an RPC call served by {@link RpcServer}, from invoking the service until the response is sent.
+ */
+@Name("org.byteinfo.rpc.RpcServe")
+@Label("RPC Serve")
+@Category({"Nebula", "RPC"})
+@StackTrace(false)
+class RpcServeEvent extends Event {
+	@Label("Id")
+	long id;
+
+	@Label("Address")
+	String address;
+
+	@Label("Service")
+	String service;
+
+	@Label("Method")
+	String method;
+
+	@Label("Error")
+	@Description("Error returned to the client, null if succeeded")
+	String error;
+}
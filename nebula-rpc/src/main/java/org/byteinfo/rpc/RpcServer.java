@@ -40,6 +40,9 @@ public class RpcServer implements AutoCloseable {
 				break;
 			}
 			var request = Serializer.deserialize(message.bytes(), RpcRequest.class);
+			var event = new RpcServeEvent();
+			event.begin();
+			String error = null;
 
 			try {
 				var obj = serviceMap.get(request.service());
@@ -54,7 +57,17 @@ public class RpcServer implements AutoCloseable {
 				if (e instanceof InvocationTargetException && e.getCause() != null) {
 					t = e.getCause();
 				}
-				node.writeMessage(0, Serializer.serialize(new RpcResponse(request.id(), null, String.valueOf(t))));
+				error = String.valueOf(t);
+				node.writeMessage(0, Serializer.serialize(new RpcResponse(request.id(), null, error)));
+			}
+			event.end();
+			if (event.shouldCommit()) {
+				event.id = request.id();
+				event.address = String.valueOf(node.address());
+				event.service = request.service();
+				event.method = request.method();
+				event.error = error;
+				event.commit();
 			}
 		}
 	}
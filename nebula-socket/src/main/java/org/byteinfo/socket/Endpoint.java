@@ -1,18 +1,32 @@
 package org.byteinfo.socket;
 
+import org.byteinfo.util.net.UnixServerSocket;
+
 import java.io.Closeable;
 import java.io.IOException;
-import java.net.InetSocketAddress;
 import java.net.ServerSocket;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
 
 public class Endpoint implements Closeable {
 	private final ServerSocket serverSocket;
 
-	public Endpoint(InetSocketAddress address) throws IOException {
-		serverSocket = new ServerSocket();
-		serverSocket.setReuseAddress(true);
-		serverSocket.setReceiveBufferSize(Node.getBufferSize());
-		serverSocket.bind(address);
+	/**
+	 * Binds to the TCP address or, given a {@link UnixDomainSocketAddress}, to the socket file.
+	 *
+	 * @param address bind address
+	 * @throws IOException if an io error occurs
+	 */
+	public Endpoint(SocketAddress address) throws IOException {
+		if (address instanceof UnixDomainSocketAddress unixAddress) {
+			serverSocket = new UnixServerSocket(unixAddress, 0);
+			serverSocket.setReceiveBufferSize(Node.getBufferSize());
+		} else {
+			serverSocket = new ServerSocket();
+			serverSocket.setReuseAddress(true);
+			serverSocket.setReceiveBufferSize(Node.getBufferSize());
+			serverSocket.bind(address);
+		}
 	}
 
 	public Node accept() throws IOException {
@@ -3,7 +3,7 @@ package org.byteinfo.socket;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.InetSocketAddress;
+import java.net.SocketAddress;
 
 /**
  * Message Format
@@ -19,7 +19,7 @@ import java.net.InetSocketAddress;
  * @param stream input stream for reading the message data
  * @param origin origin of the message
  */
-public record Message(int type, long length, InputStream stream, InetSocketAddress origin) {
+public record Message(int type, long length, InputStream stream, SocketAddress origin) {
 	public static final int TYPE_SIZE = 4;
 	public static final int LENGTH_SIZE = 8;
 
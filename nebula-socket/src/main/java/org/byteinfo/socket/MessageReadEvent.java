@@ -0,0 +1,27 @@
+package org.byteinfo.socket;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event of a message read by {@link Node}, lasting until the message head is read, including the wait for it.
+ */
+@Name("org.byteinfo.socket.MessageRead")
+@Label("Message Read")
+@Category({"Nebula", "Socket"})
+@StackTrace(false)
+class MessageReadEvent extends Event {
+	@Label("Address")
+	String address;
+
+	@Label("Type")
+	int type;
+
+	@Label("Length")
+	@DataAmount
+	long length;
+}
@@ -0,0 +1,27 @@
+package org.byteinfo.socket;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event of a message written by {@link Node}, including its data.
+ */
+@Name("org.byteinfo.socket.MessageWrite")
+@Label("Message Write")
+@Category({"Nebula", "Socket"})
+@StackTrace(false)
+class MessageWriteEvent extends Event {
+	@Label("Address")
+	String address;
+
+	@Label("Type")
+	int type;
+
+	@Label("Length")
+	@DataAmount
+	long length;
+}
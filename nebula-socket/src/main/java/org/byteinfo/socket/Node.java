@@ -4,14 +4,16 @@ import jdk.net.ExtendedSocketOptions;
 import org.byteinfo.logging.Log;
 import org.byteinfo.util.codec.ByteUtil;
 import org.byteinfo.util.io.LimitedInputStream;
+import org.byteinfo.util.net.UnixSocket;
 
 import java.io.Closeable;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.net.SocketAddress;
 import java.net.SocketTimeoutException;
+import java.net.UnixDomainSocketAddress;
 import java.text.DecimalFormat;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -30,15 +32,20 @@ public class Node implements Closeable {
 	private final AtomicBoolean connecting = new AtomicBoolean();
 	private final Lock readLock = new ReentrantLock();
 	private final Lock writeLock = new ReentrantLock();
-	private final InetSocketAddress address;
+	private final SocketAddress address;
 	private volatile Socket socket;
 
-	public Node(InetSocketAddress address) {
+	/**
+	 * Creates a node connecting to the TCP address or, given a {@link UnixDomainSocketAddress}, to the socket file.
+	 *
+	 * @param address remote address
+	 */
+	public Node(SocketAddress address) {
 		this.address = address;
 	}
 
 	public Node(Socket socket) throws IOException {
-		this.address = (InetSocketAddress) socket.getRemoteSocketAddress();
+		this.address = socket.getRemoteSocketAddress();
 		this.socket = initialize(socket);
 		connected.set(true);
 	}
@@ -57,10 +64,16 @@ public class Node implements Closeable {
 						if (timeoutMillis > 0) {
 							timeoutMillis = Math.min(timeoutMillis, connectTimeoutMillis);
 						}
-						socket = new Socket();
-						socket.setReceiveBufferSize(bufferSize);
-						socket.setSendBufferSize(bufferSize);
-						socket.connect(address, timeoutMillis);
+						if (address instanceof UnixDomainSocketAddress unixAddress) {
+							socket = UnixSocket.connect(unixAddress);
+							socket.setReceiveBufferSize(bufferSize);
+							socket.setSendBufferSize(bufferSize);
+						} else {
+							socket = new Socket();
+							socket.setReceiveBufferSize(bufferSize);
+							socket.setSendBufferSize(bufferSize);
+							socket.connect(address, timeoutMillis);
+						}
 						connected.set(true);
 					} catch (SocketTimeoutException e) {
 						Log.debug("Connecting to {} timed out.", address);
@@ -124,6 +137,8 @@ public class Node implements Closeable {
 		ensureConnected();
 		readLock.lockInterruptibly();
 		try {
+			var event = new MessageReadEvent();
+			event.begin();
 			var in = socket.getInputStream();
 			var bytes = in.readNBytes(Message.TYPE_SIZE);
 			if (bytes.length == 0) {
@@ -134,7 +149,14 @@ public class Node implements Closeable {
 			}
 			var type = ByteUtil.asInt(bytes);
 			var length = ByteUtil.asLong(readExact(in, Message.LENGTH_SIZE));
-			return new Message(type, length, new LimitedInputStream(in, length), (InetSocketAddress) socket.getRemoteSocketAddress());
+			event.end();
+			if (event.shouldCommit()) {
+				event.address = String.valueOf(address);
+				event.type = type;
+				event.length = length;
+				event.commit();
+			}
+			return new Message(type, length, new LimitedInputStream(in, length), socket.getRemoteSocketAddress());
 		} finally {
 			readLock.unlock();
 		}
@@ -152,6 +174,8 @@ public class Node implements Closeable {
 		ensureConnected();
 		writeLock.lockInterruptibly();
 		try {
+			var event = new MessageWriteEvent();
+			event.begin();
 			var out = socket.getOutputStream();
 			out.write(ByteUtil.asBytes(type));
 			long length = 0;
@@ -163,6 +187,7 @@ public class Node implements Closeable {
 				out.write(data);
 			}
 			out.flush();
+			commit(event, type, length);
 		} finally {
 			writeLock.unlock();
 		}
@@ -181,11 +206,14 @@ public class Node implements Closeable {
 		ensureConnected();
 		writeLock.lockInterruptibly();
 		try {
+			var event = new MessageWriteEvent();
+			event.begin();
 			var out = socket.getOutputStream();
 			out.write(ByteUtil.asBytes(type));
 			out.write(ByteUtil.asBytes(length));
 			in.transferTo(out);
 			out.flush();
+			commit(event, type, length);
 		} finally {
 			writeLock.unlock();
 		}
@@ -309,7 +337,7 @@ public class Node implements Closeable {
 		return connected.get();
 	}
 
-	public InetSocketAddress address() {
+	public SocketAddress address() {
 		return address;
 	}
 
@@ -340,6 +368,16 @@ public class Node implements Closeable {
 		}
 	}
 
+	private void commit(MessageWriteEvent event, int type, long length) {
+		event.end();
+		if (event.shouldCommit()) {
+			event.address = String.valueOf(address);
+			event.type = type;
+			event.length = length;
+			event.commit();
+		}
+	}
+
 	private void ensureConnected() {
 		if (!connected.get()) {
 			throw new IllegalStateException("Node is not connected.");
@@ -0,0 +1,64 @@
+package org.byteinfo.socket;
+
+import org.byteinfo.util.function.Unchecked;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Message round-trip latency of Unix domain sockets versus loopback TCP.
+ * <p>
+ * Usage: UnixSocketBenchmark [iterations] [payload sizes...]
+ */
+public class UnixSocketBenchmark {
+	public static void main(String[] args) throws Exception {
+		int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+		int[] sizes = args.length > 1 ? Arrays.stream(args, 1, args.length).mapToInt(Integer::parseInt).toArray() : new int[] {64, 4096, 65536};
+
+		Path dir = Files.createTempDirectory("nebula-uds");
+		SocketAddress tcp = new InetSocketAddress("127.0.0.1", 2001);
+		SocketAddress unix = UnixDomainSocketAddress.of(dir.resolve("node.sock"));
+		for (int size : sizes) {
+			System.out.printf("TCP  %6d bytes: %s%n", size, run(tcp, iterations, size));
+			System.out.printf("Unix %6d bytes: %s%n", size, run(unix, iterations, size));
+		}
+		Files.delete(dir);
+	}
+
+	private static String run(SocketAddress address, int iterations, int size) throws Exception {
+		try (var endpoint = new Endpoint(address)) {
+			// echo server
+			Thread.ofVirtual().start(Unchecked.runnable(() -> {
+				try (var node = endpoint.accept()) {
+					Message msg;
+					while ((msg = node.readMessage()) != null) {
+						node.writeMessage(msg.type(), msg.bytes());
+					}
+				}
+			}));
+
+			byte[] payload = new byte[size];
+			long[] nanos = new long[iterations];
+			try (var node = new Node(address).connect()) {
+				for (int i = 0; i < iterations / 10; i++) { // warm up
+					node.writeMessage(0, payload);
+					node.readMessage().bytes();
+				}
+				long begin = System.nanoTime();
+				for (int i = 0; i < iterations; i++) {
+					long start = System.nanoTime();
+					node.writeMessage(0, payload);
+					node.readMessage().bytes();
+					nanos[i] = System.nanoTime() - start;
+				}
+				long elapsed = System.nanoTime() - begin;
+				Arrays.sort(nanos);
+				return "avg=%.1fus, p50=%.1fus, p99=%.1fus, %,.0f round trips/s".formatted(Arrays.stream(nanos).average().orElse(0) / 1e3, nanos[iterations / 2] / 1e3, nanos[(int) (iterations * 0.99)] / 1e3, iterations * 1e9 / elapsed);
+			}
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package org.byteinfo.util.codec;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * XXH64: Fast Non-Cryptographic Hash
+ *
+ * @see <a href="https://github.com/Cyan4973/xxHash/blob/dev/doc/xxhash_spec.md">xxHash Specification</a>
+ */
+public interface XXHash {
+	long PRIME64_1 = 0x9E3779B185EBCA87L;
+	long PRIME64_2 = 0xC2B2AE3D27D4EB4FL;
+	long PRIME64_3 = 0x165667B19E3779F9L;
+	long PRIME64_4 = 0x85EBCA77C2B2AE63L;
+	long PRIME64_5 = 0x27D4EB2F165667C5L;
+
+	VarHandle LONG_HANDLE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+	VarHandle INT_HANDLE = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+	static long hash64(byte[] data) {
+		return hash64(data, 0, data.length, 0);
+	}
+
+	static long hash64(byte[] data, int offset, int length, long seed) {
+		int end = offset + length;
+		int p = offset;
+		long h;
+
+		if (length >= 32) {
+			long v1 = seed + PRIME64_1 + PRIME64_2;
+			long v2 = seed + PRIME64_2;
+			long v3 = seed;
+			long v4 = seed - PRIME64_1;
+			int limit = end - 32;
+			do {
+				v1 = round(v1, (long) LONG_HANDLE.get(data, p));
+				v2 = round(v2, (long) LONG_HANDLE.get(data, p + 8));
+				v3 = round(v3, (long) LONG_HANDLE.get(data, p + 16));
+				v4 = round(v4, (long) LONG_HANDLE.get(data, p + 24));
+				p += 32;
+			} while (p <= limit);
+			h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+			h = mergeRound(h, v1);
+			h = mergeRound(h, v2);
+			h = mergeRound(h, v3);
+			h = mergeRound(h, v4);
+		} else {
+			h = seed + PRIME64_5;
+		}
+
+		h += length;
+
+		// consume remaining input
+		while (p + 8 <= end) {
+			h ^= round(0, (long) LONG_HANDLE.get(data, p));
+			h = Long.rotateLeft(h, 27) * PRIME64_1 + PRIME64_4;
+			p += 8;
+		}
+		if (p + 4 <= end) {
+			h ^= ((int) INT_HANDLE.get(data, p) & 0xFFFFFFFFL) * PRIME64_1;
+			h = Long.rotateLeft(h, 23) * PRIME64_2 + PRIME64_3;
+			p += 4;
+		}
+		while (p < end) {
+			h ^= (data[p] & 0xFF) * PRIME64_5;
+			h = Long.rotateLeft(h, 11) * PRIME64_1;
+			p++;
+		}
+
+		// final mix
+		h ^= h >>> 33;
+		h *= PRIME64_2;
+		h ^= h >>> 29;
+		h *= PRIME64_3;
+		h ^= h >>> 32;
+		return h;
+	}
+
+	private static long round(long acc, long input) {
+		acc += input * PRIME64_2;
+		acc = Long.rotateLeft(acc, 31);
+		return acc * PRIME64_1;
+	}
+
+	private static long mergeRound(long acc, long value) {
+		acc ^= round(0, value);
+		return acc * PRIME64_1 + PRIME64_4;
+	}
+}
@@ -0,0 +1,154 @@
+package org.byteinfo.util.net;
+
+import java.io.IOException;
+import java.net.BindException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Server socket over a Unix domain {@link ServerSocketChannel}, accepting {@link UnixSocket}s.
+ * <p>
+ * A stale socket file left by a previous process is replaced when binding, while binding to a path where another
+ * process is listening, or which is not a socket, fails. The socket file is deleted on close.
+ */
+public class UnixServerSocket extends ServerSocket {
+	// file type bits of st_mode
+	private static final int S_IFMT = 0170000;
+	private static final int S_IFSOCK = 0140000;
+
+	private final ServerSocketChannel channel;
+	private final Path path;
+
+	/**
+	 * Binds a Unix domain server socket.
+	 *
+	 * @param address socket file address
+	 * @param backlog listen backlog, or 0 for the system default
+	 * @throws IOException if an io error occurs
+	 */
+	public UnixServerSocket(UnixDomainSocketAddress address, int backlog) throws IOException {
+		this.path = address.getPath();
+		this.channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+		try {
+			deleteStale(address);
+			channel.bind(address, backlog);
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	@Override
+	public UnixSocket accept() throws IOException {
+		try {
+			return new UnixSocket(channel.accept());
+		} catch (ClosedChannelException e) {
+			throw (SocketException) new SocketException("Socket is closed").initCause(e);
+		}
+	}
+
+	@Override
+	public ServerSocketChannel getChannel() {
+		return channel;
+	}
+
+	@Override
+	public void bind(SocketAddress endpoint, int backlog) throws IOException {
+		throw new SocketException("Already bound");
+	}
+
+	@Override
+	public void setReceiveBufferSize(int size) throws SocketException {
+		try {
+			channel.setOption(StandardSocketOptions.SO_RCVBUF, size);
+		} catch (IOException e) {
+			throw (SocketException) new SocketException(e.getMessage()).initCause(e);
+		}
+	}
+
+	@Override
+	public void setReuseAddress(boolean on) {
+	}
+
+	@Override
+	public InetAddress getInetAddress() {
+		return InetAddress.getLoopbackAddress();
+	}
+
+	@Override
+	public int getLocalPort() {
+		return -1;
+	}
+
+	@Override
+	public SocketAddress getLocalSocketAddress() {
+		return UnixDomainSocketAddress.of(path);
+	}
+
+	public Path path() {
+		return path;
+	}
+
+	@Override
+	public boolean isBound() {
+		return true;
+	}
+
+	@Override
+	public boolean isClosed() {
+		return !channel.isOpen();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (channel.isOpen()) {
+			channel.close();
+			Files.deleteIfExists(path);
+		}
+	}
+
+	// deletes the socket file only if nobody accepts connections on it anymore
+	private static void deleteStale(UnixDomainSocketAddress address) throws IOException {
+		Path path = address.getPath();
+		if (!Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+			return;
+		}
+		if (!isSocket(path)) {
+			throw new BindException("Address already in use: " + path + " is not a socket");
+		}
+		try (SocketChannel probe = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+			probe.connect(address);
+		} catch (ConnectException e) { // refused, left by a process which is gone
+			Files.deleteIfExists(path);
+			return;
+		}
+		throw new BindException("Address already in use: " + path);
+	}
+
+	private static boolean isSocket(Path path) throws IOException {
+		try {
+			return ((int) Files.getAttribute(path, "unix:mode", LinkOption.NOFOLLOW_LINKS) & S_IFMT) == S_IFSOCK;
+		} catch (UnsupportedOperationException e) {
+			return Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS).isOther();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "UnixServerSocket[addr=" + path + "]";
+	}
+}
@@ -0,0 +1,344 @@
+package org.byteinfo.util.net;
+
+import org.byteinfo.util.time.Timeout;
+import org.byteinfo.util.time.WheelTimer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.net.SocketImpl;
+import java.net.SocketOption;
+import java.net.SocketTimeoutException;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SocketChannel;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Socket over a Unix domain {@link SocketChannel}, for code written against the blocking {@link Socket} API.
+ * <p>
+ * The streams read and write the channel directly, so reads and writes from different threads do not block each other.
+ * A read timeout set by {@link #setSoTimeout(int)} closes the channel when it elapses, with the precision of the default
+ * {@link WheelTimer}, so a socket that timed out cannot be used anymore. Reads only move the deadline forward, and a
+ * single timer per socket checks it, rescheduling itself until the deadline or until no read is pending. TCP options
+ * are ignored.
+ */
+public class UnixSocket extends Socket {
+	private final SocketChannel channel;
+	private final InputStream in = new ChannelInputStream();
+	private final OutputStream out = new ChannelOutputStream();
+	private volatile int soTimeout;
+
+	// read deadline in millis, 0 if no read is pending, checked by the timer while armed
+	private final AtomicBoolean armed = new AtomicBoolean();
+	private volatile long readDeadline;
+	private volatile boolean timedOut;
+
+	public UnixSocket(SocketChannel channel) throws SocketException {
+		super((SocketImpl) null);
+		this.channel = Objects.requireNonNull(channel);
+	}
+
+	/**
+	 * Connects to the Unix domain socket.
+	 *
+	 * @param address socket file address
+	 * @return connected socket
+	 * @throws IOException if an io error occurs
+	 */
+	public static UnixSocket connect(UnixDomainSocketAddress address) throws IOException {
+		SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+		try {
+			channel.connect(address);
+			return new UnixSocket(channel);
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	@Override
+	public SocketChannel getChannel() {
+		return channel;
+	}
+
+	@Override
+	public InputStream getInputStream() throws IOException {
+		ensureOpen();
+		return in;
+	}
+
+	@Override
+	public OutputStream getOutputStream() throws IOException {
+		ensureOpen();
+		return out;
+	}
+
+	@Override
+	public void setSoTimeout(int timeout) throws SocketException {
+		if (timeout < 0) {
+			throw new IllegalArgumentException("timeout < 0");
+		}
+		soTimeout = timeout;
+	}
+
+	@Override
+	public int getSoTimeout() {
+		return soTimeout;
+	}
+
+	@Override
+	public void setTcpNoDelay(boolean on) {
+	}
+
+	@Override
+	public boolean getTcpNoDelay() {
+		return false;
+	}
+
+	@Override
+	public void setKeepAlive(boolean on) {
+	}
+
+	@Override
+	public boolean getKeepAlive() {
+		return false;
+	}
+
+	@Override
+	public void setSoLinger(boolean on, int linger) {
+	}
+
+	@Override
+	public int getSoLinger() {
+		return -1;
+	}
+
+	@Override
+	public void setSendBufferSize(int size) throws SocketException {
+		setOption(StandardSocketOptions.SO_SNDBUF, size);
+	}
+
+	@Override
+	public int getSendBufferSize() throws SocketException {
+		return getOption(StandardSocketOptions.SO_SNDBUF);
+	}
+
+	@Override
+	public void setReceiveBufferSize(int size) throws SocketException {
+		setOption(StandardSocketOptions.SO_RCVBUF, size);
+	}
+
+	@Override
+	public int getReceiveBufferSize() throws SocketException {
+		return getOption(StandardSocketOptions.SO_RCVBUF);
+	}
+
+	@Override
+	public <T> Socket setOption(SocketOption<T> name, T value) throws SocketException {
+		try {
+			channel.setOption(name, value);
+			return this;
+		} catch (SocketException e) {
+			throw e;
+		} catch (IOException e) {
+			throw toSocketException(e);
+		}
+	}
+
+	@Override
+	public <T> T getOption(SocketOption<T> name) throws SocketException {
+		try {
+			return channel.getOption(name);
+		} catch (SocketException e) {
+			throw e;
+		} catch (IOException e) {
+			throw toSocketException(e);
+		}
+	}
+
+	@Override
+	public Set<SocketOption<?>> supportedOptions() {
+		return channel.supportedOptions();
+	}
+
+	/**
+	 * Gets the loopback address, as the peer of a Unix domain socket is always on the local host.
+	 *
+	 * @return loopback address
+	 */
+	@Override
+	public InetAddress getInetAddress() {
+		return InetAddress.getLoopbackAddress();
+	}
+
+	@Override
+	public InetAddress getLocalAddress() {
+		return InetAddress.getLoopbackAddress();
+	}
+
+	@Override
+	public int getPort() {
+		return 0;
+	}
+
+	@Override
+	public int getLocalPort() {
+		return -1;
+	}
+
+	@Override
+	public SocketAddress getRemoteSocketAddress() {
+		try {
+			return channel.getRemoteAddress();
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	@Override
+	public SocketAddress getLocalSocketAddress() {
+		try {
+			return channel.getLocalAddress();
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	@Override
+	public void shutdownInput() throws IOException {
+		channel.shutdownInput();
+	}
+
+	@Override
+	public void shutdownOutput() throws IOException {
+		channel.shutdownOutput();
+	}
+
+	@Override
+	public boolean isConnected() {
+		return channel.isConnected();
+	}
+
+	@Override
+	public boolean isBound() {
+		return true;
+	}
+
+	@Override
+	public boolean isClosed() {
+		return !channel.isOpen();
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	@Override
+	public String toString() {
+		return "UnixSocket[addr=" + getRemoteSocketAddress() + "]";
+	}
+
+	private void checkReadDeadline(Timeout timeout) throws IOException {
+		armed.set(false);
+		long deadline = readDeadline;
+		if (deadline == 0 || !armed.compareAndSet(false, true)) {
+			return; // no read pending, or the timer has been armed again by a read meanwhile
+		}
+		long remaining = deadline - System.currentTimeMillis();
+		if (remaining > 0) {
+			WheelTimer.getDefault().newTimeout(this::checkReadDeadline, remaining);
+			return;
+		}
+		timedOut = true;
+		channel.close();
+	}
+
+	private void ensureOpen() throws SocketException {
+		if (!channel.isOpen()) {
+			throw new SocketException("Socket is closed");
+		}
+	}
+
+	private static SocketException toSocketException(IOException e) {
+		return (SocketException) new SocketException(e.getMessage()).initCause(e);
+	}
+
+	private static SocketException socketClosed(ClosedChannelException e) {
+		return (SocketException) new SocketException("Socket closed").initCause(e);
+	}
+
+	private class ChannelInputStream extends InputStream {
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			Objects.checkFromIndexSize(off, len, b.length);
+			if (len == 0) {
+				return 0;
+			}
+			ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+			int timeout = soTimeout;
+			if (timeout > 0) {
+				readDeadline = System.currentTimeMillis() + timeout;
+				if (!armed.get() && armed.compareAndSet(false, true)) {
+					WheelTimer.getDefault().newTimeout(UnixSocket.this::checkReadDeadline, timeout);
+				}
+			}
+			try {
+				return channel.read(buffer);
+			} catch (ClosedChannelException e) {
+				if (timedOut) {
+					throw new SocketTimeoutException("Read timed out");
+				}
+				throw socketClosed(e);
+			} finally {
+				readDeadline = 0;
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			UnixSocket.this.close();
+		}
+	}
+
+	private class ChannelOutputStream extends OutputStream {
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] {(byte) b}, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			Objects.checkFromIndexSize(off, len, b.length);
+			ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+			try {
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+			} catch (ClosedChannelException e) {
+				throw socketClosed(e);
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			UnixSocket.this.close();
+		}
+	}
+}
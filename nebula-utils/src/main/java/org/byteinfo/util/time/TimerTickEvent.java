@@ -0,0 +1,34 @@
+package org.byteinfo.util.time;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event of a tick of {@link WheelTimer}, lasting while the tick is processed.
+ */
+@Name("org.byteinfo.util.TimerTick")
+@Label("Timer Tick")
+@Category({"Nebula", "Timer"})
+@StackTrace(false)
+class TimerTickEvent extends Event {
+	@Label("Timer")
+	String timer;
+
+	@Label("Lag")
+	@Description("Delay of the tick behind its schedule")
+	@Timespan(Timespan.MILLISECONDS)
+	long lag;
+
+	@Label("Scheduled")
+	@Description("Newly scheduled timeouts placed on the wheel")
+	int scheduled;
+
+	@Label("Expired")
+	@Description("Timeouts handed to the executor")
+	int expired;
+}
@@ -65,7 +65,8 @@ public final class WheelTimer implements AutoCloseable {
 			wheel[i] = new Slot();
 		}
 
-		Thread.ofVirtual().name("%s-%d-%d".formatted(getClass().getSimpleName(), size, precision)).start(() -> {
+		String name = "%s-%d-%d".formatted(getClass().getSimpleName(), size, precision);
+		Thread.ofVirtual().name(name).start(() -> {
 			int mask = wheel.length - 1; // y = Math.pow(2, n); x % y == x & (y - 1)
 			int tick = 0;
 			long diff = 0;
@@ -73,6 +74,10 @@ public final class WheelTimer implements AutoCloseable {
 				// process current tick
 				long startTime = System.currentTimeMillis();
 				Timeout timeout;
+				TimerTickEvent event = new TimerTickEvent();
+				event.begin();
+				int scheduled = 0;
+				int expired = 0;
 
 				// process all newly scheduled tasks
 				while ((timeout = pending.poll()) != null) {
@@ -81,16 +86,18 @@ public final class WheelTimer implements AutoCloseable {
 					}
 					if (timeout.deadline() <= startTime) {
 						timeout.execute(executor);
+						expired++;
 					} else {
 						int ticks = (int) Math.round((timeout.deadline() - startTime) * 1.0 / precision);
 						int index = (ticks + tick) & mask;
 						wheel[index].add(timeout);
 						timeout.pendingRounds = ticks / wheel.length;
+						scheduled++;
 					}
 				}
 
 				// execute all tasks in current slot
-				wheel[tick].execute(executor);
+				expired += wheel[tick].execute(executor);
 
 				// remove all cancelled tasks
 				while ((timeout = cancelled.poll()) != null) {
@@ -99,6 +106,16 @@ public final class WheelTimer implements AutoCloseable {
 					}
 				}
 
+				// record the tick, late by the deviation of the last sleep
+				event.end();
+				if (event.shouldCommit()) {
+					event.timer = name;
+					event.lag = Math.max(-diff, 0);
+					event.scheduled = scheduled;
+					event.expired = expired;
+					event.commit();
+				}
+
 				// wait for next tick
 				long nextStartTime = startTime + precision + diff;
 				long sleep = nextStartTime - System.currentTimeMillis();
@@ -203,18 +220,21 @@ public final class WheelTimer implements AutoCloseable {
 			timeout.slot = null;
 		}
 
-		void execute(ExecutorService executor) {
+		int execute(ExecutorService executor) {
+			int count = 0;
 			Timeout timeout = head;
 			while (timeout != null) {
 				Timeout next = timeout.next;
 				if (timeout.pendingRounds == 0) {
 					timeout.execute(executor);
 					remove(timeout);
+					count++;
 				} else {
 					timeout.pendingRounds--;
 				}
 				timeout = next;
 			}
+			return count;
 		}
 	}
 }
@@ -0,0 +1,21 @@
+package org.byteinfo.util.codec;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * XXHashTest
+ */
+public class XXHashTest {
+	@Test
+	public void testXXHash() {
+		assertEquals(0xEF46DB3751D8E999L, XXHash.hash64("".getBytes()));
+		assertEquals(0xD24EC4F1A98C6E5BL, XXHash.hash64("a".getBytes()));
+		assertEquals(0x44BC2CF5AD770999L, XXHash.hash64("abc".getBytes()));
+		assertEquals(0xFBCEA83C8A378BF1L, XXHash.hash64("Nobody inspects the spammish repetition".getBytes()));
+
+		byte[] data = "--abc--".getBytes();
+		assertEquals(XXHash.hash64("abc".getBytes()), XXHash.hash64(data, 2, 3, 0));
+	}
+}
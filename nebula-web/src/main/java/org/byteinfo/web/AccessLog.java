@@ -0,0 +1,289 @@
+package org.byteinfo.web;
+
+import org.byteinfo.logging.Log;
+import org.byteinfo.logging.Rolling;
+import org.byteinfo.logging.Writer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous access log. Request threads copy the fields of a completed request into a preallocated ring of
+ * records, and a background writer formats them into lines and writes them in batches, flushing once the ring is
+ * empty. Once the ring is full, records are either dropped and counted, or the request threads wait for room.
+ * <p>
+ * Line format, with latency in microseconds and bytes of the response body:
+ * <pre>
+ * 2026-01-17 10:15:30.123 GET /users/1?full=true 200 532 1840us 10.0.0.7 "curl/8.5.0"
+ * </pre>
+ */
+public class AccessLog implements AutoCloseable {
+	/**
+	 * Policy applied once the ring is full.
+	 */
+	public enum Policy {
+		/**
+		 * Drops the record and counts it.
+		 */
+		DROP,
+
+		/**
+		 * Waits until the writer makes room.
+		 */
+		BLOCK
+	}
+
+	private static final int BATCH_SIZE = 64 * 1024;
+
+	private final Record[] ring;
+	private final int mask;
+	private final Policy policy;
+	private final AtomicLong head = new AtomicLong();
+	private final LongAdder dropped = new LongAdder();
+	private final Output output;
+	private final Thread writer;
+
+	// used by the writer thread only
+	private long tail;
+	private long second = -1;
+	private String timePrefix;
+	private volatile boolean waiting;
+	private volatile boolean closed;
+
+	/**
+	 * Creates a new AccessLog and starts its writer thread.
+	 *
+	 * @param output "stdout", or a file path where "{}" is replaced by the rolling suffix
+	 * @param rolling rolling of the log file
+	 * @param capacity records held by the ring, rounded up to a power of two
+	 * @param policy policy applied once the ring is full
+	 */
+	public AccessLog(String output, Rolling rolling, int capacity, Policy policy) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("capacity: " + capacity + " (expected: > 0)");
+		}
+		int size = Integer.highestOneBit(capacity * 2 - 1);
+		this.ring = new Record[size];
+		for (int i = 0; i < size; i++) {
+			ring[i] = new Record(i);
+		}
+		this.mask = size - 1;
+		this.policy = policy;
+		this.output = new Output(output, rolling);
+		this.writer = Thread.ofPlatform().name("access-log").daemon().start(this::run);
+	}
+
+	/**
+	 * Records a completed request, without blocking unless the ring is full under the BLOCK policy.
+	 *
+	 * @param ctx the completed request
+	 * @param latency request latency in nanoseconds
+	 * @param bytes response body bytes sent
+	 * @return true if recorded, false if dropped
+	 */
+	public boolean log(HttpContext ctx, long latency, long bytes) {
+		Record record = claim();
+		if (record == null) {
+			dropped.increment();
+			return false;
+		}
+		record.time = System.currentTimeMillis();
+		record.method = ctx.method();
+		record.target = ctx.target();
+		record.status = ctx.responseStatus();
+		record.bytes = bytes;
+		record.latency = latency / 1000;
+		record.address = ctx.address();
+		record.userAgent = ctx.userAgent();
+		record.publish();
+		if (waiting) {
+			LockSupport.unpark(writer);
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the number of records dropped because the ring was full.
+	 */
+	public long dropped() {
+		return dropped.sum();
+	}
+
+	public Policy policy() {
+		return policy;
+	}
+
+	/**
+	 * Writes the pending records and closes the output.
+	 */
+	@Override
+	public void close() throws InterruptedException {
+		closed = true;
+		LockSupport.unpark(writer);
+		writer.join();
+	}
+
+	// claims the next free record, the sequence of each record tells whether it is free for the position (Vyukov)
+	private Record claim() {
+		while (true) {
+			long position = head.get();
+			Record record = ring[(int) position & mask];
+			long diff = record.sequence - position;
+			if (diff == 0) {
+				if (head.compareAndSet(position, position + 1)) {
+					return record;
+				}
+			} else if (diff < 0) { // full
+				if (policy == Policy.DROP || closed) {
+					return null;
+				}
+				if (waiting) {
+					LockSupport.unpark(writer);
+				}
+				LockSupport.parkNanos(10_000);
+			}
+		}
+	}
+
+	private void run() {
+		StringBuilder sb = new StringBuilder(BATCH_SIZE);
+		while (true) {
+			boolean done = closed;
+			Record record = ring[(int) tail & mask];
+			if (record.sequence == tail + 1) {
+				format(record, sb);
+				record.release(tail + ring.length);
+				tail++;
+				if (sb.length() < BATCH_SIZE) {
+					continue;
+				}
+			}
+			if (!sb.isEmpty()) {
+				output.write(sb);
+				sb.setLength(0);
+				continue;
+			}
+			output.flush();
+			if (done) {
+				break;
+			}
+			waiting = true;
+			if (ring[(int) tail & mask].sequence != tail + 1 && !closed) {
+				LockSupport.parkNanos(100_000_000);
+			}
+			waiting = false;
+		}
+		output.close();
+	}
+
+	// formats the time of second precision once per second
+	private void format(Record record, StringBuilder sb) {
+		long millis = record.time % 1000;
+		if (record.time / 1000 != second) {
+			second = record.time / 1000;
+			String time = Writer.FORMATTER.format(Instant.ofEpochMilli(record.time));
+			timePrefix = time.substring(0, time.length() - 3);
+		}
+		sb.append(timePrefix);
+		if (millis < 100) {
+			sb.append(millis < 10 ? "00" : "0");
+		}
+		sb.append(millis).append(' ');
+		sb.append(record.method).append(' ').append(record.target).append(' ');
+		sb.append(record.status).append(' ').append(record.bytes).append(' ').append(record.latency).append("us ");
+		sb.append(record.address).append(' ');
+		if (record.userAgent == null) {
+			sb.append('-');
+		} else {
+			sb.append('"').append(record.userAgent.replace("\"", "\\\"")).append('"');
+		}
+		sb.append('\n');
+	}
+
+	private static class Record {
+		private volatile long sequence;
+		private long time;
+		private String method;
+		private String target;
+		private int status;
+		private long bytes;
+		private long latency;
+		private String address;
+		private String userAgent;
+
+		Record(long sequence) {
+			this.sequence = sequence;
+		}
+
+		void publish() {
+			sequence++;
+		}
+
+		void release(long sequence) {
+			method = target = address = userAgent = null;
+			this.sequence = sequence;
+		}
+	}
+
+	// stdout or a rolling file, used by the writer thread only
+	private static class Output {
+		private final Path target;
+		private final Rolling rolling;
+		private OutputStream out;
+		private long nextRollingTime;
+
+		Output(String output, Rolling rolling) {
+			this.target = "stdout".equals(output) ? null : Path.of(output);
+			this.rolling = rolling;
+			if (target == null) {
+				out = System.out;
+				nextRollingTime = Long.MAX_VALUE;
+			}
+		}
+
+		void write(StringBuilder sb) {
+			try {
+				long now = System.currentTimeMillis();
+				if (now >= nextRollingTime || out == null) {
+					if (out != null) {
+						out.close();
+					}
+					nextRollingTime = rolling.getNextRollingTime(now);
+					String fileName = target.getFileName().toString().replace("{}", rolling.getRollingSuffix(now));
+					out = Files.newOutputStream(target.resolveSibling(fileName), StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+				}
+				out.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+			} catch (IOException e) {
+				Log.error(e, "Failed to write access log: {}", target);
+			}
+		}
+
+		void flush() {
+			try {
+				if (out != null) {
+					out.flush();
+				}
+			} catch (IOException e) {
+				Log.error(e, "Failed to flush access log: {}", target);
+			}
+		}
+
+		void close() {
+			try {
+				if (out != null && out != System.out) {
+					out.close();
+				}
+			} catch (IOException e) {
+				Log.error(e, "Failed to close access log: {}", target);
+			}
+		}
+	}
+}
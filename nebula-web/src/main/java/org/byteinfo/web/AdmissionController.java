@@ -0,0 +1,202 @@
+package org.byteinfo.web;
+
+import org.byteinfo.logging.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Adaptive concurrency limit for in-flight requests.
+ * <p>
+ * Latency is the time a request waited from being received until it is admitted, so long-running handlers such as
+ * event streams, uploads and downloads do not count. The limit grows additively while the smoothed latency stays near
+ * its baseline, and shrinks multiplicatively once the queueing delay (smoothed latency above baseline) exceeds the
+ * tolerance, at most once per latency period (AIMD).
+ */
+public class AdmissionController {
+	private static final int WINDOW_SAMPLES = 1000;
+
+	private final int minLimit;
+	private final int maxLimit;
+	private final long tolerance;
+	private final int retryAfter;
+	private final byte[] rejection;
+
+	private final AtomicInteger inflight = new AtomicInteger();
+	private final LongAdder rejected = new LongAdder();
+	private volatile int limit;
+
+	// latency samples, updated by whoever holds the lock
+	private final ReentrantLock lock = new ReentrantLock();
+	private double estimate;
+	private double latency;
+	private long baseline = Long.MAX_VALUE;
+	private long windowMin = Long.MAX_VALUE;
+	private int windowSamples;
+	private long lastDecrease;
+
+	/**
+	 * Creates a new AdmissionController.
+	 *
+	 * @param initialLimit initial concurrency limit
+	 * @param minLimit min concurrency limit
+	 * @param maxLimit max concurrency limit
+	 * @param tolerance tolerated queueing delay in milliseconds
+	 * @param retryAfter Retry-After in seconds for rejected requests
+	 */
+	public AdmissionController(int initialLimit, int minLimit, int maxLimit, long tolerance, int retryAfter) {
+		if (minLimit <= 0 || minLimit > initialLimit || initialLimit > maxLimit) {
+			throw new IllegalArgumentException("initialLimit: %d, minLimit: %d, maxLimit: %d (expected: 0 < minLimit <= initialLimit <= maxLimit)".formatted(initialLimit, minLimit, maxLimit));
+		}
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.tolerance = tolerance * 1_000_000;
+		this.retryAfter = retryAfter;
+		this.estimate = initialLimit;
+		this.limit = initialLimit;
+
+		// pre-encoded response for connections rejected at accept time
+		Headers headers = new Headers();
+		headers.set(HeaderName.RETRY_AFTER, String.valueOf(retryAfter));
+		headers.set(HeaderName.CONNECTION, HeaderValue.CLOSE);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			HttpCodec.send(out, StatusCode.SERVICE_UNAVAILABLE, headers, List.of(), null, 0, null);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		rejection = out.toByteArray();
+	}
+
+	/**
+	 * Checks whether a new connection can be accepted, otherwise it should be rejected by {@link #reject(Socket)}.
+	 *
+	 * @return true if not overloaded
+	 */
+	public boolean admit() {
+		if (inflight.get() >= limit) {
+			rejected.increment();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Rejects the connection with a pre-encoded 503 response without reading the request.
+	 *
+	 * @param socket accepted socket
+	 */
+	public void reject(Socket socket) {
+		try (socket) {
+			socket.getOutputStream().write(rejection);
+		} catch (IOException e) {
+			Log.debug("Failed to reject connection: {}", socket);
+		}
+	}
+
+	/**
+	 * Tries to acquire a permit for the request, which must be released by {@link #release()} once completed or once
+	 * its response switches to streaming.
+	 *
+	 * @param waited nanoseconds the request waited since it was received
+	 * @return true if acquired
+	 */
+	public boolean tryAcquire(long waited) {
+		while (true) {
+			int current = inflight.get();
+			if (current >= limit) {
+				rejected.increment();
+				return false;
+			}
+			if (inflight.compareAndSet(current, current + 1)) {
+				sample(waited, current + 1);
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Releases a permit acquired by {@link #tryAcquire(long)}.
+	 */
+	public void release() {
+		inflight.decrementAndGet();
+	}
+
+	private void sample(long nanos, int current) {
+		// skip the sample rather than contend for it
+		if (!lock.tryLock()) {
+			return;
+		}
+		try {
+			latency = latency == 0 ? nanos : latency * 0.9 + nanos * 0.1;
+			long smoothed = (long) latency;
+			windowMin = Math.min(windowMin, smoothed);
+			if (++windowSamples == WINDOW_SAMPLES) {
+				// follow a rising baseline slowly so that sustained overload is not taken as the new normal
+				baseline = windowMin < baseline ? windowMin : baseline + (windowMin - baseline) / 8;
+				windowMin = Long.MAX_VALUE;
+				windowSamples = 0;
+			}
+
+			long now = System.nanoTime();
+			if (smoothed - Math.min(baseline, windowMin) > tolerance) {
+				if (now - lastDecrease > smoothed) {
+					estimate = Math.max(minLimit, estimate * 0.9);
+					lastDecrease = now;
+				}
+			} else if (current * 2 >= estimate) {
+				estimate = Math.min(maxLimit, estimate + 1 / estimate);
+			}
+			limit = (int) estimate;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Gets the Retry-After in seconds for rejected requests.
+	 *
+	 * @return Retry-After in seconds
+	 */
+	public int retryAfter() {
+		return retryAfter;
+	}
+
+	/**
+	 * Gets the current concurrency limit.
+	 *
+	 * @return concurrency limit
+	 */
+	public int limit() {
+		return limit;
+	}
+
+	/**
+	 * Gets the number of in-flight requests.
+	 *
+	 * @return in-flight count
+	 */
+	public int inflight() {
+		return inflight.get();
+	}
+
+	/**
+	 * Gets the number of rejected requests and connections.
+	 *
+	 * @return rejected count
+	 */
+	public long rejected() {
+		return rejected.sum();
+	}
+
+	@Override
+	public String toString() {
+		return "AdmissionController{limit=%d, inflight=%d, latency=%.3fms, rejected=%d}".formatted(limit, inflight.get(), latency / 1_000_000, rejected.sum());
+	}
+}
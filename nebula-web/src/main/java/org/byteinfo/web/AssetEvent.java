@@ -0,0 +1,33 @@
+package org.byteinfo.web;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event of an asset lookup by {@link AssetHandler}.
+ */
+@Name("org.byteinfo.web.Asset")
+@Label("Asset")
+@Category({"Nebula", "Web"})
+@Description("Static asset looked up from the file root or the classpath")
+@StackTrace(false)
+class AssetEvent extends Event {
+	@Label("Path")
+	String path;
+
+	@Label("Source")
+	@Description("file, classpath, or none if not found")
+	String source;
+
+	@Label("Length")
+	@DataAmount
+	long length;
+
+	@Label("Not Modified")
+	boolean notModified;
+}
@@ -2,7 +2,7 @@ package org.byteinfo.web;
 
 import java.io.File;
 import java.io.IOException;
-import java.net.MalformedURLException;
+import java.net.JarURLConnection;
 import java.net.URL;
 import java.net.URLConnection;
 import java.nio.file.Files;
@@ -22,40 +22,71 @@ public class AssetHandler implements Handler {
 	@Override
 	public Object handle(HttpContext context) throws IOException {
 		String path = context.path();
+		Path file = null;
 		URL url = null;
+		AssetEvent event = new AssetEvent();
+		event.begin();
 
 		// check file path
 		if (fileRoot != null) {
-			url = getFileAsset(Path.of(fileRoot + path), fileRoot);
+			file = getFileAsset(Path.of(fileRoot + path), fileRoot);
 		}
 
 		// check classpath
-		if (url == null) {
+		if (file == null) {
 			url = ClassLoader.getSystemResource(classRoot + path);
 			if (url != null && "file".equals(url.getProtocol())) { // if in IDE
-				url = getFileAsset(new File(url.getPath()).toPath(), new File(ClassLoader.getSystemResource(classRoot).getPath()).toPath());
+				file = getFileAsset(new File(url.getPath()).toPath(), new File(ClassLoader.getSystemResource(classRoot).getPath()).toPath());
+				url = null;
 			}
 		}
 
 		// ignore directory
-		if (url == null || url.getPath().endsWith("/")) {
+		if (file == null && (url == null || url.getPath().endsWith("/"))) {
+			commit(event, path, "none", 0, false);
 			throw new WebException(StatusCode.NOT_FOUND, "Asset not found: " + path);
 		}
 
-		// set asset info
+		// read asset info without opening the asset
+		long length;
+		long lastModified;
+		URLConnection connection = null;
+		if (file != null) {
+			length = Files.size(file);
+			lastModified = Files.getLastModifiedTime(file).toMillis();
+		} else {
+			connection = url.openConnection();
+			length = connection.getContentLengthLong();
+			lastModified = connection instanceof JarURLConnection jar ? jar.getJarEntry().getTime() : connection.getLastModified();
+		}
+
+		// set asset info and handle conditional request
 		context.setResponseType(ContentType.byFileName(path));
-		URLConnection connection = url.openConnection();
-		long length = connection.getContentLengthLong();
-		long lastModified = connection.getLastModified();
 		context.setResponseLength(length);
-		context.responseHeaders().set(HeaderName.ETAG, '"' + Base64.getEncoder().withoutPadding().encodeToString((lastModified + "-" + length).getBytes()) + '"');
-		return connection.getInputStream();
+		String eTag = '"' + Base64.getEncoder().withoutPadding().encodeToString((lastModified + "-" + length).getBytes()) + '"';
+		boolean notModified = context.notModified(eTag, lastModified > 0 ? lastModified : -1);
+		commit(event, path, file != null ? "file" : "classpath", length, notModified);
+		if (notModified || HttpMethod.HEAD.equals(context.method())) {
+			return null;
+		}
+		return file != null ? Files.newInputStream(file) : connection.getInputStream();
+	}
+
+	private static void commit(AssetEvent event, String path, String source, long length, boolean notModified) {
+		event.end();
+		if (event.shouldCommit()) {
+			event.path = path;
+			event.source = source;
+			event.length = length;
+			event.notModified = notModified;
+			event.commit();
+		}
 	}
 
-	private URL getFileAsset(Path asset, Path root) throws MalformedURLException {
+	private Path getFileAsset(Path asset, Path root) {
 		asset = asset.normalize();
 		if (asset.startsWith(root) && Files.exists(asset) && Files.isRegularFile(asset)) {
-			return asset.toUri().toURL();
+			return asset;
 		}
 		return null;
 	}
@@ -0,0 +1,23 @@
+package org.byteinfo.web;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Max size of the request body instead of http.maxBodySize, a larger Content-Length is rejected with 413 before the
+ * handler is invoked. Declared on a class, it applies to each route of the class.
+ *
+ * @see BodyLimitHandler
+ */
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface BodyLimit {
+	/**
+	 * Max body size in bytes.
+	 */
+	long value();
+}
@@ -0,0 +1,35 @@
+package org.byteinfo.web;
+
+/**
+ * Body limit for the target handler: a request declaring a larger Content-Length is rejected with 413 without reading
+ * the body, and the body bound by {@link HttpContext#bind(Class)} or read as a form is limited accordingly.
+ */
+public class BodyLimitHandler implements Handler {
+	private final Handler handler;
+	private final long limit;
+
+	/**
+	 * Creates a new BodyLimitHandler.
+	 *
+	 * @param handler target handler
+	 * @param limit max body size in bytes
+	 */
+	public BodyLimitHandler(Handler handler, long limit) {
+		this.handler = handler;
+		this.limit = limit;
+	}
+
+	@Override
+	public Object handle(HttpContext ctx) throws Exception {
+		ctx.setBodyLimit(limit);
+		if (ctx.length() > limit) {
+			ctx.responseHeaders().set(HeaderName.CONNECTION, HeaderValue.CLOSE); // the body is not drained
+			throw new WebException(StatusCode.CONTENT_TOO_LARGE, "Request body exceeds " + limit + " bytes.");
+		}
+		return handler.handle(ctx);
+	}
+
+	public Handler handler() {
+		return handler;
+	}
+}
@@ -0,0 +1,71 @@
+package org.byteinfo.web;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Request body bounded by the body limit of the context. A declared Content-Length beyond the limit is rejected before
+ * anything is read, and a chunked body as soon as it crosses the limit, with 413 and "Connection: close" so that the
+ * rest of the body is neither read nor drained.
+ */
+class BoundedInputStream extends InputStream {
+	private final HttpContext ctx;
+	private final InputStream in;
+	private final long maxLength;
+	private long count;
+	private boolean checked;
+
+	BoundedInputStream(HttpContext ctx, InputStream in, long maxLength) {
+		this.ctx = ctx;
+		this.in = in;
+		this.maxLength = maxLength;
+	}
+
+	@Override
+	public int read() throws IOException {
+		check();
+		int b = in.read();
+		if (b != -1 && ++count > maxLength) {
+			throw tooLarge();
+		}
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		check();
+		// read at most one byte beyond the limit to detect crossing it
+		int n = in.read(b, off, (int) Math.min(len, maxLength - count + 1));
+		if (n > 0) {
+			count += n;
+			if (count > maxLength) {
+				throw tooLarge();
+			}
+		}
+		return n;
+	}
+
+	@Override
+	public int available() throws IOException {
+		return in.available();
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	private void check() {
+		if (!checked) {
+			checked = true;
+			if (ctx.length() > maxLength) {
+				throw tooLarge();
+			}
+		}
+	}
+
+	private WebException tooLarge() {
+		ctx.responseHeaders().set(HeaderName.CONNECTION, HeaderValue.CLOSE);
+		return new WebException(StatusCode.CONTENT_TOO_LARGE, "Request body exceeds " + maxLength + " bytes.");
+	}
+}
@@ -0,0 +1,33 @@
+package org.byteinfo.web;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Caps concurrent executions of the route, excess requests wait in a bounded queue and are rejected with 503 once
+ * the queue is full or the wait times out. Declared on a class, it applies to each route of the class.
+ *
+ * @see BulkheadHandler
+ */
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface Bulkhead {
+	/**
+	 * Max concurrent executions.
+	 */
+	int value();
+
+	/**
+	 * Max waiting requests.
+	 */
+	int queue() default 0;
+
+	/**
+	 * Max wait time in milliseconds.
+	 */
+	long maxWait() default 1000;
+}
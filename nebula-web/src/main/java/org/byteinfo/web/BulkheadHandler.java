@@ -0,0 +1,107 @@
+package org.byteinfo.web;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Concurrency bulkhead: at most {@code concurrency} requests execute the target handler at a time, up to
+ * {@code queue} requests wait in FIFO order, and the others are rejected with 503.
+ */
+public class BulkheadHandler implements Handler {
+	private final Handler handler;
+	private final int concurrency;
+	private final int queue;
+	private final long maxWait;
+	private final Semaphore permits;
+	private final AtomicInteger queued = new AtomicInteger();
+	private final LongAdder rejected = new LongAdder();
+
+	/**
+	 * Creates a new BulkheadHandler.
+	 *
+	 * @param handler target handler
+	 * @param concurrency max concurrent executions
+	 * @param queue max waiting requests
+	 * @param maxWait max wait time in milliseconds
+	 */
+	public BulkheadHandler(Handler handler, int concurrency, int queue, long maxWait) {
+		if (concurrency <= 0 || queue < 0) {
+			throw new IllegalArgumentException("concurrency: %d, queue: %d (expected: concurrency > 0, queue >= 0)".formatted(concurrency, queue));
+		}
+		this.handler = handler;
+		this.concurrency = concurrency;
+		this.queue = queue;
+		this.maxWait = maxWait;
+		this.permits = new Semaphore(concurrency, true);
+	}
+
+	@Override
+	public Object handle(HttpContext ctx) throws Exception {
+		if (!permits.tryAcquire()) {
+			if (queued.incrementAndGet() > queue) {
+				queued.decrementAndGet();
+				return reject(ctx);
+			}
+			boolean acquired;
+			try {
+				acquired = permits.tryAcquire(maxWait, TimeUnit.MILLISECONDS);
+			} finally {
+				queued.decrementAndGet();
+			}
+			if (!acquired) {
+				return reject(ctx);
+			}
+		}
+		try {
+			return handler.handle(ctx);
+		} finally {
+			permits.release();
+		}
+	}
+
+	public Handler handler() {
+		return handler;
+	}
+
+	/**
+	 * Gets the number of executing requests.
+	 *
+	 * @return active count
+	 */
+	public int active() {
+		return concurrency - permits.availablePermits();
+	}
+
+	/**
+	 * Gets the number of waiting requests.
+	 *
+	 * @return queued count
+	 */
+	public int queued() {
+		return queued.get();
+	}
+
+	/**
+	 * Gets the number of rejected requests.
+	 *
+	 * @return rejected count
+	 */
+	public long rejected() {
+		return rejected.sum();
+	}
+
+	@Override
+	public String toString() {
+		return "BulkheadHandler{active=%d/%d, queued=%d/%d, rejected=%d}".formatted(active(), concurrency, queued(), queue, rejected());
+	}
+
+	private Object reject(HttpContext ctx) {
+		rejected.increment();
+		ctx.setResponseStatus(StatusCode.SERVICE_UNAVAILABLE);
+		ctx.setResponseType(ContentType.TEXT);
+		ctx.responseHeaders().set(HeaderName.RETRY_AFTER, "1");
+		return "ERROR: " + StatusCode.SERVICE_UNAVAILABLE;
+	}
+}
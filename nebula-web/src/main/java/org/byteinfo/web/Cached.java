@@ -0,0 +1,28 @@
+package org.byteinfo.web;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Responses of the GET route are cached by the server.
+ *
+ * @see CachingHandler
+ */
+@Target({ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface Cached {
+	/**
+	 * Time to live in seconds, may be overridden by the max-age directive of the response.
+	 */
+	long ttl() default 60;
+
+	/**
+	 * Request headers to be included in the cache key, in addition to the method and the target. Responses with a Vary
+	 * header naming other request headers are not cached.
+	 */
+	String[] vary() default {};
+}
@@ -0,0 +1,135 @@
+package org.byteinfo.web;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Caches the rendered GET responses of the target handler in a {@link ResponseCache}. Only the headers set by the
+ * target handler are cached, and responses setting cookies, marked private or no-store, or varying on request headers
+ * not included in the cache key are not cached. The Cache-Control of the request is ignored, so that clients cannot
+ * bypass the cache.
+ *
+ * @see <a href="https://www.rfc-editor.org/rfc/rfc9111#name-cache-control">Cache-Control</a>
+ */
+public class CachingHandler implements Handler {
+	private final ResponseCache cache;
+	private final Handler handler;
+	private final long ttlMillis;
+	private final String[] vary;
+
+	/**
+	 * Creates a new CachingHandler.
+	 *
+	 * @param cache response cache
+	 * @param handler target handler
+	 * @param ttlMillis default time to live in millis
+	 * @param vary request headers to be included in the cache key
+	 */
+	public CachingHandler(ResponseCache cache, Handler handler, long ttlMillis, String... vary) {
+		this.cache = cache;
+		this.handler = handler;
+		this.ttlMillis = ttlMillis;
+		this.vary = vary;
+	}
+
+	@Override
+	public Object handle(HttpContext ctx) throws Exception {
+		if (!HttpMethod.GET.equals(ctx.method()) && !HttpMethod.HEAD.equals(ctx.method())) {
+			return handler.handle(ctx);
+		}
+
+		// lookup cached response
+		String key = key(ctx);
+		Response cached = cache.get(key);
+		if (cached != null) {
+			return cached;
+		}
+
+		// handle request and cache the rendered response
+		List<Header> headers = List.copyOf(ctx.responseHeaders().values());
+		List<Cookie> cookies = List.copyOf(ctx.responseCookies().values());
+		Object result = handler.handle(ctx);
+		if (ctx.isCommitted()) {
+			return result;
+		}
+		Response response = ctx.render(result, headers);
+		boolean personal = response.header(HeaderName.SET_COOKIE) != null || !cookies.containsAll(ctx.responseCookies().values());
+		if (response.status() == StatusCode.OK && !personal && isKeyed(response)) {
+			cache.put(key, response, ttl(response));
+		}
+		return response;
+	}
+
+	public Handler handler() {
+		return handler;
+	}
+
+	private long ttl(Response response) {
+		String cacheControl = null;
+		for (Header header : response.headers()) {
+			if (header.name().equalsIgnoreCase(HeaderName.CACHE_CONTROL)) {
+				cacheControl = cacheControl == null ? header.value() : cacheControl + "," + header.value();
+			}
+		}
+		Map<String, String> directives = parseCacheControl(cacheControl);
+		if (directives.containsKey("no-store") || directives.containsKey("no-cache") || directives.containsKey("private")) {
+			return 0;
+		}
+		String maxAge = directives.getOrDefault("s-maxage", directives.get("max-age"));
+		if (maxAge != null) {
+			try {
+				return Long.parseLong(maxAge) * 1000;
+			} catch (NumberFormatException e) {
+				return 0;
+			}
+		}
+		return ttlMillis;
+	}
+
+	// whether the response varies only on the request headers included in the cache key
+	private boolean isKeyed(Response response) {
+		for (Header header : response.headers()) {
+			if (header.name().equalsIgnoreCase(HeaderName.VARY)) {
+				for (String name : header.value().split(",")) {
+					name = name.trim();
+					if (!name.isEmpty() && !isVary(name)) {
+						return false;
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	private boolean isVary(String name) {
+		for (String header : vary) {
+			if (header.equalsIgnoreCase(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private String key(HttpContext ctx) {
+		StringBuilder key = new StringBuilder(128).append(HttpMethod.GET).append(' ').append(ctx.target()); // HEAD shares GET responses
+		for (String header : vary) {
+			key.append('\n').append(ctx.headers().get(header));
+		}
+		return key.toString();
+	}
+
+	private static Map<String, String> parseCacheControl(String value) {
+		if (value == null) {
+			return Map.of();
+		}
+		Map<String, String> directives = new HashMap<>();
+		for (String directive : value.split(",")) {
+			String[] pair = directive.trim().split("=", 2);
+			String val = pair.length == 2 ? pair[1].replace("\"", "") : "";
+			directives.put(pair[0].toLowerCase(Locale.ROOT), val);
+		}
+		return directives;
+	}
+}
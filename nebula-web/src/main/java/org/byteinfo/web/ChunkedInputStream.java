@@ -29,12 +29,17 @@ public class ChunkedInputStream extends LimitedInputStream {
 
 	@Override
 	public int available() throws IOException {
-		if (limit <= 0 && readChunk() == -1) {
-			return 0;
+		if (limit <= 0) {
+			return 0; // between chunks, don't block on reading the next chunk-size line
 		}
 		return super.available();
 	}
 
+	@Override
+	public void close() throws IOException {
+		limit = -1; // ended, rather than between chunks which would resume reading at the next message
+	}
+
 	private long readChunk() throws IOException {
 		if (limit == 0) { // read next chunk
 			String line = HttpCodec.readLine(in, true);
@@ -3,33 +3,73 @@ package org.byteinfo.web;
 import java.io.IOException;
 import java.io.OutputStream;
 
-// https://www.rfc-editor.org/rfc/rfc9112#name-transfer-codings
+/**
+ * Chunked transfer coding, small writes are aggregated into chunks of up to http.chunkSize bytes, and a chunk is
+ * emitted once the buffer is full or on flush. Writes of at least a full chunk are sent as a chunk of their own.
+ *
+ * @see <a href="https://www.rfc-editor.org/rfc/rfc9112#name-transfer-codings">Transfer Codings</a>
+ */
 public class ChunkedOutputStream extends OutputStream {
+	public static final int CHUNK_SIZE = AppConfig.get().getInt("http.chunkSize", 8192); // defaulted for client-only use without a Server
+
+	private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes();
+	private static final byte[] LAST_CHUNK = "0\r\n\r\n".getBytes();
+
 	protected final byte[] CRLF = {'\r', '\n'};
 	protected OutputStream out;
 	protected boolean closed;
 
+	private final int chunkSize;
+	private final byte[] header = {0, 0, 0, 0, 0, 0, 0, 0, '\r', '\n'}; // chunk-size CRLF
+	private byte[] buffer; // allocated on the first small write
+	private int count;
+
 	public ChunkedOutputStream(OutputStream out) {
+		this(out, CHUNK_SIZE);
+	}
+
+	public ChunkedOutputStream(OutputStream out, int chunkSize) {
+		if (chunkSize <= 0) {
+			throw new IllegalArgumentException("chunkSize <= 0");
+		}
 		this.out = out;
+		this.chunkSize = chunkSize;
 	}
 
 	@Override
 	public void write(int b) throws IOException {
-		write(new byte[] {(byte) b}, 0, 1);
+		ensureOpen();
+		if (buffer == null) {
+			buffer = new byte[chunkSize];
+		} else if (count == buffer.length) {
+			flushBuffer();
+		}
+		buffer[count++] = (byte) b;
 	}
 
 	@Override
 	public void write(byte[] b, int off, int len) throws IOException {
-		if (closed) {
-			throw new IOException("stream closed");
+		ensureOpen();
+		if (len == 0) {
+			return; // an empty chunk would be the last-chunk
 		}
-		writeChunk(len);
-		out.write(b, off, len);
-		out.write(CRLF);
+		if (len >= chunkSize) {
+			flushBuffer();
+			writeChunk(b, off, len);
+			return;
+		}
+		if (buffer == null) {
+			buffer = new byte[chunkSize];
+		} else if (len > buffer.length - count) {
+			flushBuffer();
+		}
+		System.arraycopy(b, off, buffer, count, len);
+		count += len;
 	}
 
 	@Override
 	public void flush() throws IOException {
+		flushBuffer();
 		out.flush();
 	}
 
@@ -39,15 +79,34 @@ public class ChunkedOutputStream extends OutputStream {
 			return;
 		}
 		closed = true;
-		writeChunk(0); // last-chunk
+		flushBuffer();
+		out.write(LAST_CHUNK);
 		out.flush();
 	}
 
-	private void writeChunk(long size) throws IOException {
-		String header = Long.toHexString(size) + "\r\n";
-		if (size == 0) {
-			header += "\r\n";
+	private void ensureOpen() throws IOException {
+		if (closed) {
+			throw new IOException("stream closed");
 		}
-		out.write(header.getBytes());
+	}
+
+	private void flushBuffer() throws IOException {
+		if (count > 0) {
+			writeChunk(buffer, 0, count);
+			count = 0;
+		}
+	}
+
+	private void writeChunk(byte[] b, int off, int len) throws IOException {
+		// hex chunk-size right-aligned before CRLF
+		int pos = header.length - 2;
+		int size = len;
+		do {
+			header[--pos] = HEX_DIGITS[size & 0xF];
+			size >>>= 4;
+		} while (size != 0);
+		out.write(header, pos, header.length - pos);
+		out.write(b, off, len);
+		out.write(CRLF);
 	}
 }
@@ -0,0 +1,28 @@
+package org.byteinfo.web;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Concurrent identical GET requests share a single handler execution.
+ *
+ * @see CoalescingHandler
+ */
+@Target({ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface Coalesce {
+	/**
+	 * Request headers to be included in the coalescing key, in addition to the method, the target, Authorization and
+	 * Cookie.
+	 */
+	String[] headers() default {};
+
+	/**
+	 * Max wait time in milliseconds for the shared execution, the request is handled on its own afterwards.
+	 */
+	long maxWait() default 10000;
+}
@@ -0,0 +1,89 @@
+package org.byteinfo.web;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Single-flight handler: concurrent identical GET requests share a single execution of the target handler,
+ * and the rendered response is sent to all the waiting requests. Only the headers set by the target handler are
+ * shared, and responses setting cookies are not shared at all. The Authorization and Cookie request headers are always
+ * included in the coalescing key, so responses are never shared between users. Requests waiting longer than the max
+ * wait time, or past the request deadline, are handled on their own.
+ */
+public class CoalescingHandler implements Handler {
+	private final Map<String, CompletableFuture<Response>> calls = new ConcurrentHashMap<>();
+	private final Handler handler;
+	private final long maxWait;
+	private final String[] headers;
+
+	/**
+	 * Creates a new CoalescingHandler.
+	 *
+	 * @param handler target handler
+	 * @param maxWait max wait time for the shared execution in milliseconds
+	 * @param headers request headers to be included in the coalescing key
+	 */
+	public CoalescingHandler(Handler handler, long maxWait, String... headers) {
+		this.handler = handler;
+		this.maxWait = maxWait;
+		this.headers = headers;
+	}
+
+	@Override
+	public Object handle(HttpContext ctx) throws Exception {
+		if (!HttpMethod.GET.equals(ctx.method()) && !HttpMethod.HEAD.equals(ctx.method())) {
+			return handler.handle(ctx);
+		}
+
+		String key = key(ctx);
+		CompletableFuture<Response> call = new CompletableFuture<>();
+		CompletableFuture<Response> leader = calls.putIfAbsent(key, call);
+		if (leader != null) {
+			long wait = ctx.deadline() == 0 ? maxWait : Math.min(maxWait, ctx.deadline() - System.currentTimeMillis());
+			Response response;
+			try {
+				response = leader.get(Math.max(wait, 0), TimeUnit.MILLISECONDS);
+			} catch (ExecutionException e) {
+				throw e.getCause() instanceof Exception cause ? cause : e;
+			} catch (TimeoutException e) {
+				return handler.handle(ctx);
+			}
+			// the leader has committed its response directly or set cookies, so it can't be shared
+			return response == null ? handler.handle(ctx) : response;
+		}
+
+		try {
+			List<Header> headers = List.copyOf(ctx.responseHeaders().values());
+			List<Cookie> cookies = List.copyOf(ctx.responseCookies().values());
+			Object result = handler.handle(ctx);
+			Response response = ctx.isCommitted() ? null : ctx.render(result, headers);
+			boolean personal = response != null && (response.header(HeaderName.SET_COOKIE) != null || !cookies.containsAll(ctx.responseCookies().values()));
+			call.complete(personal ? null : response);
+			return response == null ? result : response;
+		} catch (Throwable t) {
+			call.completeExceptionally(t);
+			throw t;
+		} finally {
+			calls.remove(key, call);
+		}
+	}
+
+	public Handler handler() {
+		return handler;
+	}
+
+	private String key(HttpContext ctx) {
+		StringBuilder key = new StringBuilder(128).append(ctx.method()).append(' ').append(ctx.target());
+		key.append('\n').append(ctx.headers().get(HeaderName.AUTHORIZATION));
+		key.append('\n').append(ctx.headers().get(HeaderName.COOKIE));
+		for (String header : headers) {
+			key.append('\n').append(ctx.headers().get(header));
+		}
+		return key.toString();
+	}
+}
@@ -16,6 +16,7 @@ public class ContentType {
 	public static final String BINARY = "application/octet-stream";
 	public static final String FORM = "application/x-www-form-urlencoded";
 	public static final String MULTIPART = "multipart/form-data";
+	public static final String EVENT_STREAM = "text/event-stream";
 
 	private static final Map<String, String> TYPES = new HashMap<>();
 
@@ -0,0 +1,70 @@
+package org.byteinfo.web;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Request body of an "Expect: 100-continue" request, 100 Continue is sent when the body is read for the first time,
+ * that is once routing and before filters have let the request through. If the final response is sent before that,
+ * the body is refused: it reads as empty, and the connection is closed instead of draining the body.
+ *
+ * @see <a href="https://www.rfc-editor.org/rfc/rfc9110#name-expect">Expect</a>
+ */
+class ContinueInputStream extends InputStream {
+	private final InputStream in;
+	private final OutputStream out;
+	private boolean pending = true;
+	private boolean refused;
+
+	ContinueInputStream(InputStream in, OutputStream out) {
+		this.in = in;
+		this.out = out;
+	}
+
+	/**
+	 * Refuses the body unless 100 Continue has been sent, invoked when the final response is sent.
+	 *
+	 * @return true if refused, then the connection must be closed
+	 */
+	boolean refuse() {
+		if (pending) {
+			pending = false;
+			refused = true;
+		}
+		return refused;
+	}
+
+	@Override
+	public int read() throws IOException {
+		return proceed() ? in.read() : -1;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		return proceed() ? in.read(b, off, len) : -1;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		return proceed() ? in.skip(n) : 0;
+	}
+
+	@Override
+	public int available() throws IOException {
+		return pending || refused ? 0 : in.available();
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	private boolean proceed() throws IOException {
+		if (pending) {
+			pending = false;
+			HttpCodec.sendInterim(out, StatusCode.CONTINUE, new Headers());
+		}
+		return !refused;
+	}
+}
@@ -0,0 +1,23 @@
+package org.byteinfo.web;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Interrupts the handling thread once the deadline is exceeded and responds with 504. The deadline includes the wait in
+ * the {@link Bulkhead} queue. Declared on a class, it applies to each route of the class.
+ *
+ * @see DeadlineHandler
+ */
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface Deadline {
+	/**
+	 * Deadline in milliseconds.
+	 */
+	long value();
+}
@@ -0,0 +1,79 @@
+package org.byteinfo.web;
+
+import org.byteinfo.logging.Log;
+import org.byteinfo.util.time.Timeout;
+import org.byteinfo.util.time.WheelTimer;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Deadline for the target handler: the handling thread is interrupted by the default {@link WheelTimer} once the
+ * deadline is exceeded, and the request is answered with 504 whatever the handler returns or throws.
+ */
+public class DeadlineHandler implements Handler {
+	private static final int RUNNING = 0;
+	private static final int EXPIRING = 1;
+	private static final int EXPIRED = 2;
+	private static final int DONE = 3;
+
+	private final Handler handler;
+	private final long deadline;
+
+	/**
+	 * Creates a new DeadlineHandler.
+	 *
+	 * @param handler target handler
+	 * @param deadline deadline in milliseconds
+	 */
+	public DeadlineHandler(Handler handler, long deadline) {
+		this.handler = handler;
+		this.deadline = deadline;
+	}
+
+	@Override
+	public Object handle(HttpContext ctx) throws Exception {
+		ctx.setDeadline(System.currentTimeMillis() + deadline);
+		Thread thread = Thread.currentThread();
+		AtomicInteger state = new AtomicInteger(RUNNING);
+		Timeout timeout = WheelTimer.getDefault().newTimeout(t -> {
+			if (state.compareAndSet(RUNNING, EXPIRING)) {
+				thread.interrupt();
+				state.set(EXPIRED);
+			}
+		}, deadline);
+
+		Object result = null;
+		Exception error = null;
+		boolean expired = false;
+		try {
+			result = handler.handle(ctx);
+		} catch (Exception e) {
+			error = e;
+		} finally {
+			timeout.cancel();
+			if (!state.compareAndSet(RUNNING, DONE)) {
+				// wait for the interrupt to be delivered, then clear it
+				while (state.get() != EXPIRED) {
+					Thread.onSpinWait();
+				}
+				Thread.interrupted();
+				expired = true;
+			}
+		}
+
+		if (!expired || ctx.isCommitted()) {
+			if (error != null) {
+				throw error;
+			}
+			return result;
+		}
+		Log.warn("Deadline exceeded: {}: {} {}://{}{} {}ms", ctx.id(), ctx.method(), ctx.scheme(), ctx.host(), ctx.target(), deadline);
+		ctx.setResponseStatus(StatusCode.GATEWAY_TIMEOUT);
+		ctx.setResponseType(ContentType.TEXT);
+		return "ERROR: " + StatusCode.GATEWAY_TIMEOUT;
+	}
+
+	public Handler handler() {
+		return handler;
+	}
+}
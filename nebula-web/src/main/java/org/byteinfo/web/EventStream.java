@@ -0,0 +1,243 @@
+package org.byteinfo.web;
+
+import org.byteinfo.util.time.Timeout;
+import org.byteinfo.util.time.WheelTimer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Server-Sent Events of a text/event-stream response, created by {@link HttpContext#eventStream()}.
+ * <p>
+ * An event is flushed at once unless another flush happened within sse.flushWindow, in which case it is coalesced
+ * with the following events into a single chunk. Idle streams are kept alive by heartbeat comments, and the stream is
+ * closed as soon as the client disconnects. Events may be sent from any thread.
+ *
+ * @see <a href="https://html.spec.whatwg.org/multipage/server-sent-events.html">Server-sent events</a>
+ */
+public class EventStream implements Closeable {
+	public static final int FLUSH_WINDOW = AppConfig.get().getInt("sse.flushWindow");
+	public static final int HEARTBEAT_INTERVAL = AppConfig.get().getInt("sse.heartbeatInterval");
+	public static final int BUFFER_SIZE = AppConfig.get().getInt("sse.bufferSize");
+
+	private static final byte[] HEARTBEAT = ":\n\n".getBytes();
+
+	private final HttpContext ctx;
+	private final ResponseStream out;
+	private final CountDownLatch done = new CountDownLatch(1);
+
+	// pending events, guarded by lock
+	private final ReentrantLock lock = new ReentrantLock();
+	private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+	private Timeout flushTimeout;
+	private long lastFlush;
+	private boolean written; // since the last heartbeat
+
+	private volatile Timeout heartbeatTimeout;
+	private volatile boolean closed;
+
+	EventStream(HttpContext ctx, ResponseStream out) throws IOException {
+		this.ctx = ctx;
+		this.out = out;
+		this.lastFlush = System.nanoTime() - FLUSH_WINDOW * 1_000_000L;
+		ctx.onDisconnect(this::disconnect);
+		out.flush(); // send headers
+		if (HEARTBEAT_INTERVAL > 0) {
+			heartbeatTimeout = WheelTimer.getDefault().newTimeout(this::heartbeat, HEARTBEAT_INTERVAL);
+		}
+	}
+
+	/**
+	 * Gets the Last-Event-ID sent by a reconnecting client.
+	 *
+	 * @return last event id or null if absent
+	 */
+	public String lastEventId() {
+		return ctx.headers().get(HeaderName.LAST_EVENT_ID);
+	}
+
+	public boolean isOpen() {
+		return !closed;
+	}
+
+	public void send(String data) throws IOException {
+		send(null, null, data);
+	}
+
+	public void send(String event, String data) throws IOException {
+		send(null, event, data);
+	}
+
+	/**
+	 * Sends an event, multi-line data is split into multiple data fields.
+	 *
+	 * @param id event id or null if absent
+	 * @param event event type or null for "message"
+	 * @param data event data
+	 * @throws IOException if an io error occurs or the stream has been closed
+	 */
+	public void send(String id, String event, String data) throws IOException {
+		StringBuilder sb = new StringBuilder(data.length() + 32);
+		if (id != null) {
+			appendField(sb, "id", id);
+		}
+		if (event != null) {
+			appendField(sb, "event", event);
+		}
+		for (String line : data.split("\r\n|\r|\n", -1)) {
+			sb.append("data: ").append(line).append('\n');
+		}
+		sb.append('\n');
+		write(sb.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Sets the reconnection time of the client.
+	 *
+	 * @param millis reconnection time in milliseconds
+	 * @throws IOException if an io error occurs or the stream has been closed
+	 */
+	public void retry(long millis) throws IOException {
+		write(("retry: " + millis + "\n\n").getBytes());
+	}
+
+	/**
+	 * Blocks until the stream is closed or the client disconnects, so that the handler can keep the response open while
+	 * events are sent from other threads.
+	 *
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public void await() throws InterruptedException {
+		done.await();
+	}
+
+	/**
+	 * Flushes the pending events and closes the stream, the response is completed once the handler returns.
+	 *
+	 * @throws IOException if an io error occurs
+	 */
+	@Override
+	public void close() throws IOException {
+		lock.lock();
+		try {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			flushBuffer();
+		} finally {
+			lock.unlock();
+			release();
+		}
+	}
+
+	// closes the stream when the response is committed, a client that has gone is not an error
+	void complete() {
+		try {
+			close();
+		} catch (IOException e) {
+			out.closed = true;
+		}
+	}
+
+	private void write(byte[] event) throws IOException {
+		lock.lock();
+		try {
+			if (closed) {
+				throw new IOException("Event stream has already been closed.");
+			}
+			buffer.writeBytes(event);
+			written = true;
+			if (buffer.size() >= BUFFER_SIZE) {
+				flushBuffer();
+			} else if (flushTimeout == null) {
+				long elapsed = (System.nanoTime() - lastFlush) / 1_000_000;
+				if (elapsed >= FLUSH_WINDOW) {
+					flushBuffer();
+				} else {
+					flushTimeout = WheelTimer.getDefault().newTimeout(t -> scheduledFlush(), FLUSH_WINDOW - elapsed);
+				}
+			}
+		} catch (IOException e) {
+			disconnect();
+			throw e;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	// guarded by lock
+	private void flushBuffer() throws IOException {
+		if (flushTimeout != null) {
+			flushTimeout.cancel();
+			flushTimeout = null;
+		}
+		if (buffer.size() > 0) {
+			buffer.writeTo(out);
+			buffer.reset();
+			out.flush();
+		}
+		lastFlush = System.nanoTime();
+	}
+
+	private void scheduledFlush() {
+		lock.lock();
+		try {
+			if (!closed) {
+				flushBuffer();
+			}
+		} catch (IOException e) {
+			disconnect();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void heartbeat(Timeout timeout) {
+		lock.lock();
+		try {
+			if (closed) {
+				return;
+			}
+			if (!written) {
+				buffer.writeBytes(HEARTBEAT);
+				flushBuffer();
+			}
+			written = false;
+			heartbeatTimeout = WheelTimer.getDefault().newTimeout(this::heartbeat, HEARTBEAT_INTERVAL);
+		} catch (IOException e) {
+			disconnect();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	// may be invoked while another thread is blocked in writing, so it must not wait for the lock
+	private void disconnect() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		out.closed = true; // the client is gone, skip the last-chunk
+		release();
+	}
+
+	private void release() {
+		Timeout timeout = heartbeatTimeout;
+		if (timeout != null) {
+			timeout.cancel();
+		}
+		done.countDown();
+	}
+
+	private static void appendField(StringBuilder sb, String name, String value) {
+		if (value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+			throw new IllegalArgumentException(name + " must not contain line breaks: " + value);
+		}
+		sb.append(name).append(": ").append(value).append('\n');
+	}
+}
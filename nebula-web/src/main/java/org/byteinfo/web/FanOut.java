@@ -0,0 +1,226 @@
+package org.byteinfo.web;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Runs subtasks of a request in parallel on virtual threads, so that the latency of calling several backends is the
+ * max of the calls instead of their sum. The first failure cancels the siblings by interrupting them, and joining is
+ * bounded by the request deadline. Subtasks see the request context through {@link HttpContext#current()}, and should
+ * only read the request, never write the response.
+ * <pre>{@code
+ * try (FanOut fanOut = ctx.fanOut()) {
+ *     var user = fanOut.fork(() -> users.find(id));
+ *     var orders = fanOut.fork(() -> orders.list(id));
+ *     fanOut.join();
+ *     return new Page(user.get(), orders.get());
+ * }
+ * }</pre>
+ * Only the thread which created the fan-out may fork and join, and no subtask outlives {@link #close()}.
+ */
+public final class FanOut implements AutoCloseable {
+	private final HttpContext ctx;
+	private final Thread owner = Thread.currentThread();
+	private final Thread.Builder builder;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition done = lock.newCondition();
+	private final List<Thread> threads = new ArrayList<>();
+	private int running;
+	private Throwable failure;
+	private boolean cancelled;
+	private boolean closed;
+
+	FanOut(HttpContext ctx) {
+		this.ctx = ctx;
+		this.builder = Thread.ofVirtual().name(ctx.id() + "-fork-", 0);
+	}
+
+	/**
+	 * Starts the task in a new virtual thread bound to the request context.
+	 *
+	 * @param task subtask
+	 * @return the subtask whose result is available after {@link #join()}
+	 */
+	public <T> Subtask<T> fork(Callable<? extends T> task) {
+		ensureOwner();
+		if (closed) {
+			throw new IllegalStateException("FanOut is closed");
+		}
+		Subtask<T> subtask = new Subtask<>();
+		Thread thread = builder.unstarted(() -> {
+			HttpContext.CURRENT.set(ctx);
+			try {
+				subtask.complete(task.call());
+			} catch (Throwable e) {
+				subtask.fail(e);
+				fail(e);
+			} finally {
+				HttpContext.CURRENT.remove();
+				lock.lock();
+				try {
+					running--;
+					done.signalAll();
+				} finally {
+					lock.unlock();
+				}
+			}
+		});
+		lock.lock();
+		try {
+			if (cancelled) {
+				subtask.fail(new IllegalStateException("FanOut is cancelled"));
+				return subtask;
+			}
+			threads.add(thread);
+			running++;
+		} finally {
+			lock.unlock();
+		}
+		thread.start();
+		return subtask;
+	}
+
+	/**
+	 * Waits for all subtasks to complete, or for the first of them to fail.
+	 *
+	 * @throws Exception the failure of the first failed subtask
+	 * @throws InterruptedException if interrupted while waiting, e.g. by {@link DeadlineHandler}
+	 * @throws WebException with 504 if the request deadline is exceeded
+	 */
+	public FanOut join() throws Exception {
+		ensureOwner();
+		long deadline = ctx.deadline();
+		lock.lock();
+		try {
+			while (running > 0 && failure == null) {
+				if (deadline == 0) {
+					done.await();
+				} else {
+					long remaining = deadline - System.currentTimeMillis();
+					if (remaining <= 0) {
+						cancel();
+						throw new WebException(StatusCode.GATEWAY_TIMEOUT, "Deadline exceeded");
+					}
+					done.await(remaining, TimeUnit.MILLISECONDS);
+				}
+			}
+		} catch (InterruptedException e) {
+			cancel();
+			throw e;
+		} finally {
+			lock.unlock();
+		}
+		if (failure instanceof Exception e) {
+			throw e;
+		} else if (failure instanceof Error e) {
+			throw e;
+		}
+		return this;
+	}
+
+	/**
+	 * Cancels the subtasks still running, then waits for them to terminate.
+	 */
+	@Override
+	public void close() {
+		ensureOwner();
+		if (closed) {
+			return;
+		}
+		closed = true;
+		boolean interrupted = false;
+		lock.lock();
+		try {
+			cancel();
+			while (running > 0) {
+				try {
+					done.await();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void fail(Throwable e) {
+		lock.lock();
+		try {
+			if (failure == null && !cancelled) {
+				failure = e;
+				cancel();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	// interrupts the running subtasks, must hold the lock
+	private void cancel() {
+		if (!cancelled) {
+			cancelled = true;
+			Thread current = Thread.currentThread();
+			for (Thread thread : threads) {
+				if (thread != current) {
+					thread.interrupt();
+				}
+			}
+		}
+	}
+
+	private void ensureOwner() {
+		if (Thread.currentThread() != owner) {
+			throw new IllegalStateException("Not the owner thread of the FanOut");
+		}
+	}
+
+	/**
+	 * Forked subtask of a {@link FanOut}.
+	 */
+	public static final class Subtask<T> implements Supplier<T> {
+		private volatile boolean completed;
+		private volatile T result;
+		private volatile Throwable exception;
+
+		private Subtask() {
+		}
+
+		/**
+		 * Gets the result of the subtask completed successfully.
+		 *
+		 * @throws IllegalStateException if the subtask is running or failed
+		 */
+		@Override
+		public T get() {
+			if (!completed) {
+				throw new IllegalStateException(exception == null ? "Subtask not completed" : "Subtask failed", exception);
+			}
+			return result;
+		}
+
+		/**
+		 * Gets the exception of the failed subtask, or null.
+		 */
+		public Throwable exception() {
+			return exception;
+		}
+
+		private void complete(T value) {
+			result = value;
+			completed = true;
+		}
+
+		private void fail(Throwable e) {
+			exception = e;
+		}
+	}
+}
@@ -0,0 +1,32 @@
+package org.byteinfo.web;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event of a filter applied to a request.
+ */
+@Name("org.byteinfo.web.Filter")
+@Label("HTTP Filter")
+@Category({"Nebula", "Web"})
+@Description("Filter applied before or after the handler, or once the request completes")
+@StackTrace(false)
+class FilterEvent extends Event {
+	@Label("Context Id")
+	String id;
+
+	@Label("Filter")
+	Class<?> filter;
+
+	@Label("Stage")
+	@Description("before, after or complete")
+	String stage;
+
+	@Label("Committed")
+	@Description("Whether the response has been committed by the filter or before it")
+	boolean committed;
+}
@@ -8,14 +8,26 @@ public interface HeaderName {
 	String TRANSFER_ENCODING = "transfer-encoding";
 	String USER_AGENT = "user-agent";
 	String CONNECTION = "connection";
+	String EXPECT = "expect";
+	String UPGRADE = "upgrade";
+	String CACHE_CONTROL = "cache-control";
+	String VARY = "vary";
 	String LOCATION = "location";
+	String RETRY_AFTER = "retry-after";
+	String AUTHORIZATION = "authorization";
 	String COOKIE = "cookie";
 	String SET_COOKIE = "set-cookie";
 	String ETAG = "etag";
+	String LAST_MODIFIED = "last-modified";
 	String IF_NONE_MATCH = "if-none-match";
+	String IF_MODIFIED_SINCE = "if-modified-since";
+	String LAST_EVENT_ID = "last-event-id";
 	String REQUESTED_WITH = "x-requested-with";
 	String FORWARDED_FOR = "x-forwarded-for";
 	String FORWARDED_PROTO = "x-forwarded-proto";
 	String FORWARDED_HOST = "x-forwarded-host";
 	String FORWARDED_PORT = "x-forwarded-port";
+	String SEC_WEBSOCKET_KEY = "sec-websocket-key";
+	String SEC_WEBSOCKET_VERSION = "sec-websocket-version";
+	String SEC_WEBSOCKET_ACCEPT = "sec-websocket-accept";
 }
@@ -3,5 +3,8 @@ package org.byteinfo.web;
 public interface HeaderValue {
 	String CHUNKED = "chunked";
 	String CLOSE = "close";
+	String CONTINUE = "100-continue";
+	String UPGRADE = "upgrade";
+	String WEBSOCKET = "websocket";
 	String XML_HTTP_REQUEST = "XMLHttpRequest";
 }
\ No newline at end of file
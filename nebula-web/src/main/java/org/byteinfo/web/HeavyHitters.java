@@ -0,0 +1,225 @@
+package org.byteinfo.web;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Streaming heavy hitters of a key space in fixed memory: a count-min sketch estimates the count of every key, and a
+ * min-heap keeps the K keys with the highest estimates. Counts decay by half on each {@link #decay()}, so that the top
+ * keys follow the recent traffic.
+ * <p>
+ * An update costs a fixed number of counter increments, plus O(log K) heap work when the key is or enters the top K.
+ * The heap is updated only if its lock is free, a skipped update is made up by the next one of the same key.
+ */
+public class HeavyHitters {
+	private static final int DEPTH = 4;
+	private static final VarHandle COUNTS = MethodHandles.arrayElementVarHandle(long[].class);
+
+	private final int capacity;
+	private final int mask;
+	private final long[] sketch;
+
+	// min-heap of the top keys by estimate
+	private final ReentrantLock lock = new ReentrantLock();
+	private final String[] keys;
+	private final long[] counts;
+	private final Map<String, Integer> positions;
+	private int size;
+	private volatile long minCount;
+
+	/**
+	 * Creates a new HeavyHitters.
+	 *
+	 * @param capacity number of top keys kept
+	 * @param width counters per row of the sketch, rounded up to a power of two, the overestimate of a count is within
+	 * 2/width of the total count with probability 1 - 1/2^4
+	 */
+	public HeavyHitters(int capacity, int width) {
+		if (capacity <= 0 || width <= 0) {
+			throw new IllegalArgumentException("capacity: %d, width: %d (expected: > 0)".formatted(capacity, width));
+		}
+		width = Integer.highestOneBit(width * 2 - 1);
+		this.capacity = capacity;
+		this.mask = width - 1;
+		this.sketch = new long[DEPTH * width];
+		this.keys = new String[capacity];
+		this.counts = new long[capacity];
+		this.positions = HashMap.newHashMap(capacity);
+	}
+
+	/**
+	 * Counts an occurrence of the key.
+	 *
+	 * @param key the key, ignored if null
+	 */
+	public void add(String key) {
+		if (key == null) {
+			return;
+		}
+		long estimate = Long.MAX_VALUE;
+		int h1 = mix(key.hashCode());
+		int h2 = mix(h1) | 1;
+		for (int i = 0; i < DEPTH; i++) {
+			int index = i * (mask + 1) + ((h1 + i * h2) & mask);
+			estimate = Math.min(estimate, (long) COUNTS.getAndAdd(sketch, index, 1L) + 1);
+		}
+
+		// skip keys below the top K without locking
+		if (estimate <= minCount || !lock.tryLock()) {
+			return;
+		}
+		try {
+			Integer position = positions.get(key);
+			if (position != null) {
+				counts[position] = estimate;
+				siftDown(position);
+			} else if (size < capacity) {
+				keys[size] = key;
+				counts[size] = estimate;
+				positions.put(key, size);
+				siftUp(size++);
+			} else if (estimate > counts[0]) {
+				positions.remove(keys[0]);
+				keys[0] = key;
+				counts[0] = estimate;
+				positions.put(key, 0);
+				siftDown(0);
+			}
+			if (size == capacity) {
+				minCount = counts[0];
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Estimates the count of the key, never below the actual count.
+	 */
+	public long estimate(String key) {
+		long estimate = Long.MAX_VALUE;
+		int h1 = mix(key.hashCode());
+		int h2 = mix(h1) | 1;
+		for (int i = 0; i < DEPTH; i++) {
+			estimate = Math.min(estimate, (long) COUNTS.getVolatile(sketch, i * (mask + 1) + ((h1 + i * h2) & mask)));
+		}
+		return estimate;
+	}
+
+	/**
+	 * Gets the top keys with their current estimates, highest first.
+	 *
+	 * @param limit max number of keys returned
+	 */
+	public List<Hitter> top(int limit) {
+		if (limit < 0) {
+			throw new IllegalArgumentException("limit: " + limit + " (expected: >= 0)");
+		}
+		List<String> top = new ArrayList<>(capacity);
+		lock.lock();
+		try {
+			for (int i = 0; i < size; i++) {
+				top.add(keys[i]);
+			}
+		} finally {
+			lock.unlock();
+		}
+		List<Hitter> hitters = new ArrayList<>(top.size());
+		for (String key : top) {
+			hitters.add(new Hitter(key, estimate(key)));
+		}
+		hitters.sort(Comparator.comparingLong(Hitter::count).reversed());
+		return hitters.size() > limit ? hitters.subList(0, limit) : hitters;
+	}
+
+	/**
+	 * Halves all counts, concurrent updates are kept.
+	 */
+	public void decay() {
+		for (int i = 0; i < sketch.length; i++) {
+			long count = (long) COUNTS.getVolatile(sketch, i);
+			if (count != 0) {
+				COUNTS.getAndAdd(sketch, i, -(count - (count >> 1)));
+			}
+		}
+		lock.lock();
+		try {
+			for (int i = 0; i < size; i++) {
+				counts[i] >>= 1;
+			}
+			if (size == capacity) {
+				minCount = counts[0];
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public int capacity() {
+		return capacity;
+	}
+
+	private void siftUp(int i) {
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (counts[parent] <= counts[i]) {
+				break;
+			}
+			swap(i, parent);
+			i = parent;
+		}
+	}
+
+	private void siftDown(int i) {
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= size) {
+				break;
+			}
+			if (child + 1 < size && counts[child + 1] < counts[child]) {
+				child++;
+			}
+			if (counts[i] <= counts[child]) {
+				break;
+			}
+			swap(i, child);
+			i = child;
+		}
+	}
+
+	private void swap(int i, int j) {
+		String key = keys[i];
+		keys[i] = keys[j];
+		keys[j] = key;
+		long count = counts[i];
+		counts[i] = counts[j];
+		counts[j] = count;
+		positions.put(keys[i], i);
+		positions.put(keys[j], j);
+	}
+
+	// spreads the bits of the hash (murmur3 finalizer)
+	private static int mix(int h) {
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+
+	/**
+	 * A top key.
+	 *
+	 * @param key the key
+	 * @param count estimated decayed count
+	 */
+	public record Hitter(String key, long count) {
+	}
+}
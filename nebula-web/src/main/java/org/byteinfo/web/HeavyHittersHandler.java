@@ -0,0 +1,109 @@
+package org.byteinfo.web;
+
+import org.byteinfo.util.time.Timeout;
+import org.byteinfo.util.time.WheelTimer;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Tracks the heavy hitters among client addresses, paths and user agents of all requests, and serves them as text at
+ * hitters.path once hitters.enabled is set. Counts decay by half every window, so that the top keys reflect roughly
+ * the last few windows.
+ * <pre>
+ * GET /admin/hitters?dimension=address&amp;limit=10
+ * </pre>
+ */
+public class HeavyHittersHandler implements Handler, AutoCloseable {
+	public static final String ADDRESS = "address";
+	public static final String PATH = "path";
+	public static final String USER_AGENT = "userAgent";
+
+	private final Map<String, HeavyHitters> dimensions = new LinkedHashMap<>();
+	private final long window;
+	private volatile boolean closed;
+	private volatile Timeout decayTimeout;
+
+	/**
+	 * Creates a new HeavyHittersHandler.
+	 *
+	 * @param capacity number of top keys kept per dimension
+	 * @param width counters per row of each count-min sketch
+	 * @param window counts decay by half every window in milliseconds
+	 */
+	public HeavyHittersHandler(int capacity, int width, long window) {
+		for (String dimension : new String[] {ADDRESS, PATH, USER_AGENT}) {
+			dimensions.put(dimension, new HeavyHitters(capacity, width));
+		}
+		this.window = window;
+		decayTimeout = WheelTimer.getDefault().newTimeout(this::decay, window);
+	}
+
+	/**
+	 * Counts the request, at a constant cost.
+	 */
+	public void record(HttpContext ctx) {
+		dimensions.get(ADDRESS).add(ctx.address());
+		dimensions.get(PATH).add(ctx.path());
+		dimensions.get(USER_AGENT).add(ctx.userAgent());
+	}
+
+	/**
+	 * Gets the heavy hitters of a dimension.
+	 *
+	 * @param dimension address, path or userAgent
+	 * @return the heavy hitters, or null if the dimension is unknown
+	 */
+	public HeavyHitters hitters(String dimension) {
+		return dimensions.get(dimension);
+	}
+
+	@Override
+	public Object handle(HttpContext ctx) throws IOException {
+		String dimension = ctx.param("dimension");
+		int limit = ctx.param("limit") == null ? 20 : ctx.paramAsInt("limit");
+		if (dimension != null && !dimensions.containsKey(dimension)) {
+			throw new WebException(StatusCode.BAD_REQUEST, "Unknown dimension: " + dimension + " (expected: address, path or userAgent)");
+		}
+		if (limit < 0) {
+			throw new WebException(StatusCode.BAD_REQUEST, "Invalid limit: " + limit + " (expected: >= 0)");
+		}
+		StringBuilder sb = new StringBuilder();
+		for (Map.Entry<String, HeavyHitters> entry : dimensions.entrySet()) {
+			if (dimension != null && !dimension.equals(entry.getKey())) {
+				continue;
+			}
+			sb.append("# ").append(entry.getKey()).append(": estimated count, decayed by half every ").append(window).append("ms\n");
+			for (HeavyHitters.Hitter hitter : entry.getValue().top(limit)) {
+				sb.append(hitter.count()).append('\t').append(hitter.key()).append('\n');
+			}
+			sb.append('\n');
+		}
+		ctx.setResponseType(ContentType.TEXT);
+		ctx.responseHeaders().set(HeaderName.CACHE_CONTROL, "no-store");
+		return sb.toString();
+	}
+
+	public long window() {
+		return window;
+	}
+
+	/**
+	 * Stops decaying the counts.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		decayTimeout.cancel();
+	}
+
+	private void decay(Timeout timeout) {
+		for (HeavyHitters hitters : dimensions.values()) {
+			hitters.decay();
+		}
+		if (!closed) {
+			decayTimeout = WheelTimer.getDefault().newTimeout(this::decay, window);
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package org.byteinfo.web;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Latency histogram in microseconds with HdrHistogram-style log-linear buckets: each power of two is split into 8
+ * linear sub-buckets, so recorded values are resolved within 12.5%, from 1us up to about 71 minutes. Counts are kept in
+ * plain long arrays striped by thread, so that concurrent recorders rarely contend on the same cache lines, and are
+ * merged when read.
+ */
+public class Histogram {
+	private static final int SUB_BITS = 3;
+	private static final int SUB_COUNT = 1 << SUB_BITS;
+	private static final int MAX_BITS = 32;
+	private static final int BUCKETS = (MAX_BITS - SUB_BITS + 1) * SUB_COUNT;
+	private static final int STRIPES = Integer.highestOneBit(Math.min(Runtime.getRuntime().availableProcessors(), 8) * 2 - 1);
+	private static final VarHandle COUNTS = MethodHandles.arrayElementVarHandle(long[].class);
+
+	// per stripe: BUCKETS counts, then the sum of values, padded to keep stripes off each other's cache lines
+	private static final int SUM = BUCKETS;
+	private static final int STRIDE = BUCKETS + 1 + 8;
+
+	private final long[] counts = new long[STRIPES * STRIDE];
+
+	/**
+	 * Records a value.
+	 *
+	 * @param micros value in microseconds, clamped to the trackable range
+	 */
+	public void record(long micros) {
+		int offset = (int) (Thread.currentThread().threadId() & (STRIPES - 1)) * STRIDE;
+		COUNTS.getAndAdd(counts, offset + bucket(micros), 1L);
+		COUNTS.getAndAdd(counts, offset + SUM, Math.max(micros, 0));
+	}
+
+	public long count() {
+		long count = 0;
+		for (long c : snapshot()) {
+			count += c;
+		}
+		return count;
+	}
+
+	/**
+	 * Gets the sum of recorded values in microseconds.
+	 */
+	public long sum() {
+		long sum = 0;
+		for (int stripe = 0; stripe < STRIPES; stripe++) {
+			sum += (long) COUNTS.getVolatile(counts, stripe * STRIDE + SUM);
+		}
+		return sum;
+	}
+
+	/**
+	 * Gets the value at the quantile, as the upper bound of the bucket holding it.
+	 *
+	 * @param quantile quantile in [0, 1]
+	 * @return value in microseconds, 0 if nothing is recorded
+	 */
+	public long quantile(double quantile) {
+		return quantiles(quantile)[0];
+	}
+
+	/**
+	 * Gets the values at the quantiles from one snapshot.
+	 *
+	 * @param quantiles quantiles in [0, 1], ascending
+	 * @return values in microseconds
+	 */
+	public long[] quantiles(double... quantiles) {
+		long[] buckets = snapshot();
+		long total = 0;
+		for (long c : buckets) {
+			total += c;
+		}
+		long[] values = new long[quantiles.length];
+		if (total == 0) {
+			return values;
+		}
+		long seen = 0;
+		int q = 0;
+		for (int i = 0; i < BUCKETS && q < quantiles.length; i++) {
+			seen += buckets[i];
+			while (q < quantiles.length && seen >= Math.max(1, (long) Math.ceil(quantiles[q] * total))) {
+				values[q++] = upperBound(i);
+			}
+		}
+		return values;
+	}
+
+	private long[] snapshot() {
+		long[] buckets = new long[BUCKETS];
+		for (int stripe = 0; stripe < STRIPES; stripe++) {
+			int offset = stripe * STRIDE;
+			for (int i = 0; i < BUCKETS; i++) {
+				buckets[i] += (long) COUNTS.getVolatile(counts, offset + i);
+			}
+		}
+		return buckets;
+	}
+
+	// values below SUB_COUNT map linearly, then each power of two takes SUB_COUNT buckets
+	static int bucket(long value) {
+		if (value < SUB_COUNT) {
+			return (int) Math.max(value, 0);
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		if (exponent >= MAX_BITS) {
+			return BUCKETS - 1;
+		}
+		int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1);
+		return (exponent - SUB_BITS + 1) * SUB_COUNT + sub;
+	}
+
+	static long upperBound(int bucket) {
+		if (bucket < SUB_COUNT) {
+			return bucket;
+		}
+		int exponent = bucket / SUB_COUNT + SUB_BITS - 1;
+		int sub = bucket % SUB_COUNT;
+		return ((long) (SUB_COUNT + sub + 1) << (exponent - SUB_BITS)) - 1;
+	}
+}
@@ -0,0 +1,293 @@
+package org.byteinfo.web;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * HPACK: Header Compression for HTTP/2
+ *
+ * @see <a href="https://www.rfc-editor.org/rfc/rfc7541">RFC 7541: HPACK: Header Compression for HTTP/2</a>
+ */
+interface Hpack {
+	int DEFAULT_TABLE_SIZE = 4096;
+
+	// https://www.rfc-editor.org/rfc/rfc7541#appendix-A
+	Header[] STATIC_TABLE = {
+			null,
+			new Header(":authority", ""),
+			new Header(":method", "GET"),
+			new Header(":method", "POST"),
+			new Header(":path", "/"),
+			new Header(":path", "/index.html"),
+			new Header(":scheme", "http"),
+			new Header(":scheme", "https"),
+			new Header(":status", "200"),
+			new Header(":status", "204"),
+			new Header(":status", "206"),
+			new Header(":status", "304"),
+			new Header(":status", "400"),
+			new Header(":status", "404"),
+			new Header(":status", "500"),
+			new Header("accept-charset", ""),
+			new Header("accept-encoding", "gzip, deflate"),
+			new Header("accept-language", ""),
+			new Header("accept-ranges", ""),
+			new Header("accept", ""),
+			new Header("access-control-allow-origin", ""),
+			new Header("age", ""),
+			new Header("allow", ""),
+			new Header("authorization", ""),
+			new Header("cache-control", ""),
+			new Header("content-disposition", ""),
+			new Header("content-encoding", ""),
+			new Header("content-language", ""),
+			new Header("content-length", ""),
+			new Header("content-location", ""),
+			new Header("content-range", ""),
+			new Header("content-type", ""),
+			new Header("cookie", ""),
+			new Header("date", ""),
+			new Header("etag", ""),
+			new Header("expect", ""),
+			new Header("expires", ""),
+			new Header("from", ""),
+			new Header("host", ""),
+			new Header("if-match", ""),
+			new Header("if-modified-since", ""),
+			new Header("if-none-match", ""),
+			new Header("if-range", ""),
+			new Header("if-unmodified-since", ""),
+			new Header("last-modified", ""),
+			new Header("link", ""),
+			new Header("location", ""),
+			new Header("max-forwards", ""),
+			new Header("proxy-authenticate", ""),
+			new Header("proxy-authorization", ""),
+			new Header("range", ""),
+			new Header("referer", ""),
+			new Header("refresh", ""),
+			new Header("retry-after", ""),
+			new Header("server", ""),
+			new Header("set-cookie", ""),
+			new Header("strict-transport-security", ""),
+			new Header("transfer-encoding", ""),
+			new Header("user-agent", ""),
+			new Header("vary", ""),
+			new Header("via", ""),
+			new Header("www-authenticate", ""),
+	};
+
+	// https://www.rfc-editor.org/rfc/rfc7541#appendix-B, the code is canonical and generated from the code lengths
+	int EOS = 256;
+	byte[] HUFFMAN_LENGTHS = {
+			13, 23, 28, 28, 28, 28, 28, 28, 28, 24, 30, 28, 28, 30, 28, 28,
+			28, 28, 28, 28, 28, 28, 30, 28, 28, 28, 28, 28, 28, 28, 28, 28,
+			6, 10, 10, 12, 13, 6, 8, 11, 10, 10, 8, 11, 8, 6, 6, 6,
+			5, 5, 5, 6, 6, 6, 6, 6, 6, 6, 7, 8, 15, 6, 12, 10,
+			13, 6, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7,
+			7, 7, 7, 7, 7, 7, 7, 7, 8, 7, 8, 13, 19, 13, 14, 6,
+			15, 5, 6, 5, 6, 5, 6, 6, 6, 5, 7, 7, 6, 6, 6, 5,
+			6, 7, 6, 5, 5, 6, 7, 7, 7, 7, 7, 15, 11, 14, 13, 28,
+			20, 22, 20, 20, 22, 22, 22, 23, 22, 23, 23, 23, 23, 23, 24, 23,
+			24, 24, 22, 23, 24, 23, 23, 23, 23, 21, 22, 23, 22, 23, 23, 24,
+			22, 21, 20, 22, 22, 23, 23, 21, 23, 22, 22, 24, 21, 22, 23, 23,
+			21, 21, 22, 21, 23, 22, 23, 23, 20, 22, 22, 22, 23, 22, 22, 23,
+			26, 26, 20, 19, 22, 23, 22, 25, 26, 26, 26, 27, 27, 26, 24, 25,
+			19, 21, 26, 27, 27, 26, 27, 24, 21, 21, 26, 26, 28, 27, 27, 27,
+			20, 24, 20, 21, 22, 21, 21, 23, 22, 22, 25, 25, 24, 24, 26, 23,
+			26, 27, 26, 26, 27, 27, 27, 27, 27, 28, 27, 27, 27, 27, 27, 26,
+			30,
+	};
+	int[] HUFFMAN_CODES = huffmanCodes();
+
+	// binary trie of the code: children of node n are at 2n and 2n + 1, leaves hold ~symbol
+	int[] HUFFMAN_TRIE = huffmanTrie();
+
+	private static int[] huffmanCodes() {
+		int[] codes = new int[HUFFMAN_LENGTHS.length];
+		int code = 0;
+		int length = 0;
+		for (int bits = 1; bits <= 30; bits++) {
+			for (int symbol = 0; symbol < HUFFMAN_LENGTHS.length; symbol++) {
+				if (HUFFMAN_LENGTHS[symbol] == bits) {
+					code <<= bits - length;
+					length = bits;
+					codes[symbol] = code++;
+				}
+			}
+		}
+		return codes;
+	}
+
+	private static int[] huffmanTrie() {
+		int[] trie = new int[1024];
+		int nodes = 1;
+		for (int symbol = 0; symbol < HUFFMAN_LENGTHS.length; symbol++) {
+			int node = 0;
+			for (int bit = HUFFMAN_LENGTHS[symbol] - 1; bit >= 0; bit--) {
+				int child = node * 2 + (HUFFMAN_CODES[symbol] >>> bit & 1);
+				if (bit == 0) {
+					trie[child] = ~symbol;
+				} else {
+					if (trie[child] == 0) {
+						trie[child] = nodes++;
+					}
+					node = trie[child];
+				}
+			}
+		}
+		return trie;
+	}
+
+	static int huffmanLength(byte[] data) {
+		long bits = 0;
+		for (byte b : data) {
+			bits += HUFFMAN_LENGTHS[b & 0xFF];
+		}
+		return (int) ((bits + 7) >>> 3);
+	}
+
+	static void huffmanEncode(ByteArrayOutputStream out, byte[] data) {
+		long current = 0;
+		int bits = 0;
+		for (byte b : data) {
+			int symbol = b & 0xFF;
+			current = current << HUFFMAN_LENGTHS[symbol] | HUFFMAN_CODES[symbol];
+			bits += HUFFMAN_LENGTHS[symbol];
+			while (bits >= 8) {
+				bits -= 8;
+				out.write((int) (current >>> bits));
+			}
+		}
+		if (bits > 0) { // pad with the most significant bits of EOS
+			out.write((int) (current << (8 - bits) | 0xFF >>> bits));
+		}
+	}
+
+	static byte[] huffmanDecode(byte[] data, int offset, int length) throws Http2Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(length * 8 / 5);
+		int node = 0;
+		int depth = 0; // bits consumed by the current symbol
+		boolean ones = true; // whether the current bits are all 1s
+		for (int i = offset; i < offset + length; i++) {
+			for (int bit = 7; bit >= 0; bit--) {
+				int b = data[i] >>> bit & 1;
+				int child = HUFFMAN_TRIE[node * 2 + b];
+				depth++;
+				ones &= b == 1;
+				if (child < 0) {
+					if (~child == EOS) {
+						throw new Http2Exception(Http2Exception.COMPRESSION_ERROR, "EOS in huffman string");
+					}
+					out.write(~child);
+					node = 0;
+					depth = 0;
+					ones = true;
+				} else {
+					node = child;
+				}
+			}
+		}
+		// padding must be a prefix of EOS no longer than 7 bits
+		if (depth > 7 || !ones) {
+			throw new Http2Exception(Http2Exception.COMPRESSION_ERROR, "invalid huffman padding");
+		}
+		return out.toByteArray();
+	}
+
+	// https://www.rfc-editor.org/rfc/rfc7541#section-5.1
+	static void writeInt(ByteArrayOutputStream out, int flags, int prefix, int value) {
+		int max = (1 << prefix) - 1;
+		if (value < max) {
+			out.write(flags | value);
+			return;
+		}
+		out.write(flags | max);
+		value -= max;
+		while (value >= 0x80) {
+			out.write(value & 0x7F | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	// https://www.rfc-editor.org/rfc/rfc7541#section-5.2
+	static void writeString(ByteArrayOutputStream out, String value) {
+		byte[] data = value.getBytes();
+		int length = huffmanLength(data);
+		if (length < data.length) {
+			writeInt(out, 0x80, 7, length);
+			huffmanEncode(out, data);
+		} else {
+			writeInt(out, 0, 7, data.length);
+			out.writeBytes(data);
+		}
+	}
+
+	static int size(Header header) {
+		return header.name().getBytes().length + header.value().getBytes().length + 32;
+	}
+
+	/**
+	 * Dynamic table, entries are indexed from 1 with the newest first.
+	 *
+	 * @see <a href="https://www.rfc-editor.org/rfc/rfc7541#section-4">Dynamic Table Management</a>
+	 */
+	class DynamicTable {
+		private Header[] entries = new Header[16];
+		private int[] sizes = new int[16];
+		private int head; // slot of the newest entry
+		private int length;
+		private int size;
+		private int maxSize = DEFAULT_TABLE_SIZE;
+
+		int length() {
+			return length;
+		}
+
+		Header get(int index) {
+			return entries[(head + index - 1) & (entries.length - 1)];
+		}
+
+		void add(Header header) {
+			int entrySize = size(header);
+			evict(maxSize - entrySize);
+			if (entrySize > maxSize) {
+				return; // an entry larger than the table empties the table
+			}
+			if (length == entries.length) {
+				Header[] newEntries = new Header[entries.length * 2];
+				int[] newSizes = new int[entries.length * 2];
+				for (int i = 0; i < length; i++) {
+					newEntries[i] = get(i + 1);
+					newSizes[i] = sizes[(head + i) & (entries.length - 1)];
+				}
+				entries = newEntries;
+				sizes = newSizes;
+				head = 0;
+			}
+			head = (head - 1) & (entries.length - 1);
+			entries[head] = header;
+			sizes[head] = entrySize;
+			length++;
+			size += entrySize;
+		}
+
+		void setMaxSize(int maxSize) {
+			this.maxSize = maxSize;
+			evict(maxSize);
+		}
+
+		int maxSize() {
+			return maxSize;
+		}
+
+		private void evict(int limit) {
+			while (size > limit && length > 0) {
+				int oldest = (head + length - 1) & (entries.length - 1);
+				size -= sizes[oldest];
+				entries[oldest] = null;
+				length--;
+			}
+		}
+	}
+}
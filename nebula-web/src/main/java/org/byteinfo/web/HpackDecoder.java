@@ -0,0 +1,118 @@
+package org.byteinfo.web;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * HPACK decoder of header blocks, one per connection.
+ *
+ * @see <a href="https://www.rfc-editor.org/rfc/rfc7541#section-6">Binary Format</a>
+ */
+class HpackDecoder {
+	private final Hpack.DynamicTable table = new Hpack.DynamicTable();
+	private final int maxTableSize;
+	private final int maxListSize;
+	private byte[] data;
+	private int position;
+
+	/**
+	 * Creates a new HpackDecoder.
+	 *
+	 * @param maxTableSize SETTINGS_HEADER_TABLE_SIZE announced to the peer
+	 * @param maxListSize SETTINGS_MAX_HEADER_LIST_SIZE announced to the peer
+	 */
+	HpackDecoder(int maxTableSize, int maxListSize) {
+		this.maxTableSize = maxTableSize;
+		this.maxListSize = maxListSize;
+		table.setMaxSize(maxTableSize);
+	}
+
+	List<Header> decode(byte[] block) throws Http2Exception {
+		data = block;
+		position = 0;
+		List<Header> headers = new ArrayList<>();
+		long listSize = 0;
+		boolean first = true;
+		while (position < data.length) {
+			int b = data[position] & 0xFF;
+			Header header;
+			if ((b & 0x80) != 0) { // indexed field
+				header = get(readInt(7));
+			} else if ((b & 0x40) != 0) { // literal with incremental indexing
+				header = readLiteral(6);
+				table.add(header);
+			} else if ((b & 0x20) != 0) { // dynamic table size update
+				if (!first) {
+					throw new Http2Exception(Http2Exception.COMPRESSION_ERROR, "table size update after field");
+				}
+				int size = readInt(5);
+				if (size > maxTableSize) {
+					throw new Http2Exception(Http2Exception.COMPRESSION_ERROR, "table size: " + size);
+				}
+				table.setMaxSize(size);
+				continue;
+			} else { // literal without indexing or never indexed
+				header = readLiteral(4);
+			}
+
+			listSize += Hpack.size(header);
+			if (listSize > maxListSize) {
+				throw new Http2Exception(Http2Exception.ENHANCE_YOUR_CALM, "header list too large: " + listSize);
+			}
+			headers.add(header);
+			first = false;
+		}
+		data = null;
+		return headers;
+	}
+
+	private Header get(int index) throws Http2Exception {
+		if (index > 0 && index < Hpack.STATIC_TABLE.length) {
+			return Hpack.STATIC_TABLE[index];
+		}
+		index -= Hpack.STATIC_TABLE.length - 1;
+		if (index > 0 && index <= table.length()) {
+			return table.get(index);
+		}
+		throw new Http2Exception(Http2Exception.COMPRESSION_ERROR, "invalid index");
+	}
+
+	private Header readLiteral(int prefix) throws Http2Exception {
+		int index = readInt(prefix);
+		String name = index == 0 ? readString() : get(index).name();
+		return new Header(name, readString());
+	}
+
+	private int readInt(int prefix) throws Http2Exception {
+		int max = (1 << prefix) - 1;
+		int value = data[position++] & max;
+		if (value < max) {
+			return value;
+		}
+		int shift = 0;
+		int b;
+		do {
+			if (position == data.length || shift > 21) {
+				throw new Http2Exception(Http2Exception.COMPRESSION_ERROR, "invalid integer");
+			}
+			b = data[position++] & 0xFF;
+			value += (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return value;
+	}
+
+	private String readString() throws Http2Exception {
+		if (position == data.length) {
+			throw new Http2Exception(Http2Exception.COMPRESSION_ERROR, "invalid string");
+		}
+		boolean huffman = (data[position] & 0x80) != 0;
+		int length = readInt(7);
+		if (length > data.length - position) {
+			throw new Http2Exception(Http2Exception.COMPRESSION_ERROR, "invalid string length");
+		}
+		String value = huffman ? new String(Hpack.huffmanDecode(data, position, length)) : new String(data, position, length);
+		position += length;
+		return value;
+	}
+}
@@ -0,0 +1,95 @@
+package org.byteinfo.web;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * HPACK encoder of header blocks, one per connection. Blocks must be encoded and sent in the same order.
+ *
+ * @see <a href="https://www.rfc-editor.org/rfc/rfc7541#section-6">Binary Format</a>
+ */
+class HpackEncoder {
+	// values which rarely repeat are not worth a dynamic table entry
+	private static final Set<String> NOT_INDEXED = Set.of(HeaderName.CONTENT_LENGTH, HeaderName.ETAG, HeaderName.LAST_MODIFIED, HeaderName.LOCATION, HeaderName.CONTENT_DISPOSITION, "date");
+
+	// values which must not be compressed together with guessable data
+	private static final Set<String> NEVER_INDEXED = Set.of(HeaderName.SET_COOKIE, HeaderName.COOKIE, "authorization");
+
+	private final Hpack.DynamicTable table = new Hpack.DynamicTable();
+	private int pendingMaxSize = -1;
+
+	/**
+	 * Applies the SETTINGS_HEADER_TABLE_SIZE of the peer, the update is signaled at the start of the next block.
+	 *
+	 * @param size max table size of the peer
+	 */
+	void setMaxTableSize(int size) {
+		size = Math.min(size, Hpack.DEFAULT_TABLE_SIZE);
+		if (size != table.maxSize()) {
+			pendingMaxSize = pendingMaxSize == -1 ? size : Math.min(pendingMaxSize, size);
+			table.setMaxSize(size);
+		}
+	}
+
+	byte[] encode(List<Header> headers) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+		if (pendingMaxSize != -1) {
+			if (pendingMaxSize < table.maxSize()) { // shrank and then grew again
+				Hpack.writeInt(out, 0x20, 5, pendingMaxSize);
+			}
+			Hpack.writeInt(out, 0x20, 5, table.maxSize());
+			pendingMaxSize = -1;
+		}
+		for (Header header : headers) {
+			encode(out, header);
+		}
+		return out.toByteArray();
+	}
+
+	private void encode(ByteArrayOutputStream out, Header header) {
+		String name = header.name();
+		String value = header.value();
+		boolean neverIndexed = NEVER_INDEXED.contains(name);
+
+		// search for an exact match or a name match
+		int nameIndex = 0;
+		for (int i = 1; i < Hpack.STATIC_TABLE.length; i++) {
+			Header entry = Hpack.STATIC_TABLE[i];
+			if (entry.name().equals(name)) {
+				if (entry.value().equals(value) && !neverIndexed) {
+					Hpack.writeInt(out, 0x80, 7, i);
+					return;
+				}
+				if (nameIndex == 0) {
+					nameIndex = i;
+				}
+			}
+		}
+		for (int i = 1; i <= table.length(); i++) {
+			Header entry = table.get(i);
+			if (entry.name().equals(name)) {
+				if (entry.value().equals(value) && !neverIndexed) {
+					Hpack.writeInt(out, 0x80, 7, Hpack.STATIC_TABLE.length - 1 + i);
+					return;
+				}
+				if (nameIndex == 0) {
+					nameIndex = Hpack.STATIC_TABLE.length - 1 + i;
+				}
+			}
+		}
+
+		if (neverIndexed) {
+			Hpack.writeInt(out, 0x10, 4, nameIndex);
+		} else if (NOT_INDEXED.contains(name) || Hpack.size(header) > table.maxSize() / 2) {
+			Hpack.writeInt(out, 0, 4, nameIndex);
+		} else {
+			Hpack.writeInt(out, 0x40, 6, nameIndex);
+			table.add(header);
+		}
+		if (nameIndex == 0) {
+			Hpack.writeString(out, name);
+		}
+		Hpack.writeString(out, value);
+	}
+}
@@ -0,0 +1,793 @@
+package org.byteinfo.web;
+
+import org.byteinfo.logging.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * HTTP/2 cleartext connection: frames are read on the connection thread, and each stream is handled by the
+ * {@link Server} pipeline on its own virtual thread through an {@link Http2Context}.
+ *
+ * @see <a href="https://www.rfc-editor.org/rfc/rfc9113">RFC 9113: HTTP/2</a>
+ */
+class Http2Connection {
+	static final boolean ENABLED = AppConfig.get().getBoolean("http2.enabled");
+	static final int MAX_CONCURRENT_STREAMS = AppConfig.get().getInt("http2.maxConcurrentStreams");
+	static final int INITIAL_WINDOW_SIZE = AppConfig.get().getInt("http2.initialWindowSize");
+	static final int MAX_HEADER_LIST_SIZE = AppConfig.get().getInt("http2.maxHeaderListSize");
+
+	static final byte[] PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes();
+	static final int DEFAULT_WINDOW_SIZE = 65535;
+	static final int DEFAULT_FRAME_SIZE = 16384;
+	static final int MAX_WINDOW_SIZE = Integer.MAX_VALUE;
+
+	// https://www.rfc-editor.org/rfc/rfc9113#name-frame-definitions
+	static final int DATA = 0x0;
+	static final int HEADERS = 0x1;
+	static final int PRIORITY = 0x2;
+	static final int RST_STREAM = 0x3;
+	static final int SETTINGS = 0x4;
+	static final int PUSH_PROMISE = 0x5;
+	static final int PING = 0x6;
+	static final int GOAWAY = 0x7;
+	static final int WINDOW_UPDATE = 0x8;
+	static final int CONTINUATION = 0x9;
+
+	static final int FLAG_END_STREAM = 0x1;
+	static final int FLAG_ACK = 0x1;
+	static final int FLAG_END_HEADERS = 0x4;
+	static final int FLAG_PADDED = 0x8;
+	static final int FLAG_PRIORITY = 0x20;
+
+	// https://www.rfc-editor.org/rfc/rfc9113#name-defined-settings
+	static final int SETTINGS_HEADER_TABLE_SIZE = 0x1;
+	static final int SETTINGS_ENABLE_PUSH = 0x2;
+	static final int SETTINGS_MAX_CONCURRENT_STREAMS = 0x3;
+	static final int SETTINGS_INITIAL_WINDOW_SIZE = 0x4;
+	static final int SETTINGS_MAX_FRAME_SIZE = 0x5;
+	static final int SETTINGS_MAX_HEADER_LIST_SIZE = 0x6;
+
+	private final Server server;
+	private final Socket socket;
+	private final InputStream in;
+	private final OutputStream out;
+	private final long connectionId;
+	private final AtomicBoolean idle;
+	private final Map<Class<?>, Encoder> encoders;
+	private final Map<Integer, Http2Stream> streams = new ConcurrentHashMap<>();
+	private final HpackDecoder decoder = new HpackDecoder(Hpack.DEFAULT_TABLE_SIZE, MAX_HEADER_LIST_SIZE);
+	private final AtomicInteger receiveWindow = new AtomicInteger(INITIAL_WINDOW_SIZE);
+	private final AtomicInteger consumed = new AtomicInteger();
+
+	// streams recently reset by the server, frames still in flight on them are ignored, guarded by lock
+	private final Set<Integer> resetStreams = Collections.newSetFromMap(new LinkedHashMap<Integer, Boolean>() {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Integer, Boolean> eldest) {
+			return size() > MAX_CONCURRENT_STREAMS;
+		}
+	});
+
+	// frame writing and send windows
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition windowUpdated = lock.newCondition();
+	private final Condition streamsClosed = lock.newCondition();
+	private final HpackEncoder encoder = new HpackEncoder();
+	private long sendWindow = DEFAULT_WINDOW_SIZE;
+	private int initialSendWindow = DEFAULT_WINDOW_SIZE;
+	private int maxSendFrameSize = DEFAULT_FRAME_SIZE;
+	private int activeStreams;
+	private boolean goAwaySent;
+	private volatile boolean closed;
+
+	// reader state
+	private boolean reading = true;
+	private int lastStreamId;
+	private ByteArrayOutputStream headerBlock;
+	private int headerStreamId;
+	private int headerFlags;
+
+	Http2Connection(Server server, Socket socket, InputStream in, OutputStream out, long connectionId, AtomicBoolean idle, Map<Class<?>, Encoder> encoders) {
+		this.server = server;
+		this.socket = socket;
+		this.in = in;
+		this.out = out;
+		this.connectionId = connectionId;
+		this.idle = idle;
+		this.encoders = encoders;
+	}
+
+	/**
+	 * Decodes the HTTP2-Settings header of an "Upgrade: h2c" request.
+	 *
+	 * @param value header value
+	 * @return SETTINGS payload, or null if the header is absent or malformed, in which case the upgrade is ignored
+	 */
+	static byte[] decodeSettings(String value) {
+		if (value == null) {
+			return null;
+		}
+		try {
+			byte[] settings = Base64.getUrlDecoder().decode(value.trim());
+			if (settings.length % 6 == 0) {
+				return settings;
+			}
+		} catch (IllegalArgumentException e) {
+			// not base64url
+		}
+		Log.debug("Ignoring h2c upgrade, malformed HTTP2-Settings: {}", value);
+		return null;
+	}
+
+	/**
+	 * Serves the connection until it's closed.
+	 *
+	 * @param upgrade HTTP/1.1 request to be upgraded, or null if the connection started with the preface (prior knowledge)
+	 * @param settings decoded HTTP2-Settings of the upgrade request, or null with prior knowledge
+	 * @throws IOException if an io error occurs
+	 */
+	void serve(Request upgrade, byte[] settings) throws IOException {
+		try {
+			if (upgrade == null) {
+				// the request line of the preface has been parsed as an HTTP/1.1 request
+				byte[] rest = in.readNBytes(6);
+				if (!Arrays.equals(rest, 0, 6, PREFACE, 18, 24)) {
+					throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "invalid preface");
+				}
+				writeSettings();
+				idle.set(true);
+			} else {
+				applySettings(settings);
+				Headers headers = new Headers();
+				headers.set(HeaderName.CONNECTION, "Upgrade");
+				headers.set(HeaderName.UPGRADE, "h2c");
+				HttpCodec.sendInterim(out, StatusCode.SWITCHING_PROTOCOLS, headers);
+				writeSettings();
+				if (!Arrays.equals(in.readNBytes(PREFACE.length), PREFACE)) {
+					throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "invalid preface");
+				}
+
+				// the upgraded request is stream 1, half-closed (remote)
+				lastStreamId = 1;
+				Http2Stream stream = new Http2Stream(this, 1, initialSendWindow, INITIAL_WINDOW_SIZE);
+				stream.receive(null, 0, 0, true);
+				dispatch(stream, new Request(upgrade.method(), upgrade.target(), upgrade.path(), upgrade.query(), upgrade.headers(), 0, stream.body()));
+			}
+
+			while (reading) {
+				try {
+					readFrame();
+				} catch (Http2Exception e) {
+					if (e.streamId() == 0) {
+						throw e;
+					}
+					Log.debug("Connection {}: stream {} error: {}", connectionId, e.streamId(), e.getMessage());
+					Http2Stream stream = streams.get(e.streamId());
+					if (stream != null) {
+						resetStream(stream);
+					}
+					sendReset(e.streamId(), e.error());
+				}
+			}
+
+			// wait for the remaining streams after GOAWAY
+			lock.lock();
+			try {
+				while (activeStreams > 0 && !closed) {
+					streamsClosed.await();
+				}
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException();
+			} finally {
+				lock.unlock();
+			}
+		} catch (Http2Exception e) {
+			Log.debug("Connection {}: connection error: {}", connectionId, e.getMessage());
+			goAway(e.error());
+		} finally {
+			closed = true;
+			for (Http2Stream stream : streams.values()) {
+				resetStream(stream);
+			}
+		}
+	}
+
+	Socket socket() {
+		return socket;
+	}
+
+	/**
+	 * Sends GOAWAY(NO_ERROR) before the server closes the connection, skipped if a frame is being written.
+	 */
+	void shutdown() {
+		if (lock.tryLock()) {
+			try {
+				goAway(Http2Exception.NO_ERROR);
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Returns flow control credits for the consumed request body.
+	 *
+	 * @param stream stream of the request
+	 * @param length consumed length in bytes
+	 * @throws IOException if an io error occurs
+	 */
+	void consumed(Http2Stream stream, int length) throws IOException {
+		if (length == 0 || closed) {
+			return;
+		}
+		int total = consumed.addAndGet(length);
+		if (total >= INITIAL_WINDOW_SIZE / 2 && consumed.compareAndSet(total, 0)) {
+			receiveWindow.addAndGet(total);
+			writeFrame(WINDOW_UPDATE, 0, 0, toBytes(total), true);
+		}
+		if (stream != null && !stream.isRemoteClosed()) {
+			int pending = stream.consumed.addAndGet(length);
+			if (pending >= INITIAL_WINDOW_SIZE / 2 && stream.consumed.compareAndSet(pending, 0)) {
+				stream.receiveWindow.addAndGet(pending);
+				writeFrame(WINDOW_UPDATE, 0, stream.id, toBytes(pending), true);
+			}
+		}
+	}
+
+	void writeHeaders(Http2Stream stream, List<Header> headers, boolean end) throws IOException {
+		lock.lock();
+		try {
+			checkStream(stream);
+			byte[] block = encoder.encode(headers);
+			int offset = 0;
+			int type = HEADERS;
+			do {
+				int length = Math.min(block.length - offset, maxSendFrameSize);
+				int flags = offset + length == block.length ? FLAG_END_HEADERS : 0;
+				if (type == HEADERS && end) {
+					flags |= FLAG_END_STREAM;
+				}
+				writeFrameHeader(length, type, flags, stream.id);
+				out.write(block, offset, length);
+				offset += length;
+				type = CONTINUATION;
+			} while (offset < block.length);
+			out.flush();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	void writeData(Http2Stream stream, byte[] data, int offset, int length, boolean end) throws IOException {
+		do {
+			lock.lock();
+			try {
+				while (length > 0 && (sendWindow <= 0 || stream.sendWindow <= 0)) {
+					checkStream(stream);
+					windowUpdated.await();
+				}
+				checkStream(stream);
+				int n = (int) Math.min(Math.min(length, maxSendFrameSize), Math.min(sendWindow, stream.sendWindow));
+				boolean last = end && n == length;
+				writeFrameHeader(n, DATA, last ? FLAG_END_STREAM : 0, stream.id);
+				out.write(data, offset, n);
+				out.flush();
+				sendWindow -= n;
+				stream.sendWindow -= n;
+				offset += n;
+				length -= n;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+			} finally {
+				lock.unlock();
+			}
+		} while (length > 0);
+	}
+
+	private void checkStream(Http2Stream stream) throws IOException {
+		if (closed) {
+			throw new EOFException("connection closed");
+		}
+		if (stream.reset) {
+			throw new IOException("stream reset");
+		}
+	}
+
+	private void readFrame() throws IOException {
+		byte[] header = in.readNBytes(9);
+		if (header.length < 9) {
+			reading = false;
+			closed = true;
+			return;
+		}
+		int length = (header[0] & 0xFF) << 16 | (header[1] & 0xFF) << 8 | header[2] & 0xFF;
+		int type = header[3];
+		int flags = header[4] & 0xFF;
+		int streamId = ((header[5] & 0x7F) << 24 | (header[6] & 0xFF) << 16 | (header[7] & 0xFF) << 8 | header[8] & 0xFF);
+		if (length > DEFAULT_FRAME_SIZE) {
+			throw new Http2Exception(Http2Exception.FRAME_SIZE_ERROR, "frame size: " + length);
+		}
+		byte[] payload = in.readNBytes(length);
+		if (payload.length < length) {
+			throw new EOFException();
+		}
+		if (headerBlock != null && type != CONTINUATION) {
+			throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "CONTINUATION expected");
+		}
+
+		switch (type) {
+			case DATA -> onData(streamId, flags, payload);
+			case HEADERS -> {
+				if (streamId == 0) {
+					throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "HEADERS on stream 0");
+				}
+				int offset = 0;
+				int end = payload.length;
+				if ((flags & FLAG_PADDED) != 0) {
+					end -= padding(payload);
+					offset++;
+				}
+				if ((flags & FLAG_PRIORITY) != 0) {
+					offset += 5;
+				}
+				if (offset > end) {
+					throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "invalid padding");
+				}
+				checkHeaderBlock(0, end - offset);
+				headerBlock = new ByteArrayOutputStream(Math.max(end - offset, 256));
+				headerBlock.write(payload, offset, end - offset);
+				headerStreamId = streamId;
+				headerFlags = flags;
+				if ((flags & FLAG_END_HEADERS) != 0) {
+					onHeaders();
+				}
+			}
+			case CONTINUATION -> {
+				if (headerBlock == null || streamId != headerStreamId) {
+					throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "unexpected CONTINUATION");
+				}
+				checkHeaderBlock(headerBlock.size(), payload.length);
+				headerBlock.write(payload, 0, payload.length);
+				if ((flags & FLAG_END_HEADERS) != 0) {
+					onHeaders();
+				}
+			}
+			case PRIORITY -> {
+				if (streamId == 0) {
+					throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "PRIORITY on stream 0");
+				}
+				if (length != 5) {
+					throw new Http2Exception(Http2Exception.FRAME_SIZE_ERROR, streamId, "PRIORITY size: " + length);
+				}
+			}
+			case RST_STREAM -> {
+				if (streamId == 0 || streamId > lastStreamId) {
+					throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "RST_STREAM on idle stream");
+				}
+				if (length != 4) {
+					throw new Http2Exception(Http2Exception.FRAME_SIZE_ERROR, "RST_STREAM size: " + length);
+				}
+				Http2Stream stream = streams.get(streamId);
+				if (stream != null) {
+					resetStream(stream);
+				}
+			}
+			case SETTINGS -> {
+				if (streamId != 0) {
+					throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "SETTINGS on stream " + streamId);
+				}
+				if ((flags & FLAG_ACK) != 0) {
+					if (length != 0) {
+						throw new Http2Exception(Http2Exception.FRAME_SIZE_ERROR, "SETTINGS ACK size: " + length);
+					}
+				} else {
+					applySettings(payload);
+					writeFrame(SETTINGS, FLAG_ACK, 0, new byte[0], true);
+				}
+			}
+			case PUSH_PROMISE -> throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "PUSH_PROMISE from client");
+			case PING -> {
+				if (streamId != 0) {
+					throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "PING on stream " + streamId);
+				}
+				if (length != 8) {
+					throw new Http2Exception(Http2Exception.FRAME_SIZE_ERROR, "PING size: " + length);
+				}
+				if ((flags & FLAG_ACK) == 0) {
+					writeFrame(PING, FLAG_ACK, 0, payload, true);
+				}
+			}
+			case GOAWAY -> {
+				if (streamId != 0) {
+					throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "GOAWAY on stream " + streamId);
+				}
+				Log.debug("Connection {}: GOAWAY received.", connectionId);
+				reading = false;
+			}
+			case WINDOW_UPDATE -> {
+				if (length != 4) {
+					throw new Http2Exception(Http2Exception.FRAME_SIZE_ERROR, "WINDOW_UPDATE size: " + length);
+				}
+				int increment = toInt(payload, 0) & 0x7FFFFFFF;
+				if (increment == 0) {
+					throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, streamId, "WINDOW_UPDATE increment: 0");
+				}
+				lock.lock();
+				try {
+					if (streamId == 0) {
+						sendWindow += increment;
+						if (sendWindow > MAX_WINDOW_SIZE) {
+							throw new Http2Exception(Http2Exception.FLOW_CONTROL_ERROR, "connection window overflow");
+						}
+					} else {
+						Http2Stream stream = streams.get(streamId);
+						if (stream != null) {
+							stream.sendWindow += increment;
+							if (stream.sendWindow > MAX_WINDOW_SIZE) {
+								throw new Http2Exception(Http2Exception.FLOW_CONTROL_ERROR, streamId, "stream window overflow");
+							}
+						}
+					}
+					windowUpdated.signalAll();
+				} finally {
+					lock.unlock();
+				}
+			}
+			default -> {
+				// unknown frames are ignored
+			}
+		}
+	}
+
+	private void onData(int streamId, int flags, byte[] payload) throws IOException {
+		if (streamId == 0) {
+			throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "DATA on stream 0");
+		}
+		if (receiveWindow.addAndGet(-payload.length) < 0) {
+			throw new Http2Exception(Http2Exception.FLOW_CONTROL_ERROR, "connection window exceeded");
+		}
+		int offset = 0;
+		int end = payload.length;
+		if ((flags & FLAG_PADDED) != 0) {
+			end -= padding(payload);
+			offset++;
+			if (offset > end) {
+				throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "invalid padding");
+			}
+		}
+
+		Http2Stream stream = streams.get(streamId);
+		if (stream == null || stream.isRemoteClosed()) {
+			consumed(null, payload.length);
+			if (streamId > lastStreamId) {
+				throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "DATA on idle stream");
+			}
+			if (stream == null && isReset(streamId)) {
+				return; // sent before the peer received RST_STREAM
+			}
+			throw new Http2Exception(Http2Exception.STREAM_CLOSED, streamId, "DATA on closed stream");
+		}
+		stream.receive(payload, offset, end - offset, (flags & FLAG_END_STREAM) != 0);
+
+		// padding is consumed immediately
+		if (end - offset < payload.length) {
+			consumed(stream, payload.length - (end - offset));
+		}
+	}
+
+	// bounds the buffered header block, so that endless CONTINUATION frames can't exhaust memory
+	private void checkHeaderBlock(int size, int length) throws Http2Exception {
+		if (size + length > MAX_HEADER_LIST_SIZE) {
+			throw new Http2Exception(Http2Exception.ENHANCE_YOUR_CALM, "header block too large: " + (size + length));
+		}
+	}
+
+	private void onHeaders() throws IOException {
+		int streamId = headerStreamId;
+		boolean endStream = (headerFlags & FLAG_END_STREAM) != 0;
+		List<Header> fields = decoder.decode(headerBlock.toByteArray());
+		headerBlock = null;
+
+		// trailers
+		Http2Stream stream = streams.get(streamId);
+		if (stream != null) {
+			if (!endStream || stream.isRemoteClosed()) {
+				throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, streamId, "unexpected HEADERS");
+			}
+			stream.receive(null, 0, 0, true);
+			return;
+		}
+		if (streamId <= lastStreamId && isReset(streamId)) {
+			return; // trailers sent before the peer received RST_STREAM
+		}
+		if (streamId <= lastStreamId || streamId % 2 == 0) {
+			throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "invalid stream id: " + streamId);
+		}
+		lastStreamId = streamId;
+		if (server.isDraining()) {
+			goAway(Http2Exception.NO_ERROR);
+			throw new Http2Exception(Http2Exception.REFUSED_STREAM, streamId, "server draining");
+		}
+		if (streams.size() >= MAX_CONCURRENT_STREAMS) {
+			throw new Http2Exception(Http2Exception.REFUSED_STREAM, streamId, "too many streams");
+		}
+
+		// https://www.rfc-editor.org/rfc/rfc9113#name-http-control-data
+		String method = null;
+		String target = null;
+		String authority = null;
+		String cookie = null;
+		Headers headers = new Headers();
+		for (Header field : fields) {
+			String name = field.name();
+			switch (name) {
+				case ":method" -> method = field.value();
+				case ":path" -> target = field.value();
+				case ":authority" -> authority = field.value();
+				case ":scheme" -> {
+				}
+				case "cookie" -> cookie = cookie == null ? field.value() : cookie + "; " + field.value();
+				default -> {
+					if (name.startsWith(":") || !name.equals(name.toLowerCase())) {
+						throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, streamId, "invalid header: " + name);
+					}
+					headers.add(name, field.value());
+				}
+			}
+		}
+		if (method == null || target == null) {
+			throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, streamId, "missing pseudo-header");
+		}
+		if (cookie != null) {
+			headers.add(HeaderName.COOKIE, cookie);
+		}
+		if (authority != null && !headers.has(HeaderName.HOST)) {
+			headers.add(HeaderName.HOST, authority);
+		}
+		long length = endStream ? 0 : -1;
+		String contentLength = headers.get(HeaderName.CONTENT_LENGTH);
+		if (contentLength != null) {
+			try {
+				length = Long.parseLong(contentLength);
+			} catch (NumberFormatException e) {
+				length = -1;
+			}
+			if (length < 0) {
+				throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, streamId, "invalid content-length: " + contentLength);
+			}
+		}
+		String path = target;
+		String query = null;
+		int index = target.indexOf('?');
+		if (index != -1) {
+			path = target.substring(0, index);
+			query = target.substring(index + 1);
+		}
+
+		lock.lock();
+		try {
+			stream = new Http2Stream(this, streamId, initialSendWindow, INITIAL_WINDOW_SIZE);
+		} finally {
+			lock.unlock();
+		}
+		if (endStream) {
+			stream.receive(null, 0, 0, true);
+		}
+		dispatch(stream, new Request(method, target, path, query, headers, length, stream.body()));
+	}
+
+	private void dispatch(Http2Stream stream, Request request) throws IOException {
+		lock.lock();
+		try {
+			// closed by draining while idle
+			if (activeStreams == 0 && !idle.compareAndSet(true, false) && server.isDraining()) {
+				throw new Http2Exception(Http2Exception.REFUSED_STREAM, stream.id, "server draining");
+			}
+			activeStreams++;
+		} finally {
+			lock.unlock();
+		}
+		streams.put(stream.id, stream);
+		long receivedAt = System.nanoTime();
+		server.dispatch(() -> {
+			try {
+				Http2Context ctx = new Http2Context(connectionId + "#" + stream.id, socket, stream, encoders, request);
+				ctx.setReceivedAt(receivedAt);
+				server.handleRequest(ctx);
+				stream.finish();
+
+				// the response is complete, so the rest of the request body is refused instead of being received
+				if (!stream.isRemoteClosed() && !stream.reset) {
+					sendReset(stream.id, Http2Exception.NO_ERROR);
+				}
+			} catch (Exception e) {
+				Log.debug("Connection {}: stream {} terminated: {}", connectionId, stream.id, e.toString());
+				if (!closed && !stream.reset) {
+					try {
+						sendReset(stream.id, Http2Exception.INTERNAL_ERROR);
+					} catch (IOException ex) {
+						// ignore
+					}
+				}
+			} finally {
+				try {
+					consumed(null, stream.discard());
+				} catch (IOException e) {
+					// ignore
+				}
+				streams.remove(stream.id);
+				lock.lock();
+				try {
+					if (--activeStreams == 0) {
+						idle.set(true);
+						streamsClosed.signalAll();
+					}
+				} finally {
+					lock.unlock();
+				}
+			}
+		});
+	}
+
+	private void resetStream(Http2Stream stream) {
+		stream.reset();
+		lock.lock();
+		try {
+			windowUpdated.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void sendReset(int streamId, int error) throws IOException {
+		lock.lock();
+		try {
+			resetStreams.add(streamId);
+			writeFrame(RST_STREAM, 0, streamId, toBytes(error), true);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private boolean isReset(int streamId) {
+		lock.lock();
+		try {
+			return resetStreams.contains(streamId);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void applySettings(byte[] payload) throws Http2Exception {
+		if (payload.length % 6 != 0) {
+			throw new Http2Exception(Http2Exception.FRAME_SIZE_ERROR, "SETTINGS size: " + payload.length);
+		}
+		lock.lock();
+		try {
+			for (int i = 0; i < payload.length; i += 6) {
+				int id = (payload[i] & 0xFF) << 8 | payload[i + 1] & 0xFF;
+				int value = toInt(payload, i + 2);
+				switch (id) {
+					case SETTINGS_HEADER_TABLE_SIZE -> encoder.setMaxTableSize(value);
+					case SETTINGS_ENABLE_PUSH -> {
+						if (value != 0 && value != 1) {
+							throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "ENABLE_PUSH: " + value);
+						}
+					}
+					case SETTINGS_INITIAL_WINDOW_SIZE -> {
+						if (value < 0) {
+							throw new Http2Exception(Http2Exception.FLOW_CONTROL_ERROR, "INITIAL_WINDOW_SIZE: " + value);
+						}
+						int delta = value - initialSendWindow;
+						initialSendWindow = value;
+						for (Http2Stream stream : streams.values()) {
+							stream.sendWindow += delta;
+							if (stream.sendWindow > MAX_WINDOW_SIZE) {
+								throw new Http2Exception(Http2Exception.FLOW_CONTROL_ERROR, "stream window overflow");
+							}
+						}
+						windowUpdated.signalAll();
+					}
+					case SETTINGS_MAX_FRAME_SIZE -> {
+						if (value < DEFAULT_FRAME_SIZE || value > 0xFFFFFF) {
+							throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "MAX_FRAME_SIZE: " + value);
+						}
+						maxSendFrameSize = value;
+					}
+					default -> {
+						// other settings don't affect the server
+					}
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void writeSettings() throws IOException {
+		byte[] settings = new byte[18];
+		setting(settings, 0, SETTINGS_MAX_CONCURRENT_STREAMS, MAX_CONCURRENT_STREAMS);
+		setting(settings, 6, SETTINGS_INITIAL_WINDOW_SIZE, INITIAL_WINDOW_SIZE);
+		setting(settings, 12, SETTINGS_MAX_HEADER_LIST_SIZE, MAX_HEADER_LIST_SIZE);
+		writeFrame(SETTINGS, 0, 0, settings, false);
+		if (INITIAL_WINDOW_SIZE > DEFAULT_WINDOW_SIZE) {
+			writeFrame(WINDOW_UPDATE, 0, 0, toBytes(INITIAL_WINDOW_SIZE - DEFAULT_WINDOW_SIZE), false);
+		}
+		out.flush();
+	}
+
+	private void goAway(int error) {
+		lock.lock();
+		try {
+			if (goAwaySent) {
+				return;
+			}
+			goAwaySent = true;
+			byte[] payload = new byte[8];
+			System.arraycopy(toBytes(lastStreamId), 0, payload, 0, 4);
+			System.arraycopy(toBytes(error), 0, payload, 4, 4);
+			writeFrame(GOAWAY, 0, 0, payload, true);
+		} catch (IOException e) {
+			// ignore
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void writeFrame(int type, int flags, int streamId, byte[] payload, boolean flush) throws IOException {
+		lock.lock();
+		try {
+			writeFrameHeader(payload.length, type, flags, streamId);
+			out.write(payload);
+			if (flush) {
+				out.flush();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void writeFrameHeader(int length, int type, int flags, int streamId) throws IOException {
+		out.write(new byte[] {(byte) (length >>> 16), (byte) (length >>> 8), (byte) length, (byte) type, (byte) flags,
+				(byte) (streamId >>> 24), (byte) (streamId >>> 16), (byte) (streamId >>> 8), (byte) streamId});
+	}
+
+	private static int padding(byte[] payload) throws Http2Exception {
+		if (payload.length == 0) {
+			throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "invalid padding");
+		}
+		return payload[0] & 0xFF;
+	}
+
+	private static void setting(byte[] settings, int offset, int id, int value) {
+		settings[offset] = (byte) (id >>> 8);
+		settings[offset + 1] = (byte) id;
+		System.arraycopy(toBytes(value), 0, settings, offset + 2, 4);
+	}
+
+	private static int toInt(byte[] data, int offset) {
+		return (data[offset] & 0xFF) << 24 | (data[offset + 1] & 0xFF) << 16 | (data[offset + 2] & 0xFF) << 8 | data[offset + 3] & 0xFF;
+	}
+
+	private static byte[] toBytes(int value) {
+		return new byte[] {(byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value};
+	}
+}
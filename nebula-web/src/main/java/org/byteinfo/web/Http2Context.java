@@ -0,0 +1,70 @@
+package org.byteinfo.web;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * HttpContext of an HTTP/2 stream: the response is sent as HEADERS and DATA frames instead of an HTTP/1.1 message.
+ */
+class Http2Context extends HttpContext {
+	// https://www.rfc-editor.org/rfc/rfc9113#name-connection-specific-header-
+	private static final Set<String> CONNECTION_HEADERS = Set.of(HeaderName.CONNECTION, HeaderName.TRANSFER_ENCODING, "keep-alive", "proxy-connection", HeaderName.UPGRADE);
+
+	private final Http2Stream stream;
+
+	Http2Context(String id, Socket socket, Http2Stream stream, Map<Class<?>, Encoder> encoders, Request request) {
+		super(id, socket, stream.output(), encoders, request);
+		this.stream = stream;
+	}
+
+	@Override
+	void send(int status, Headers headers, Collection<Cookie> cookies, String type, long length, InputStream data) throws IOException {
+		List<Header> fields = new ArrayList<>(headers.size() + cookies.size() + 3);
+		fields.add(new Header(":status", String.valueOf(status)));
+		if (length != 0) {
+			fields.add(new Header(HeaderName.CONTENT_TYPE, type));
+		}
+		if (length >= 0) {
+			fields.add(new Header(HeaderName.CONTENT_LENGTH, String.valueOf(length)));
+		}
+		for (Header header : headers.values()) {
+			String name = header.name().toLowerCase();
+			if (!CONNECTION_HEADERS.contains(name) && !name.equals(HeaderName.CONTENT_TYPE) && !name.equals(HeaderName.CONTENT_LENGTH)) {
+				fields.add(new Header(name, header.value()));
+			}
+		}
+		for (Cookie cookie : cookies) {
+			fields.add(new Header(HeaderName.SET_COOKIE, cookie.toString()));
+		}
+
+		// the stream is ended by the body, or by the connection once the request is handled
+		stream.writeHeaders(fields, length == 0);
+		if (length != 0 && data != null) {
+			try (data; OutputStream out = stream.output()) {
+				data.transferTo(out);
+			}
+		}
+	}
+
+	@Override
+	public WebSocket upgrade(WebSocketHandler handler) {
+		throw new WebException(StatusCode.BAD_REQUEST, "WebSocket over HTTP/2 is not supported.");
+	}
+
+	@Override
+	void onDisconnect(Runnable callback) {
+		stream.onReset(callback);
+	}
+
+	@Override
+	ResponseStream newResponseStream() {
+		return new ResponseStream(stream.output(), this, false);
+	}
+}
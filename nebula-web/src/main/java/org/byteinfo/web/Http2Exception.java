@@ -0,0 +1,42 @@
+package org.byteinfo.web;
+
+import java.io.IOException;
+
+/**
+ * HTTP/2 error, a connection error if the stream id is 0, otherwise a stream error.
+ *
+ * @see <a href="https://www.rfc-editor.org/rfc/rfc9113#name-error-codes">Error Codes</a>
+ */
+class Http2Exception extends IOException {
+	static final int NO_ERROR = 0x0;
+	static final int PROTOCOL_ERROR = 0x1;
+	static final int INTERNAL_ERROR = 0x2;
+	static final int FLOW_CONTROL_ERROR = 0x3;
+	static final int STREAM_CLOSED = 0x5;
+	static final int FRAME_SIZE_ERROR = 0x6;
+	static final int REFUSED_STREAM = 0x7;
+	static final int CANCEL = 0x8;
+	static final int COMPRESSION_ERROR = 0x9;
+	static final int ENHANCE_YOUR_CALM = 0xb;
+
+	private final int error;
+	private final int streamId;
+
+	Http2Exception(int error, String message) {
+		this(error, 0, message);
+	}
+
+	Http2Exception(int error, int streamId, String message) {
+		super(message);
+		this.error = error;
+		this.streamId = streamId;
+	}
+
+	int error() {
+		return error;
+	}
+
+	int streamId() {
+		return streamId;
+	}
+}
@@ -0,0 +1,274 @@
+package org.byteinfo.web;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * HTTP/2 stream: request body received from the connection and response sent through DATA frames.
+ *
+ * @see <a href="https://www.rfc-editor.org/rfc/rfc9113#name-streams-and-multiplexing">Streams and Multiplexing</a>
+ */
+class Http2Stream {
+	final int id;
+	final AtomicInteger receiveWindow;
+	final AtomicInteger consumed = new AtomicInteger(); // consumed but not yet credited
+	long sendWindow; // guarded by connection lock
+	volatile boolean reset;
+	private volatile Runnable resetCallback;
+
+	private final Http2Connection connection;
+	private final Body body = new Body();
+	private final Output output = new Output();
+	private boolean ended; // END_STREAM sent
+
+	Http2Stream(Http2Connection connection, int id, int sendWindow, int receiveWindow) {
+		this.connection = connection;
+		this.id = id;
+		this.sendWindow = sendWindow;
+		this.receiveWindow = new AtomicInteger(receiveWindow);
+	}
+
+	InputStream body() {
+		return body;
+	}
+
+	OutputStream output() {
+		return output;
+	}
+
+	boolean isRemoteClosed() {
+		return body.end;
+	}
+
+	void receive(byte[] data, int offset, int length, boolean end) throws IOException {
+		if (receiveWindow.addAndGet(-length) < 0) {
+			throw new Http2Exception(Http2Exception.FLOW_CONTROL_ERROR, id, "stream window exceeded");
+		}
+		int discarded = body.add(length == 0 ? null : data, offset, length, end);
+		if (discarded > 0) {
+			connection.consumed(null, discarded);
+		}
+	}
+
+	/**
+	 * Discards the unread request body, including the data received from now on.
+	 *
+	 * @return length in bytes of the discarded data, to be credited to the connection
+	 */
+	int discard() {
+		return body.discard();
+	}
+
+	void reset() {
+		reset = true;
+		body.fail(new IOException("stream reset"));
+		Runnable callback = resetCallback;
+		if (callback != null) {
+			callback.run();
+		}
+	}
+
+	/**
+	 * Registers a callback invoked once the stream is reset by the peer or by the connection being closed.
+	 *
+	 * @param callback reset callback
+	 */
+	void onReset(Runnable callback) {
+		resetCallback = callback;
+		if (reset) {
+			callback.run();
+		}
+	}
+
+	void writeHeaders(List<Header> headers, boolean end) throws IOException {
+		connection.writeHeaders(this, headers, end);
+		ended = end;
+	}
+
+	/**
+	 * Ends the stream if the response hasn't been ended yet.
+	 *
+	 * @throws IOException if an io error occurs
+	 */
+	void finish() throws IOException {
+		output.close();
+	}
+
+	// request body, flow control credits are returned as the data is consumed
+	private class Body extends InputStream {
+		private final ReentrantLock lock = new ReentrantLock();
+		private final Condition available = lock.newCondition();
+		private final Queue<byte[]> chunks = new ArrayDeque<>();
+		private byte[] current;
+		private int position;
+		private volatile boolean end;
+		private IOException error;
+		private boolean discarded;
+
+		// returns the length of the data if it's discarded instead of being added
+		int add(byte[] data, int offset, int length, boolean end) {
+			lock.lock();
+			try {
+				this.end |= end;
+				if (discarded) {
+					return length;
+				}
+				if (data != null) {
+					chunks.add(offset == 0 && length == data.length ? data : Arrays.copyOfRange(data, offset, offset + length));
+				}
+				available.signalAll();
+				return 0;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		int discard() {
+			lock.lock();
+			try {
+				discarded = true;
+				int length = current == null ? 0 : current.length - position;
+				for (byte[] chunk : chunks) {
+					length += chunk.length;
+				}
+				current = null;
+				chunks.clear();
+				return length;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		void fail(IOException e) {
+			lock.lock();
+			try {
+				if (!end) {
+					error = e;
+				}
+				available.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			int n;
+			lock.lock();
+			try {
+				while (current == null) {
+					current = chunks.poll();
+					position = 0;
+					if (current != null) {
+						break;
+					}
+					if (error != null) {
+						throw error;
+					}
+					if (end) {
+						return -1;
+					}
+					try {
+						available.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new InterruptedIOException();
+					}
+				}
+				n = Math.min(len, current.length - position);
+				System.arraycopy(current, position, b, off, n);
+				position += n;
+				if (position == current.length) {
+					current = null;
+				}
+			} finally {
+				lock.unlock();
+			}
+			connection.consumed(Http2Stream.this, n);
+			return n;
+		}
+
+		@Override
+		public int available() {
+			lock.lock();
+			try {
+				return current == null ? 0 : current.length - position;
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	// response body, buffered into DATA frames of the default frame size
+	private class Output extends OutputStream {
+		private final byte[] buffer = new byte[Http2Connection.DEFAULT_FRAME_SIZE];
+		private int count;
+
+		@Override
+		public void write(int b) throws IOException {
+			if (count == buffer.length) {
+				flushBuffer();
+			}
+			buffer[count++] = (byte) b;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			if (len >= buffer.length) {
+				flushBuffer();
+				connection.writeData(Http2Stream.this, b, off, len, false);
+				return;
+			}
+			if (len > buffer.length - count) {
+				flushBuffer();
+			}
+			System.arraycopy(b, off, buffer, count, len);
+			count += len;
+		}
+
+		@Override
+		public void flush() throws IOException {
+			if (!ended) {
+				flushBuffer();
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (ended) {
+				return;
+			}
+			ended = true;
+			connection.writeData(Http2Stream.this, buffer, 0, count, true);
+			count = 0;
+		}
+
+		private void flushBuffer() throws IOException {
+			if (ended) {
+				throw new IOException("stream ended");
+			}
+			if (count > 0) {
+				connection.writeData(Http2Stream.this, buffer, 0, count, false);
+				count = 0;
+			}
+		}
+	}
+}
@@ -10,12 +10,17 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
 /**
@@ -27,6 +32,7 @@ import java.util.Map;
  * @see <a href="https://html.spec.whatwg.org/multipage/">HTML Standard</a>
  */
 public interface HttpCodec {
+	DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US).withZone(ZoneOffset.UTC);
 
 	/* ---------------- HTTP Decoder -------------- */
 
@@ -83,6 +89,87 @@ public interface HttpCodec {
 		return new RequestLine(method, target, path, query);
 	}
 
+	/**
+	 * Reads the status line of a response.
+	 *
+	 * @param in input stream of the response
+	 * @return status line
+	 * @throws IOException if an io error occurs or the status line can't be parsed
+	 * @throws EOFException if the connection is closed
+	 * @see <a href="https://www.rfc-editor.org/rfc/rfc9112#name-status-line">Status Line</a>
+	 */
+	static StatusLine readStatusLine(InputStream in) throws IOException {
+		String line = readLine(in, true);
+		String[] parts = line.split(" ", 3);
+		if (parts.length < 2 || !parts[0].startsWith("HTTP/") || parts[1].length() != 3) {
+			throw new IOException("invalid status line: " + line);
+		}
+		try {
+			return new StatusLine(parts[0], Integer.parseInt(parts[1]), parts.length == 3 ? parts[2] : "");
+		} catch (NumberFormatException e) {
+			throw new IOException("invalid status line: " + line);
+		}
+	}
+
+	/**
+	 * Gets the body of a response, which is delimited by closing the connection if neither chunked nor of known length.
+	 *
+	 * @param method request method
+	 * @param status response status
+	 * @param headers response headers
+	 * @param in input stream of the response
+	 * @return response body
+	 * @see <a href="https://www.rfc-editor.org/rfc/rfc9112#name-message-body-length">Message Body Length</a>
+	 */
+	static InputStream responseBody(String method, int status, Headers headers, InputStream in) throws IOException {
+		if (HttpMethod.HEAD.equals(method) || status < 200 || status == 204 || status == 304) {
+			return InputStream.nullInputStream();
+		}
+		if (HeaderValue.CHUNKED.equals(headers.get(HeaderName.TRANSFER_ENCODING))) {
+			return new ChunkedInputStream(in);
+		}
+		long length = contentLength(headers);
+		if (length != -1) {
+			return new LimitedInputStream(in, length);
+		}
+		return in;
+	}
+
+	/**
+	 * Gets the Content-Length of a response.
+	 *
+	 * @param headers response headers
+	 * @return content length, or -1 if absent
+	 * @throws IOException if the content length is invalid
+	 */
+	static long contentLength(Headers headers) throws IOException {
+		String header = headers.get(HeaderName.CONTENT_LENGTH);
+		if (header == null) {
+			return -1;
+		}
+		try {
+			long length = Long.parseLong(header);
+			if (length >= 0) {
+				return length;
+			}
+		} catch (NumberFormatException e) {
+			// invalid
+		}
+		throw new IOException("invalid content length: " + header);
+	}
+
+	/**
+	 * Tells whether the request method is idempotent, so that a request which may have been lost can be retried.
+	 *
+	 * @see <a href="https://www.rfc-editor.org/rfc/rfc9110#name-idempotent-methods">Idempotent Methods</a>
+	 */
+	static boolean isIdempotent(String method) {
+		return switch (method) {
+			case HttpMethod.GET, HttpMethod.HEAD, HttpMethod.OPTIONS, HttpMethod.TRACE, HttpMethod.PUT, HttpMethod.DELETE -> true;
+			default -> false;
+		};
+	}
+
 	/**
 	 * Reads the request headers.
 	 *
@@ -106,6 +193,41 @@ public interface HttpCodec {
 		return headers;
 	}
 
+	/**
+	 * Parses urlencoded params while reading them from the stream, one name-value pair at a time.
+	 */
+	static void parseUrlencoded(InputStream in, Map<String, List<String>> params) throws IOException {
+		ByteArrayOutputStream part = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int n;
+		while ((n = in.read(buffer)) != -1) {
+			int start = 0;
+			for (int i = 0; i < n; i++) {
+				if (buffer[i] == '&') {
+					part.write(buffer, start, i - start);
+					parseParam(part.toString(StandardCharsets.UTF_8), params);
+					part.reset();
+					start = i + 1;
+				}
+			}
+			part.write(buffer, start, n - start);
+		}
+		parseParam(part.toString(StandardCharsets.UTF_8), params);
+	}
+
+	private static void parseParam(String part, Map<String, List<String>> params) {
+		if (part.isEmpty()) {
+			return;
+		}
+		try {
+			String[] pair = part.split("=", 2);
+			List<String> values = params.computeIfAbsent(URLDecoder.decode(pair[0], StandardCharsets.UTF_8), k -> new ArrayList<>());
+			values.add(pair.length == 1 ? "" : URLDecoder.decode(pair[1], StandardCharsets.UTF_8));
+		} catch (Exception e) {
+			throw new WebException(StatusCode.BAD_REQUEST, "invalid param: " + part, e);
+		}
+	}
+
 	/**
 	 * Parse the header parameters.
 	 *
@@ -154,40 +276,27 @@ public interface HttpCodec {
 	 * Parses all request params from query string, urlencoded form and multipart form.
 	 *
 	 * @param request the HTTP request
+	 * @param form the urlencoded form body, read only if is urlencoded request
 	 * @param uploads parsed uploads if is multipart request
 	 * @return a map of param name and corresponding param value list
 	 * @throws IOException if an io error occurs
 	 * @throws WebException if the request can't be parsed
 	 * @see <a href="https://html.spec.whatwg.org/multipage/form-control-infrastructure.html#form-submission-2">Form submission</a>
 	 */
-	static Map<String, List<String>> parseParams(Request request, Map<String, List<Upload>> uploads) throws IOException {
+	static Map<String, List<String>> parseParams(Request request, InputStream form, Map<String, List<Upload>> uploads) throws IOException {
 		Map<String, String> headerParams = parseHeaderParams(request.headers().get(HeaderName.CONTENT_TYPE));
-		List<String> urlencodedList = new ArrayList<>();
-		urlencodedList.add(request.query());
-		if (headerParams.containsKey(ContentType.FORM)) {
-			urlencodedList.add(new String(request.body().readAllBytes()));
-		}
 
 		// parse query string and urlencoded form
 		Map<String, List<String>> params = new HashMap<>();
-		for (String urlencoded : urlencodedList) {
-			if (urlencoded == null || urlencoded.isEmpty()) {
-				continue;
-			}
-			for (String part : urlencoded.split("&")) {
-				try {
-					String[] pair = part.split("=", 2);
-					List<String> values = params.computeIfAbsent(URLDecoder.decode(pair[0], StandardCharsets.UTF_8), k -> new ArrayList<>());
-					if (pair.length == 1) {
-						values.add("");
-					} else if (pair.length == 2) {
-						values.add(URLDecoder.decode(pair[1], StandardCharsets.UTF_8));
-					}
-				} catch (Exception e) {
-					throw new WebException(StatusCode.BAD_REQUEST, "invalid param: " + part, e);
-				}
+		String query = request.query();
+		if (query != null && !query.isEmpty()) {
+			for (String part : query.split("&")) {
+				parseParam(part, params);
 			}
 		}
+		if (headerParams.containsKey(ContentType.FORM)) {
+			parseUrlencoded(form, params);
+		}
 
 		// parse multipart form
 		if (headerParams.containsKey(ContentType.MULTIPART)) {
@@ -235,6 +344,24 @@ public interface HttpCodec {
 		return body.length;
 	}
 
+	/**
+	 * Parses the HTTP date.
+	 *
+	 * @param value header value
+	 * @return time in millis or -1 if the date can't be parsed
+	 * @see <a href="https://www.rfc-editor.org/rfc/rfc9110#name-date-time-formats">Date/Time Formats</a>
+	 */
+	static long parseDate(String value) {
+		if (value == null) {
+			return -1;
+		}
+		try {
+			return ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+		} catch (Exception e) {
+			return -1;
+		}
+	}
+
 	/**
 	 * Reads a line of ASCII characters terminated by "\r\n".
 	 *
@@ -265,6 +392,67 @@ public interface HttpCodec {
 
 	/* ---------------- HTTP Encoder -------------- */
 
+	/**
+	 * Formats the time as HTTP date.
+	 *
+	 * @param millis time in millis
+	 * @return IMF-fixdate
+	 * @see <a href="https://www.rfc-editor.org/rfc/rfc9110#name-date-time-formats">Date/Time Formats</a>
+	 */
+	static String formatDate(long millis) {
+		return DATE_FORMATTER.format(Instant.ofEpochMilli(millis));
+	}
+
+	/**
+	 * Sends an HTTP request, the body is chunked if its length is unknown.
+	 *
+	 * @param out request output stream
+	 * @param method request method
+	 * @param target request target
+	 * @param headers request headers
+	 * @param length request content length, or -1 if unknown
+	 * @param body request body or null if none
+	 * @throws IOException if an io error occurs
+	 * @see <a href="https://www.rfc-editor.org/rfc/rfc9112#name-message-format">Message Format</a>
+	 */
+	static void sendRequest(OutputStream out, String method, String target, Headers headers, long length, InputStream body) throws IOException {
+		if (body != null && length < 0) {
+			headers.set(HeaderName.TRANSFER_ENCODING, HeaderValue.CHUNKED);
+		} else if (body != null || length > 0) {
+			headers.set(HeaderName.CONTENT_LENGTH, String.valueOf(Math.max(length, 0)));
+		}
+
+		String message = method + " " + target + " HTTP/1.1\r\n" + headers + "\r\n";
+		out.write(message.getBytes());
+
+		if (body != null && length != 0) {
+			if (length > 0) {
+				body.transferTo(out);
+			} else {
+				try (var chunked = new ChunkedOutputStream(out)) {
+					body.transferTo(chunked);
+				}
+			}
+		}
+
+		out.flush();
+	}
+
+	/**
+	 * Sends an interim (1xx) response, which has neither content nor framing headers.
+	 *
+	 * @param out response output stream
+	 * @param status response status
+	 * @param headers response headers
+	 * @throws IOException if an io error occurs
+	 * @see <a href="https://www.rfc-editor.org/rfc/rfc9110#name-informational-1xx">Informational 1xx</a>
+	 */
+	static void sendInterim(OutputStream out, int status, Headers headers) throws IOException {
+		String message = "HTTP/1.1 " + status + "\r\n" + headers + "\r\n";
+		out.write(message.getBytes());
+		out.flush();
+	}
+
 	/**
 	 * Sends a minimal HTTP response.
 	 *
@@ -1,20 +1,26 @@
 package org.byteinfo.web;
 
+import org.byteinfo.util.codec.XXHash;
 import org.byteinfo.util.function.Unchecked;
 import org.byteinfo.util.reflect.Reflect;
 import org.byteinfo.util.text.RandomUtil;
 import org.byteinfo.util.text.StringUtil;
 import org.byteinfo.util.time.WheelTimer;
 
+import javax.net.ssl.SSLSocket;
 import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.SequenceInputStream;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.net.Socket;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -29,6 +35,11 @@ public class HttpContext {
 	public static final int SESSION_ID_LENGTH = AppConfig.get().getInt("session.length");
 	public static final String SESSION_COOKIE_NAME = AppConfig.get().get("session.name");
 	public static final String CONTEXT_PATH = AppConfig.get().get("http.contextPath");
+	public static final boolean ETAG_AUTO = AppConfig.get().getBoolean("etag.auto");
+	public static final int ETAG_MAX_SIZE = AppConfig.get().getInt("etag.maxSize");
+	public static final long MAX_BODY_SIZE = AppConfig.get().getLong("http.maxBodySize");
+
+	static final ThreadLocal<HttpContext> CURRENT = new ThreadLocal<>();
 
 	private final String id;
 	private final Socket socket;
@@ -43,6 +54,8 @@ public class HttpContext {
 	private Map<String, List<String>> params;
 	private Map<String, List<Upload>> uploads;
 	private Session session;
+	private long bodyLimit = MAX_BODY_SIZE;
+	private long deadline;
 
 	// response
 	private int responseStatus = StatusCode.OK;
@@ -53,6 +66,16 @@ public class HttpContext {
 	private ResponseStream responseStream;
 	private boolean headersSent;
 	private boolean committed;
+	private WebSocket webSocket;
+	private EventStream eventStream;
+
+	// measurement for metrics, access log and JFR
+	private boolean measured;
+	private long parseTime;
+	private long receivedAt = System.nanoTime();
+	private Runnable permit;
+	private long encodedAt;
+	private long bytesSent;
 
 	public HttpContext(String id, Socket socket, OutputStream out, Map<Class<?>, Encoder> encoders, Request request) {
 		this.id = id;
@@ -63,6 +86,15 @@ public class HttpContext {
 		this.path = request.path().substring(CONTEXT_PATH.length());
 	}
 
+	/**
+	 * Gets the context of the request handled by the current thread, or by the {@link FanOut} it was forked from.
+	 *
+	 * @return the current context, or null outside a request
+	 */
+	public static HttpContext current() {
+		return CURRENT.get();
+	}
+
 
 	/* ---------------- Request -------------- */
 
@@ -112,7 +144,7 @@ public class HttpContext {
 	public Map<String, List<String>> params() throws IOException {
 		if (params == null) {
 			uploads = new HashMap<>();
-			params = HttpCodec.parseParams(request, uploads);
+			params = HttpCodec.parseParams(request, new BoundedInputStream(this, request.body(), bodyLimit), uploads);
 		}
 		return params;
 	}
@@ -256,6 +288,39 @@ public class HttpContext {
 		return request.body();
 	}
 
+	/**
+	 * Binds the JSON or urlencoded request body to the target type while reading it from the connection. A body larger
+	 * than the body limit is rejected before it is read if its length is declared, or as soon as it crosses the limit.
+	 *
+	 * @param clazz target type: record, class with fields, collection, map or array for JSON
+	 * @return the bound value
+	 * @throws IOException if an io error occurs
+	 * @throws WebException 400 if malformed, 413 if too large, 415 if neither JSON nor urlencoded
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T bind(Class<T> clazz) throws IOException {
+		String type = headers().get(HeaderName.CONTENT_TYPE);
+		String mediaType = type == null ? "" : type.split(";", 2)[0].trim().toLowerCase();
+		if (mediaType.equals(ContentType.JSON) || mediaType.endsWith("+json")) {
+			return (T) JsonReader.read(new BoundedInputStream(this, request.body(), bodyLimit), clazz);
+		} else if (mediaType.equals(ContentType.FORM)) {
+			params(); // fails with 413 rather than 400 if too large
+			return param(clazz);
+		}
+		throw new WebException(StatusCode.UNSUPPORTED_MEDIA_TYPE, "Unsupported content type: " + type);
+	}
+
+	public long bodyLimit() {
+		return bodyLimit;
+	}
+
+	/**
+	 * Sets the max size in bytes of the body read by {@link #bind(Class)} and of the urlencoded form.
+	 */
+	public void setBodyLimit(long bodyLimit) {
+		this.bodyLimit = bodyLimit;
+	}
+
 	public long length() {
 		return request.length();
 	}
@@ -325,7 +390,7 @@ public class HttpContext {
 	public String scheme() {
 		String scheme = headers().get(HeaderName.FORWARDED_PROTO);
 		if (scheme == null) {
-			scheme = "http";
+			scheme = socket instanceof SSLSocket ? "https" : "http";
 		}
 		return scheme;
 	}
@@ -354,10 +419,66 @@ public class HttpContext {
 		return Integer.parseInt(port);
 	}
 
+	/**
+	 * Gets the deadline of the request set by {@link DeadlineHandler}, in epoch milliseconds, or 0 if none.
+	 */
+	public long deadline() {
+		return deadline;
+	}
+
+	/**
+	 * Creates a fan-out running subtasks of this request in parallel, bounded by the request deadline.
+	 */
+	public FanOut fanOut() {
+		return new FanOut(this);
+	}
+
 	void setSecurityAttribute(String attribute) {
 		securityAttribute = attribute;
 	}
 
+	void setDeadline(long deadline) {
+		if (this.deadline == 0 || deadline < this.deadline) {
+			this.deadline = deadline;
+		}
+	}
+
+	// nanoseconds spent reading and parsing the request head, 0 if not measured
+	long parseTime() {
+		return parseTime;
+	}
+
+	void setParseTime(long parseTime) {
+		this.parseTime = parseTime;
+	}
+
+	// nanoTime when the request started to be received
+	long receivedAt() {
+		return receivedAt;
+	}
+
+	void setReceivedAt(long receivedAt) {
+		this.receivedAt = receivedAt;
+	}
+
+	// the admission permit, released once the request completes or its response switches to streaming
+	void setPermit(Runnable permit) {
+		this.permit = permit;
+	}
+
+	void releasePermit() {
+		Runnable permit = this.permit;
+		if (permit != null) {
+			this.permit = null;
+			permit.run();
+		}
+	}
+
+	// counts the bytes sent and marks when the response is encoded
+	void setMeasured(boolean measured) {
+		this.measured = measured;
+	}
+
 
 	/* ---------------- Response -------------- */
 
@@ -408,11 +529,31 @@ public class HttpContext {
 
 	public OutputStream responseStream() {
 		if (responseStream == null) {
-			responseStream = new ResponseStream(out, this);
+			responseStream = newResponseStream();
 		}
 		return responseStream;
 	}
 
+	/**
+	 * Starts a text/event-stream response, the remaining request body is discarded.
+	 *
+	 * @return the event stream of the response
+	 * @throws IOException if an io error occurs
+	 */
+	public EventStream eventStream() throws IOException {
+		if (eventStream == null) {
+			try (var in = body()) {
+				in.transferTo(OutputStream.nullOutputStream());
+			}
+			responseType = ContentType.EVENT_STREAM;
+			responseHeaders.set(HeaderName.CACHE_CONTROL, "no-cache");
+			responseStream();
+			eventStream = new EventStream(this, responseStream);
+			releasePermit();
+		}
+		return eventStream;
+	}
+
 	public void redirect(String url) throws Exception {
 		redirect(url, StatusCode.SEE_OTHER);
 	}
@@ -432,50 +573,273 @@ public class HttpContext {
 		}
 	}
 
+	/**
+	 * Declares the validators of the response and evaluates the conditional request before the response body is produced.
+	 *
+	 * @param eTag entity tag of the response or null if absent
+	 * @param lastModified last modification time in millis or -1 if absent
+	 * @return true if the response has been committed with 304 Not Modified
+	 * @throws IOException if an io error occurs
+	 * @see <a href="https://www.rfc-editor.org/rfc/rfc9110#name-conditional-requests">Conditional Requests</a>
+	 */
+	public boolean notModified(String eTag, long lastModified) throws IOException {
+		if (committed) {
+			throw new IllegalStateException("Response has already been committed.");
+		}
+		if (eTag != null) {
+			responseHeaders.set(HeaderName.ETAG, eTag);
+		}
+		if (lastModified >= 0) {
+			responseHeaders.set(HeaderName.LAST_MODIFIED, HttpCodec.formatDate(lastModified));
+		}
+		if (isNotModified()) {
+			committed = true;
+			sendNotModified();
+			return true;
+		}
+		return false;
+	}
+
+	public boolean notModified(String eTag) throws IOException {
+		return notModified(eTag, -1);
+	}
+
+	public boolean notModified(long lastModified) throws IOException {
+		return notModified(null, lastModified);
+	}
+
+	/**
+	 * Accepts the WebSocket opening handshake, the connection is handed over to the handler once the current request
+	 * completes.
+	 *
+	 * @param handler WebSocket handler
+	 * @return the WebSocket
+	 * @throws IOException if an io error occurs
+	 * @see <a href="https://www.rfc-editor.org/rfc/rfc6455#section-4.2">Server-Side Requirements</a>
+	 */
+	public WebSocket upgrade(WebSocketHandler handler) throws IOException {
+		if (committed) {
+			throw new IllegalStateException("Response has already been committed.");
+		}
+		String upgrade = headers().get(HeaderName.UPGRADE);
+		String connection = headers().get(HeaderName.CONNECTION);
+		String key = headers().get(HeaderName.SEC_WEBSOCKET_KEY);
+		if (!HttpMethod.GET.equals(method()) || !HeaderValue.WEBSOCKET.equalsIgnoreCase(upgrade) || connection == null || !connection.toLowerCase().contains(HeaderValue.UPGRADE) || key == null) {
+			throw new WebException(StatusCode.BAD_REQUEST, "Invalid WebSocket handshake.");
+		}
+		if (!WebSocketCodec.VERSION.equals(headers().get(HeaderName.SEC_WEBSOCKET_VERSION))) {
+			responseHeaders.set(HeaderName.SEC_WEBSOCKET_VERSION, WebSocketCodec.VERSION);
+			throw new WebException(StatusCode.UPGRADE_REQUIRED, "Unsupported WebSocket version.");
+		}
+		committed = true;
+		headersSent = true;
+		responseStatus = StatusCode.SWITCHING_PROTOCOLS;
+		responseLength = 0;
+		Headers headers = new Headers();
+		headers.set(HeaderName.UPGRADE, HeaderValue.WEBSOCKET);
+		headers.set(HeaderName.CONNECTION, HeaderValue.UPGRADE);
+		headers.set(HeaderName.SEC_WEBSOCKET_ACCEPT, WebSocketCodec.accept(key));
+		HttpCodec.sendInterim(out, StatusCode.SWITCHING_PROTOCOLS, headers);
+		webSocket = new WebSocket(this, socket, out, handler);
+		releasePermit();
+		return webSocket;
+	}
+
 	public void commit(Object result) throws IOException {
 		if (committed) {
 			throw new IllegalStateException("Response has already been committed.");
 		}
 		committed = true;
 
+		if (eventStream != null) {
+			eventStream.complete();
+		}
 		if (headersSent && responseStream != null) {
 			responseStream.close();
+			bytesSent = responseStream.written();
 			return;
 		}
 
+		// apply rendered response
+		if (result instanceof Response response) {
+			responseStatus = response.status();
+			responseType = response.type();
+			for (Header header : response.headers()) {
+				responseHeaders.remove(header.name());
+			}
+			for (Header header : response.headers()) {
+				responseHeaders.add(header.name(), header.value());
+			}
+			result = response.body();
+		}
+
+		// handle conditional request before encoding the result
+		if (isNotModified()) {
+			if (result instanceof InputStream data) {
+				data.close();
+			}
+			sendNotModified();
+			return;
+		}
+
+		boolean head = HttpMethod.HEAD.equals(method());
 		if (result == null) {
-			responseLength = 0;
+			if (!head || responseLength < 0) {
+				responseLength = 0;
+			}
 			sendHeaders();
 		} else {
-			InputStream in;
+			byte[] body = null;
+			InputStream in = null;
 			if (result instanceof String data) {
-				byte[] buffer = data.getBytes();
-				responseLength = buffer.length;
-				in = new ByteArrayInputStream(buffer);
+				body = data.getBytes();
 			} else if (result instanceof byte[] data) {
-				responseLength = data.length;
-				in = new ByteArrayInputStream(data);
+				body = data;
 			} else if (result instanceof InputStream data) {
 				in = data;
 			} else {
 				in = encoders.getOrDefault(result.getClass(), Encoder.DEFAULT).encode(this, result);
 			}
 
-			try (var ignored = in) {
-				// handle conditional request
-				String ifNoneMatch = headers().get(HeaderName.IF_NONE_MATCH);
-				String eTag = responseHeaders.get(HeaderName.ETAG);
-				if (StringUtil.isNotEmpty(ifNoneMatch) && ifNoneMatch.equals(eTag)) {
-					responseStatus = StatusCode.NOT_MODIFIED;
-					responseLength = 0;
-					HttpCodec.send(out, responseStatus);
-					return;
+			// generate weak ETag for dynamic GET response
+			if (ETAG_AUTO && !(result instanceof InputStream) && responseStatus == StatusCode.OK && (head || HttpMethod.GET.equals(method())) && !responseHeaders.has(HeaderName.ETAG)) {
+				if (body == null) { // buffer the encoded body up to the size limit
+					byte[] buffer = in.readNBytes(ETAG_MAX_SIZE + 1);
+					if (buffer.length > ETAG_MAX_SIZE) {
+						in = new SequenceInputStream(new ByteArrayInputStream(buffer), in);
+					} else {
+						in.close();
+						body = buffer;
+					}
+				}
+				if (body != null && body.length <= ETAG_MAX_SIZE) {
+					responseHeaders.set(HeaderName.ETAG, "W/\"" + Long.toHexString(XXHash.hash64(body)) + '"');
+					if (isNotModified()) {
+						sendNotModified();
+						return;
+					}
+				}
+			}
+
+			if (body != null) {
+				responseLength = body.length;
+				in = new ByteArrayInputStream(body);
+			} else if (head && responseLength < 0 && !(result instanceof InputStream)) {
+				try (var encoded = in) {
+					responseLength = encoded.transferTo(OutputStream.nullOutputStream());
 				}
+			}
+
+			// skip the body of HEAD response
+			if (head) {
+				in.close();
+				in = null;
+			}
+
+			// count the body of unknown length as it is sent
+			if (measured) {
+				encodedAt = System.nanoTime();
+				if (in == null || responseLength >= 0) {
+					bytesSent = in == null ? 0 : responseLength;
+				} else {
+					in = new FilterInputStream(in) {
+						@Override
+						public int read() throws IOException {
+							int b = super.read();
+							if (b != -1) {
+								bytesSent++;
+							}
+							return b;
+						}
+
+						@Override
+						public int read(byte[] b, int off, int len) throws IOException {
+							int n = super.read(b, off, len);
+							if (n > 0) {
+								bytesSent += n;
+							}
+							return n;
+						}
+					};
+				}
+			}
+
+			// send full response
+			try (var ignored = in) {
+				send(responseStatus, responseHeaders, responseCookies.values(), responseType, responseLength, in);
+			}
+		}
+	}
+
+	/**
+	 * Renders the result into a response without sending it, so that it can be shared by other requests. The response
+	 * headers set before the handler ran, e.g. by filters, belong to this request and are not rendered.
+	 *
+	 * @param result handler result
+	 * @param before snapshot of the response headers before the handler ran
+	 * @return rendered response with the current status, type and the headers set by the handler
+	 * @throws IOException if an io error occurs
+	 */
+	public Response render(Object result, List<Header> before) throws IOException {
+		byte[] body;
+		if (result == null) {
+			body = new byte[0];
+		} else if (result instanceof Response response) {
+			return response;
+		} else if (result instanceof String data) {
+			body = data.getBytes();
+		} else if (result instanceof byte[] data) {
+			body = data;
+		} else if (result instanceof InputStream data) {
+			try (data) {
+				body = data.readAllBytes();
+			}
+		} else {
+			try (var in = encoders.getOrDefault(result.getClass(), Encoder.DEFAULT).encode(this, result)) {
+				body = in.readAllBytes();
+			}
+		}
+		List<Header> headers = new ArrayList<>(responseHeaders.size());
+		for (Header header : responseHeaders.values()) {
+			if (!before.contains(header)) {
+				headers.add(header);
+			}
+		}
+		return new Response(responseStatus, responseType, headers, body);
+	}
 
-				// send full response
-				HttpCodec.send(out, responseStatus, responseHeaders, responseCookies.values(), responseType, responseLength, in);
+	// https://www.rfc-editor.org/rfc/rfc9110#name-precedence-of-preconditions
+	private boolean isNotModified() {
+		if (responseStatus != StatusCode.OK || !(HttpMethod.GET.equals(method()) || HttpMethod.HEAD.equals(method()))) {
+			return false;
+		}
+
+		// If-None-Match takes precedence over If-Modified-Since
+		String ifNoneMatch = headers().get(HeaderName.IF_NONE_MATCH);
+		if (StringUtil.isNotEmpty(ifNoneMatch)) {
+			String eTag = responseHeaders.get(HeaderName.ETAG);
+			if (eTag == null) {
+				return false;
+			}
+			eTag = eTag.startsWith("W/") ? eTag.substring(2) : eTag;
+			for (String tag : ifNoneMatch.split(",")) {
+				tag = tag.trim();
+				if (tag.equals("*") || (tag.startsWith("W/") ? tag.substring(2) : tag).equals(eTag)) { // weak comparison
+					return true;
+				}
 			}
+			return false;
 		}
+
+		long since = HttpCodec.parseDate(headers().get(HeaderName.IF_MODIFIED_SINCE));
+		long lastModified = HttpCodec.parseDate(responseHeaders.get(HeaderName.LAST_MODIFIED));
+		return since >= 0 && lastModified >= 0 && lastModified <= since;
+	}
+
+	private void sendNotModified() throws IOException {
+		responseStatus = StatusCode.NOT_MODIFIED;
+		responseLength = 0;
+		sendHeaders();
 	}
 
 	void sendHeaders() throws IOException {
@@ -483,6 +847,49 @@ public class HttpContext {
 			throw new IllegalStateException("Headers has already been sent.");
 		}
 		headersSent = true;
-		HttpCodec.send(out, responseStatus, responseHeaders, responseCookies.values(), responseType, responseLength, null);
+		send(responseStatus, responseHeaders, responseCookies.values(), responseType, responseLength, null);
+	}
+
+	// transport of the response, overridden by Http2Context
+	void send(int status, Headers headers, Collection<Cookie> cookies, String type, long length, InputStream data) throws IOException {
+		if (request.body() instanceof ContinueInputStream body && body.refuse()) {
+			headers.set(HeaderName.CONNECTION, HeaderValue.CLOSE); // the body is never sent, so it cannot be drained
+		}
+		HttpCodec.send(out, status, headers, cookies, type, length, data);
+	}
+
+	// nanoTime when the result was encoded and the response started to be sent, 0 if sent by the handler
+	long encodedAt() {
+		return encodedAt;
+	}
+
+	// response body bytes sent, counted only when measured
+	long bytesSent() {
+		return bytesSent;
+	}
+
+	ResponseStream newResponseStream() {
+		return new ResponseStream(out, this);
+	}
+
+	// invokes the callback once the client disconnects, the connection is closed after the response as it is watched
+	void onDisconnect(Runnable callback) {
+		responseHeaders.set(HeaderName.CONNECTION, HeaderValue.CLOSE);
+		Thread.ofVirtual().start(() -> {
+			try {
+				InputStream in = socket.getInputStream();
+				socket.setSoTimeout(0); // watch without timeouts, a timed out UnixSocket would be closed
+				while (in.read() != -1) {
+					// discard
+				}
+			} catch (IOException e) {
+				// reset or closed
+			}
+			callback.run();
+		});
+	}
+
+	WebSocket webSocket() {
+		return webSocket;
 	}
 }
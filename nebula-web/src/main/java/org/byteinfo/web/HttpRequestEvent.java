@@ -0,0 +1,72 @@
+package org.byteinfo.web;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event of an HTTP request, from routing until the response is sent, broken down into phases.
+ */
+@Name("org.byteinfo.web.HttpRequest")
+@Label("HTTP Request")
+@Category({"Nebula", "Web"})
+@Description("HTTP request handled by the server, with the time spent in each phase")
+@StackTrace(false)
+class HttpRequestEvent extends Event {
+	@Label("Context Id")
+	String id;
+
+	@Label("Method")
+	String method;
+
+	@Label("Target")
+	String target;
+
+	@Label("Route")
+	@Description("Registered path of the handler, or asset")
+	String route;
+
+	@Label("Status")
+	int status;
+
+	@Label("Response Bytes")
+	@DataAmount
+	long responseBytes;
+
+	@Label("Parse")
+	@Description("Reading and parsing the request head, from its first byte, 0 if not measured")
+	@Timespan
+	long parse;
+
+	@Label("Routing")
+	@Timespan
+	long routing;
+
+	@Label("Filters")
+	@Description("Before filters")
+	@Timespan
+	long filters;
+
+	@Label("Handler")
+	@Description("Handler and after filters")
+	@Timespan
+	long handler;
+
+	@Label("Encode")
+	@Timespan
+	long encode;
+
+	@Label("Send")
+	@Timespan
+	long send;
+
+	// whether the event is recorded, checked before it is begun
+	static boolean enabled() {
+		return new HttpRequestEvent().isEnabled();
+	}
+}
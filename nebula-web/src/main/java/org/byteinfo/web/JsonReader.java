@@ -0,0 +1,497 @@
+package org.byteinfo.web;
+
+import org.byteinfo.util.function.Unchecked;
+import org.byteinfo.util.reflect.Reflect;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Streaming JSON reader, values are bound to the target type while being read, so the document is never buffered as a
+ * whole. Objects are bound to records, classes with a public no-arg constructor, and maps; arrays to lists, sets and
+ * arrays. Unknown members are skipped, and absent members are left null, or zero for primitives. For the target type
+ * Object, values are read as maps, lists, strings, longs, doubles and booleans.
+ *
+ * @see <a href="https://www.rfc-editor.org/rfc/rfc8259">RFC 8259: The JSON Data Interchange Format</a>
+ */
+final class JsonReader {
+	private static final int MAX_DEPTH = 256;
+
+	private final InputStream in;
+	private final byte[] buffer = new byte[8192];
+	private final StringBuilder sb = new StringBuilder();
+	private int pos;
+	private int limit;
+	private int depth;
+
+	private JsonReader(InputStream in) {
+		this.in = in;
+	}
+
+	/**
+	 * Reads a JSON document and binds it to the target type.
+	 *
+	 * @param in input stream of the document
+	 * @param type target type
+	 * @return bound value
+	 * @throws IOException if an io error occurs
+	 * @throws WebException with 400 if the document is malformed or does not match the target type
+	 */
+	static Object read(InputStream in, Type type) throws IOException {
+		JsonReader reader = new JsonReader(in);
+		Object value = reader.readValue(type);
+		if (reader.next() != -1) {
+			throw reader.error("unexpected content after the value");
+		}
+		return value;
+	}
+
+	private Object readValue(Type type) throws IOException {
+		Class<?> rawType = rawType(type);
+		if (rawType == Optional.class) {
+			return Optional.ofNullable(readValue(typeArgument(type, 0)));
+		}
+		int c = next();
+		return switch (c) {
+			case '{' -> readObject(type, rawType);
+			case '[' -> readArray(type, rawType);
+			case '"' -> convert(readString(), rawType, "string");
+			case 't' -> {
+				expect("rue");
+				yield convertBoolean(true, rawType);
+			}
+			case 'f' -> {
+				expect("alse");
+				yield convertBoolean(false, rawType);
+			}
+			case 'n' -> {
+				expect("ull");
+				if (rawType.isPrimitive()) {
+					throw error("null for " + rawType.getName());
+				}
+				yield null;
+			}
+			case '-', '0', '1', '2', '3', '4', '5', '6', '7', '8', '9' -> convert(readNumber(c), rawType, "number");
+			case -1 -> throw error("unexpected end of input");
+			default -> throw error("unexpected character '" + (char) c + "'");
+		};
+	}
+
+	private Object readObject(Type type, Class<?> rawType) throws IOException {
+		enter();
+		Object result;
+		if (Map.class.isAssignableFrom(rawType) || rawType == Object.class) {
+			Type keyType = typeArgument(type, 0);
+			Type valueType = typeArgument(type, 1);
+			Map<Object, Object> map = rawType.isInterface() || rawType == Object.class ? new LinkedHashMap<>() : newInstance(rawType);
+			readMembers(name -> valueType, (name, value) -> map.put(convert(name, rawType(keyType), "key"), value));
+			result = map;
+		} else if (!rawType.isPrimitive() && !rawType.isArray() && !rawType.isEnum() && !rawType.isInterface() && !Collection.class.isAssignableFrom(rawType) && !rawType.getName().startsWith("java.")) {
+			Map<String, Field> fields = Reflect.getInstanceFields(rawType);
+			Map<String, Object> values = new HashMap<>();
+			readMembers(name -> {
+				Field field = fields.get(name);
+				return field == null ? null : field.getGenericType();
+			}, values::put);
+			try {
+				result = Reflect.create(rawType, Unchecked.biFunction((name, fieldType) -> values.containsKey(name) ? values.get(name) : defaultValue(rawType(fieldType))));
+			} catch (InvocationTargetException | IllegalArgumentException e) {
+				// rejected by the constructor or mismatched
+				throw new WebException(StatusCode.BAD_REQUEST, "Failed to bind JSON to " + rawType.getName(), e);
+			} catch (ReflectiveOperationException e) {
+				throw new IllegalStateException("Failed to create " + rawType.getName(), e);
+			}
+		} else {
+			throw error("object for " + rawType.getName());
+		}
+		depth--;
+		return result;
+	}
+
+	private void readMembers(MemberType memberType, MemberConsumer consumer) throws IOException {
+		int c = next();
+		if (c == '}') {
+			return;
+		}
+		while (true) {
+			if (c != '"') {
+				throw error("expected member name");
+			}
+			String name = readString();
+			if (next() != ':') {
+				throw error("expected ':'");
+			}
+			Type type = memberType.typeOf(name);
+			if (type == null) {
+				skipValue();
+			} else {
+				consumer.accept(name, readValue(type));
+			}
+			c = next();
+			if (c == '}') {
+				return;
+			}
+			if (c != ',') {
+				throw error("expected ',' or '}'");
+			}
+			c = next();
+		}
+	}
+
+	private Object readArray(Type type, Class<?> rawType) throws IOException {
+		enter();
+		Type elementType;
+		if (rawType.isArray()) {
+			elementType = type instanceof GenericArrayType arrayType ? arrayType.getGenericComponentType() : rawType.getComponentType();
+		} else if (rawType == Object.class || Collection.class.isAssignableFrom(rawType)) {
+			elementType = typeArgument(type, 0);
+		} else {
+			throw error("array for " + rawType.getName());
+		}
+		List<Object> list = new ArrayList<>();
+		int c = peek();
+		if (c == ']') {
+			next();
+		} else {
+			while (true) {
+				list.add(readValue(elementType));
+				c = next();
+				if (c == ']') {
+					break;
+				}
+				if (c != ',') {
+					throw error("expected ',' or ']'");
+				}
+			}
+		}
+		depth--;
+
+		if (rawType.isArray()) {
+			Object array = Array.newInstance(rawType.getComponentType(), list.size());
+			for (int i = 0; i < list.size(); i++) {
+				Array.set(array, i, list.get(i));
+			}
+			return array;
+		} else if (rawType.isAssignableFrom(ArrayList.class)) {
+			return list;
+		} else if (rawType.isAssignableFrom(LinkedHashSet.class)) {
+			return new LinkedHashSet<>(list);
+		} else if (!rawType.isInterface()) {
+			Collection<Object> collection = newInstance(rawType);
+			collection.addAll(list);
+			return collection;
+		}
+		throw error("array for " + rawType.getName());
+	}
+
+	private void skipValue() throws IOException {
+		int c = next();
+		switch (c) {
+			case '{' -> {
+				enter();
+				readMembers(name -> null, (name, value) -> {});
+				depth--;
+			}
+			case '[' -> {
+				enter();
+				if (peek() == ']') {
+					next();
+				} else {
+					do {
+						skipValue();
+						c = next();
+					} while (c == ',');
+					if (c != ']') {
+						throw error("expected ',' or ']'");
+					}
+				}
+				depth--;
+			}
+			case '"' -> readString();
+			case 't' -> expect("rue");
+			case 'f' -> expect("alse");
+			case 'n' -> expect("ull");
+			case '-', '0', '1', '2', '3', '4', '5', '6', '7', '8', '9' -> readNumber(c);
+			case -1 -> throw error("unexpected end of input");
+			default -> throw error("unexpected character '" + (char) c + "'");
+		}
+	}
+
+	// reads the remaining string after the opening quote, decoding UTF-8
+	private String readString() throws IOException {
+		sb.setLength(0);
+		while (true) {
+			int b = read();
+			if (b == '"') {
+				return sb.toString();
+			} else if (b == '\\') {
+				int e = read();
+				switch (e) {
+					case '"', '\\', '/' -> sb.append((char) e);
+					case 'b' -> sb.append('\b');
+					case 'f' -> sb.append('\f');
+					case 'n' -> sb.append('\n');
+					case 'r' -> sb.append('\r');
+					case 't' -> sb.append('\t');
+					case 'u' -> sb.append((char) (hex(read()) << 12 | hex(read()) << 8 | hex(read()) << 4 | hex(read())));
+					default -> throw error("invalid escape");
+				}
+			} else if (b < 0x20) {
+				throw error(b == -1 ? "unterminated string" : "control character in string");
+			} else if (b < 0x80) {
+				sb.append((char) b);
+			} else {
+				// multi-byte sequence: 110xxxxx, 1110xxxx or 11110xxx followed by 10xxxxxx bytes
+				int count;
+				int codePoint;
+				if ((b & 0xE0) == 0xC0) {
+					count = 1;
+					codePoint = b & 0x1F;
+				} else if ((b & 0xF0) == 0xE0) {
+					count = 2;
+					codePoint = b & 0x0F;
+				} else if ((b & 0xF8) == 0xF0) {
+					count = 3;
+					codePoint = b & 0x07;
+				} else {
+					throw error("invalid UTF-8");
+				}
+				for (int i = 0; i < count; i++) {
+					int cb = read();
+					if ((cb & 0xC0) != 0x80) {
+						throw error("invalid UTF-8");
+					}
+					codePoint = codePoint << 6 | cb & 0x3F;
+				}
+				if (codePoint < (count == 1 ? 0x80 : count == 2 ? 0x800 : 0x10000) || codePoint > Character.MAX_CODE_POINT || codePoint >= 0xD800 && codePoint <= 0xDFFF) {
+					throw error("invalid UTF-8");
+				}
+				sb.appendCodePoint(codePoint);
+			}
+		}
+	}
+
+	// reads a number starting with the first byte: -?(0|[1-9][0-9]*)(\.[0-9]+)?([eE][+-]?[0-9]+)?
+	private String readNumber(int first) throws IOException {
+		sb.setLength(0);
+		int c = first;
+		if (c == '-') {
+			sb.append('-');
+			c = read();
+		}
+		if (c == '0') {
+			sb.append('0');
+			c = read();
+		} else {
+			c = readDigits(c);
+		}
+		if (c == '.') {
+			sb.append('.');
+			c = readDigits(read());
+		}
+		if (c == 'e' || c == 'E') {
+			sb.append((char) c);
+			c = read();
+			if (c == '+' || c == '-') {
+				sb.append((char) c);
+				c = read();
+			}
+			c = readDigits(c);
+		}
+		if (c != -1) {
+			pos--; // not part of the number
+		}
+		return sb.toString();
+	}
+
+	// reads one or more digits starting with c, and returns the byte after them
+	private int readDigits(int c) throws IOException {
+		if (c < '0' || c > '9') {
+			throw error("invalid number");
+		}
+		do {
+			sb.append((char) c);
+			c = read();
+		} while (c >= '0' && c <= '9');
+		return c;
+	}
+
+	private Object convert(String text, Class<?> type, String kind) {
+		try {
+			if ((type == String.class || type == CharSequence.class) && !kind.equals("number")) {
+				return text;
+			} else if (type == Object.class) {
+				if (!kind.equals("number")) {
+					return text;
+				}
+				if (text.indexOf('.') >= 0 || text.indexOf('e') >= 0 || text.indexOf('E') >= 0) {
+					return finite(Double.parseDouble(text));
+				}
+				try {
+					return Long.parseLong(text);
+				} catch (NumberFormatException e) {
+					return new BigInteger(text);
+				}
+			} else if (type == int.class || type == Integer.class) {
+				return Integer.parseInt(text);
+			} else if (type == long.class || type == Long.class) {
+				return Long.parseLong(text);
+			} else if (type == double.class || type == Double.class) {
+				return finite(Double.parseDouble(text));
+			} else if (type == float.class || type == Float.class) {
+				return (float) finite(Float.parseFloat(text));
+			} else if (type == short.class || type == Short.class) {
+				return Short.parseShort(text);
+			} else if (type == byte.class || type == Byte.class) {
+				return Byte.parseByte(text);
+			} else if (type == BigDecimal.class || type == Number.class) {
+				return new BigDecimal(text);
+			} else if (type == BigInteger.class) {
+				return new BigInteger(text);
+			} else if ((type == char.class || type == Character.class) && text.length() == 1) {
+				return text.charAt(0);
+			} else if (type.isEnum()) {
+				for (Object constant : type.getEnumConstants()) {
+					if (((Enum<?>) constant).name().equals(text)) {
+						return constant;
+					}
+				}
+			}
+		} catch (NumberFormatException e) {
+			// fall through
+		}
+		throw error(kind + " " + text + " for " + type.getName());
+	}
+
+	// numbers out of range are parsed as infinity, which JSON cannot represent
+	private static double finite(double value) {
+		if (Double.isInfinite(value)) {
+			throw new NumberFormatException("out of range");
+		}
+		return value;
+	}
+
+	private Object convertBoolean(boolean value, Class<?> type) {
+		if (type == boolean.class || type == Boolean.class || type == Object.class) {
+			return value;
+		}
+		throw error("boolean for " + type.getName());
+	}
+
+	private void enter() {
+		if (++depth > MAX_DEPTH) {
+			throw error("nesting too deep");
+		}
+	}
+
+	private void expect(String rest) throws IOException {
+		for (int i = 0; i < rest.length(); i++) {
+			if (read() != rest.charAt(i)) {
+				throw error("invalid literal");
+			}
+		}
+	}
+
+	private int hex(int c) {
+		int digit = Character.digit(c, 16);
+		if (digit < 0) {
+			throw error("invalid unicode escape");
+		}
+		return digit;
+	}
+
+	// next byte skipping whitespace
+	private int next() throws IOException {
+		while (true) {
+			int c = read();
+			if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+				return c;
+			}
+		}
+	}
+
+	// next byte skipping whitespace, without consuming it
+	private int peek() throws IOException {
+		int c = next();
+		if (c != -1) {
+			pos--;
+		}
+		return c;
+	}
+
+	private int read() throws IOException {
+		if (pos == limit) {
+			limit = in.read(buffer, 0, buffer.length);
+			pos = 0;
+			if (limit <= 0) {
+				limit = 0;
+				return -1;
+			}
+		}
+		return buffer[pos++] & 0xFF;
+	}
+
+	private WebException error(String message) {
+		return new WebException(StatusCode.BAD_REQUEST, "Invalid JSON: " + message);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T newInstance(Class<?> type) {
+		try {
+			return (T) type.getConstructor().newInstance();
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Failed to create " + type.getName(), e);
+		}
+	}
+
+	private static Object defaultValue(Class<?> type) {
+		return type.isPrimitive() ? Array.get(Array.newInstance(type, 1), 0) : null;
+	}
+
+	private static Class<?> rawType(Type type) {
+		if (type instanceof Class<?> clazz) {
+			return clazz;
+		} else if (type instanceof ParameterizedType parameterized) {
+			return (Class<?>) parameterized.getRawType();
+		} else if (type instanceof GenericArrayType array) {
+			return Array.newInstance(rawType(array.getGenericComponentType()), 0).getClass();
+		} else if (type instanceof WildcardType wildcard) {
+			return rawType(wildcard.getUpperBounds()[0]);
+		}
+		return Object.class;
+	}
+
+	private static Type typeArgument(Type type, int index) {
+		if (type instanceof ParameterizedType parameterized && parameterized.getActualTypeArguments().length > index) {
+			return parameterized.getActualTypeArguments()[index];
+		}
+		return Object.class;
+	}
+
+	@FunctionalInterface
+	private interface MemberType {
+		Type typeOf(String name);
+	}
+
+	@FunctionalInterface
+	private interface MemberConsumer {
+		void accept(String name, Object value);
+	}
+}
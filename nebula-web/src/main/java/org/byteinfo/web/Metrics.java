@@ -0,0 +1,177 @@
+package org.byteinfo.web;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-route request metrics: latency histograms of the whole request and of its phases, and counters of requests by
+ * status class and of request and response bytes. Routes are labelled by their registered path, so that the number of
+ * series stays bounded whatever paths are requested.
+ *
+ * @see MetricsHandler
+ */
+public class Metrics {
+	static final String[] PHASES = {"routing", "filters", "handler", "encode", "send"};
+	static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+	private final Map<String, Map<String, RouteMetrics>> routes = new ConcurrentHashMap<>();
+
+	/**
+	 * Records a completed request.
+	 *
+	 * @param method request method
+	 * @param route registered path of the handler
+	 * @param status response status
+	 * @param requestBytes request content length, or -1 if unknown
+	 * @param responseBytes response body bytes sent
+	 * @param routing nanoseconds spent finding the handler
+	 * @param filters nanoseconds spent in before filters
+	 * @param handler nanoseconds spent in the handler and after filters
+	 * @param encode nanoseconds spent encoding the result
+	 * @param send nanoseconds spent sending the response
+	 */
+	public void record(String method, String route, int status, long requestBytes, long responseBytes, long routing, long filters, long handler, long encode, long send) {
+		RouteMetrics metrics = route(method, route);
+		metrics.phases[0].record(routing / 1000);
+		metrics.phases[1].record(filters / 1000);
+		metrics.phases[2].record(handler / 1000);
+		metrics.phases[3].record(encode / 1000);
+		metrics.phases[4].record(send / 1000);
+		metrics.duration.record((routing + filters + handler + encode + send) / 1000);
+		metrics.statuses[Math.clamp(status / 100, 1, 5) - 1].increment();
+		if (requestBytes > 0) {
+			metrics.requestBytes.add(requestBytes);
+		}
+		if (responseBytes > 0) {
+			metrics.responseBytes.add(responseBytes);
+		}
+	}
+
+	/**
+	 * Gets the metrics of a route, the lookup allocates nothing once the route has been seen.
+	 */
+	public RouteMetrics route(String method, String route) {
+		Map<String, RouteMetrics> methods = routes.get(route);
+		if (methods == null) {
+			methods = routes.computeIfAbsent(route, k -> new ConcurrentHashMap<>());
+		}
+		RouteMetrics metrics = methods.get(method);
+		if (metrics == null) {
+			metrics = methods.computeIfAbsent(method, k -> new RouteMetrics());
+		}
+		return metrics;
+	}
+
+	/**
+	 * Renders the metrics in Prometheus text exposition format.
+	 *
+	 * @see <a href="https://prometheus.io/docs/instrumenting/exposition_formats/">Exposition Formats</a>
+	 */
+	public String render() {
+		StringBuilder requests = new StringBuilder();
+		StringBuilder requestBytes = new StringBuilder();
+		StringBuilder responseBytes = new StringBuilder();
+		StringBuilder durations = new StringBuilder();
+		StringBuilder phases = new StringBuilder();
+		for (var route : routes.entrySet()) {
+			for (var method : route.getValue().entrySet()) {
+				String labels = "method=\"" + escape(method.getKey()) + "\",route=\"" + escape(route.getKey()) + "\"";
+				RouteMetrics metrics = method.getValue();
+				for (int i = 0; i < metrics.statuses.length; i++) {
+					long count = metrics.statuses[i].sum();
+					if (count > 0) {
+						requests.append("nebula_http_requests_total{").append(labels).append(",status=\"").append(i + 1).append("xx\"} ").append(count).append('\n');
+					}
+				}
+				requestBytes.append("nebula_http_request_bytes_total{").append(labels).append("} ").append(metrics.requestBytes.sum()).append('\n');
+				responseBytes.append("nebula_http_response_bytes_total{").append(labels).append("} ").append(metrics.responseBytes.sum()).append('\n');
+				summary(durations, "nebula_http_request_duration_seconds", labels, metrics.duration);
+				for (int i = 0; i < PHASES.length; i++) {
+					summary(phases, "nebula_http_phase_duration_seconds", labels + ",phase=\"" + PHASES[i] + "\"", metrics.phases[i]);
+				}
+			}
+		}
+
+		StringBuilder sb = new StringBuilder();
+		metric(sb, "nebula_http_requests_total", "counter", "Requests by route and status class.", requests);
+		metric(sb, "nebula_http_request_bytes_total", "counter", "Request body bytes by route.", requestBytes);
+		metric(sb, "nebula_http_response_bytes_total", "counter", "Response body bytes by route.", responseBytes);
+		metric(sb, "nebula_http_request_duration_seconds", "summary", "Request latency from routing until the response is sent.", durations);
+		metric(sb, "nebula_http_phase_duration_seconds", "summary", "Request latency by phase.", phases);
+		return sb.toString();
+	}
+
+	private static void metric(StringBuilder sb, String name, String type, String help, StringBuilder samples) {
+		sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+		sb.append(samples);
+	}
+
+	private static void summary(StringBuilder sb, String name, String labels, Histogram histogram) {
+		long[] values = histogram.quantiles(QUANTILES);
+		for (int i = 0; i < QUANTILES.length; i++) {
+			sb.append(name).append('{').append(labels).append(",quantile=\"").append(QUANTILES[i]).append("\"} ").append(values[i] / 1e6).append('\n');
+		}
+		sb.append(name).append("_sum{").append(labels).append("} ").append(histogram.sum() / 1e6).append('\n');
+		sb.append(name).append("_count{").append(labels).append("} ").append(histogram.count()).append('\n');
+	}
+
+	private static String escape(String value) {
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+
+	/**
+	 * Metrics of one route and method.
+	 */
+	public static class RouteMetrics {
+		private final Histogram duration = new Histogram();
+		private final Histogram[] phases = new Histogram[PHASES.length];
+		private final LongAdder[] statuses = new LongAdder[5];
+		private final LongAdder requestBytes = new LongAdder();
+		private final LongAdder responseBytes = new LongAdder();
+
+		RouteMetrics() {
+			for (int i = 0; i < phases.length; i++) {
+				phases[i] = new Histogram();
+			}
+			for (int i = 0; i < statuses.length; i++) {
+				statuses[i] = new LongAdder();
+			}
+		}
+
+		public Histogram duration() {
+			return duration;
+		}
+
+		/**
+		 * Gets the histogram of a phase.
+		 *
+		 * @param phase one of routing, filters, handler, encode and send
+		 */
+		public Histogram phase(String phase) {
+			for (int i = 0; i < PHASES.length; i++) {
+				if (PHASES[i].equals(phase)) {
+					return phases[i];
+				}
+			}
+			throw new IllegalArgumentException("Unknown phase: " + phase);
+		}
+
+		public long requests() {
+			long requests = 0;
+			for (LongAdder status : statuses) {
+				requests += status.sum();
+			}
+			return requests;
+		}
+
+		public long requestBytes() {
+			return requestBytes.sum();
+		}
+
+		public long responseBytes() {
+			return responseBytes.sum();
+		}
+	}
+}
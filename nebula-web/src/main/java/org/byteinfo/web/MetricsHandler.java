@@ -0,0 +1,25 @@
+package org.byteinfo.web;
+
+/**
+ * Exposes {@link Metrics} in Prometheus text format, registered at metrics.path once metrics.enabled is set.
+ */
+public class MetricsHandler implements Handler {
+	public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+	private final Metrics metrics;
+
+	public MetricsHandler(Metrics metrics) {
+		this.metrics = metrics;
+	}
+
+	@Override
+	public Object handle(HttpContext ctx) {
+		ctx.setResponseType(CONTENT_TYPE);
+		ctx.responseHeaders().set(HeaderName.CACHE_CONTROL, "no-store");
+		return metrics.render();
+	}
+
+	public Metrics metrics() {
+		return metrics;
+	}
+}
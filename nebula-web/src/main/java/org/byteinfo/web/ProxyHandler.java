@@ -0,0 +1,323 @@
+package org.byteinfo.web;
+
+import org.byteinfo.logging.Log;
+import org.byteinfo.util.time.Timeout;
+import org.byteinfo.util.time.WheelTimer;
+
+import javax.net.ssl.SSLSocket;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reverse proxy to one or more upstream HTTP/1.1 servers. Request and response bodies are streamed without buffering,
+ * over pooled keep-alive connections. Each request goes to the healthy upstream with the fewest outstanding requests,
+ * ties broken round-robin, and upstreams failing their health checks or refusing connections are taken out of
+ * rotation until their health checks pass again.
+ * <pre>{@code
+ * server.handler(List.of("GET", "POST"), "/legacy/*", new ProxyHandler("http://10.0.0.1:8080", "http://10.0.0.2:8080"), null);
+ * }</pre>
+ * The request target is forwarded as is, with X-Forwarded-For, X-Forwarded-Proto and X-Forwarded-Host. The X-Forwarded-*
+ * headers sent by the client are replaced, unless the client is one of the trusted proxies.
+ */
+public class ProxyHandler implements Handler, AutoCloseable {
+	public static final long HEALTH_INTERVAL = AppConfig.get().getLong("proxy.healthInterval");
+	public static final String HEALTH_PATH = AppConfig.get().get("proxy.healthPath");
+	public static final Set<String> TRUSTED_PROXIES = Set.of(Arrays.stream(AppConfig.get().get("proxy.trustedProxies").split(",")).map(String::trim).filter(s -> !s.isEmpty()).toArray(String[]::new));
+
+	// https://www.rfc-editor.org/rfc/rfc9110#name-connection
+	private static final Set<String> HOP_BY_HOP_HEADERS = Set.of(HeaderName.CONNECTION, "keep-alive", "proxy-connection", "proxy-authenticate", "proxy-authorization", "te", "trailer", HeaderName.TRANSFER_ENCODING, HeaderName.UPGRADE);
+
+	private final List<Upstream> upstreams;
+	private final AtomicInteger next = new AtomicInteger();
+	private volatile Timeout healthTimeout;
+	private volatile boolean closed;
+
+	/**
+	 * Creates a new ProxyHandler.
+	 *
+	 * @param upstreams upstream uris, e.g. http://127.0.0.1:8080
+	 */
+	public ProxyHandler(String... upstreams) {
+		if (upstreams.length == 0) {
+			throw new IllegalArgumentException("No upstream");
+		}
+		this.upstreams = Arrays.stream(upstreams).map(Upstream::new).toList();
+		if (HEALTH_INTERVAL > 0) {
+			healthTimeout = WheelTimer.getDefault().newTimeout(this::checkHealth, HEALTH_INTERVAL);
+		}
+	}
+
+	@Override
+	public Object handle(HttpContext ctx) throws Exception {
+		Headers headers = requestHeaders(ctx);
+		long length = ctx.length();
+		Upstream excluded = null;
+		boolean retrying = false;
+		for (int attempt = 0; ; attempt++) {
+			Upstream upstream = select(excluded);
+			if (upstream == null) {
+				throw new WebException(StatusCode.SERVICE_UNAVAILABLE, "No healthy upstream");
+			}
+
+			Upstream.Connection conn;
+			try {
+				conn = retrying ? upstream.open() : upstream.acquire();
+			} catch (IOException e) {
+				// nothing was sent, so another upstream can be tried whatever the request is
+				markDown(upstream, e);
+				if (attempt == 0 && upstreams.size() > 1) {
+					excluded = upstream;
+					continue;
+				}
+				throw new WebException(StatusCode.BAD_GATEWAY, "Failed to connect to upstream: " + upstream.authority(), e);
+			}
+
+			StatusLine status;
+			Headers responseHeaders;
+			InputStream body;
+			long responseLength;
+			boolean responding = false;
+			try {
+				HttpCodec.sendRequest(conn.out, ctx.method(), ctx.target(), headers, length, length == 0 ? null : ctx.body());
+				awaitResponse(conn.in);
+				responding = true;
+				do { // skip interim responses
+					status = HttpCodec.readStatusLine(conn.in);
+					responseHeaders = HttpCodec.readHeaders(conn.in);
+				} while (status.status() < 200);
+				body = HttpCodec.responseBody(ctx.method(), status.status(), responseHeaders, conn.in);
+				responseLength = HeaderValue.CHUNKED.equals(responseHeaders.get(HeaderName.TRANSFER_ENCODING)) ? -1 : HttpCodec.contentLength(responseHeaders);
+			} catch (IOException | WebException e) {
+				upstream.discard(conn);
+				if (conn.reused && !responding && !(e instanceof InterruptedIOException) && length == 0 && HttpCodec.isIdempotent(ctx.method())) {
+					retrying = true; // the pooled connection was closed by the upstream meanwhile
+					continue;
+				}
+				if (e instanceof SocketTimeoutException) {
+					throw new WebException(StatusCode.GATEWAY_TIMEOUT, "Upstream timed out: " + upstream.authority(), e);
+				}
+				throw new WebException(StatusCode.BAD_GATEWAY, "Upstream failed: " + upstream.authority(), e);
+			}
+			return respond(ctx, upstream, conn, status, responseHeaders, body, responseLength);
+		}
+	}
+
+	public List<Upstream> upstreams() {
+		return upstreams;
+	}
+
+	/**
+	 * Stops health checks and closes the idle connections.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		Timeout timeout = healthTimeout;
+		if (timeout != null) {
+			timeout.cancel();
+		}
+		for (Upstream upstream : upstreams) {
+			upstream.close();
+		}
+	}
+
+	// least outstanding requests among the healthy upstreams, starting from a rotating index to break ties
+	private Upstream select(Upstream excluded) {
+		int size = upstreams.size();
+		int start = Math.floorMod(next.getAndIncrement(), size);
+		Upstream selected = null;
+		for (int i = 0; i < size; i++) {
+			Upstream upstream = upstreams.get((start + i) % size);
+			if (upstream != excluded && upstream.isHealthy() && (selected == null || upstream.outstanding() < selected.outstanding())) {
+				selected = upstream;
+			}
+		}
+		return selected;
+	}
+
+	private Headers requestHeaders(HttpContext ctx) {
+		Headers headers = new Headers();
+		Set<String> excluded = connectionHeaders(ctx.headers());
+		for (Header header : ctx.headers().values()) {
+			String name = header.name().toLowerCase();
+			if (!excluded.contains(name) && !name.equals(HeaderName.CONTENT_LENGTH) && !name.equals(HeaderName.EXPECT)) {
+				headers.add(header.name(), header.value());
+			}
+		}
+		String address = ctx.socket().getInetAddress().getHostAddress();
+		if (TRUSTED_PROXIES.contains(address)) {
+			String forwardedFor = ctx.headers().get(HeaderName.FORWARDED_FOR);
+			headers.set(HeaderName.FORWARDED_FOR, forwardedFor == null ? address : forwardedFor + ", " + address);
+			if (!headers.has(HeaderName.FORWARDED_PROTO)) {
+				headers.set(HeaderName.FORWARDED_PROTO, ctx.scheme());
+			}
+			if (!headers.has(HeaderName.FORWARDED_HOST) && ctx.host() != null) {
+				headers.set(HeaderName.FORWARDED_HOST, ctx.host());
+			}
+		} else {
+			// spoofed by the client otherwise
+			headers.remove(HeaderName.FORWARDED_PORT);
+			headers.set(HeaderName.FORWARDED_FOR, address);
+			headers.set(HeaderName.FORWARDED_PROTO, ctx.socket() instanceof SSLSocket ? "https" : "http");
+			String host = ctx.headers().get(HeaderName.HOST);
+			if (host == null) {
+				headers.remove(HeaderName.FORWARDED_HOST);
+			} else {
+				headers.set(HeaderName.FORWARDED_HOST, host);
+			}
+		}
+		return headers;
+	}
+
+	private Object respond(HttpContext ctx, Upstream upstream, Upstream.Connection conn, StatusLine status, Headers headers, InputStream body, long length) throws IOException {
+		ctx.setResponseStatus(status.status());
+		Set<String> excluded = connectionHeaders(headers);
+		for (Header header : headers.values()) {
+			String name = header.name().toLowerCase();
+			if (!excluded.contains(name) && !name.equals(HeaderName.CONTENT_LENGTH) && !name.equals(HeaderName.CONTENT_TYPE)) {
+				ctx.responseHeaders().add(header.name(), header.value());
+			}
+		}
+		String type = headers.get(HeaderName.CONTENT_TYPE);
+		ctx.setResponseType(type == null ? "application/octet-stream" : type);
+
+		boolean reusable = body != conn.in && "HTTP/1.1".equals(status.version()) && !HeaderValue.CLOSE.equalsIgnoreCase(headers.get(HeaderName.CONNECTION));
+		boolean head = HttpMethod.HEAD.equals(ctx.method());
+		if (head || length == 0 || status.status() == StatusCode.NO_CONTENT || status.status() == StatusCode.NOT_MODIFIED) {
+			if (reusable) {
+				upstream.release(conn);
+			} else {
+				upstream.discard(conn);
+			}
+			ctx.setResponseLength(head ? length : 0);
+			return null;
+		}
+		if (length > 0) {
+			ctx.setResponseLength(length);
+			return new Body(upstream, conn, body, reusable);
+		}
+
+		// chunked or delimited by closing, flushed whenever the upstream pauses to keep streaming responses live
+		OutputStream out = ctx.responseStream();
+		try (Body in = new Body(upstream, conn, body, reusable)) {
+			byte[] buffer = new byte[8192];
+			int n;
+			while ((n = in.read(buffer)) != -1) {
+				out.write(buffer, 0, n);
+				if (in.available() == 0) {
+					out.flush();
+				}
+			}
+		}
+		out.close();
+		return null;
+	}
+
+	// waits for the first byte of the response, so that a connection closed before responding is told apart
+	private static void awaitResponse(InputStream in) throws IOException {
+		in.mark(1);
+		if (in.read() == -1) {
+			throw new EOFException("connection closed before responding");
+		}
+		in.reset();
+	}
+
+	private void markDown(Upstream upstream, Exception e) {
+		Log.warn("Failed to connect to upstream: {}: {}", upstream.authority(), e.toString());
+		if (HEALTH_INTERVAL > 0) {
+			upstream.setHealthy(false); // until the next health check passes
+		}
+	}
+
+	private void checkHealth(Timeout timeout) {
+		for (Upstream upstream : upstreams) {
+			upstream.evict(Upstream.IDLE_TIMEOUT);
+			try (Upstream.Connection conn = upstream.connect()) {
+				Headers headers = new Headers();
+				headers.set(HeaderName.HOST, upstream.authority());
+				headers.set(HeaderName.CONNECTION, HeaderValue.CLOSE);
+				HttpCodec.sendRequest(conn.out, HttpMethod.GET, HEALTH_PATH, headers, 0, null);
+				int status = HttpCodec.readStatusLine(conn.in).status();
+				upstream.setHealthy(status < 500); // the path may not exist, only server errors count
+			} catch (Exception e) {
+				upstream.setHealthy(false);
+			}
+		}
+		if (!closed) {
+			healthTimeout = WheelTimer.getDefault().newTimeout(this::checkHealth, HEALTH_INTERVAL);
+		}
+	}
+
+	// the hop-by-hop headers, plus the ones listed in Connection
+	private static Set<String> connectionHeaders(Headers headers) {
+		String connection = headers.get(HeaderName.CONNECTION);
+		if (connection == null) {
+			return HOP_BY_HOP_HEADERS;
+		}
+		Set<String> names = new HashSet<>(HOP_BY_HOP_HEADERS);
+		for (String name : connection.split(",")) {
+			names.add(name.trim().toLowerCase());
+		}
+		return names;
+	}
+
+	/**
+	 * Upstream response body streamed to the client, the connection returns to the pool once the body is fully read.
+	 */
+	private static class Body extends InputStream {
+		private final Upstream upstream;
+		private final Upstream.Connection conn;
+		private final InputStream in;
+		private final boolean reusable;
+		private boolean eof;
+		private boolean closed;
+
+		Body(Upstream upstream, Upstream.Connection conn, InputStream in, boolean reusable) {
+			this.upstream = upstream;
+			this.conn = conn;
+			this.in = in;
+			this.reusable = reusable;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = in.read();
+			eof = b == -1;
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = in.read(b, off, len);
+			eof = n == -1;
+			return n;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return in.available();
+		}
+
+		@Override
+		public void close() {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			if (eof && reusable) {
+				upstream.release(conn);
+			} else {
+				upstream.discard(conn);
+			}
+		}
+	}
+}
@@ -0,0 +1,237 @@
+package org.byteinfo.web;
+
+import org.byteinfo.util.codec.XXHash;
+import org.byteinfo.util.net.IPv4Util;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Token-bucket rate limiter keyed by the client address.
+ * <p>
+ * Each bucket is a single timestamp (GCRA) refilled lazily on access. Addresses are stored as longs in striped
+ * open-addressing tables, IPv4 addresses as is and others by their 64-bit hash. Full buckets are dropped, and the
+ * tables shrunk, whenever a table needs to grow and at least every sweep interval.
+ *
+ * @see <a href="https://www.rfc-editor.org/rfc/rfc6585#section-4">429 Too Many Requests</a>
+ */
+public class RateLimitFilter implements Filter {
+	private final Limiter defaultLimiter;
+	private final Map<String, Limiter> exactLimiters = new HashMap<>();
+	private final Map<String, Limiter> genericLimiters = new LinkedHashMap<>();
+	private final LongAdder rejected = new LongAdder();
+
+	/**
+	 * Creates a new RateLimitFilter without default limit, only the configured routes are limited.
+	 */
+	public RateLimitFilter() {
+		defaultLimiter = null;
+	}
+
+	/**
+	 * Creates a new RateLimitFilter.
+	 *
+	 * @param permitsPerSecond default permits per second for each client
+	 * @param burst default max burst size for each client
+	 */
+	public RateLimitFilter(double permitsPerSecond, int burst) {
+		defaultLimiter = new Limiter(permitsPerSecond, burst);
+	}
+
+	/**
+	 * Configures the limit for the route, paths ending with "*" match by prefix.
+	 *
+	 * @param path route path
+	 * @param permitsPerSecond permits per second for each client
+	 * @param burst max burst size for each client
+	 * @return current filter
+	 */
+	public RateLimitFilter limit(String path, double permitsPerSecond, int burst) {
+		if (path.endsWith("*")) {
+			genericLimiters.put(path.substring(0, path.length() - 1), new Limiter(permitsPerSecond, burst));
+		} else {
+			exactLimiters.put(path, new Limiter(permitsPerSecond, burst));
+		}
+		return this;
+	}
+
+	@Override
+	public void before(HttpContext ctx, Handler handler) throws Exception {
+		Limiter limiter = exactLimiters.get(ctx.path());
+		if (limiter == null) {
+			for (Map.Entry<String, Limiter> entry : genericLimiters.entrySet()) {
+				if (ctx.path().startsWith(entry.getKey())) {
+					limiter = entry.getValue();
+					break;
+				}
+			}
+		}
+		if (limiter == null) {
+			limiter = defaultLimiter;
+		}
+		if (limiter == null) {
+			return;
+		}
+
+		long wait = limiter.acquire(toKey(ctx.address()), System.nanoTime());
+		if (wait > 0) {
+			rejected.increment();
+			ctx.setResponseStatus(StatusCode.TOO_MANY_REQUESTS);
+			ctx.setResponseType(ContentType.TEXT);
+			ctx.responseHeaders().set(HeaderName.RETRY_AFTER, String.valueOf(Math.max(1, (wait + 999_999_999) / 1_000_000_000)));
+			ctx.commit("ERROR: " + StatusCode.TOO_MANY_REQUESTS);
+		}
+	}
+
+	/**
+	 * Gets the number of rejected requests.
+	 *
+	 * @return rejected count
+	 */
+	public long rejected() {
+		return rejected.sum();
+	}
+
+	// IPv4 addresses are used as is with bit 32 set, others are hashed with bit 63 set, so that the spaces never overlap
+	static long toKey(String address) {
+		address = address.trim();
+		byte[] data;
+		if (address.indexOf(':') == -1) {
+			try {
+				return 1L << 32 | IPv4Util.toInt(address) & 0xFFFFFFFFL;
+			} catch (RuntimeException e) {
+				data = address.getBytes(StandardCharsets.UTF_8);
+			}
+		} else {
+			try {
+				data = InetAddress.getByName(address).getAddress(); // parsed as an IPv6 literal, same key for every notation
+				if (data.length == 4) { // IPv4-mapped
+					return 1L << 32 | IPv4Util.toInt(data) & 0xFFFFFFFFL;
+				}
+			} catch (UnknownHostException e) {
+				data = address.getBytes(StandardCharsets.UTF_8);
+			}
+		}
+		return XXHash.hash64(data) | Long.MIN_VALUE;
+	}
+
+	static class Limiter {
+		private static final long SWEEP_INTERVAL = 10_000_000_000L;
+
+		private final long interval; // nanos per permit
+		private final long tolerance; // nanos of burst
+		private final Stripe[] stripes;
+
+		Limiter(double permitsPerSecond, int burst) {
+			if (permitsPerSecond <= 0 || burst <= 0) {
+				throw new IllegalArgumentException("permitsPerSecond: %s, burst: %d (expected: > 0)".formatted(permitsPerSecond, burst));
+			}
+			interval = (long) (1_000_000_000 / permitsPerSecond);
+			tolerance = interval * burst;
+			int size = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 4 - 1) << 1;
+			stripes = new Stripe[size];
+			for (int i = 0; i < size; i++) {
+				stripes[i] = new Stripe();
+			}
+		}
+
+		// returns 0 if permitted, otherwise nanos to wait
+		long acquire(long key, long now) {
+			int hash = hash(key);
+			Stripe stripe = stripes[hash >>> 16 & stripes.length - 1];
+			stripe.lock();
+			try {
+				if (now - stripe.swept > SWEEP_INTERVAL) {
+					stripe.rehash(now);
+				}
+				int index = stripe.indexOf(key, hash, now);
+				long tat = Math.max(stripe.tats[index], now) + interval; // theoretical arrival time
+				long wait = tat - now - tolerance;
+				if (wait > 0) {
+					return wait;
+				}
+				stripe.tats[index] = tat;
+				return 0;
+			} finally {
+				stripe.unlock();
+			}
+		}
+
+		Stripe stripe(long key) {
+			return stripes[hash(key) >>> 16 & stripes.length - 1];
+		}
+	}
+
+	static int hash(long key) {
+		return (int) (key * 0x9E3779B97F4A7C15L >>> 32);
+	}
+
+	// open-addressing table of keys and theoretical arrival times
+	static class Stripe extends ReentrantLock {
+		private static final int MIN_CAPACITY = 64;
+
+		long[] keys = new long[MIN_CAPACITY];
+		long[] tats = new long[MIN_CAPACITY];
+		int size;
+		long swept = System.nanoTime();
+
+		int indexOf(long key, int hash, long now) {
+			int mask = keys.length - 1;
+			int index = hash & mask;
+			while (keys[index] != 0) {
+				if (keys[index] == key) {
+					return index;
+				}
+				index = (index + 1) & mask;
+			}
+
+			// insert new bucket, resize the table if necessary
+			if (size + 1 > keys.length * 3 / 4) {
+				rehash(now);
+				return indexOf(key, hash, now);
+			}
+			keys[index] = key;
+			tats[index] = now;
+			size++;
+			return index;
+		}
+
+		// drop full buckets, and resize to keep the live ones at most half full
+		void rehash(long now) {
+			long[] oldKeys = keys;
+			long[] oldTats = tats;
+			int live = 0;
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] != 0 && oldTats[i] > now) {
+					live++;
+				}
+			}
+			int capacity = MIN_CAPACITY;
+			while (live + 1 > capacity / 2) {
+				capacity <<= 1;
+			}
+			keys = new long[capacity];
+			tats = new long[capacity];
+			size = 0;
+			swept = now;
+			int mask = capacity - 1;
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] != 0 && oldTats[i] > now) {
+					int index = hash(oldKeys[i]) & mask;
+					while (keys[index] != 0) {
+						index = (index + 1) & mask;
+					}
+					keys[index] = oldKeys[i];
+					tats[index] = oldTats[i];
+					size++;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,28 @@
+package org.byteinfo.web;
+
+import java.util.List;
+
+/**
+ * A rendered response which can be sent to multiple requests.
+ *
+ * @param status response status
+ * @param type response content type
+ * @param headers response headers, cookies excluded
+ * @param body encoded response body
+ */
+public record Response(int status, String type, List<Header> headers, byte[] body) {
+	/**
+	 * Gets the first value of the header.
+	 *
+	 * @param name header name, case-insensitive
+	 * @return header value, or null if absent
+	 */
+	public String header(String name) {
+		for (Header header : headers) {
+			if (header.name().equalsIgnoreCase(name)) {
+				return header.value();
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,183 @@
+package org.byteinfo.web;
+
+import org.byteinfo.util.time.Timeout;
+import org.byteinfo.util.time.WheelTimer;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Size-bounded LRU cache of rendered responses, entries expire with the default {@link WheelTimer}.
+ */
+public class ResponseCache {
+	private final Lock lock = new ReentrantLock();
+	private final Map<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final long maxSize;
+	private long size;
+
+	/**
+	 * Creates a new ResponseCache.
+	 *
+	 * @param maxSize max total size of the cached responses in bytes
+	 */
+	public ResponseCache(long maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Gets the cached response.
+	 *
+	 * @param key cache key
+	 * @return cached response or null if absent
+	 */
+	public Response get(String key) {
+		lock.lock();
+		try {
+			Entry entry = entries.get(key);
+			if (entry == null) {
+				misses.increment();
+				return null;
+			}
+			hits.increment();
+			return entry.response;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Caches the response, least recently used responses are evicted if the max size is exceeded.
+	 *
+	 * @param key cache key
+	 * @param response rendered response
+	 * @param ttlMillis time to live in millis
+	 */
+	public void put(String key, Response response, long ttlMillis) {
+		long entrySize = sizeOf(key, response);
+		if (ttlMillis <= 0 || entrySize > maxSize) {
+			return;
+		}
+		Entry entry = new Entry(key, response, entrySize);
+		lock.lock();
+		try {
+			detach(entries.put(key, entry));
+			size += entrySize;
+			Iterator<Entry> iterator = entries.values().iterator();
+			while (size > maxSize && iterator.hasNext()) {
+				Entry eldest = iterator.next();
+				iterator.remove();
+				detach(eldest);
+				evictions.increment();
+			}
+			entry.timeout = WheelTimer.getDefault().newTimeout(t -> expire(entry), ttlMillis);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public void remove(String key) {
+		lock.lock();
+		try {
+			detach(entries.remove(key));
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public void clear() {
+		lock.lock();
+		try {
+			entries.values().forEach(this::detach);
+			entries.clear();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public long hits() {
+		return hits.sum();
+	}
+
+	public long misses() {
+		return misses.sum();
+	}
+
+	public long evictions() {
+		return evictions.sum();
+	}
+
+	public int count() {
+		lock.lock();
+		try {
+			return entries.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public long size() {
+		lock.lock();
+		try {
+			return size;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public long maxSize() {
+		return maxSize;
+	}
+
+	@Override
+	public String toString() {
+		return "ResponseCache{count=%d, size=%d, maxSize=%d, hits=%d, misses=%d, evictions=%d}".formatted(count(), size(), maxSize, hits(), misses(), evictions());
+	}
+
+	private void expire(Entry entry) {
+		lock.lock();
+		try {
+			if (entries.remove(entry.key, entry)) {
+				size -= entry.size;
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void detach(Entry entry) {
+		if (entry != null) {
+			size -= entry.size;
+			if (entry.timeout != null) {
+				entry.timeout.cancel();
+			}
+		}
+	}
+
+	private static long sizeOf(String key, Response response) {
+		long size = 64L + key.length() + response.body().length;
+		for (Header header : response.headers()) {
+			size += 32 + header.name().length() + header.value().length();
+		}
+		return size;
+	}
+
+	private static class Entry {
+		final String key;
+		final Response response;
+		final long size;
+		Timeout timeout;
+
+		Entry(String key, Response response, long size) {
+			this.key = key;
+			this.response = response;
+			this.size = size;
+		}
+	}
+}
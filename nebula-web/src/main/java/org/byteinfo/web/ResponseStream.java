@@ -6,16 +6,60 @@ import java.io.OutputStream;
 public class ResponseStream extends ChunkedOutputStream {
 	protected HttpContext ctx;
 	protected boolean initialized;
+	protected boolean head;
+	protected boolean chunked;
+	protected long written;
 
 	public ResponseStream(OutputStream out, HttpContext ctx) {
+		this(out, ctx, true);
+	}
+
+	/**
+	 * Creates a new ResponseStream.
+	 *
+	 * @param out underlying output stream
+	 * @param ctx current context
+	 * @param chunked whether the body is sent with chunked transfer coding, otherwise the underlying stream frames the body and is closed at the end
+	 */
+	public ResponseStream(OutputStream out, HttpContext ctx, boolean chunked) {
 		super(out);
 		this.ctx = ctx;
+		this.head = HttpMethod.HEAD.equals(ctx.method());
+		this.chunked = chunked;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		ensureInitialized();
+		if (head) { // discard the body of HEAD response
+			return;
+		}
+		written++;
+		if (chunked) {
+			super.write(b);
+		} else {
+			out.write(b);
+		}
 	}
 
 	@Override
 	public void write(byte[] b, int off, int len) throws IOException {
 		ensureInitialized();
-		super.write(b, off, len);
+		if (head) { // discard the body of HEAD response
+			return;
+		}
+		written += len;
+		if (chunked) {
+			super.write(b, off, len);
+		} else {
+			out.write(b, off, len);
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		ensureInitialized();
+		super.flush();
 	}
 
 	@Override
@@ -24,8 +68,25 @@ public class ResponseStream extends ChunkedOutputStream {
 			return;
 		}
 		ensureInitialized();
-		super.close();
-		ctx.commit(null);
+		if (!chunked) {
+			closed = true;
+			out.close();
+		} else if (head) {
+			closed = true;
+			out.flush();
+		} else {
+			super.close();
+		}
+		if (!ctx.isCommitted()) { // closed by the handler rather than by commit
+			ctx.commit(null);
+		}
+	}
+
+	/**
+	 * Gets the number of body bytes written so far.
+	 */
+	public long written() {
+		return written;
 	}
 
 	private void ensureInitialized() throws IOException {
@@ -0,0 +1,221 @@
+package org.byteinfo.web;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Annotation processor generating the {@link Routes} of each controller at compile time, so that
+ * {@link Server#handler(Class[])} registers the routes with direct method calls instead of reflection. The generated
+ * class applies the same annotations as the reflective registration: {@link Path}, the HTTP method annotations,
+ * {@link Secured}, {@link Deadline}, {@link Bulkhead}, {@link Coalesce}, {@link Cached} and {@link BodyLimit}.
+ * <p>
+ * The processor is discovered from the classpath by javac, on JDK 23 and later it has to be enabled with
+ * {@code -proc:full} or listed in the annotationProcessorPaths of the maven-compiler-plugin. Controllers with private
+ * routes are left to reflection.
+ */
+@SupportedAnnotationTypes({"org.byteinfo.web.Path", "org.byteinfo.web.GET", "org.byteinfo.web.POST", "org.byteinfo.web.PUT", "org.byteinfo.web.DELETE"})
+public class RouteProcessor extends AbstractProcessor {
+	static final String SUFFIX = "$Routes";
+	private static final String WEB = "org.byteinfo.web.";
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment round) {
+		Set<TypeElement> controllers = new LinkedHashSet<>();
+		for (TypeElement annotation : annotations) {
+			for (Element element : round.getElementsAnnotatedWith(annotation)) {
+				Element type = element.getKind() == ElementKind.METHOD ? element.getEnclosingElement() : element;
+				if (type.getKind() == ElementKind.CLASS) {
+					controllers.add((TypeElement) type);
+				}
+			}
+		}
+		for (TypeElement controller : controllers) {
+			try {
+				generate(controller);
+			} catch (IOException e) {
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Failed to generate routes: " + e, controller);
+			}
+		}
+		return false;
+	}
+
+	private void generate(TypeElement controller) throws IOException {
+		Elements elements = processingEnv.getElementUtils();
+		NestingKind nesting = controller.getNestingKind();
+		if (nesting.isNested() && (nesting != NestingKind.MEMBER || !controller.getModifiers().contains(Modifier.STATIC))) {
+			note(controller, "not a top level or static nested class");
+			return;
+		}
+		for (Element type = controller; type instanceof TypeElement; type = type.getEnclosingElement()) {
+			if (type.getModifiers().contains(Modifier.PRIVATE)) {
+				note(controller, "private class");
+				return;
+			}
+		}
+
+		// class level annotations
+		String basePath = string(mirror(controller, Path.class), "value", "");
+		AnnotationMirror baseSecured = mirror(controller, Secured.class);
+		AnnotationMirror baseDeadline = mirror(controller, Deadline.class);
+		AnnotationMirror baseBulkhead = mirror(controller, Bulkhead.class);
+		AnnotationMirror baseBodyLimit = mirror(controller, BodyLimit.class);
+
+		List<String> routes = new ArrayList<>();
+		for (ExecutableElement method : ElementFilter.methodsIn(controller.getEnclosedElements())) {
+			List<String> httpMethods = new ArrayList<>();
+			String path = basePath;
+			for (AnnotationMirror annotation : method.getAnnotationMirrors()) {
+				TypeElement annotationType = (TypeElement) annotation.getAnnotationType().asElement();
+				if (annotationType.getQualifiedName().contentEquals(Path.class.getName())) {
+					path += string(annotation, "value", "");
+				}
+				AnnotationMirror httpMethod = mirror(annotationType, HttpMethod.class);
+				if (httpMethod != null) {
+					httpMethods.add(string(httpMethod, "value", null));
+				}
+			}
+			if (httpMethods.isEmpty()) {
+				continue;
+			}
+			if (method.getModifiers().contains(Modifier.PRIVATE)) {
+				note(controller, "private route " + method.getSimpleName() + "()");
+				return;
+			}
+			if (method.getParameters().size() != 1 || !method.getParameters().getFirst().asType().toString().equals(HttpContext.class.getName())) {
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Route must take a single HttpContext parameter", method);
+				return;
+			}
+
+			StringBuilder sb = new StringBuilder();
+			String target = method.getModifiers().contains(Modifier.STATIC) ? controller.getQualifiedName().toString() : "controller";
+			String call = target + "." + method.getSimpleName() + "(ctx)";
+			String methods = httpMethods.stream().map(elements::getConstantExpression).collect(Collectors.joining(", ", "java.util.List.of(", ")"));
+			sb.append("\t\t// ").append(String.join(", ", httpMethods)).append(' ').append(path).append(" -> ").append(method.getSimpleName()).append("()\n");
+			if (method.getReturnType().getKind() == TypeKind.VOID) {
+				sb.append("\t\thandler = ctx -> {\n\t\t\t").append(call).append(";\n\t\t\treturn null;\n\t\t};\n");
+			} else {
+				sb.append("\t\thandler = ctx -> ").append(call).append(";\n");
+			}
+			AnnotationMirror bulkhead = or(mirror(method, Bulkhead.class), baseBulkhead);
+			if (bulkhead != null) {
+				sb.append("\t\tbulkhead = new " + WEB + "BulkheadHandler(handler, ").append(number(bulkhead, "value")).append(", ").append(number(bulkhead, "queue")).append(", ").append(number(bulkhead, "maxWait")).append("L);\n");
+				sb.append("\t\tserver.bulkhead(").append(methods).append(", ").append(elements.getConstantExpression(path)).append(", bulkhead);\n");
+				sb.append("\t\thandler = bulkhead;\n");
+			}
+			// outside the bulkhead, so that the wait in its queue counts as well
+			AnnotationMirror deadline = or(mirror(method, Deadline.class), baseDeadline);
+			if (deadline != null) {
+				sb.append("\t\thandler = new " + WEB + "DeadlineHandler(handler, ").append(number(deadline, "value")).append("L);\n");
+			}
+			AnnotationMirror coalesce = mirror(method, Coalesce.class);
+			if (coalesce != null) {
+				sb.append("\t\thandler = new " + WEB + "CoalescingHandler(handler, ").append(number(coalesce, "maxWait")).append("L").append(strings(coalesce, "headers")).append(");\n");
+			}
+			AnnotationMirror cached = mirror(method, Cached.class);
+			if (cached != null) {
+				sb.append("\t\thandler = new " + WEB + "CachingHandler(server.responseCache(), handler, ").append(number(cached, "ttl").longValue() * 1000).append("L").append(strings(cached, "vary")).append(");\n");
+			}
+			AnnotationMirror bodyLimit = or(mirror(method, BodyLimit.class), baseBodyLimit);
+			if (bodyLimit != null) {
+				sb.append("\t\thandler = new " + WEB + "BodyLimitHandler(handler, ").append(number(bodyLimit, "value")).append("L);\n");
+			}
+			AnnotationMirror secured = or(mirror(method, Secured.class), baseSecured);
+			String securityAttribute = secured == null ? "null" : elements.getConstantExpression(string(secured, "value", ""));
+			sb.append("\t\tserver.handler(").append(methods).append(", ").append(elements.getConstantExpression(path)).append(", handler, ").append(securityAttribute).append(");\n");
+			routes.add(sb.toString());
+		}
+		if (routes.isEmpty()) {
+			return;
+		}
+
+		String packageName = elements.getPackageOf(controller).getQualifiedName().toString();
+		String binaryName = elements.getBinaryName(controller).toString();
+		String simpleName = (packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1)) + SUFFIX;
+		try (Writer writer = processingEnv.getFiler().createSourceFile(binaryName + SUFFIX, controller).openWriter()) {
+			if (!packageName.isEmpty()) {
+				writer.write("package " + packageName + ";\n\n");
+			}
+			writer.write("""
+					@javax.annotation.processing.Generated("%1$s")
+					public final class %2$s implements %3$sRoutes {
+						@Override
+						public void register(%3$sServer server, Object instance) {
+							%4$s controller = (%4$s) instance;
+							%3$sHandler handler;
+							%3$sBulkheadHandler bulkhead;
+					""".formatted(RouteProcessor.class.getName(), simpleName, WEB, controller.getQualifiedName()));
+			writer.write(String.join("\n", routes));
+			writer.write("\t}\n}\n");
+		}
+	}
+
+	private void note(TypeElement controller, String reason) {
+		processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, "Routes of " + controller.getQualifiedName() + " are registered by reflection: " + reason, controller);
+	}
+
+	private static AnnotationMirror mirror(Element element, Class<?> annotation) {
+		for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+			if (((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(annotation.getName())) {
+				return mirror;
+			}
+		}
+		return null;
+	}
+
+	private static AnnotationMirror or(AnnotationMirror mirror, AnnotationMirror defaultMirror) {
+		return mirror != null ? mirror : defaultMirror;
+	}
+
+	private Object value(AnnotationMirror mirror, String name) {
+		for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : processingEnv.getElementUtils().getElementValuesWithDefaults(mirror).entrySet()) {
+			if (entry.getKey().getSimpleName().contentEquals(name)) {
+				return entry.getValue().getValue();
+			}
+		}
+		return null;
+	}
+
+	private String string(AnnotationMirror mirror, String name, String defaultValue) {
+		return mirror == null ? defaultValue : (String) value(mirror, name);
+	}
+
+	private Number number(AnnotationMirror mirror, String name) {
+		return (Number) value(mirror, name);
+	}
+
+	// string array as trailing varargs
+	private String strings(AnnotationMirror mirror, String name) {
+		StringBuilder sb = new StringBuilder();
+		for (Object item : (List<?>) value(mirror, name)) {
+			sb.append(", ").append(processingEnv.getElementUtils().getConstantExpression(((AnnotationValue) item).getValue()));
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,16 @@
+package org.byteinfo.web;
+
+/**
+ * Route registration of a controller, generated at compile time by {@link RouteProcessor} as a class named after the
+ * controller with a "$Routes" suffix. {@link Server#handler(Class[])} uses it when present instead of reflecting over
+ * the controller.
+ */
+public interface Routes {
+	/**
+	 * Registers the routes of the controller.
+	 *
+	 * @param server the server
+	 * @param controller controller instance
+	 */
+	void register(Server server, Object controller);
+}
@@ -2,10 +2,15 @@ package org.byteinfo.web;
 
 import org.byteinfo.context.Context;
 import org.byteinfo.logging.Log;
+import org.byteinfo.logging.Rolling;
 import org.byteinfo.util.function.CheckedConsumer;
 import org.byteinfo.util.function.Unchecked;
 import org.byteinfo.util.misc.Config;
+import org.byteinfo.util.net.UnixServerSocket;
 
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSocket;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.EOFException;
@@ -19,14 +24,21 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.SocketException;
 import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
 public class Server extends Context {
@@ -47,15 +59,47 @@ public class Server extends Context {
 	// HTTP Security Attributes
 	private final Map<Handler, String> securityAttributes = new HashMap<>();
 
+	// HTTP Bulkheads: "method path" -> bulkhead
+	private final Map<String, BulkheadHandler> bulkheads = new LinkedHashMap<>();
+
 	// Global Error Handler
 	private ErrorHandler errorHandler = ErrorHandler.DEFAULT;
 
 	// HTTP Asset Handler
 	private final Handler assetHandler;
 
+	// HTTP Response Cache
+	private final ResponseCache responseCache;
+
+	// Admission Controller, null if disabled
+	private final AdmissionController admission;
+
+	// handler -> registered path, labelling the route metrics
+	private final Map<Handler, String> routes = new HashMap<>();
+
+	// request metrics, null if disabled
+	private final Metrics metrics;
+
+	// Access Log, null if disabled
+	private final AccessLog accessLog;
+
+	// heavy hitters among addresses, paths and user agents, null if disabled
+	private final HeavyHittersHandler heavyHitters;
+
+	// Open Connections: socket -> idle flag, cleared while handling a request
+	private final Map<Socket, AtomicBoolean> connections = new ConcurrentHashMap<>();
+
+	// Open HTTP/2 connections, sent GOAWAY before being closed on stop
+	private final Map<Socket, Http2Connection> http2Connections = new ConcurrentHashMap<>();
+
+	// Open WebSockets, closed with "Going Away" on stop
+	private final Set<WebSocket> webSockets = ConcurrentHashMap.newKeySet();
+
 	private final long startTime;
-	private volatile ServerSocket serverSocket;
+	private volatile List<ServerSocket> serverSockets = List.of();
+	private volatile List<ServerSocket> tlsServerSockets = List.of();
 	private volatile boolean started;
+	private volatile boolean draining;
 
 	public Server(Object... modules) throws IOException {
 		super(modules);
@@ -90,6 +134,44 @@ public class Server extends Context {
 
 		// init asset handler
 		assetHandler = new AssetHandler();
+
+		// init response cache
+		responseCache = new ResponseCache(config.getLong("cache.maxSize"));
+
+		// init admission controller
+		if (config.getBoolean("admission.enabled")) {
+			admission = new AdmissionController(config.getInt("admission.initialLimit"), config.getInt("admission.minLimit"), config.getInt("admission.maxLimit"), config.getLong("admission.tolerance"), config.getInt("admission.retryAfter"));
+		} else {
+			admission = null;
+		}
+
+		// init request metrics
+		if (config.getBoolean("metrics.enabled")) {
+			metrics = new Metrics();
+			get(config.get("metrics.path"), new MetricsHandler(metrics));
+		} else {
+			metrics = null;
+		}
+
+		// init access log
+		if (config.getBoolean("access.enabled")) {
+			Rolling rolling = switch (config.get("access.rolling").toUpperCase()) {
+				case "DAILY" -> Rolling.DAILY;
+				case "MONTHLY" -> Rolling.MONTHLY;
+				default -> Rolling.NONE;
+			};
+			accessLog = new AccessLog(config.get("access.output"), rolling, config.getInt("access.capacity"), AccessLog.Policy.valueOf(config.get("access.policy").toUpperCase()));
+		} else {
+			accessLog = null;
+		}
+
+		// init heavy hitters
+		if (config.getBoolean("hitters.enabled")) {
+			heavyHitters = new HeavyHittersHandler(config.getInt("hitters.topK"), config.getInt("hitters.width"), config.getLong("hitters.window"));
+			get(config.get("hitters.path"), heavyHitters);
+		} else {
+			heavyHitters = null;
+		}
 	}
 
 	public Server start() throws Exception {
@@ -98,53 +180,114 @@ public class Server extends Context {
 		}
 		started = true;
 
-		// start server socket
+		// start server sockets
 		Config config = AppConfig.get();
 		int port = config.getInt("http.port");
 		int backlog = config.getInt("http.backlog");
 		int bufferSize = config.getInt("tcp.bufferSize");
-		InetAddress bindAddr = InetAddress.getByName(config.get("http.bindAddr"));
-		serverSocket = new ServerSocket();
-		serverSocket.setReuseAddress(true);
-		serverSocket.setReceiveBufferSize(bufferSize);
-		serverSocket.bind(new InetSocketAddress(bindAddr, port), backlog);
-		Thread main = new Thread(Unchecked.runnable(() -> {
-			AtomicLong counter = new AtomicLong();
-			while (started) {
-				Socket socket = serverSocket.accept();
-				executor.execute(() -> {
-					long id = counter.incrementAndGet();
-					try (socket) {
-						Log.debug("Connection {} Established: {}", id, socket);
-						socket.setTcpNoDelay(true);
-						socket.setSendBufferSize(bufferSize);
-						socket.setSoTimeout(HttpContext.SESSION_TIMEOUT);
-						handleConnection(socket, id);
-						Log.debug("Connection {} Terminated.", id);
-					} catch (EOFException e) {
-						Log.debug("Connection {} Terminated: Closed by remote peer.", id);
-					} catch (SocketTimeoutException e) {
-						Log.debug("Connection {} Terminated: Socket timed out.", id);
-					} catch (Exception e) {
-						Log.error(e, "Connection {} Terminated: Uncaught Exception:", id);
-					}
-				});
+		int acceptors = Math.max(config.getInt("http.acceptors"), 1);
+		String bindAddr = config.get("http.bindAddr");
+		int httpsPort = config.getInt("https.port");
+		List<ServerSocket> serverSockets = new ArrayList<>();
+		List<ServerSocket> tlsServerSockets = new ArrayList<>();
+		if (bindAddr.startsWith("unix:")) {
+			if (httpsPort > 0) {
+				throw new IllegalStateException("https.port is not supported with a unix http.bindAddr.");
 			}
-		}));
+			ServerSocket serverSocket = new UnixServerSocket(UnixDomainSocketAddress.of(bindAddr.substring(5)), backlog);
+			serverSocket.setReceiveBufferSize(bufferSize);
+			serverSockets.add(serverSocket);
+		} else {
+			// with SO_REUSEPORT each acceptor has its own listening socket, and the kernel balances connections across them
+			InetAddress inetAddr = InetAddress.getByName(bindAddr);
+			boolean reusePort = acceptors > 1 && isReusePortBalanced();
+			for (int i = 0; i < (reusePort ? acceptors : 1); i++) {
+				ServerSocket serverSocket = new ServerSocket();
+				serverSocket.setReuseAddress(true);
+				if (reusePort) {
+					serverSocket.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+				}
+				serverSocket.setReceiveBufferSize(bufferSize);
+				serverSocket.bind(new InetSocketAddress(inetAddr, i == 0 ? port : serverSockets.getFirst().getLocalPort()), backlog);
+				serverSockets.add(serverSocket);
+			}
+			SSLContext tlsContext = httpsPort > 0 ? Tls.context(config) : null;
+			for (int i = 0; httpsPort > 0 && i < (reusePort ? acceptors : 1); i++) {
+				tlsServerSockets.add(Tls.bind(tlsContext, config, inetAddr, httpsPort, backlog, bufferSize, reusePort));
+			}
+		}
+		this.serverSockets = serverSockets;
+		this.tlsServerSockets = tlsServerSockets;
 		for (CheckedConsumer<Server> handler : onStartHandlers) {
 			handler.accept(this);
 		}
-		main.setName(getClass().getSimpleName() + "-" + port);
-		main.start();
-		Log.info("Server started in {} ms: http://127.0.0.1:{}", System.currentTimeMillis() - startTime, port);
+		AtomicLong counter = new AtomicLong();
+		startAcceptors(serverSockets, acceptors, counter, bufferSize);
+		if (bindAddr.startsWith("unix:")) {
+			Log.info("Server started in {} ms: {}", System.currentTimeMillis() - startTime, bindAddr);
+		} else {
+			Log.info("Server started in {} ms: http://127.0.0.1:{}", System.currentTimeMillis() - startTime, serverSockets.getFirst().getLocalPort());
+		}
+		if (!tlsServerSockets.isEmpty()) {
+			startAcceptors(tlsServerSockets, acceptors, counter, bufferSize);
+			Log.info("HTTPS started: https://127.0.0.1:{}", httpsPort);
+		}
 		return this;
 	}
 
+	/**
+	 * Stops the server gracefully: stops accepting new connections, closes idle connections, and waits for in-flight
+	 * requests to complete within http.drainTimeout, after which the remaining connections are closed forcibly.
+	 * Each in-flight request is answered with "Connection: close", and open WebSockets are closed with "Going Away".
+	 *
+	 * @return current server
+	 * @throws IOException if an io error occurs
+	 */
 	public Server stop() throws IOException {
 		if (started) {
 			started = false;
-			serverSocket.close();
+			draining = true;
+			for (ServerSocket serverSocket : serverSockets) {
+				serverSocket.close();
+			}
+			for (ServerSocket serverSocket : tlsServerSockets) {
+				serverSocket.close();
+			}
+			for (WebSocket webSocket : webSockets) {
+				try {
+					webSocket.close(WebSocketCodec.GOING_AWAY, "");
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+
+			// drain connections
+			long deadline = System.currentTimeMillis() + AppConfig.get().getLong("http.drainTimeout");
+			while (!connections.isEmpty() && System.currentTimeMillis() < deadline) {
+				closeConnections(false);
+				try {
+					Thread.sleep(10);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+			if (!connections.isEmpty()) {
+				Log.warn("Closing {} connections forcibly.", connections.size());
+				closeConnections(true);
+				executor.shutdownNow();
+			}
 			executor.close();
+			if (heavyHitters != null) {
+				heavyHitters.close();
+			}
+			if (accessLog != null) {
+				try {
+					accessLog.close();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
 			for (CheckedConsumer<Server> handler : onStopHandlers) {
 				try {
 					handler.accept(this);
@@ -185,12 +328,30 @@ public class Server extends Context {
 		return handler(HttpMethod.DELETE, path, handler);
 	}
 
+	/**
+	 * Registers a WebSocket endpoint, the opening handshake passes through the filters like a regular GET request.
+	 *
+	 * @param path WebSocket path
+	 * @param handler WebSocket handler
+	 * @return current server
+	 */
+	public Server websocket(String path, WebSocketHandler handler) {
+		return get(path, ctx -> {
+			ctx.upgrade(handler);
+			return null;
+		});
+	}
+
 	public Server handler(String method, String path, Handler handler) {
 		return handler(List.of(method), path, handler, null);
 	}
 
 	public Server handler(List<String> methods, String path, Handler handler, String securityAttribute) {
 		ensureNotStarted();
+		if (handler instanceof BulkheadHandler bulkhead) {
+			bulkhead(methods, path, bulkhead);
+		}
+		routes.put(handler, path);
 		Map<String, Map<String, Handler>> handlers = exactHandlers;
 		if (path.endsWith("*")) {
 			path = path.substring(0, path.length() - 1);
@@ -203,13 +364,25 @@ public class Server extends Context {
 		return this;
 	}
 
+	/**
+	 * Registers the routes of the controllers, with the routes generated by {@link RouteProcessor} if present, or by
+	 * reflection otherwise.
+	 */
 	public Server handler(Class<?>... classes) {
 		ensureNotStarted();
 		for (Class<?> clazz : classes) {
+			Routes routes = routes(clazz);
+			if (routes != null) {
+				routes.register(this, instance(clazz));
+				continue;
+			}
 			Path basePath = clazz.getAnnotation(Path.class);
 			String path = basePath == null ? "" : basePath.value();
 			Secured baseSecured = clazz.getAnnotation(Secured.class);
 			String secured = baseSecured == null ? null : baseSecured.value();
+			Deadline baseDeadline = clazz.getAnnotation(Deadline.class);
+			Bulkhead baseBulkhead = clazz.getAnnotation(Bulkhead.class);
+			BodyLimit baseBodyLimit = clazz.getAnnotation(BodyLimit.class);
 			for (Method method : clazz.getDeclaredMethods()) {
 				List<String> httpMethods = new ArrayList<>();
 				String currentPath = path;
@@ -221,8 +394,34 @@ public class Server extends Context {
 						httpMethods.add(annotation.annotationType().getAnnotation(HttpMethod.class).value());
 					}
 				}
+				if (httpMethods.isEmpty()) {
+					continue;
+				}
 
-				MVCHandler mvcHandler = new MVCHandler(instance(clazz), method);
+				Handler mvcHandler = new MVCHandler(instance(clazz), method);
+				Bulkhead bulkhead = method.isAnnotationPresent(Bulkhead.class) ? method.getAnnotation(Bulkhead.class) : baseBulkhead;
+				if (bulkhead != null) {
+					BulkheadHandler bulkheadHandler = new BulkheadHandler(mvcHandler, bulkhead.value(), bulkhead.queue(), bulkhead.maxWait());
+					bulkhead(httpMethods, currentPath, bulkheadHandler);
+					mvcHandler = bulkheadHandler;
+				}
+				// outside the bulkhead, so that the wait in its queue counts as well
+				Deadline deadline = method.isAnnotationPresent(Deadline.class) ? method.getAnnotation(Deadline.class) : baseDeadline;
+				if (deadline != null) {
+					mvcHandler = new DeadlineHandler(mvcHandler, deadline.value());
+				}
+				Coalesce coalesce = method.getAnnotation(Coalesce.class);
+				if (coalesce != null) {
+					mvcHandler = new CoalescingHandler(mvcHandler, coalesce.maxWait(), coalesce.headers());
+				}
+				Cached cached = method.getAnnotation(Cached.class);
+				if (cached != null) {
+					mvcHandler = new CachingHandler(responseCache, mvcHandler, cached.ttl() * 1000, cached.vary());
+				}
+				BodyLimit bodyLimit = method.isAnnotationPresent(BodyLimit.class) ? method.getAnnotation(BodyLimit.class) : baseBodyLimit;
+				if (bodyLimit != null) {
+					mvcHandler = new BodyLimitHandler(mvcHandler, bodyLimit.value());
+				}
 				Secured annotation = method.getAnnotation(Secured.class);
 				String securityAttribute = annotation == null ? secured : annotation.value();
 				handler(httpMethods, currentPath, mvcHandler, securityAttribute);
@@ -265,114 +464,463 @@ public class Server extends Context {
 		return encoder(type, instance(clazz));
 	}
 
+	public ResponseCache responseCache() {
+		return responseCache;
+	}
+
+	public AdmissionController admission() {
+		return admission;
+	}
+
+	/**
+	 * Gets the request metrics.
+	 *
+	 * @return the metrics, or null if metrics.enabled is not set
+	 */
+	public Metrics metrics() {
+		return metrics;
+	}
+
+	/**
+	 * Gets the access log.
+	 *
+	 * @return the access log, or null if access.enabled is not set
+	 */
+	public AccessLog accessLog() {
+		return accessLog;
+	}
+
+	/**
+	 * Gets the heavy hitters tracker.
+	 *
+	 * @return the tracker, or null if hitters.enabled is not set
+	 */
+	public HeavyHittersHandler heavyHitters() {
+		return heavyHitters;
+	}
+
+	/**
+	 * Gets the registered bulkheads.
+	 *
+	 * @return "method path" -> bulkhead
+	 */
+	public Map<String, BulkheadHandler> bulkheads() {
+		return Collections.unmodifiableMap(bulkheads);
+	}
+
+	/**
+	 * Registers a bulkhead wrapped by another handler, so that it is listed by {@link #bulkheads()}.
+	 */
+	public void bulkhead(List<String> methods, String path, BulkheadHandler bulkhead) {
+		for (String method : methods) {
+			bulkheads.put(method + " " + path, bulkhead);
+		}
+	}
+
+	// loads the routes generated for the controller
+	private static Routes routes(Class<?> clazz) {
+		Class<?> generated;
+		try {
+			generated = Class.forName(clazz.getName() + RouteProcessor.SUFFIX, true, clazz.getClassLoader());
+		} catch (ClassNotFoundException e) {
+			return null;
+		}
+		try {
+			return (Routes) generated.getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Failed to load generated routes: " + generated.getName(), e);
+		}
+	}
+
+	// starts the acceptors over the listening sockets, which are shared if there are fewer sockets than acceptors
+	private void startAcceptors(List<ServerSocket> serverSockets, int acceptors, AtomicLong counter, int bufferSize) {
+		for (int i = 0; i < acceptors; i++) {
+			Thread acceptor = acceptor(serverSockets.get(i % serverSockets.size()), counter, bufferSize);
+			if (acceptors > 1) {
+				acceptor.setName(acceptor.getName() + "-" + i);
+			}
+			acceptor.start();
+		}
+	}
+
+	// SO_REUSEPORT balances new connections across the listening sockets on Linux only
+	private static boolean isReusePortBalanced() throws IOException {
+		if (!System.getProperty("os.name").startsWith("Linux")) {
+			return false;
+		}
+		try (ServerSocket serverSocket = new ServerSocket()) {
+			return serverSocket.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+		}
+	}
+
+	private Thread acceptor(ServerSocket serverSocket, AtomicLong counter, int bufferSize) {
+		Thread acceptor = new Thread(Unchecked.runnable(() -> {
+			while (started) {
+				Socket socket;
+				try {
+					socket = serverSocket.accept();
+				} catch (SocketException e) {
+					if (!started) {
+						break; // stopped
+					}
+					throw e;
+				}
+				if (admission != null && !admission.admit()) {
+					if (socket instanceof SSLSocket) {
+						socket.close(); // no handshake for rejected connections
+					} else {
+						admission.reject(socket);
+					}
+					continue;
+				}
+				executor.execute(() -> {
+					long id = counter.incrementAndGet();
+					AtomicBoolean idle = new AtomicBoolean(true);
+					connections.put(socket, idle);
+					try (socket) {
+						Log.debug("Connection {} Established: {}", id, socket);
+						socket.setTcpNoDelay(true);
+						socket.setSendBufferSize(bufferSize);
+						socket.setSoTimeout(HttpContext.SESSION_TIMEOUT);
+						if (socket instanceof SSLSocket tls) {
+							tls.startHandshake();
+						}
+						handleConnection(socket, id, idle);
+						Log.debug("Connection {} Terminated.", id);
+					} catch (EOFException e) {
+						Log.debug("Connection {} Terminated: Closed by remote peer.", id);
+					} catch (SocketTimeoutException e) {
+						Log.debug("Connection {} Terminated: Socket timed out.", id);
+					} catch (SSLException e) {
+						Log.debug("Connection {} Terminated: TLS failure: {}", id, e.toString());
+					} catch (Exception e) {
+						if (draining && e instanceof SocketException) {
+							Log.debug("Connection {} Terminated: Closed by server.", id);
+						} else {
+							Log.error(e, "Connection {} Terminated: Uncaught Exception:", id);
+						}
+					} finally {
+						connections.remove(socket);
+					}
+				});
+			}
+		}));
+		acceptor.setName(getClass().getSimpleName() + "-" + (serverSocket instanceof UnixServerSocket unix ? unix.path().getFileName() : serverSocket.getLocalPort()));
+		return acceptor;
+	}
+
+	private void closeConnections(boolean force) {
+		for (Map.Entry<Socket, AtomicBoolean> entry : connections.entrySet()) {
+			if (force || entry.getValue().compareAndSet(true, false)) {
+				Http2Connection http2 = http2Connections.get(entry.getKey());
+				if (http2 != null) {
+					http2.shutdown();
+				}
+				try {
+					entry.getKey().close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+	}
+
 	private void ensureNotStarted() {
 		if (started) {
 			throw new IllegalStateException("Server has already started.");
 		}
 	}
 
-	private void handleConnection(Socket socket, long connectionId) throws Exception {
+	private Handler findHandler(String path, String method) {
+		Handler handler = exactHandlers.getOrDefault(path, Map.of()).get(method);
+		if (handler == null) {
+			for (Map.Entry<String, Map<String, Handler>> entry : genericHandlers.entrySet()) {
+				if (path.startsWith(entry.getKey())) {
+					handler = entry.getValue().get(method);
+					break;
+				}
+			}
+		}
+		return handler;
+	}
+
+	private void handleConnection(Socket socket, long connectionId, AtomicBoolean idle) throws Exception {
 		InputStream in = new BufferedInputStream(socket.getInputStream());
 		OutputStream out = new BufferedOutputStream(socket.getOutputStream());
 		AtomicLong counter = new AtomicLong();
 		while (true) {
-			HttpContext ctx = null;
-			Handler handler = null;
-			Object result = null;
-			Throwable th = null;
+			// parse request
+			HttpContext ctx;
 			try {
-				// parse request
 				String contextId = connectionId + "#" + counter.incrementAndGet();
-				ctx = new HttpContext(contextId, socket, out, encoders, HttpCodec.parseRequest(in));
-				Log.debug("{}: {} {}://{}{} IP={}", ctx.id(), ctx.method(), ctx.scheme(), ctx.host(), ctx.target(), ctx.address());
-
-				// search for handler: exact handler > generic handler > asset handler
-				handler = exactHandlers.getOrDefault(ctx.path(), Map.of()).get(ctx.method());
-				if (handler == null) {
-					for (Map.Entry<String, Map<String, Handler>> entry : genericHandlers.entrySet()) {
-						if (ctx.path().startsWith(entry.getKey())) {
-							handler = entry.getValue().get(ctx.method());
-							break;
-						}
+				long parseStart = 0;
+				if (HttpRequestEvent.enabled() || admission != null) { // wait for the first byte, to time the parsing and the admission wait only
+					in.mark(1);
+					if (in.read() == -1) {
+						throw new EOFException();
 					}
+					in.reset();
+					parseStart = System.nanoTime();
 				}
-				if (handler != null) {
-					ctx.setSecurityAttribute(securityAttributes.get(handler));
-				}
-				if (handler == null) {
-					handler = assetHandler;
+				Request request = HttpCodec.parseRequest(in);
+				if (!idle.compareAndSet(true, false)) {
+					// closed by draining
+					break;
 				}
 
-				// apply before filters
-				for (Filter filter : filters) {
-					filter.before(ctx, handler);
-					if (ctx.isCommitted()) {
+				// switch to HTTP/2 with prior knowledge or upgrade
+				if (Http2Connection.ENABLED) {
+					if ("PRI".equals(request.method()) && "*".equals(request.target())) {
+						serveHttp2(new Http2Connection(this, socket, in, out, connectionId, idle, encoders), null, null);
 						break;
 					}
-				}
-
-				// handle request
-				if (!ctx.isCommitted()) {
-					result = handler.handle(ctx);
-
-					// apply after filters
-					for (Filter filter : filters.reversed()) {
-						filter.after(ctx, handler, result);
-						if (ctx.isCommitted()) {
+					String upgrade = request.headers().get(HeaderName.UPGRADE);
+					if (upgrade != null && upgrade.contains("h2c") && !(socket instanceof SSLSocket) && request.length() == 0) {
+						byte[] settings = Http2Connection.decodeSettings(request.headers().get("http2-settings"));
+						if (settings != null) {
+							serveHttp2(new Http2Connection(this, socket, in, out, connectionId, idle, encoders), request, settings);
 							break;
 						}
 					}
 				}
+
+				// defer "Expect: 100-continue" until the body is read
+				if (request.length() != 0 && HeaderValue.CONTINUE.equalsIgnoreCase(request.headers().get(HeaderName.EXPECT))) {
+					request = new Request(request.method(), request.target(), request.path(), request.query(), request.headers(), request.length(), new ContinueInputStream(request.body(), out));
+				}
+
+				ctx = new HttpContext(contextId, socket, out, encoders, request);
+				if (parseStart != 0) {
+					ctx.setParseTime(System.nanoTime() - parseStart);
+					ctx.setReceivedAt(parseStart);
+				}
+			} catch (EOFException e) {
+				throw e;
 			} catch (Exception e) {
-				th = e;
-				if (e instanceof InvocationTargetException ex && ex.getCause() != null) {
-					th = ex.getCause();
-				}
-				if (th instanceof EOFException eof) {
-					throw eof;
-				}
-				if (ctx == null) {
-					try {
-						HttpCodec.send(out, StatusCode.BAD_REQUEST);
-					} catch (Exception ex) {
-						// ignore
+				try {
+					HttpCodec.send(out, StatusCode.BAD_REQUEST);
+				} catch (Exception ex) {
+					// ignore
+				}
+				throw e;
+			}
+
+			handleRequest(ctx);
+
+			// switch to WebSocket
+			WebSocket webSocket = ctx.webSocket();
+			if (webSocket != null) {
+				webSockets.add(webSocket);
+				try {
+					if (draining) {
+						webSocket.close(WebSocketCodec.GOING_AWAY, "");
 					}
-					throw e;
+					webSocket.run(in);
+				} finally {
+					webSockets.remove(webSocket);
+				}
+				break;
+			}
+
+			// close current connection
+			if (draining || HeaderValue.CLOSE.equals(ctx.headers().get(HeaderName.CONNECTION)) || HeaderValue.CLOSE.equals(ctx.responseHeaders().get(HeaderName.CONNECTION))) {
+				break;
+			}
+			idle.set(true);
+		}
+	}
+
+	private void serveHttp2(Http2Connection connection, Request upgrade, byte[] settings) throws IOException {
+		http2Connections.put(connection.socket(), connection);
+		try {
+			connection.serve(upgrade, settings);
+		} finally {
+			http2Connections.remove(connection.socket());
+		}
+	}
+
+	void handleRequest(HttpContext ctx) throws Exception {
+		Handler handler = null;
+		Object result = null;
+		Throwable th = null;
+		HttpRequestEvent event = new HttpRequestEvent();
+		event.begin();
+		boolean measured = metrics != null || accessLog != null || event.isEnabled();
+		long start = measured ? System.nanoTime() : 0;
+		long routed = start;
+		long filtered = start;
+		long handled = start;
+		HttpContext.CURRENT.set(ctx);
+		ctx.setMeasured(measured);
+		if (heavyHitters != null) {
+			heavyHitters.record(ctx);
+		}
+		try {
+			Log.debug("{}: {} {}://{}{} IP={}", ctx.id(), ctx.method(), ctx.scheme(), ctx.host(), ctx.target(), ctx.address());
+
+			// search for handler: exact handler > generic handler > asset handler, HEAD falls back to GET
+			handler = findHandler(ctx.path(), ctx.method());
+			if (handler == null && HttpMethod.HEAD.equals(ctx.method())) {
+				handler = findHandler(ctx.path(), HttpMethod.GET);
+			}
+			if (handler != null) {
+				ctx.setSecurityAttribute(securityAttributes.get(handler));
+			}
+			if (handler == null) {
+				handler = assetHandler;
+			}
+			if (measured) {
+				routed = System.nanoTime();
+			}
+
+			// admission control
+			if (admission != null) {
+				if (admission.tryAcquire(System.nanoTime() - ctx.receivedAt())) {
+					ctx.setPermit(admission::release);
 				} else {
-					try {
-						result = errorHandler.handle(ctx, th);
-					} catch (Exception ex) {
-						Log.error(e, "Failed to apply error handler: {}: {} {}://{}{} IP={}, UA={}", ctx.id(), ctx.method(), ctx.scheme(), ctx.host(), ctx.target(), ctx.address(), ctx.userAgent());
-					}
+					ctx.setResponseStatus(StatusCode.SERVICE_UNAVAILABLE);
+					ctx.setResponseType(ContentType.TEXT);
+					ctx.responseHeaders().set(HeaderName.RETRY_AFTER, String.valueOf(admission.retryAfter()));
+					ctx.commit("ERROR: " + StatusCode.SERVICE_UNAVAILABLE);
 				}
-			} finally {
-				if (ctx != null) {
-					// send response
-					if (!ctx.isCommitted()) {
-						ctx.commit(result);
-					}
-					Log.debug("{}: {} {}", ctx.id(), ctx.responseStatus(), ctx.responseLength());
-
-					// apply complete filters
-					for (Filter filter : filters) {
-						try {
-							filter.complete(ctx, handler, th);
-						} catch (Exception e) {
-							Log.error(e, "Failed to apply filter: {}: {} {}://{}{} IP={}, UA={}", ctx.id(), ctx.method(), ctx.scheme(), ctx.host(), ctx.target(), ctx.address(), ctx.userAgent());
-						}
+			}
+
+			// apply before filters
+			for (Filter filter : filters) {
+				if (ctx.isCommitted()) {
+					break;
+				}
+				FilterEvent filterEvent = new FilterEvent();
+				filterEvent.begin();
+				filter.before(ctx, handler);
+				commit(filterEvent, ctx, filter, "before");
+			}
+			if (measured) {
+				filtered = System.nanoTime();
+			}
+
+			// handle request
+			if (!ctx.isCommitted()) {
+				result = handler.handle(ctx);
+
+				// apply after filters
+				for (Filter filter : filters.reversed()) {
+					FilterEvent filterEvent = new FilterEvent();
+					filterEvent.begin();
+					filter.after(ctx, handler, result);
+					commit(filterEvent, ctx, filter, "after");
+					if (ctx.isCommitted()) {
+						break;
 					}
+				}
+			}
+		} catch (Exception e) {
+			th = e;
+			if (e instanceof InvocationTargetException ex && ex.getCause() != null) {
+				th = ex.getCause();
+			}
+			if (th instanceof EOFException eof) {
+				throw eof;
+			}
+			try {
+				result = errorHandler.handle(ctx, th);
+			} catch (Exception ex) {
+				Log.error(e, "Failed to apply error handler: {}: {} {}://{}{} IP={}, UA={}", ctx.id(), ctx.method(), ctx.scheme(), ctx.host(), ctx.target(), ctx.address(), ctx.userAgent());
+			}
+		} finally {
+			if (measured) {
+				handled = System.nanoTime();
+			}
 
-					// discard possible pending request body
-					try (var body = ctx.body()) {
-						body.transferTo(OutputStream.nullOutputStream());
+			// send response
+			try {
+				if (!ctx.isCommitted()) {
+					if (draining) {
+						ctx.responseHeaders().set(HeaderName.CONNECTION, HeaderValue.CLOSE);
 					}
+					ctx.commit(result);
+				}
+			} finally {
+				ctx.releasePermit();
+			}
+			Log.debug("{}: {} {}", ctx.id(), ctx.responseStatus(), ctx.responseLength());
+
+			// record metrics, access log and JFR event, the encode phase is folded into the handler if the response was sent by the handler
+			if (measured) {
+				long committed = System.nanoTime();
+				long encoded = ctx.encodedAt() > handled ? ctx.encodedAt() : handled;
+				filtered = Math.max(filtered, routed); // failed in before filters
+				String route = handler == assetHandler ? "asset" : routes.getOrDefault(handler, "unmatched");
+				if (metrics != null) {
+					metrics.record(methodLabel(ctx.method()), route, ctx.responseStatus(), ctx.length(), ctx.bytesSent(), routed - start, filtered - routed, handled - filtered, encoded - handled, committed - encoded);
+				}
+				if (accessLog != null) {
+					accessLog.log(ctx, committed - start, ctx.bytesSent());
+				}
+				event.end();
+				if (event.shouldCommit()) {
+					event.id = ctx.id();
+					event.method = ctx.method();
+					event.target = ctx.target();
+					event.route = route;
+					event.status = ctx.responseStatus();
+					event.responseBytes = ctx.bytesSent();
+					event.parse = ctx.parseTime();
+					event.routing = routed - start;
+					event.filters = filtered - routed;
+					event.handler = handled - filtered;
+					event.encode = encoded - handled;
+					event.send = committed - encoded;
+					event.commit();
 				}
 			}
 
-			// close current connection
-			if (HeaderValue.CLOSE.equals(ctx.headers().get(HeaderName.CONNECTION))) {
-				break;
+			// apply complete filters
+			for (Filter filter : filters) {
+				try {
+					FilterEvent filterEvent = new FilterEvent();
+					filterEvent.begin();
+					filter.complete(ctx, handler, th);
+					commit(filterEvent, ctx, filter, "complete");
+				} catch (Exception e) {
+					Log.error(e, "Failed to apply filter: {}: {} {}://{}{} IP={}, UA={}", ctx.id(), ctx.method(), ctx.scheme(), ctx.host(), ctx.target(), ctx.address(), ctx.userAgent());
+				}
+			}
+
+			// discard possible pending request body, unless the HTTP/1.1 connection is to be closed, HTTP/2 streams are reset instead
+			HttpContext.CURRENT.remove();
+			if (!(ctx instanceof Http2Context) && !HeaderValue.CLOSE.equals(ctx.responseHeaders().get(HeaderName.CONNECTION))) {
+				try (var body = ctx.body()) {
+					body.transferTo(OutputStream.nullOutputStream());
+				}
 			}
 		}
 	}
+
+	private static void commit(FilterEvent event, HttpContext ctx, Filter filter, String stage) {
+		event.end();
+		if (event.shouldCommit()) {
+			event.id = ctx.id();
+			event.filter = filter.getClass();
+			event.stage = stage;
+			event.committed = ctx.isCommitted();
+			event.commit();
+		}
+	}
+
+	// bounds the method label of metrics to the known methods
+	private static String methodLabel(String method) {
+		return switch (method) {
+			case HttpMethod.GET, HttpMethod.POST, HttpMethod.PUT, HttpMethod.DELETE, HttpMethod.HEAD, HttpMethod.OPTIONS, HttpMethod.TRACE -> method;
+			default -> "OTHER";
+		};
+	}
+
+	void dispatch(Runnable task) {
+		executor.execute(task);
+	}
+
+	boolean isDraining() {
+		return draining;
+	}
 }
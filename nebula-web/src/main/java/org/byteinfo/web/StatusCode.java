@@ -1,7 +1,11 @@
 package org.byteinfo.web;
 
 public interface StatusCode {
+	int CONTINUE = 100;
+	int SWITCHING_PROTOCOLS = 101;
+
 	int OK = 200;
+	int NO_CONTENT = 204;
 
 	int MOVED_PERMANENTLY = 301;
 	int SEE_OTHER = 303;
@@ -11,6 +15,13 @@ public interface StatusCode {
 	int UNAUTHENTICATED = 401;
 	int UNAUTHORIZED = 403;
 	int NOT_FOUND = 404;
+	int CONTENT_TOO_LARGE = 413;
+	int UNSUPPORTED_MEDIA_TYPE = 415;
+	int UPGRADE_REQUIRED = 426;
+	int TOO_MANY_REQUESTS = 429;
 
 	int INTERNAL_SERVER_ERROR = 500;
+	int BAD_GATEWAY = 502;
+	int SERVICE_UNAVAILABLE = 503;
+	int GATEWAY_TIMEOUT = 504;
 }
@@ -0,0 +1,4 @@
+package org.byteinfo.web;
+
+public record StatusLine(String version, int status, String reason) {
+}
@@ -0,0 +1,113 @@
+package org.byteinfo.web;
+
+import org.byteinfo.util.misc.Config;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSessionContext;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.util.Arrays;
+
+/**
+ * TLS listener configured by the https.* properties.
+ * <p>
+ * Sessions are resumed from the server session cache (TLS 1.2) or from stateless session tickets (TLS 1.3, enabled by
+ * jdk.tls.server.enableSessionTicketExtension by default), and h2 is offered through ALPN if HTTP/2 is enabled.
+ * Accepted sockets are not handshaken yet, the handshake runs on the virtual thread of the connection.
+ */
+final class Tls {
+	private Tls() {
+	}
+
+	/**
+	 * Creates the server SSL context, to be shared by all the TLS server sockets so that they share the session cache
+	 * and the session ticket keys.
+	 *
+	 * @param config app config
+	 * @return server SSL context
+	 * @throws Exception if the key store cannot be loaded
+	 */
+	static SSLContext context(Config config) throws Exception {
+		SSLContext context = SSLContext.getInstance("TLS");
+		context.init(loadKeyStore(config).getKeyManagers(), null, null);
+		SSLSessionContext sessions = context.getServerSessionContext();
+		sessions.setSessionCacheSize(config.getInt("https.sessionCacheSize"));
+		sessions.setSessionTimeout(config.getInt("https.sessionTimeout"));
+		return context;
+	}
+
+	/**
+	 * Creates a bound TLS server socket.
+	 *
+	 * @param context server SSL context
+	 * @param config app config
+	 * @param bindAddr bind address
+	 * @param port listen port
+	 * @param backlog listen backlog
+	 * @param bufferSize receive buffer size
+	 * @param reusePort whether to set SO_REUSEPORT
+	 * @return bound server socket
+	 * @throws IOException if the socket cannot be bound
+	 */
+	static SSLServerSocket bind(SSLContext context, Config config, InetAddress bindAddr, int port, int backlog, int bufferSize, boolean reusePort) throws IOException {
+		SSLServerSocket serverSocket = (SSLServerSocket) context.getServerSocketFactory().createServerSocket();
+		SSLParameters params = serverSocket.getSSLParameters();
+		params.setProtocols(split(config.get("https.protocols")));
+		String[] cipherSuites = split(config.get("https.cipherSuites"));
+		if (cipherSuites.length > 0) {
+			params.setCipherSuites(cipherSuites);
+		}
+		params.setUseCipherSuitesOrder(true);
+		params.setApplicationProtocols(Http2Connection.ENABLED ? new String[] {"h2", "http/1.1"} : new String[] {"http/1.1"});
+		serverSocket.setSSLParameters(params);
+		serverSocket.setReuseAddress(true);
+		if (reusePort) {
+			serverSocket.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+		}
+		serverSocket.setReceiveBufferSize(bufferSize);
+		serverSocket.bind(new InetSocketAddress(bindAddr, port), backlog);
+		return serverSocket;
+	}
+
+	private static KeyManagerFactory loadKeyStore(Config config) throws Exception {
+		String path = config.get("https.keyStore");
+		if (path == null || path.isBlank()) {
+			throw new IllegalStateException("https.keyStore is required by https.port.");
+		}
+		char[] password = config.get("https.keyStorePassword", "").toCharArray();
+		KeyStore keyStore = KeyStore.getInstance(config.get("https.keyStoreType"));
+		try (InputStream in = open(path)) {
+			keyStore.load(in, password);
+		}
+		KeyManagerFactory factory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+		factory.init(keyStore, password);
+		return factory;
+	}
+
+	// file path or class path resource
+	private static InputStream open(String path) throws IOException {
+		Path file = Path.of(path);
+		if (Files.isRegularFile(file)) {
+			return Files.newInputStream(file);
+		}
+		InputStream in = ClassLoader.getSystemResourceAsStream(path);
+		if (in == null) {
+			throw new FileNotFoundException("Key store not found: " + path);
+		}
+		return in;
+	}
+
+	private static String[] split(String value) {
+		return value == null ? new String[0] : Arrays.stream(value.split(",")).map(String::trim).filter(s -> !s.isEmpty()).toArray(String[]::new);
+	}
+}
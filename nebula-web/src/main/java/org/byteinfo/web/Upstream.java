@@ -0,0 +1,215 @@
+package org.byteinfo.web;
+
+import org.byteinfo.logging.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An upstream server of {@link ProxyHandler} with its pool of keep-alive connections. Idle connections are reused
+ * most recently released first, so that the least used ones expire after proxy.idleTimeout.
+ */
+public class Upstream {
+	public static final int MAX_IDLE = AppConfig.get().getInt("proxy.maxIdle");
+	public static final long IDLE_TIMEOUT = AppConfig.get().getLong("proxy.idleTimeout");
+	public static final int CONNECT_TIMEOUT = AppConfig.get().getInt("proxy.connectTimeout");
+	public static final int READ_TIMEOUT = AppConfig.get().getInt("proxy.readTimeout");
+
+	private final String host;
+	private final int port;
+	private final String authority;
+	private final AtomicInteger outstanding = new AtomicInteger();
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Deque<Connection> idle = new ArrayDeque<>();
+	private volatile boolean healthy = true;
+	private boolean closed;
+
+	/**
+	 * Creates a new Upstream.
+	 *
+	 * @param uri upstream uri, e.g. http://127.0.0.1:8080
+	 */
+	public Upstream(String uri) {
+		URI u = URI.create(uri);
+		if (!"http".equals(u.getScheme()) || u.getHost() == null) {
+			throw new IllegalArgumentException("Invalid upstream: " + uri + " (expected: http://host[:port])");
+		}
+		this.host = u.getHost();
+		this.port = u.getPort() == -1 ? 80 : u.getPort();
+		this.authority = u.getPort() == -1 ? host : host + ":" + port;
+	}
+
+	public String authority() {
+		return authority;
+	}
+
+	/**
+	 * Gets the number of requests in flight, from sending the request until its response body is consumed.
+	 */
+	public int outstanding() {
+		return outstanding.get();
+	}
+
+	public int idle() {
+		lock.lock();
+		try {
+			return idle.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public boolean isHealthy() {
+		return healthy;
+	}
+
+	void setHealthy(boolean healthy) {
+		if (this.healthy != healthy) {
+			this.healthy = healthy;
+			if (healthy) {
+				Log.info("Upstream is up: {}", authority);
+			} else {
+				Log.warn("Upstream is down: {}", authority);
+				evict(0);
+			}
+		}
+	}
+
+	// takes an idle connection or opens a new one, counted as outstanding until released or discarded
+	Connection acquire() throws IOException {
+		outstanding.incrementAndGet();
+		Connection conn;
+		lock.lock();
+		try {
+			conn = idle.pollFirst();
+		} finally {
+			lock.unlock();
+		}
+		if (conn != null && System.currentTimeMillis() - conn.idleSince < IDLE_TIMEOUT) {
+			conn.reused = true;
+			return conn;
+		}
+		if (conn != null) {
+			conn.close();
+		}
+		outstanding.decrementAndGet();
+		return open();
+	}
+
+	// opens a new connection bypassing the idle ones, counted as outstanding until released or discarded
+	Connection open() throws IOException {
+		outstanding.incrementAndGet();
+		try {
+			return connect();
+		} catch (IOException e) {
+			outstanding.decrementAndGet();
+			throw e;
+		}
+	}
+
+	// returns the connection with its response fully read to the pool
+	void release(Connection conn) {
+		outstanding.decrementAndGet();
+		conn.idleSince = System.currentTimeMillis();
+		lock.lock();
+		try {
+			if (!closed && healthy && idle.size() < MAX_IDLE) {
+				idle.addFirst(conn);
+				return;
+			}
+		} finally {
+			lock.unlock();
+		}
+		conn.close();
+	}
+
+	// closes the connection which cannot be reused
+	void discard(Connection conn) {
+		outstanding.decrementAndGet();
+		conn.close();
+	}
+
+	// closes the idle connections unused for the timeout
+	void evict(long timeout) {
+		long now = System.currentTimeMillis();
+		while (true) {
+			Connection conn;
+			lock.lock();
+			try {
+				conn = idle.peekLast();
+				if (conn == null || now - conn.idleSince < timeout) {
+					return;
+				}
+				idle.pollLast();
+			} finally {
+				lock.unlock();
+			}
+			conn.close();
+		}
+	}
+
+	Connection connect() throws IOException {
+		Socket socket = new Socket();
+		try {
+			socket.setTcpNoDelay(true);
+			socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT);
+			socket.setSoTimeout(READ_TIMEOUT);
+			return new Connection(socket);
+		} catch (IOException e) {
+			socket.close();
+			throw e;
+		}
+	}
+
+	void close() {
+		lock.lock();
+		try {
+			closed = true;
+		} finally {
+			lock.unlock();
+		}
+		evict(0);
+	}
+
+	@Override
+	public String toString() {
+		return "Upstream[" + authority + ", healthy=" + healthy + ", outstanding=" + outstanding + ", idle=" + idle() + "]";
+	}
+
+	/**
+	 * A keep-alive connection to the upstream.
+	 */
+	static class Connection implements Closeable {
+		final Socket socket;
+		final InputStream in;
+		final OutputStream out;
+		boolean reused;
+		long idleSince;
+
+		Connection(Socket socket) throws IOException {
+			this.socket = socket;
+			this.in = new BufferedInputStream(socket.getInputStream());
+			this.out = new BufferedOutputStream(socket.getOutputStream());
+		}
+
+		@Override
+		public void close() {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+}
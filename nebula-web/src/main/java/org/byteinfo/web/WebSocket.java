@@ -0,0 +1,318 @@
+package org.byteinfo.web;
+
+import org.byteinfo.logging.Log;
+import org.byteinfo.util.time.Timeout;
+import org.byteinfo.util.time.WheelTimer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * WebSocket connection upgraded from an HTTP/1.1 request by {@link HttpContext#upgrade(WebSocketHandler)}.
+ * <p>
+ * Messages are received on the virtual thread of the connection, and may be sent from any thread.
+ *
+ * @see <a href="https://www.rfc-editor.org/rfc/rfc6455">RFC 6455: The WebSocket Protocol</a>
+ */
+public class WebSocket {
+	public static final int MAX_MESSAGE_SIZE = AppConfig.get().getInt("websocket.maxMessageSize");
+	public static final int PING_INTERVAL = AppConfig.get().getInt("websocket.pingInterval");
+	public static final int CLOSE_TIMEOUT = AppConfig.get().getInt("websocket.closeTimeout");
+
+	private final HttpContext ctx;
+	private final Socket socket;
+	private final OutputStream out;
+	private final WebSocketHandler handler;
+	private final ReentrantLock lock = new ReentrantLock();
+	private volatile boolean closeSent;
+	private volatile boolean closed;
+	private volatile Timeout pingTimeout;
+
+	WebSocket(HttpContext ctx, Socket socket, OutputStream out, WebSocketHandler handler) {
+		this.ctx = ctx;
+		this.socket = socket;
+		this.out = out;
+		this.handler = handler;
+	}
+
+	public String id() {
+		return ctx.id();
+	}
+
+	/**
+	 * Gets the context of the opening handshake.
+	 *
+	 * @return handshake context
+	 */
+	public HttpContext context() {
+		return ctx;
+	}
+
+	public boolean isOpen() {
+		return !closeSent && !closed;
+	}
+
+	public void send(String text) throws IOException {
+		sendFrame(WebSocketCodec.encode(WebSocketCodec.TEXT, text.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	public void send(byte[] data) throws IOException {
+		sendFrame(WebSocketCodec.encode(WebSocketCodec.BINARY, data));
+	}
+
+	public void ping(byte[] data) throws IOException {
+		sendFrame(WebSocketCodec.encode(WebSocketCodec.PING, data));
+	}
+
+	public void close() throws IOException {
+		close(WebSocketCodec.NORMAL_CLOSURE, "");
+	}
+
+	/**
+	 * Starts the closing handshake, the connection is closed once the peer responds or websocket.closeTimeout elapses.
+	 *
+	 * @param code close code
+	 * @param reason close reason
+	 * @throws IOException if an io error occurs
+	 */
+	public void close(int code, String reason) throws IOException {
+		byte[] data = reason.getBytes(StandardCharsets.UTF_8);
+		byte[] payload = new byte[Math.min(data.length, 123) + 2];
+		payload[0] = (byte) (code >>> 8);
+		payload[1] = (byte) code;
+		System.arraycopy(data, 0, payload, 2, payload.length - 2);
+		lock.lock();
+		try {
+			if (closeSent) {
+				return;
+			}
+			closeSent = true;
+			write(WebSocketCodec.encode(WebSocketCodec.CLOSE, payload));
+		} finally {
+			lock.unlock();
+		}
+		WheelTimer.getDefault().newTimeout(t -> {
+			if (!closed) {
+				socket.close();
+			}
+		}, CLOSE_TIMEOUT);
+	}
+
+	/**
+	 * Sends the text message to all the open WebSockets, the frame is encoded only once.
+	 *
+	 * @param sockets target WebSockets
+	 * @param text text message
+	 * @return number of WebSockets the message has been written to
+	 */
+	public static int broadcast(Collection<WebSocket> sockets, String text) {
+		return broadcastFrame(sockets, WebSocketCodec.encode(WebSocketCodec.TEXT, text.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	/**
+	 * Sends the binary message to all the open WebSockets, the frame is encoded only once.
+	 *
+	 * @param sockets target WebSockets
+	 * @param data binary message
+	 * @return number of WebSockets the message has been written to
+	 */
+	public static int broadcast(Collection<WebSocket> sockets, byte[] data) {
+		return broadcastFrame(sockets, WebSocketCodec.encode(WebSocketCodec.BINARY, data));
+	}
+
+	private static int broadcastFrame(Collection<WebSocket> sockets, byte[] frame) {
+		int count = 0;
+		for (WebSocket ws : sockets) {
+			if (ws.isOpen()) {
+				try {
+					ws.sendFrame(frame);
+					count++;
+				} catch (IOException e) {
+					Log.debug("Failed to broadcast to WebSocket {}: {}", ws.id(), e.toString());
+				}
+			}
+		}
+		return count;
+	}
+
+	void sendFrame(byte[] frame) throws IOException {
+		lock.lock();
+		try {
+			if (closeSent) {
+				throw new IOException("WebSocket has already been closed.");
+			}
+			write(frame);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void write(byte[] frame) throws IOException {
+		out.write(frame);
+		out.flush();
+	}
+
+	/**
+	 * Receives messages until the connection is closed.
+	 *
+	 * @param in input stream of the connection
+	 */
+	void run(InputStream in) {
+		int code = WebSocketCodec.ABNORMAL_CLOSURE;
+		String reason = "";
+		try {
+			if (PING_INTERVAL > 0) {
+				// peers that stop answering pings are dropped by the read timeout
+				socket.setSoTimeout(PING_INTERVAL * 2);
+				pingTimeout = WheelTimer.getDefault().newTimeout(this::keepAlive, PING_INTERVAL);
+			}
+			handler.onOpen(this);
+
+			int type = 0; // opcode of the fragmented message
+			ByteArrayOutputStream message = null;
+			while (true) {
+				WebSocketCodec.Frame frame = WebSocketCodec.readFrame(in, true, MAX_MESSAGE_SIZE);
+				byte[] payload = frame.payload();
+				switch (frame.opcode()) {
+					case WebSocketCodec.TEXT, WebSocketCodec.BINARY -> {
+						if (type != 0) {
+							throw new WebSocketException(WebSocketCodec.PROTOCOL_ERROR, "expected continuation frame");
+						}
+						if (frame.fin()) {
+							deliver(frame.opcode(), payload);
+						} else {
+							type = frame.opcode();
+							message = new ByteArrayOutputStream();
+							message.writeBytes(payload);
+						}
+					}
+					case WebSocketCodec.CONTINUATION -> {
+						if (type == 0) {
+							throw new WebSocketException(WebSocketCodec.PROTOCOL_ERROR, "unexpected continuation frame");
+						}
+						if (message.size() + payload.length > MAX_MESSAGE_SIZE) {
+							throw new WebSocketException(WebSocketCodec.MESSAGE_TOO_BIG, "message too big");
+						}
+						message.writeBytes(payload);
+						if (frame.fin()) {
+							deliver(type, message.toByteArray());
+							type = 0;
+							message = null;
+						}
+					}
+					case WebSocketCodec.PING -> {
+						lock.lock();
+						try {
+							if (!closeSent) {
+								write(WebSocketCodec.encode(WebSocketCodec.PONG, payload));
+							}
+						} finally {
+							lock.unlock();
+						}
+					}
+					case WebSocketCodec.PONG -> {
+						// keep-alive response
+					}
+					case WebSocketCodec.CLOSE -> {
+						if (payload.length == 0) {
+							code = WebSocketCodec.NO_STATUS;
+						} else if (payload.length == 1) {
+							throw new WebSocketException(WebSocketCodec.PROTOCOL_ERROR, "invalid close frame");
+						} else {
+							code = (payload[0] & 0xFF) << 8 | payload[1] & 0xFF;
+							if (!isValidCode(code)) {
+								throw new WebSocketException(WebSocketCodec.PROTOCOL_ERROR, "invalid close code: " + code);
+							}
+							reason = decode(payload, 2, payload.length - 2);
+						}
+
+						// echo the close frame, unless the closing handshake was started by this side
+						lock.lock();
+						try {
+							if (!closeSent) {
+								closeSent = true;
+								write(WebSocketCodec.encode(WebSocketCodec.CLOSE, code == WebSocketCodec.NO_STATUS ? new byte[0] : new byte[] {payload[0], payload[1]}));
+							}
+						} finally {
+							lock.unlock();
+						}
+						return;
+					}
+					default -> throw new WebSocketException(WebSocketCodec.PROTOCOL_ERROR, "unknown opcode: " + frame.opcode());
+				}
+			}
+		} catch (WebSocketException e) {
+			code = e.code();
+			reason = e.getMessage();
+			Log.debug("WebSocket {} failed: {}", id(), reason);
+			closeQuietly(code, reason);
+		} catch (IOException e) {
+			Log.debug("WebSocket {} disconnected: {}", id(), e.toString());
+		} catch (Exception e) {
+			handler.onError(this, e);
+			code = WebSocketCodec.INTERNAL_ERROR;
+			closeQuietly(code, "");
+		} finally {
+			closed = true;
+			Timeout timeout = pingTimeout;
+			if (timeout != null) {
+				timeout.cancel();
+			}
+			try {
+				handler.onClose(this, code, reason);
+			} catch (Exception e) {
+				handler.onError(this, e);
+			}
+		}
+	}
+
+	private void deliver(int type, byte[] data) throws Exception {
+		if (type == WebSocketCodec.TEXT) {
+			handler.onText(this, decode(data, 0, data.length));
+		} else {
+			handler.onBinary(this, data);
+		}
+	}
+
+	private void keepAlive(Timeout timeout) {
+		if (!isOpen()) {
+			return;
+		}
+		try {
+			ping(new byte[0]);
+		} catch (IOException e) {
+			Log.debug("Failed to ping WebSocket {}: {}", id(), e.toString());
+			return;
+		}
+		pingTimeout = WheelTimer.getDefault().newTimeout(this::keepAlive, PING_INTERVAL);
+	}
+
+	private void closeQuietly(int code, String reason) {
+		try {
+			close(code, reason);
+		} catch (IOException e) {
+			// ignore
+		}
+	}
+
+	private static String decode(byte[] data, int offset, int length) throws WebSocketException {
+		try {
+			return StandardCharsets.UTF_8.newDecoder().decode(ByteBuffer.wrap(data, offset, length)).toString();
+		} catch (CharacterCodingException e) {
+			throw new WebSocketException(WebSocketCodec.INVALID_PAYLOAD, "invalid UTF-8");
+		}
+	}
+
+	// https://www.rfc-editor.org/rfc/rfc6455#section-7.4
+	private static boolean isValidCode(int code) {
+		return code >= 1000 && code <= 1003 || code >= 1007 && code <= 1011 || code >= 3000 && code <= 4999;
+	}
+}
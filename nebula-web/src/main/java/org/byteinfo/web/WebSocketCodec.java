@@ -0,0 +1,181 @@
+package org.byteinfo.web;
+
+import org.byteinfo.util.codec.Hash;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Base64;
+
+/**
+ * WebSocket Codec
+ *
+ * @see <a href="https://www.rfc-editor.org/rfc/rfc6455">RFC 6455: The WebSocket Protocol</a>
+ */
+public interface WebSocketCodec {
+	String VERSION = "13";
+	String GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+
+	// https://www.rfc-editor.org/rfc/rfc6455#section-5.2
+	int CONTINUATION = 0x0;
+	int TEXT = 0x1;
+	int BINARY = 0x2;
+	int CLOSE = 0x8;
+	int PING = 0x9;
+	int PONG = 0xA;
+
+	// https://www.rfc-editor.org/rfc/rfc6455#section-7.4.1
+	int NORMAL_CLOSURE = 1000;
+	int GOING_AWAY = 1001;
+	int PROTOCOL_ERROR = 1002;
+	int NO_STATUS = 1005;
+	int ABNORMAL_CLOSURE = 1006;
+	int INVALID_PAYLOAD = 1007;
+	int MESSAGE_TOO_BIG = 1009;
+	int INTERNAL_ERROR = 1011;
+
+	/**
+	 * WebSocket frame with the payload unmasked.
+	 *
+	 * @param fin whether this is the final fragment of a message
+	 * @param opcode frame opcode
+	 * @param payload unmasked payload
+	 */
+	record Frame(boolean fin, int opcode, byte[] payload) {}
+
+	/**
+	 * Computes the Sec-WebSocket-Accept of the opening handshake.
+	 *
+	 * @param key Sec-WebSocket-Key of the request
+	 * @return Sec-WebSocket-Accept of the response
+	 */
+	static String accept(String key) {
+		return Base64.getEncoder().encodeToString(Hash.SHA1.toBytes(key.trim() + GUID));
+	}
+
+	/**
+	 * Reads a frame, control frames may be interleaved with the fragments of a message.
+	 *
+	 * @param in input stream
+	 * @param masked whether the frame must be masked, which is required for frames sent by clients
+	 * @param maxLength max payload length
+	 * @return the frame
+	 * @throws IOException if an io error occurs or the frame is invalid
+	 */
+	static Frame readFrame(InputStream in, boolean masked, long maxLength) throws IOException {
+		int b0 = read(in);
+		int b1 = read(in);
+		boolean fin = (b0 & 0x80) != 0;
+		int opcode = b0 & 0x0F;
+		if ((b0 & 0x70) != 0) {
+			throw new WebSocketException(PROTOCOL_ERROR, "reserved bits set");
+		}
+		if ((b1 & 0x80) == 0 == masked) {
+			throw new WebSocketException(PROTOCOL_ERROR, masked ? "unmasked frame" : "masked frame");
+		}
+
+		long length = b1 & 0x7F;
+		if (length == 126) {
+			length = (long) read(in) << 8 | read(in);
+		} else if (length == 127) {
+			length = 0;
+			for (int i = 0; i < 8; i++) {
+				length = length << 8 | read(in);
+			}
+			if (length < 0) {
+				throw new WebSocketException(PROTOCOL_ERROR, "invalid payload length");
+			}
+		}
+		if (opcode >= CLOSE && (!fin || length > 125)) {
+			throw new WebSocketException(PROTOCOL_ERROR, "invalid control frame");
+		}
+		if (length > maxLength) {
+			throw new WebSocketException(MESSAGE_TOO_BIG, "frame too big: " + length);
+		}
+
+		byte[] mask = masked ? readFully(in, 4) : null;
+		byte[] payload = readFully(in, (int) length);
+		if (mask != null) {
+			mask(payload, 0, payload.length, mask);
+		}
+		return new Frame(fin, opcode, payload);
+	}
+
+	/**
+	 * Encodes a frame into a single array, so that it can be written at once or shared by many connections.
+	 *
+	 * @param fin whether this is the final fragment of a message
+	 * @param opcode frame opcode
+	 * @param payload payload
+	 * @param offset payload offset
+	 * @param length payload length
+	 * @param mask masking key, or null for unmasked frames sent by servers
+	 * @return encoded frame
+	 */
+	static byte[] encode(boolean fin, int opcode, byte[] payload, int offset, int length, byte[] mask) {
+		int header = length < 126 ? 2 : length < 65536 ? 4 : 10;
+		int start = header + (mask == null ? 0 : 4);
+		byte[] frame = new byte[start + length];
+		frame[0] = (byte) ((fin ? 0x80 : 0) | opcode);
+		int maskBit = mask == null ? 0 : 0x80;
+		if (length < 126) {
+			frame[1] = (byte) (maskBit | length);
+		} else if (length < 65536) {
+			frame[1] = (byte) (maskBit | 126);
+			frame[2] = (byte) (length >>> 8);
+			frame[3] = (byte) length;
+		} else {
+			frame[1] = (byte) (maskBit | 127);
+			for (int i = 0; i < 4; i++) { // high 4 bytes are always 0
+				frame[6 + i] = (byte) (length >>> (24 - 8 * i));
+			}
+		}
+		System.arraycopy(payload, offset, frame, start, length);
+		if (mask != null) {
+			System.arraycopy(mask, 0, frame, header, 4);
+			mask(frame, start, length, mask);
+		}
+		return frame;
+	}
+
+	/**
+	 * Encodes an unmasked final frame.
+	 *
+	 * @param opcode frame opcode
+	 * @param payload payload
+	 * @return encoded frame
+	 */
+	static byte[] encode(int opcode, byte[] payload) {
+		return encode(true, opcode, payload, 0, payload.length, null);
+	}
+
+	/**
+	 * Masks or unmasks the data in place.
+	 *
+	 * @param data data
+	 * @param offset data offset
+	 * @param length data length
+	 * @param mask masking key
+	 */
+	static void mask(byte[] data, int offset, int length, byte[] mask) {
+		for (int i = 0; i < length; i++) {
+			data[offset + i] ^= mask[i & 3];
+		}
+	}
+
+	private static int read(InputStream in) throws IOException {
+		int b = in.read();
+		if (b == -1) {
+			throw new EOFException();
+		}
+		return b;
+	}
+
+	private static byte[] readFully(InputStream in, int length) throws IOException {
+		byte[] data = in.readNBytes(length);
+		if (data.length != length) {
+			throw new EOFException();
+		}
+		return data;
+	}
+}
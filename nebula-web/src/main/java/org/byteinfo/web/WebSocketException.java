@@ -0,0 +1,21 @@
+package org.byteinfo.web;
+
+import java.io.IOException;
+
+/**
+ * WebSocket error, the connection is closed with the close code.
+ *
+ * @see <a href="https://www.rfc-editor.org/rfc/rfc6455#section-7.4">Status Codes</a>
+ */
+class WebSocketException extends IOException {
+	private final int code;
+
+	WebSocketException(int code, String message) {
+		super(message);
+		this.code = code;
+	}
+
+	int code() {
+		return code;
+	}
+}
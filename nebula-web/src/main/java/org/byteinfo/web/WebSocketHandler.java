@@ -0,0 +1,20 @@
+package org.byteinfo.web;
+
+import org.byteinfo.logging.Log;
+
+/**
+ * WebSocket handler, the callbacks of a connection are invoked in order on its virtual thread.
+ */
+public interface WebSocketHandler {
+	default void onOpen(WebSocket ws) throws Exception {}
+
+	default void onText(WebSocket ws, String text) throws Exception {}
+
+	default void onBinary(WebSocket ws, byte[] data) throws Exception {}
+
+	default void onClose(WebSocket ws, int code, String reason) throws Exception {}
+
+	default void onError(WebSocket ws, Throwable t) {
+		Log.error(t, "Failed to handle WebSocket: {}: {} IP={}", ws.id(), ws.context().path(), ws.context().address());
+	}
+}
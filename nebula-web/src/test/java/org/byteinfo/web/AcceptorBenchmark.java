@@ -0,0 +1,75 @@
+package org.byteinfo.web;
+
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Connection rate of short-lived clients without keep-alive, by the number of acceptors.
+ * <p>
+ * Usage: AcceptorBenchmark [concurrency] [seconds] [acceptors...]
+ */
+public class AcceptorBenchmark {
+	private static final byte[] REQUEST = "GET / HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n".getBytes();
+
+	public static void main(String[] args) throws Exception {
+		int concurrency = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+		int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		int[] acceptors = args.length > 2 ? Arrays.stream(args, 2, args.length).mapToInt(Integer::parseInt).toArray() : new int[] {1, 2, 4};
+
+		int port;
+		try (ServerSocket probe = new ServerSocket(0)) {
+			port = probe.getLocalPort();
+		}
+		System.setProperty("http.port", String.valueOf(port));
+		System.out.printf("%d cores, %d clients%n", Runtime.getRuntime().availableProcessors(), concurrency);
+		for (int n : acceptors) {
+			System.setProperty("http.acceptors", String.valueOf(n));
+			Server server = new Server().get("/", ctx -> "OK").start();
+			run(port, concurrency, 1); // warm up
+			System.out.printf("%d acceptors: %s%n", n, run(port, concurrency, seconds));
+			server.stop();
+		}
+	}
+
+	private static String run(int port, int concurrency, int seconds) throws Exception {
+		LongAdder count = new LongAdder();
+		LongAdder errors = new LongAdder();
+		ConcurrentLinkedQueue<long[]> samples = new ConcurrentLinkedQueue<>();
+		long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+		try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			for (int i = 0; i < concurrency; i++) {
+				executor.execute(() -> {
+					long[] nanos = new long[1024];
+					int n = 0;
+					while (System.nanoTime() < deadline) {
+						long start = System.nanoTime();
+						try (Socket socket = new Socket("127.0.0.1", port)) {
+							socket.getOutputStream().write(REQUEST);
+							socket.getInputStream().transferTo(OutputStream.nullOutputStream());
+							count.increment();
+						} catch (Exception e) {
+							errors.increment();
+							continue;
+						}
+						if (n == nanos.length) {
+							nanos = Arrays.copyOf(nanos, n * 2);
+						}
+						nanos[n++] = System.nanoTime() - start;
+					}
+					samples.add(Arrays.copyOf(nanos, n));
+				});
+			}
+		}
+		long[] all = samples.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+		if (all.length == 0) {
+			return "no connections, errors=" + errors.sum();
+		}
+		return "%,.0f connections/s, p50=%.2fms, p99=%.2fms, errors=%d".formatted(count.sum() / (double) seconds, all[all.length / 2] / 1e6, all[(int) (all.length * 0.99)] / 1e6, errors.sum());
+	}
+}
@@ -0,0 +1,86 @@
+package org.byteinfo.web;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * HeavyHittersTest
+ */
+public class HeavyHittersTest {
+	@Test
+	public void testTopK() {
+		HeavyHitters hitters = new HeavyHitters(3, 1024);
+		add(hitters, "a", 100);
+		add(hitters, "b", 50);
+		add(hitters, "c", 30);
+		for (int i = 0; i < 1000; i++) {
+			hitters.add("x" + i);
+		}
+		assertEquals(List.of("a", "b", "c"), keys(hitters.top(10)));
+		Map<String, Integer> counts = Map.of("a", 100, "b", 50, "c", 30);
+		for (HeavyHitters.Hitter hitter : hitters.top(3)) {
+			assertTrue(hitter.count() >= counts.get(hitter.key()), hitter.key());
+		}
+
+		// a heavier key takes the place of the lightest one
+		add(hitters, "d", 200);
+		assertEquals(List.of("d", "a", "b"), keys(hitters.top(3)));
+		assertEquals(List.of("d"), keys(hitters.top(1)));
+		assertEquals(List.of(), hitters.top(0));
+		assertThrows(IllegalArgumentException.class, () -> hitters.top(-1));
+	}
+
+	@Test
+	public void testEstimate() {
+		HeavyHitters hitters = new HeavyHitters(4, 64);
+		for (int i = 0; i < 10_000; i++) {
+			hitters.add("k" + i % 100);
+		}
+		// collisions only overestimate
+		for (int i = 0; i < 100; i++) {
+			assertTrue(hitters.estimate("k" + i) >= 100);
+		}
+		hitters.add(null);
+		assertEquals(0L, new HeavyHitters(1, 1).estimate("absent"));
+	}
+
+	@Test
+	public void testDecay() {
+		HeavyHitters hitters = new HeavyHitters(2, 1024);
+		add(hitters, "a", 100);
+		add(hitters, "b", 80);
+		long estimate = hitters.estimate("a");
+		hitters.decay();
+		assertEquals(estimate >> 1, hitters.estimate("a"));
+
+		// recent traffic overtakes the decayed counts
+		add(hitters, "c", 60);
+		assertEquals(List.of("c", "a"), keys(hitters.top(2)));
+		hitters.decay();
+		hitters.decay();
+		add(hitters, "b", 30);
+		assertEquals(List.of("b", "c"), keys(hitters.top(2)));
+	}
+
+	@Test
+	public void testInvalidArguments() {
+		assertThrows(IllegalArgumentException.class, () -> new HeavyHitters(0, 16));
+		assertThrows(IllegalArgumentException.class, () -> new HeavyHitters(4, 0));
+	}
+
+	private static void add(HeavyHitters hitters, String key, int count) {
+		for (int i = 0; i < count; i++) {
+			hitters.add(key);
+		}
+	}
+
+	private static List<String> keys(List<HeavyHitters.Hitter> hitters) {
+		return hitters.stream().map(HeavyHitters.Hitter::key).toList();
+	}
+}
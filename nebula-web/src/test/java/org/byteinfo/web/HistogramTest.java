@@ -0,0 +1,78 @@
+package org.byteinfo.web;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * HistogramTest
+ */
+public class HistogramTest {
+	@Test
+	public void testBucketBoundaries() {
+		// linear below 8, then 8 sub-buckets per power of two
+		for (int value = 0; value < 16; value++) {
+			assertEquals(value, Histogram.bucket(value));
+			assertEquals(value, Histogram.upperBound(value));
+		}
+		assertEquals(0, Histogram.bucket(-1));
+		assertEquals(16, Histogram.bucket(16));
+		assertEquals(16, Histogram.bucket(17));
+		assertEquals(17, Histogram.bucket(18));
+		assertEquals(17L, Histogram.upperBound(16));
+		assertEquals(24, Histogram.bucket(32));
+		assertEquals(35L, Histogram.upperBound(24));
+
+		// values beyond 2^32 are clamped into the last bucket
+		int last = Histogram.bucket((1L << 32) - 1);
+		assertEquals((1L << 32) - 1, Histogram.upperBound(last));
+		assertEquals(last, Histogram.bucket(1L << 32));
+		assertEquals(last, Histogram.bucket(Long.MAX_VALUE));
+	}
+
+	@Test
+	public void testResolution() {
+		// every value falls into the bucket whose upper bound is the first one at or above it, within 12.5%
+		for (long value = 1; value < 1L << 32; value = value * 17 / 16 + 1) {
+			for (long v : new long[] {value - 1, value, value + 1}) {
+				int bucket = Histogram.bucket(v);
+				long upper = Histogram.upperBound(bucket);
+				assertTrue(upper >= v, "upper bound of " + v);
+				assertTrue(bucket == 0 || Histogram.upperBound(bucket - 1) < v, "previous upper bound of " + v);
+				assertTrue(upper - v <= v / 8, "resolution of " + v);
+			}
+		}
+	}
+
+	@Test
+	public void testQuantiles() {
+		Histogram histogram = new Histogram();
+		assertArrayEquals(new long[] {0, 0}, histogram.quantiles(0.5, 1));
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(i);
+		}
+		assertEquals(1000L, histogram.count());
+		assertEquals(500500L, histogram.sum());
+
+		long[] values = histogram.quantiles(0, 0.5, 0.9, 0.99, 1);
+		assertEquals(1L, values[0]);
+		long[] expected = {1, 500, 900, 990, 1000};
+		for (int i = 1; i < values.length; i++) {
+			assertEquals(Histogram.upperBound(Histogram.bucket(expected[i])), values[i]);
+			assertTrue(values[i] >= expected[i] && values[i] - expected[i] <= expected[i] / 8);
+		}
+		assertEquals(values[1], histogram.quantile(0.5));
+	}
+
+	@Test
+	public void testOutliers() {
+		Histogram histogram = new Histogram();
+		histogram.record(-5);
+		histogram.record(Long.MAX_VALUE);
+		assertEquals(2L, histogram.count());
+		assertEquals(0L, histogram.quantile(0.5));
+		assertEquals((1L << 32) - 1, histogram.quantile(1));
+	}
+}
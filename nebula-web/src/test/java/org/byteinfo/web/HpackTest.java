@@ -0,0 +1,153 @@
+package org.byteinfo.web;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HexFormat;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * HpackTest, vectors are from RFC 7541 Appendix C.
+ */
+public class HpackTest {
+	@Test
+	public void testInteger() {
+		// C.1.1 - C.1.3
+		assertArrayEquals(hex("0a"), writeInt(0, 5, 10));
+		assertArrayEquals(hex("1f9a0a"), writeInt(0, 5, 1337));
+		assertArrayEquals(hex("2a"), writeInt(0, 8, 42));
+	}
+
+	@Test
+	public void testHuffman() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Hpack.writeString(out, "www.example.com");
+		assertArrayEquals(hex("8cf1e3c2e5f23a6ba0ab90f4ff"), out.toByteArray());
+
+		byte[] data = hex("a8eb10649cbf");
+		assertEquals("no-cache", new String(Hpack.huffmanDecode(data, 0, data.length)));
+	}
+
+	@Test
+	public void testLiterals() throws Exception {
+		// C.2.1 - C.2.4
+		HpackDecoder decoder = decoder(Hpack.DEFAULT_TABLE_SIZE);
+		assertEquals(List.of(new Header("custom-key", "custom-header")), decoder.decode(hex("400a637573746f6d2d6b65790d637573746f6d2d686561646572")));
+		assertEquals(List.of(new Header(":path", "/sample/path")), decoder.decode(hex("040c2f73616d706c652f70617468")));
+		assertEquals(List.of(new Header("password", "secret")), decoder.decode(hex("100870617373776f726406736563726574")));
+		assertEquals(List.of(new Header(":method", "GET")), decoder.decode(hex("82")));
+
+		// only the first literal is indexed
+		assertEquals(List.of(new Header("custom-key", "custom-header")), decoder.decode(hex("be")));
+		assertThrows(Http2Exception.class, () -> decoder.decode(hex("bf")));
+	}
+
+	@Test
+	public void testRequests() throws Exception {
+		// C.3 without huffman and C.4 with huffman, decoded on one connection each
+		String[][] blocks = {
+				{"828684410f7777772e6578616d706c652e636f6d", "828684418cf1e3c2e5f23a6ba0ab90f4ff"},
+				{"828684be58086e6f2d6361636865", "828684be5886a8eb10649cbf"},
+				{"828785bf400a637573746f6d2d6b65790c637573746f6d2d76616c7565", "828785bf408825a849e95ba97d7f8925a849e95bb8e8b4bf"}
+		};
+		List<List<Header>> expected = List.of(
+				List.of(new Header(":method", "GET"), new Header(":scheme", "http"), new Header(":path", "/"), new Header(":authority", "www.example.com")),
+				List.of(new Header(":method", "GET"), new Header(":scheme", "http"), new Header(":path", "/"), new Header(":authority", "www.example.com"), new Header("cache-control", "no-cache")),
+				List.of(new Header(":method", "GET"), new Header(":scheme", "https"), new Header(":path", "/index.html"), new Header(":authority", "www.example.com"), new Header("custom-key", "custom-value"))
+		);
+		for (int variant = 0; variant < 2; variant++) {
+			HpackDecoder decoder = decoder(Hpack.DEFAULT_TABLE_SIZE);
+			for (int i = 0; i < blocks.length; i++) {
+				assertEquals(expected.get(i), decoder.decode(hex(blocks[i][variant])));
+			}
+		}
+	}
+
+	@Test
+	public void testResponses() throws Exception {
+		// C.5 without huffman and C.6 with huffman, the 256 bytes table evicts entries
+		String[][] blocks = {
+				{"4803333032580770726976617465611d4d6f6e2c203231204f637420323031332032303a31333a323120474d546e1768747470733a2f2f7777772e6578616d706c652e636f6d",
+						"488264025885aec3771a4b6196d07abe941054d444a8200595040b8166e082a62d1bff6e919d29ad171863c78f0b97c8e9ae82ae43d3"},
+				{"4803333037c1c0bf", "4883640effc1c0bf"},
+				{"88c1611d4d6f6e2c203231204f637420323031332032303a31333a323220474d54c05a04677a69707738666f6f3d4153444a4b48514b425a584f5157454f50495541585157454f49553b206d61782d6167653d333630303b2076657273696f6e3d31",
+						"88c16196d07abe941054d444a8200595040b8166e084a62d1bffc05a839bd9ab77ad94e7821dd7f2e6c7b335dfdfcd5b3960d5af27087f3672c1ab270fb5291f9587316065c003ed4ee5b1063d5007"}
+		};
+		String location = "https://www.example.com";
+		List<List<Header>> expected = List.of(
+				List.of(new Header(":status", "302"), new Header("cache-control", "private"), new Header("date", "Mon, 21 Oct 2013 20:13:21 GMT"), new Header("location", location)),
+				List.of(new Header(":status", "307"), new Header("cache-control", "private"), new Header("date", "Mon, 21 Oct 2013 20:13:21 GMT"), new Header("location", location)),
+				List.of(new Header(":status", "200"), new Header("cache-control", "private"), new Header("date", "Mon, 21 Oct 2013 20:13:22 GMT"), new Header("location", location),
+						new Header("content-encoding", "gzip"), new Header("set-cookie", "foo=ASDJKHQKBZXOQWEOPIUAXQWEOIU; max-age=3600; version=1"))
+		);
+		for (int variant = 0; variant < 2; variant++) {
+			HpackDecoder decoder = decoder(256);
+			for (int i = 0; i < blocks.length; i++) {
+				assertEquals(expected.get(i), decoder.decode(hex(blocks[i][variant])));
+			}
+			// ":status: 302" was the first entry and has been evicted
+			assertThrows(Http2Exception.class, () -> decoder.decode(hex("c1")));
+		}
+	}
+
+	@Test
+	public void testInvalidBlocks() throws Exception {
+		HpackDecoder decoder = decoder(Hpack.DEFAULT_TABLE_SIZE);
+		assertThrows(Http2Exception.class, () -> decoder.decode(hex("80")), "index 0");
+		assertThrows(Http2Exception.class, () -> decoder.decode(hex("be")), "empty dynamic table");
+		assertThrows(Http2Exception.class, () -> decoder.decode(hex("ff")), "truncated integer");
+		assertThrows(Http2Exception.class, () -> decoder.decode(hex("ffffffffff0f")), "integer overflow");
+		assertThrows(Http2Exception.class, () -> decoder.decode(hex("400a637573746f6d")), "truncated string");
+		assertThrows(Http2Exception.class, () -> decoder.decode(hex("40")), "missing string");
+		assertThrows(Http2Exception.class, () -> decoder.decode(hex("3fe21f")), "table size above the setting");
+		assertThrows(Http2Exception.class, () -> decoder.decode(hex("8220")), "table size update after a field");
+		assertThrows(Http2Exception.class, () -> decoder.decode(hex("048118")), "huffman padding of zeros");
+		assertThrows(Http2Exception.class, () -> decoder.decode(hex("04821fff")), "huffman padding longer than 7 bits");
+		assertThrows(Http2Exception.class, () -> decoder.decode(hex("0484ffffffff")), "huffman EOS");
+		assertEquals(List.of(new Header(":path", "a")), decoder.decode(hex("04811f")));
+	}
+
+	@Test
+	public void testHeaderListSize() throws Exception {
+		HpackDecoder decoder = new HpackDecoder(Hpack.DEFAULT_TABLE_SIZE, 100);
+		// 32 + 7 + 3 per field, so the third one exceeds the limit
+		assertEquals(2, decoder.decode(hex("8282")).size());
+		Http2Exception e = assertThrows(Http2Exception.class, () -> decoder.decode(hex("828282")));
+		assertEquals(Http2Exception.ENHANCE_YOUR_CALM, e.error());
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		HpackEncoder encoder = new HpackEncoder();
+		HpackDecoder decoder = decoder(Hpack.DEFAULT_TABLE_SIZE);
+		List<Header> headers = List.of(new Header(":status", "200"), new Header("content-type", "text/html"), new Header("content-length", "1024"),
+				new Header("set-cookie", "id=1"), new Header("x-trace", "abc"), new Header("x-empty", ""));
+		for (int i = 0; i < 3; i++) {
+			assertEquals(headers, decoder.decode(encoder.encode(headers)));
+		}
+
+		// the peer shrinks the table, the update is signaled at the start of the next block
+		encoder.setMaxTableSize(0);
+		byte[] block = encoder.encode(headers);
+		assertEquals(0x20, block[0] & 0xFF);
+		assertEquals(headers, decoder.decode(block));
+	}
+
+	private static HpackDecoder decoder(int maxTableSize) {
+		return new HpackDecoder(maxTableSize, 65536);
+	}
+
+	private static byte[] writeInt(int flags, int prefix, int value) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Hpack.writeInt(out, flags, prefix, value);
+		return out.toByteArray();
+	}
+
+	private static byte[] hex(String value) {
+		return HexFormat.of().parseHex(value);
+	}
+}
@@ -0,0 +1,340 @@
+package org.byteinfo.web;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Http2ConnectionTest, frames are exchanged with a connection over a loopback socket.
+ */
+public class Http2ConnectionTest {
+	private static final Server SERVER;
+
+	static {
+		try {
+			SERVER = new Server()
+					.get("/", ctx -> "hello")
+					.get("/large", ctx -> "x".repeat(100))
+					.post("/echo", ctx -> new String(ctx.body().readAllBytes(), StandardCharsets.UTF_8))
+					.post("/reject", ctx -> {
+						ctx.setResponseStatus(StatusCode.CONTENT_TOO_LARGE);
+						return "rejected";
+					});
+		} catch (IOException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	@Test
+	public void testSettings() throws Exception {
+		try (Client client = new Client()) {
+			Frame settings = client.read();
+			assertEquals(Http2Connection.SETTINGS, settings.type);
+			assertEquals(0, settings.flags);
+			ByteBuffer payload = ByteBuffer.wrap(settings.payload);
+			assertEquals(Http2Connection.SETTINGS_MAX_CONCURRENT_STREAMS, payload.getShort());
+			assertEquals(Http2Connection.MAX_CONCURRENT_STREAMS, payload.getInt());
+			assertEquals(Http2Connection.SETTINGS_INITIAL_WINDOW_SIZE, payload.getShort());
+			assertEquals(Http2Connection.INITIAL_WINDOW_SIZE, payload.getInt());
+			assertEquals(Http2Connection.SETTINGS_MAX_HEADER_LIST_SIZE, payload.getShort());
+			assertEquals(Http2Connection.MAX_HEADER_LIST_SIZE, payload.getInt());
+			Frame update = client.read();
+			assertEquals(Http2Connection.WINDOW_UPDATE, update.type);
+			assertEquals(Http2Connection.INITIAL_WINDOW_SIZE - Http2Connection.DEFAULT_WINDOW_SIZE, ByteBuffer.wrap(update.payload).getInt());
+
+			client.write(Http2Connection.SETTINGS, 0, 0, new byte[0]);
+			client.expect(Http2Connection.SETTINGS, Http2Connection.FLAG_ACK, 0);
+			client.write(Http2Connection.PING, 0, 0, "12345678".getBytes());
+			assertArrayEquals("12345678".getBytes(), client.expect(Http2Connection.PING, Http2Connection.FLAG_ACK, 0).payload);
+			client.write(0xFF, 0, 0, new byte[3]); // unknown frames are ignored
+			client.write(Http2Connection.PING, 0, 0, "87654321".getBytes());
+			assertArrayEquals("87654321".getBytes(), client.expect(Http2Connection.PING, Http2Connection.FLAG_ACK, 0).payload);
+		}
+	}
+
+	@Test
+	public void testRequests() throws Exception {
+		try (Client client = new Client().start()) {
+			client.request(1, "GET", "/", true);
+			client.request(3, "POST", "/echo", false);
+			client.write(Http2Connection.DATA, 0, 3, "hel".getBytes());
+			client.write(Http2Connection.DATA, Http2Connection.FLAG_END_STREAM, 3, "lo".getBytes());
+
+			Map<Integer, Response> responses = client.responses(2);
+			assertEquals("200", responses.get(1).status());
+			assertEquals("hello", responses.get(1).body());
+			assertEquals("200", responses.get(3).status());
+			assertEquals("hello", responses.get(3).body());
+		}
+	}
+
+	@Test
+	public void testUnreadBody() throws Exception {
+		try (Client client = new Client().start()) {
+			// the response is complete while the body is still being sent, so the rest of it is refused
+			client.request(1, "POST", "/reject", false, new Header(HeaderName.CONTENT_LENGTH, "100000"));
+			client.write(Http2Connection.DATA, 0, 1, new byte[1000]);
+			Response response = client.responses(1).get(1);
+			assertEquals("413", response.status());
+			assertEquals("rejected", response.body());
+			assertEquals(Http2Exception.NO_ERROR, ByteBuffer.wrap(client.expect(Http2Connection.RST_STREAM, 0, 1).payload).getInt());
+
+			// frames in flight on the reset stream are ignored, and the connection goes on
+			client.write(Http2Connection.DATA, 0, 1, new byte[1000]);
+			client.write(Http2Connection.DATA, Http2Connection.FLAG_END_STREAM, 1, new byte[1000]);
+			client.request(3, "GET", "/", true);
+			assertEquals("hello", client.responses(1).get(3).body());
+		}
+	}
+
+	@Test
+	public void testFlowControl() throws Exception {
+		try (Client client = new Client()) {
+			client.settings(Http2Connection.SETTINGS_INITIAL_WINDOW_SIZE, 30);
+			client.read(); // SETTINGS
+			client.read(); // WINDOW_UPDATE
+			client.expect(Http2Connection.SETTINGS, Http2Connection.FLAG_ACK, 0);
+
+			client.request(1, "GET", "/large", true);
+			client.expect(Http2Connection.HEADERS, Http2Connection.FLAG_END_HEADERS, 1);
+			assertEquals(30, client.expect(Http2Connection.DATA, 0, 1).payload.length);
+			client.write(Http2Connection.WINDOW_UPDATE, 0, 1, ByteBuffer.allocate(4).putInt(50).array());
+			assertEquals(50, client.expect(Http2Connection.DATA, 0, 1).payload.length);
+			client.write(Http2Connection.WINDOW_UPDATE, 0, 1, ByteBuffer.allocate(4).putInt(50).array());
+			assertEquals(20, client.expect(Http2Connection.DATA, Http2Connection.FLAG_END_STREAM, 1).payload.length);
+		}
+	}
+
+	@Test
+	public void testStreamErrors() throws Exception {
+		try (Client client = new Client().start()) {
+			client.request(1, "POST", "/echo", true, new Header(HeaderName.CONTENT_LENGTH, "1x"));
+			assertEquals(Http2Exception.PROTOCOL_ERROR, client.reset(1));
+			client.request(3, "GET", "/", true, new Header("Upper", "case"));
+			assertEquals(Http2Exception.PROTOCOL_ERROR, client.reset(3));
+			client.write(Http2Connection.HEADERS, Http2Connection.FLAG_END_HEADERS | Http2Connection.FLAG_END_STREAM, 5, new HpackEncoder().encode(List.of(new Header(":method", "GET"))));
+			assertEquals(Http2Exception.PROTOCOL_ERROR, client.reset(5));
+			client.write(Http2Connection.WINDOW_UPDATE, 0, 5, new byte[4]);
+			assertEquals(Http2Exception.PROTOCOL_ERROR, client.reset(5));
+
+			// the connection survives stream errors
+			client.request(7, "GET", "/", true);
+			assertEquals("hello", client.responses(1).get(7).body());
+		}
+	}
+
+	@Test
+	public void testConnectionErrors() throws Exception {
+		assertGoAway(Http2Exception.PROTOCOL_ERROR, client -> client.write(Http2Connection.DATA, 0, 0, new byte[1]));
+		assertGoAway(Http2Exception.PROTOCOL_ERROR, client -> client.write(Http2Connection.DATA, 0, 1, new byte[1]));
+		assertGoAway(Http2Exception.PROTOCOL_ERROR, client -> client.request(2, "GET", "/", true));
+		assertGoAway(Http2Exception.PROTOCOL_ERROR, client -> client.write(Http2Connection.PUSH_PROMISE, 0, 1, new byte[4]));
+		assertGoAway(Http2Exception.PROTOCOL_ERROR, client -> client.write(Http2Connection.SETTINGS, 0, 1, new byte[0]));
+		assertGoAway(Http2Exception.FRAME_SIZE_ERROR, client -> client.write(Http2Connection.PING, 0, 0, new byte[7]));
+		assertGoAway(Http2Exception.FRAME_SIZE_ERROR, client -> client.writeHeader(Http2Connection.DEFAULT_FRAME_SIZE + 1, Http2Connection.DATA, 0, 1));
+		assertGoAway(Http2Exception.FLOW_CONTROL_ERROR, client -> client.settings(Http2Connection.SETTINGS_INITIAL_WINDOW_SIZE, -1));
+		assertGoAway(Http2Exception.COMPRESSION_ERROR, client -> client.write(Http2Connection.HEADERS, Http2Connection.FLAG_END_HEADERS, 1, new byte[] {(byte) 0x80}));
+		assertGoAway(Http2Exception.PROTOCOL_ERROR, client -> {
+			client.write(Http2Connection.HEADERS, 0, 1, new HpackEncoder().encode(List.of(new Header(":method", "GET"))));
+			client.write(Http2Connection.PING, 0, 0, new byte[8]); // CONTINUATION expected
+		});
+		assertGoAway(Http2Exception.ENHANCE_YOUR_CALM, client -> {
+			client.write(Http2Connection.HEADERS, 0, 1, new byte[0]);
+			for (int i = 0; i <= Http2Connection.MAX_HEADER_LIST_SIZE / Http2Connection.DEFAULT_FRAME_SIZE; i++) {
+				client.write(Http2Connection.CONTINUATION, 0, 1, new byte[Http2Connection.DEFAULT_FRAME_SIZE]);
+			}
+		});
+	}
+
+	@Test
+	public void testShutdown() throws Exception {
+		try (Client client = new Client().start()) {
+			client.request(1, "GET", "/", true);
+			assertEquals(new Response("200", "hello"), client.responses(1).get(1));
+
+			// sent by the server before closing an idle connection on stop
+			client.connection.shutdown();
+			Frame frame = client.expect(Http2Connection.GOAWAY, 0, 0);
+			assertEquals(1, ByteBuffer.wrap(frame.payload, 0, 4).getInt());
+			assertEquals(Http2Exception.NO_ERROR, ByteBuffer.wrap(frame.payload, 4, 4).getInt());
+		}
+	}
+
+	@Test
+	public void testUpgradeSettings() {
+		byte[] settings = {0, 3, 0, 0, 0, 100};
+		assertArrayEquals(settings, Http2Connection.decodeSettings(Base64.getUrlEncoder().withoutPadding().encodeToString(settings)));
+		assertArrayEquals(new byte[0], Http2Connection.decodeSettings(""));
+		assertNull(Http2Connection.decodeSettings(null));
+		assertNull(Http2Connection.decodeSettings("not base64!"));
+		assertNull(Http2Connection.decodeSettings(Base64.getUrlEncoder().encodeToString(new byte[5])));
+	}
+
+	private static void assertGoAway(int error, ClientAction action) throws Exception {
+		try (Client client = new Client().start()) {
+			action.run(client);
+			Frame frame;
+			do {
+				frame = client.read();
+			} while (frame != null && frame.type != Http2Connection.GOAWAY);
+			assertTrue(frame != null, "GOAWAY expected");
+			assertEquals(error, ByteBuffer.wrap(frame.payload, 4, 4).getInt());
+		}
+	}
+
+	@FunctionalInterface
+	private interface ClientAction {
+		void run(Client client) throws IOException;
+	}
+
+	private record Frame(int type, int flags, int streamId, byte[] payload) {}
+
+	private record Response(String status, String body) {}
+
+	// client side of a prior knowledge connection
+	private static class Client implements AutoCloseable {
+		private final Socket socket;
+		private final Http2Connection connection;
+		private final DataInputStream in;
+		private final OutputStream out;
+		private final HpackEncoder encoder = new HpackEncoder();
+		private final HpackDecoder decoder = new HpackDecoder(Hpack.DEFAULT_TABLE_SIZE, Integer.MAX_VALUE);
+
+		Client() throws IOException {
+			try (ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+				socket = new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+				Socket accepted = serverSocket.accept();
+				InputStream serverIn = new BufferedInputStream(accepted.getInputStream());
+				OutputStream serverOut = new BufferedOutputStream(accepted.getOutputStream());
+				connection = new Http2Connection(SERVER, accepted, serverIn, serverOut, 1, new AtomicBoolean(true), Map.of());
+				SERVER.dispatch(() -> {
+					try (accepted) {
+						HttpCodec.parseRequest(serverIn); // the request line of the preface, as parsed by the server
+						connection.serve(null, null);
+					} catch (IOException e) {
+						// closed by the client
+					}
+				});
+			}
+			socket.setSoTimeout(5000);
+			in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			out = socket.getOutputStream();
+			out.write(Http2Connection.PREFACE);
+		}
+
+		// exchanges the initial settings
+		Client start() throws IOException {
+			write(Http2Connection.SETTINGS, 0, 0, new byte[0]);
+			expect(Http2Connection.SETTINGS, 0, 0);
+			expect(Http2Connection.WINDOW_UPDATE, 0, 0);
+			expect(Http2Connection.SETTINGS, Http2Connection.FLAG_ACK, 0);
+			return this;
+		}
+
+		void settings(int id, int value) throws IOException {
+			write(Http2Connection.SETTINGS, 0, 0, ByteBuffer.allocate(6).putShort((short) id).putInt(value).array());
+		}
+
+		void request(int streamId, String method, String path, boolean end, Header... headers) throws IOException {
+			List<Header> fields = new ArrayList<>(List.of(new Header(":method", method), new Header(":scheme", "http"), new Header(":authority", "localhost"), new Header(":path", path)));
+			fields.addAll(List.of(headers));
+			write(Http2Connection.HEADERS, Http2Connection.FLAG_END_HEADERS | (end ? Http2Connection.FLAG_END_STREAM : 0), streamId, encoder.encode(fields));
+		}
+
+		// reads complete responses by stream id, skipping other frames
+		Map<Integer, Response> responses(int count) throws IOException {
+			Map<Integer, String> statuses = new HashMap<>();
+			Map<Integer, ByteArrayOutputStream> bodies = new HashMap<>();
+			Map<Integer, Response> responses = new HashMap<>();
+			while (responses.size() < count) {
+				Frame frame = read();
+				assertTrue(frame != null, "connection closed");
+				if (frame.type == Http2Connection.HEADERS) {
+					for (Header header : decoder.decode(frame.payload)) {
+						if (header.name().equals(":status")) {
+							statuses.put(frame.streamId, header.value());
+						}
+					}
+					bodies.put(frame.streamId, new ByteArrayOutputStream());
+				} else if (frame.type == Http2Connection.DATA) {
+					bodies.get(frame.streamId).writeBytes(frame.payload);
+				} else {
+					continue;
+				}
+				if ((frame.flags & Http2Connection.FLAG_END_STREAM) != 0) {
+					responses.put(frame.streamId, new Response(statuses.get(frame.streamId), bodies.get(frame.streamId).toString(StandardCharsets.UTF_8)));
+				}
+			}
+			return responses;
+		}
+
+		// error code of the next RST_STREAM
+		int reset(int streamId) throws IOException {
+			return ByteBuffer.wrap(expect(Http2Connection.RST_STREAM, 0, streamId).payload).getInt();
+		}
+
+		// next frame other than WINDOW_UPDATE and SETTINGS ACK, unless expected
+		Frame expect(int type, int flags, int streamId) throws IOException {
+			Frame frame;
+			do {
+				frame = read();
+				assertTrue(frame != null, "connection closed");
+			} while (frame.type != type && (frame.type == Http2Connection.WINDOW_UPDATE || frame.type == Http2Connection.SETTINGS && frame.flags == Http2Connection.FLAG_ACK));
+			assertEquals(type, frame.type, "frame type");
+			assertEquals(flags, frame.flags, "frame flags");
+			assertEquals(streamId, frame.streamId, "stream id");
+			return frame;
+		}
+
+		Frame read() throws IOException {
+			byte[] header = in.readNBytes(9);
+			if (header.length < 9) {
+				return null;
+			}
+			int length = (header[0] & 0xFF) << 16 | (header[1] & 0xFF) << 8 | header[2] & 0xFF;
+			byte[] payload = new byte[length];
+			in.readFully(payload);
+			return new Frame(header[3] & 0xFF, header[4] & 0xFF, ByteBuffer.wrap(header, 5, 4).getInt() & 0x7FFFFFFF, payload);
+		}
+
+		void write(int type, int flags, int streamId, byte[] payload) throws IOException {
+			ByteBuffer frame = ByteBuffer.allocate(9 + payload.length);
+			frame.put((byte) (payload.length >>> 16)).putShort((short) payload.length).put((byte) type).put((byte) flags).putInt(streamId).put(payload);
+			out.write(frame.array());
+			out.flush();
+		}
+
+		// writes the frame header only, for frames rejected before the payload is read
+		void writeHeader(int length, int type, int flags, int streamId) throws IOException {
+			out.write(ByteBuffer.allocate(9).put((byte) (length >>> 16)).putShort((short) length).put((byte) type).put((byte) flags).putInt(streamId).array());
+			out.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			socket.close();
+		}
+	}
+}
@@ -0,0 +1,139 @@
+package org.byteinfo.web;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * JsonReaderTest
+ */
+public class JsonReaderTest {
+	public record Point(int x, int y) {}
+
+	@Test
+	public void testValues() throws Exception {
+		Map<String, Object> expected = new LinkedHashMap<>();
+		expected.put("a", List.of(1L, -2500.0, true, "x"));
+		expected.put("b", null);
+		expected.put("c", Map.of());
+		assertEquals(expected, read(" {\"a\": [1, -2.5e3, true, \"x\"], \"b\": null, \"c\": {}}\r\n", Object.class));
+		assertEquals(new Point(1, 0), read("{\"x\": 1, \"z\": [{\"y\": 2}]}", Point.class));
+	}
+
+	@Test
+	public void testNumbers() throws Exception {
+		assertEquals(0L, read("0", Object.class));
+		assertEquals(0L, read("-0", Object.class));
+		assertEquals(1.5, read("1.5", Object.class));
+		assertEquals(100.0, read("1E+2", Object.class));
+		assertEquals(-0.01, read("-1e-2", Object.class));
+		assertEquals(0.5, read("0.5", double.class));
+		assertEquals(new BigInteger("12345678901234567890"), read("12345678901234567890", Object.class));
+		assertEquals(Integer.MIN_VALUE, read("-2147483648", int.class));
+		assertEquals(List.of(10L, 0L), read("[10,0]", Object.class));
+	}
+
+	@Test
+	public void testInvalidNumbers() {
+		for (String number : new String[] {"01", "-01", "00", "-", "-a", "--1", "+1", ".5", "1.", "1.e5", "1e", "1e+", "1E-", "1.2.3", "1-2", "1e2e3", "0x10", "1f", "[01]", "{\"x\": 1.}"}) {
+			assertInvalid(number, Object.class);
+		}
+		assertInvalid("1e999", Object.class);
+		assertInvalid("-1e999", double.class);
+		assertInvalid("1e39", float.class);
+		assertInvalid("2147483648", int.class);
+		assertInvalid("1.5", int.class);
+		assertInvalid("1e2", long.class);
+	}
+
+	@Test
+	public void testDepth() throws Exception {
+		Object value = read("[".repeat(256) + "]".repeat(256), Object.class);
+		for (int i = 1; i < 256; i++) {
+			value = ((List<?>) value).get(0);
+		}
+		assertEquals(List.of(), value);
+		assertInvalid("[".repeat(257) + "]".repeat(257), Object.class);
+		assertInvalid("{\"a\":".repeat(257) + "1" + "}".repeat(257), Object.class);
+		// skipped members count as well
+		assertInvalid("{\"z\": " + "[".repeat(257) + "]".repeat(257) + "}", Point.class);
+		assertInvalid("[".repeat(100_000), Object.class);
+	}
+
+	@Test
+	public void testStrings() throws Exception {
+		assertEquals("é€😀", read(bytes("22", "c3a9", "e282ac", "f09f9880", "22"), String.class));
+		assertEquals("\"\\/\b\f\n\r\t\u00e9😀", read("\"\\\"\\\\\\/\\b\\f\\n\\r\\t\\u00E9\\ud83d\\ude00\"", String.class));
+		assertInvalid("\"\\x\"", String.class);
+		assertInvalid("\"\\u12G4\"", String.class);
+		assertInvalid("\"\\u12\"", String.class);
+		assertInvalid("\"a\tb\"", String.class);
+		assertInvalid("\"a\nb\"", String.class);
+	}
+
+	@Test
+	public void testInvalidUtf8() {
+		String[] sequences = {
+				"80", // continuation without a lead byte
+				"c3", // truncated by the closing quote
+				"c328", // invalid continuation
+				"c0af", // overlong '/'
+				"e080af", // overlong '/'
+				"f08080af", // overlong '/'
+				"eda080", // surrogate
+				"edbfbf", // surrogate
+				"f4908080", // above U+10FFFF
+				"f8888080af", // 5-byte lead byte
+				"ff"
+		};
+		for (String sequence : sequences) {
+			assertThrows(WebException.class, () -> read(bytes("22", sequence, "22"), String.class), sequence);
+		}
+		assertThrows(WebException.class, () -> read(bytes("22", "e282"), String.class), "truncated by the end of input");
+	}
+
+	@Test
+	public void testTruncated() {
+		for (String json : new String[] {"", " ", "[", "[1,", "[1", "{", "{\"a\"", "{\"a\":", "{\"a\":1", "\"abc", "\"abc\\", "tru", "nul", "-"}) {
+			assertInvalid(json, Object.class);
+		}
+	}
+
+	@Test
+	public void testMalformed() {
+		for (String json : new String[] {"1 2", "{} x", "[1]]", "\"a\"\"b\"", "[1,]", "[,1]", "{\"a\":1,}", "{a:1}", "{\"a\" 1}", "{'a':1}", "[1 2]", "True", "nulll", "NaN", "Infinity", "/* */ 1"}) {
+			assertInvalid(json, Object.class);
+		}
+		assertInvalid("null", int.class);
+		assertInvalid("\"a\"", int.class);
+		assertInvalid("[1]", Point.class);
+	}
+
+	private static void assertInvalid(String json, Type type) {
+		WebException e = assertThrows(WebException.class, () -> read(json, type), json);
+		assertEquals(StatusCode.BAD_REQUEST, e.getStatus(), json);
+	}
+
+	private static Object read(String json, Type type) throws IOException {
+		return read(json.getBytes(StandardCharsets.UTF_8), type);
+	}
+
+	private static Object read(byte[] json, Type type) throws IOException {
+		return JsonReader.read(new ByteArrayInputStream(json), type);
+	}
+
+	private static byte[] bytes(String... hex) {
+		return HexFormat.of().parseHex(String.join("", hex));
+	}
+}
@@ -0,0 +1,60 @@
+package org.byteinfo.web;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Cost of recording a request into Metrics, from one thread and from one platform thread per core, and the accuracy
+ * of Histogram quantiles against exact ones.
+ * <p>
+ * Usage: MetricsBenchmark [seconds]
+ */
+public class MetricsBenchmark {
+	public static void main(String[] args) throws Exception {
+		int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+		int cores = Runtime.getRuntime().availableProcessors();
+
+		Histogram histogram = new Histogram();
+		long[] values = new long[1_000_000];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = (long) (ThreadLocalRandom.current().nextGaussian() * 200 + 1000) + (i % 100 == 0 ? 50_000 : 0);
+			histogram.record(values[i]);
+		}
+		long[] sorted = values.clone();
+		Arrays.sort(sorted);
+		for (double q : Metrics.QUANTILES) {
+			System.out.printf("p%s: exact=%dus, histogram=%dus%n", q * 100, sorted[(int) Math.ceil(q * sorted.length) - 1], histogram.quantile(q));
+		}
+
+		Metrics metrics = new Metrics();
+		System.out.printf("1 thread:  %.1f ns/request%n", run(metrics, 1, seconds));
+		System.out.printf("%d threads: %.1f ns/request%n", cores, run(metrics, cores, seconds));
+	}
+
+	private static double run(Metrics metrics, int threads, int seconds) throws Exception {
+		long[] counts = new long[threads];
+		long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+		List<Thread> workers = new ArrayList<>();
+		for (int t = 0; t < threads; t++) {
+			int index = t;
+			workers.add(Thread.ofPlatform().start(() -> {
+				long n = 0;
+				while ((n & 1023) != 0 || System.nanoTime() < deadline) {
+					metrics.record(HttpMethod.GET, "/users/*", StatusCode.OK, 0, 128, 1_000, 500, 20_000 + (n & 4095), 3_000, 8_000);
+					n++;
+				}
+				counts[index] = n;
+			}));
+		}
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		long total = 0;
+		for (long count : counts) {
+			total += count;
+		}
+		return seconds * 1e9 * threads / total;
+	}
+}
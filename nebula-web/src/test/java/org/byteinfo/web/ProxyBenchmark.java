@@ -0,0 +1,118 @@
+package org.byteinfo.web;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Requests through ProxyHandler to two local upstream servers, against the upstream directly and against a handler
+ * opening an HttpURLConnection without keep-alive per request. Clients use keep-alive connections.
+ * <p>
+ * Usage: ProxyBenchmark [concurrency] [seconds]
+ */
+public class ProxyBenchmark {
+	public static void main(String[] args) throws Exception {
+		int concurrency = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+		int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+		Set<Integer> upstreamConnections = ConcurrentHashMap.newKeySet();
+		int[] upstreamPorts = {freePort(), freePort()};
+		for (int port : upstreamPorts) {
+			System.setProperty("http.port", String.valueOf(port));
+			new Server().handler(List.of(HttpMethod.GET), "/*", ctx -> {
+				upstreamConnections.add(ctx.socket().getPort());
+				return "OK";
+			}, null).start();
+		}
+
+		int port = freePort();
+		System.setProperty("http.port", String.valueOf(port));
+		ProxyHandler proxy = new ProxyHandler("http://127.0.0.1:" + upstreamPorts[0], "http://127.0.0.1:" + upstreamPorts[1]);
+		Server server = new Server();
+		server.handler(List.of(HttpMethod.GET), "/proxy", proxy, null);
+		server.get("/fresh", ctx -> {
+			HttpURLConnection conn = (HttpURLConnection) URI.create("http://127.0.0.1:" + upstreamPorts[0] + "/").toURL().openConnection();
+			conn.setRequestProperty(HeaderName.CONNECTION, HeaderValue.CLOSE);
+			try (InputStream in = conn.getInputStream()) {
+				return in.readAllBytes();
+			} finally {
+				conn.disconnect();
+			}
+		});
+		server.start();
+
+		System.out.printf("%d cores, %d clients%n", Runtime.getRuntime().availableProcessors(), concurrency);
+		for (String[] target : new String[][] {{"upstream", String.valueOf(upstreamPorts[0]), "/"}, {"proxy", String.valueOf(port), "/proxy"}, {"fresh", String.valueOf(port), "/fresh"}}) {
+			run(Integer.parseInt(target[1]), target[2], concurrency, 1); // warm up
+			upstreamConnections.clear();
+			String result = run(Integer.parseInt(target[1]), target[2], concurrency, seconds);
+			System.out.printf("%-8s %s, upstream connections=%d%n", target[0], result, upstreamConnections.size());
+		}
+		System.out.println(proxy.upstreams());
+		System.exit(0);
+	}
+
+	private static String run(int port, String path, int concurrency, int seconds) throws Exception {
+		byte[] request = ("GET " + path + " HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes();
+		LongAdder count = new LongAdder();
+		LongAdder errors = new LongAdder();
+		ConcurrentLinkedQueue<long[]> samples = new ConcurrentLinkedQueue<>();
+		long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+		try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			for (int i = 0; i < concurrency; i++) {
+				executor.execute(() -> {
+					long[] nanos = new long[1024];
+					int n = 0;
+					try (Socket socket = new Socket("127.0.0.1", port)) {
+						InputStream in = new BufferedInputStream(socket.getInputStream());
+						OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+						while (System.nanoTime() < deadline) {
+							long start = System.nanoTime();
+							out.write(request);
+							out.flush();
+							int status = HttpCodec.readStatusLine(in).status();
+							Headers headers = HttpCodec.readHeaders(in);
+							HttpCodec.responseBody(HttpMethod.GET, status, headers, in).transferTo(OutputStream.nullOutputStream());
+							if (status == StatusCode.OK) {
+								count.increment();
+							} else {
+								errors.increment();
+							}
+							if (n == nanos.length) {
+								nanos = Arrays.copyOf(nanos, n * 2);
+							}
+							nanos[n++] = System.nanoTime() - start;
+						}
+					} catch (Exception e) {
+						errors.increment();
+					}
+					samples.add(Arrays.copyOf(nanos, n));
+				});
+			}
+		}
+		long[] all = samples.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+		if (all.length == 0) {
+			return "no requests, errors=" + errors.sum();
+		}
+		return "%,.0f requests/s, p50=%.2fms, p99=%.2fms, errors=%d".formatted(count.sum() / (double) seconds, all[all.length / 2] / 1e6, all[(int) (all.length * 0.99)] / 1e6, errors.sum());
+	}
+
+	private static int freePort() throws Exception {
+		try (ServerSocket probe = new ServerSocket(0)) {
+			return probe.getLocalPort();
+		}
+	}
+}
@@ -0,0 +1,126 @@
+package org.byteinfo.web;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.Socket;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * RateLimitFilterTest
+ */
+public class RateLimitFilterTest {
+	private static final long SECOND = 1_000_000_000L;
+
+	static {
+		// the defaults are loaded by the Server otherwise
+		try {
+			AppConfig.get().load("org/byteinfo/web/application.properties");
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Test
+	public void testBurst() {
+		RateLimitFilter.Limiter limiter = new RateLimitFilter.Limiter(10, 5);
+		long key = RateLimitFilter.toKey("10.0.0.1");
+		long now = System.nanoTime();
+		for (int i = 0; i < 5; i++) {
+			assertEquals(0L, limiter.acquire(key, now), "burst " + i);
+		}
+		// one permit per 100ms afterwards
+		assertEquals(SECOND / 10, limiter.acquire(key, now));
+		assertEquals(0L, limiter.acquire(RateLimitFilter.toKey("10.0.0.2"), now), "other client");
+	}
+
+	@Test
+	public void testRefill() {
+		RateLimitFilter.Limiter limiter = new RateLimitFilter.Limiter(10, 5);
+		long key = RateLimitFilter.toKey("10.0.0.1");
+		long now = System.nanoTime();
+		for (int i = 0; i < 5; i++) {
+			limiter.acquire(key, now);
+		}
+		assertEquals(SECOND / 20, limiter.acquire(key, now + SECOND / 20));
+		assertEquals(0L, limiter.acquire(key, now + SECOND / 10));
+		assertTrue(limiter.acquire(key, now + SECOND / 10) > 0);
+
+		// the whole burst is available again once refilled
+		for (int i = 0; i < 5; i++) {
+			assertEquals(0L, limiter.acquire(key, now + SECOND), "refilled " + i);
+		}
+		assertTrue(limiter.acquire(key, now + SECOND) > 0);
+	}
+
+	@Test
+	public void testRetryAfter() throws Exception {
+		RateLimitFilter filter = new RateLimitFilter(0.5, 1);
+		HttpContext ctx = context("/", "192.168.0.1");
+		filter.before(ctx, null);
+		assertFalse(ctx.isCommitted());
+		assertNull(ctx.responseHeaders().get(HeaderName.RETRY_AFTER));
+
+		ctx = context("/", "192.168.0.1");
+		filter.before(ctx, null);
+		assertTrue(ctx.isCommitted());
+		assertEquals(StatusCode.TOO_MANY_REQUESTS, ctx.responseStatus());
+		assertEquals("2", ctx.responseHeaders().get(HeaderName.RETRY_AFTER));
+		assertEquals(1L, filter.rejected());
+
+		// routes are limited on their own
+		filter.limit("/api/*", 100, 10);
+		ctx = context("/api/users", "192.168.0.1");
+		filter.before(ctx, null);
+		assertFalse(ctx.isCommitted());
+	}
+
+	@Test
+	public void testKeys() {
+		assertEquals(RateLimitFilter.toKey("::1"), RateLimitFilter.toKey("0:0:0:0:0:0:0:1"));
+		assertEquals(RateLimitFilter.toKey("10.0.0.1"), RateLimitFilter.toKey("::ffff:10.0.0.1"));
+		assertNotEquals(RateLimitFilter.toKey("::1"), RateLimitFilter.toKey("0.0.0.1"));
+		assertNotEquals(RateLimitFilter.toKey("2001:db8::1"), RateLimitFilter.toKey("2001:db8::2"));
+		assertNotEquals(0L, RateLimitFilter.toKey("0.0.0.0"));
+		assertNotEquals(0L, RateLimitFilter.toKey("unknown"));
+	}
+
+	@Test
+	public void testRehash() {
+		RateLimitFilter.Limiter limiter = new RateLimitFilter.Limiter(1, 1);
+		long now = System.nanoTime();
+		int clients = 10_000;
+		for (int i = 0; i < clients; i++) {
+			assertEquals(0L, limiter.acquire(RateLimitFilter.toKey("10.0." + i / 256 + "." + i % 256), now));
+		}
+		long key = RateLimitFilter.toKey("10.0.0.0");
+		RateLimitFilter.Stripe stripe = limiter.stripe(key);
+		assertTrue(stripe.keys.length > 64);
+
+		// live buckets survive the growth of the tables
+		for (int i = 0; i < clients; i++) {
+			assertTrue(limiter.acquire(RateLimitFilter.toKey("10.0." + i / 256 + "." + i % 256), now) > 0);
+		}
+
+		// full buckets are swept, and the table is shrunk
+		limiter.acquire(key, now + 11 * SECOND);
+		assertEquals(64, stripe.keys.length);
+		assertEquals(1, stripe.size);
+	}
+
+	private static HttpContext context(String path, String address) {
+		Headers headers = new Headers();
+		headers.set(HeaderName.FORWARDED_FOR, address);
+		Request request = new Request("GET", path, path, null, headers, 0, InputStream.nullInputStream());
+		return new HttpContext("rate-limit-test", new Socket(), new ByteArrayOutputStream(), Map.of(), request);
+	}
+}
@@ -0,0 +1,200 @@
+package org.byteinfo.web;
+
+import org.junit.jupiter.api.Test;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.net.Socket;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * RouteProcessorTest, the generated routes are compared with the reflective registration of the same controller.
+ */
+public class RouteProcessorTest {
+	private static final String CONTROLLER = """
+			package sample;
+
+			import org.byteinfo.web.*;
+
+			@Path("/api")
+			@Secured("user")
+			@Deadline(1000)
+			@Bulkhead(value = 4, queue = 8)
+			@BodyLimit(1024)
+			public class SampleController {
+				@GET
+				public String index(HttpContext ctx) {
+					return "index";
+				}
+
+				@GET
+				@Path("/hello")
+				public String hello(HttpContext ctx) {
+					return "hello " + ctx.path();
+				}
+
+				@POST
+				@PUT
+				@Path("/items")
+				@Secured("admin")
+				@Deadline(200)
+				@Bulkhead(value = 2, maxWait = 50)
+				@BodyLimit(16)
+				public static String save(HttpContext ctx) {
+					return "saved";
+				}
+
+				@GET
+				@Path("/cached")
+				@Cached(ttl = 5, vary = "accept")
+				@Coalesce(headers = "accept-language", maxWait = 100)
+				public String cached(HttpContext ctx) {
+					return "cached";
+				}
+
+				@DELETE
+				@Path("/items/*")
+				public void delete(HttpContext ctx) {
+					ctx.setResponseStatus(StatusCode.NO_CONTENT);
+				}
+
+				public String helper(HttpContext ctx) {
+					return "not a route";
+				}
+			}
+			""";
+
+	@Test
+	public void testGeneratedRoutes() throws Exception {
+		Class<?> generated = compile(true);
+		Class<?> reflective = compile(false);
+		assertNotNull(generated.getClassLoader().loadClass(generated.getName() + RouteProcessor.SUFFIX));
+		assertThrows(ClassNotFoundException.class, () -> reflective.getClassLoader().loadClass(reflective.getName() + RouteProcessor.SUFFIX));
+
+		RecordingServer expected = new RecordingServer();
+		expected.handler(reflective);
+		RecordingServer actual = new RecordingServer();
+		actual.handler(generated);
+
+		assertEquals(Set.of("GET /api", "GET /api/hello", "POST,PUT /api/items", "GET /api/cached", "DELETE /api/items/*"), expected.routes.keySet());
+		assertEquals(expected.routes.keySet(), actual.routes.keySet());
+		assertEquals(expected.bulkheads().keySet(), actual.bulkheads().keySet());
+		for (String route : expected.routes.keySet()) {
+			Route expectedRoute = expected.routes.get(route);
+			Route actualRoute = actual.routes.get(route);
+			assertEquals(expectedRoute.securityAttribute, actualRoute.securityAttribute, route);
+			assertEquals(describe(expectedRoute.handler), describe(actualRoute.handler), route);
+
+			// the route methods themselves, including the void one
+			HttpContext expectedCtx = context();
+			HttpContext actualCtx = context();
+			assertEquals(target(expectedRoute.handler).handle(expectedCtx), target(actualRoute.handler).handle(actualCtx), route);
+			assertEquals(expectedCtx.responseStatus(), actualCtx.responseStatus(), route);
+		}
+
+		// decorators from the innermost: bulkhead, deadline, coalesce, cache, body limit
+		assertEquals(List.of("BodyLimitHandler[limit=1024]", "CachingHandler[ttlMillis=5000, vary=[accept]]", "CoalescingHandler[maxWait=100, headers=[accept-language]]",
+				"DeadlineHandler[deadline=1000]", "BulkheadHandler[concurrency=4, queue=8, maxWait=1000]", "route"), describe(actual.routes.get("GET /api/cached").handler));
+		assertEquals(List.of("BodyLimitHandler[limit=16]", "DeadlineHandler[deadline=200]", "BulkheadHandler[concurrency=2, queue=0, maxWait=50]", "route"), describe(actual.routes.get("POST,PUT /api/items").handler));
+		assertEquals("user", actual.routes.get("GET /api/hello").securityAttribute);
+		assertEquals("admin", actual.routes.get("POST,PUT /api/items").securityAttribute);
+		assertNull(target(actual.routes.get("DELETE /api/items/*").handler).handle(context()));
+	}
+
+	// compiles the controller with or without the processor, into its own class loader
+	private static Class<?> compile(boolean processor) throws Exception {
+		java.nio.file.Path dir = Files.createTempDirectory("routes");
+		java.nio.file.Path source = dir.resolve("sample/SampleController.java");
+		Files.createDirectories(source.getParent());
+		Files.writeString(source, CONTROLLER);
+		List<String> args = new ArrayList<>(List.of("-d", dir.toString(), "-cp", System.getProperty("java.class.path")));
+		args.addAll(processor ? List.of("-processor", RouteProcessor.class.getName()) : List.of("-proc:none"));
+		args.add(source.toString());
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		ByteArrayOutputStream err = new ByteArrayOutputStream();
+		assertEquals(0, compiler.run(null, null, err, args.toArray(String[]::new)), err.toString());
+		URLClassLoader loader = new URLClassLoader(new URL[] {dir.toUri().toURL()}, RouteProcessorTest.class.getClassLoader());
+		return loader.loadClass("sample.SampleController");
+	}
+
+	// the decorator chain with the settings of each decorator, from the outermost
+	private static List<String> describe(Handler handler) throws Exception {
+		List<String> chain = new ArrayList<>();
+		while (true) {
+			Handler next = next(handler);
+			if (next == null) {
+				chain.add("route");
+				return chain;
+			}
+			List<String> settings = new ArrayList<>();
+			for (Field field : handler.getClass().getDeclaredFields()) {
+				Class<?> type = field.getType();
+				if (Modifier.isStatic(field.getModifiers()) || !type.isPrimitive() && type != String.class && type != String[].class) {
+					continue;
+				}
+				field.setAccessible(true);
+				Object value = field.get(handler);
+				settings.add(field.getName() + "=" + (value instanceof String[] array ? Arrays.toString(array) : value));
+			}
+			chain.add(handler.getClass().getSimpleName() + settings);
+			handler = next;
+		}
+	}
+
+	private static Handler target(Handler handler) {
+		for (Handler next = next(handler); next != null; next = next(handler)) {
+			handler = next;
+		}
+		return handler;
+	}
+
+	private static Handler next(Handler handler) {
+		return switch (handler) {
+			case BodyLimitHandler h -> h.handler();
+			case CachingHandler h -> h.handler();
+			case CoalescingHandler h -> h.handler();
+			case DeadlineHandler h -> h.handler();
+			case BulkheadHandler h -> h.handler();
+			default -> null;
+		};
+	}
+
+	private static HttpContext context() {
+		Request request = new Request("GET", "/api/hello", "/api/hello", null, new Headers(), 0, InputStream.nullInputStream());
+		return new HttpContext("route-test", new Socket(), new ByteArrayOutputStream(), Map.of(), request);
+	}
+
+	private record Route(Handler handler, String securityAttribute) {}
+
+	// records the registered routes, keyed by methods and path
+	private static class RecordingServer extends Server {
+		private final Map<String, Route> routes = new HashMap<>();
+
+		RecordingServer() throws IOException {
+		}
+
+		@Override
+		public Server handler(List<String> methods, String path, Handler handler, String securityAttribute) {
+			routes.put(String.join(",", methods) + " " + path, new Route(handler, securityAttribute));
+			return super.handler(methods, path, handler, securityAttribute);
+		}
+	}
+}
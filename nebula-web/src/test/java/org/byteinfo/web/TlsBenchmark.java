@@ -0,0 +1,126 @@
+package org.byteinfo.web;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Handshakes per second, and full versus resumed handshake latency against a local self-signed certificate.
+ * <p>
+ * Usage: TlsBenchmark [iterations] [concurrency] [seconds]
+ */
+public class TlsBenchmark {
+	private static final String PASSWORD = "changeit";
+	private static final byte[] REQUEST = "GET / HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n".getBytes();
+
+	public static void main(String[] args) throws Exception {
+		int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+		int concurrency = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+		int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+		// self-signed certificate
+		Path dir = Files.createTempDirectory("nebula-tls");
+		Path keyStore = dir.resolve("server.p12");
+		Process keytool = new ProcessBuilder(Path.of(System.getProperty("java.home"), "bin", "keytool").toString(),
+				"-genkeypair", "-alias", "server", "-keyalg", "EC", "-groupname", "secp256r1", "-validity", "1",
+				"-dname", "CN=localhost", "-ext", "san=dns:localhost,ip:127.0.0.1",
+				"-storetype", "PKCS12", "-keystore", keyStore.toString(), "-storepass", PASSWORD).inheritIO().start();
+		if (keytool.waitFor() != 0) {
+			throw new IllegalStateException("keytool failed");
+		}
+
+		int port;
+		try (ServerSocket probe = new ServerSocket(0)) {
+			port = probe.getLocalPort();
+		}
+		System.setProperty("http.port", "0");
+		System.setProperty("https.port", String.valueOf(port));
+		System.setProperty("https.keyStore", keyStore.toString());
+		System.setProperty("https.keyStorePassword", PASSWORD);
+		Server server = new Server().get("/", ctx -> "OK").start();
+
+		KeyStore trustStore = KeyStore.getInstance("PKCS12");
+		try (InputStream in = Files.newInputStream(keyStore)) {
+			trustStore.load(in, PASSWORD.toCharArray());
+		}
+		TrustManagerFactory trust = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+		trust.init(trustStore);
+
+		for (String protocol : new String[] {"TLSv1.3", "TLSv1.2"}) {
+			SSLContext client = SSLContext.getInstance("TLS");
+			client.init(null, trust.getTrustManagers(), null);
+
+			long[] full = new long[iterations];
+			long[] resumed = new long[iterations];
+			for (int i = 0; i < iterations; i++) {
+				full[i] = connect(client, port, protocol, false);
+			}
+			connect(client, port, protocol, true); // session to be resumed
+			for (int i = 0; i < iterations; i++) {
+				resumed[i] = connect(client, port, protocol, true);
+			}
+			System.out.printf("%s full handshake latency: %s%n", protocol, stats(full));
+			System.out.printf("%s resumed handshake latency: %s%n", protocol, stats(resumed));
+			System.out.printf("%s full handshake throughput: %,.0f/s%n", protocol, throughput(client, port, protocol, false, concurrency, seconds));
+			System.out.printf("%s resumed handshake throughput: %,.0f/s%n", protocol, throughput(client, port, protocol, true, concurrency, seconds));
+		}
+
+		server.stop();
+		Files.delete(keyStore);
+		Files.delete(dir);
+	}
+
+	// returns the time of connecting and handshaking in nanos, the response is read so that session tickets are received
+	private static long connect(SSLContext context, int port, String protocol, boolean resume) throws Exception {
+		long start = System.nanoTime();
+		try (SSLSocket socket = (SSLSocket) context.getSocketFactory().createSocket("localhost", port)) {
+			socket.setTcpNoDelay(true);
+			socket.setEnabledProtocols(new String[] {protocol});
+			socket.startHandshake();
+			long elapsed = System.nanoTime() - start;
+			socket.getOutputStream().write(REQUEST);
+			socket.getInputStream().transferTo(OutputStream.nullOutputStream());
+			if (!resume) {
+				socket.getSession().invalidate();
+			}
+			return elapsed;
+		}
+	}
+
+	private static double throughput(SSLContext context, int port, String protocol, boolean resume, int concurrency, int seconds) throws Exception {
+		LongAdder count = new LongAdder();
+		long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+		try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			for (int i = 0; i < concurrency; i++) {
+				executor.execute(() -> {
+					while (System.nanoTime() < deadline) {
+						try {
+							connect(context, port, protocol, resume);
+							count.increment();
+						} catch (Exception e) {
+							e.printStackTrace();
+							return;
+						}
+					}
+				});
+			}
+		}
+		return count.sum() / (double) seconds;
+	}
+
+	private static String stats(long[] nanos) {
+		long[] sorted = nanos.clone();
+		Arrays.sort(sorted);
+		return "avg=%.3fms, p50=%.3fms, p99=%.3fms".formatted(Arrays.stream(sorted).average().orElse(0) / 1e6, sorted[sorted.length / 2] / 1e6, sorted[(int) (sorted.length * 0.99)] / 1e6);
+	}
+}
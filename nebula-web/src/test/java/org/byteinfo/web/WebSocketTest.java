@@ -0,0 +1,230 @@
+package org.byteinfo.web;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * WebSocketTest
+ */
+public class WebSocketTest {
+	private static final byte[] MASK = {0x37, (byte) 0xfa, 0x21, 0x3d};
+
+	static {
+		// the defaults are loaded by the Server otherwise
+		try {
+			AppConfig.get().load("org/byteinfo/web/application.properties");
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Test
+	public void testAccept() {
+		// https://www.rfc-editor.org/rfc/rfc6455#section-1.3
+		assertEquals("s3pPLMBiTxaQ9kYGzzhZRbK+xOo=", WebSocketCodec.accept("dGhlIHNhbXBsZSBub25jZQ=="));
+	}
+
+	@Test
+	public void testReadFrame() throws Exception {
+		// https://www.rfc-editor.org/rfc/rfc6455#section-5.7
+		byte[] hello = "Hello".getBytes();
+		assertFrame(true, WebSocketCodec.TEXT, hello, WebSocketCodec.readFrame(in("810548656c6c6f"), false, 125));
+		assertFrame(true, WebSocketCodec.TEXT, hello, WebSocketCodec.readFrame(in("818537fa213d7f9f4d5158"), true, 125));
+		assertFrame(false, WebSocketCodec.TEXT, "Hel".getBytes(), WebSocketCodec.readFrame(in("010348656c"), false, 125));
+		assertFrame(true, WebSocketCodec.CONTINUATION, "lo".getBytes(), WebSocketCodec.readFrame(in("80026c6f"), false, 125));
+		assertFrame(true, WebSocketCodec.PING, hello, WebSocketCodec.readFrame(in("890548656c6c6f"), false, 125));
+		assertArrayEquals(hex("818537fa213d7f9f4d5158"), WebSocketCodec.encode(true, WebSocketCodec.TEXT, hello, 0, hello.length, MASK));
+	}
+
+	@Test
+	public void testPayloadLength() throws Exception {
+		// 7-bit, 16-bit and 64-bit lengths at their boundaries
+		for (int length : new int[] {0, 125, 126, 65535, 65536}) {
+			byte[] payload = new byte[length];
+			Arrays.fill(payload, (byte) 'x');
+			byte[] frame = WebSocketCodec.encode(true, WebSocketCodec.BINARY, payload, 0, length, MASK);
+			assertEquals(length + (length < 126 ? 6 : length < 65536 ? 8 : 14), frame.length);
+			assertFrame(true, WebSocketCodec.BINARY, payload, WebSocketCodec.readFrame(new ByteArrayInputStream(frame), true, length));
+			assertFrame(true, WebSocketCodec.BINARY, payload, WebSocketCodec.readFrame(new ByteArrayInputStream(WebSocketCodec.encode(WebSocketCodec.BINARY, payload)), false, length));
+		}
+	}
+
+	@Test
+	public void testInvalidFrames() {
+		assertFrameError(WebSocketCodec.PROTOCOL_ERROR, "c100", false, "reserved bits");
+		assertFrameError(WebSocketCodec.PROTOCOL_ERROR, "8100", true, "unmasked client frame");
+		assertFrameError(WebSocketCodec.PROTOCOL_ERROR, "818037fa213d", false, "masked server frame");
+		assertFrameError(WebSocketCodec.PROTOCOL_ERROR, "0900", false, "fragmented ping");
+		assertFrameError(WebSocketCodec.PROTOCOL_ERROR, "887e007e", false, "close longer than 125 bytes");
+		assertFrameError(WebSocketCodec.PROTOCOL_ERROR, "827f8000000000000000", false, "64-bit length with the high bit");
+		assertFrameError(WebSocketCodec.MESSAGE_TOO_BIG, "827e0100", false, "frame above the limit");
+		assertThrows(EOFException.class, () -> WebSocketCodec.readFrame(in("8105486565"), false, 125), "truncated payload");
+		assertThrows(EOFException.class, () -> WebSocketCodec.readFrame(in("827e01"), false, 125), "truncated length");
+	}
+
+	@Test
+	public void testFragmentedMessage() throws Exception {
+		// "héllo" split inside the 2-byte é, with a ping between the fragments
+		byte[] text = "héllo".getBytes(StandardCharsets.UTF_8);
+		Session session = run(
+				frame(false, WebSocketCodec.TEXT, Arrays.copyOfRange(text, 0, 2)),
+				frame(true, WebSocketCodec.PING, "p".getBytes()),
+				frame(false, WebSocketCodec.CONTINUATION, Arrays.copyOfRange(text, 2, 4)),
+				frame(true, WebSocketCodec.CONTINUATION, Arrays.copyOfRange(text, 4, text.length)),
+				frame(true, WebSocketCodec.BINARY, new byte[] {1, 2, 3}),
+				close(WebSocketCodec.NORMAL_CLOSURE, "bye"));
+		assertEquals(List.of("open", "text:héllo", "binary:3", "close:1000:bye"), session.events);
+		assertFrame(true, WebSocketCodec.PONG, "p".getBytes(), session.frames.get(0));
+		assertFrame(true, WebSocketCodec.CLOSE, hex("03e8"), session.frames.get(1));
+		assertEquals(2, session.frames.size());
+	}
+
+	@Test
+	public void testFragmentationErrors() throws Exception {
+		assertClosed(WebSocketCodec.PROTOCOL_ERROR, run(frame(true, WebSocketCodec.CONTINUATION, "a".getBytes())));
+		assertClosed(WebSocketCodec.PROTOCOL_ERROR, run(frame(false, WebSocketCodec.TEXT, "a".getBytes()), frame(true, WebSocketCodec.TEXT, "b".getBytes())));
+		assertClosed(WebSocketCodec.PROTOCOL_ERROR, run(frame(true, 0x3, new byte[0])));
+	}
+
+	@Test
+	public void testCloseCodes() throws Exception {
+		for (int code : new int[] {1000, 1001, 1002, 1003, 1007, 1011, 3000, 4999}) {
+			Session session = run(close(code, ""));
+			assertEquals("close:" + code + ":", session.events.get(1));
+			assertFrame(true, WebSocketCodec.CLOSE, new byte[] {(byte) (code >>> 8), (byte) code}, session.frames.get(0));
+		}
+
+		// no status code, the echo has no payload either
+		Session session = run(frame(true, WebSocketCodec.CLOSE, new byte[0]));
+		assertEquals("close:1005:", session.events.get(1));
+		assertFrame(true, WebSocketCodec.CLOSE, new byte[0], session.frames.get(0));
+
+		// codes which must not be sent on the wire, and unassigned ones
+		for (int code : new int[] {0, 999, 1004, 1005, 1006, 1012, 1015, 2999, 5000, 65535}) {
+			assertClosed(WebSocketCodec.PROTOCOL_ERROR, run(close(code, "")));
+		}
+		assertClosed(WebSocketCodec.PROTOCOL_ERROR, run(frame(true, WebSocketCodec.CLOSE, new byte[] {0x03})));
+	}
+
+	@Test
+	public void testInvalidUtf8() throws Exception {
+		assertClosed(WebSocketCodec.INVALID_PAYLOAD, run(frame(true, WebSocketCodec.TEXT, hex("c328"))));
+		assertClosed(WebSocketCodec.INVALID_PAYLOAD, run(frame(true, WebSocketCodec.TEXT, hex("eda080")))); // surrogate
+		assertClosed(WebSocketCodec.INVALID_PAYLOAD, run(frame(false, WebSocketCodec.TEXT, hex("c3")), frame(true, WebSocketCodec.CONTINUATION, new byte[0])));
+		assertClosed(WebSocketCodec.INVALID_PAYLOAD, run(frame(true, WebSocketCodec.CLOSE, hex("03e8ff")))); // close reason
+	}
+
+	@Test
+	public void testDisconnect() throws Exception {
+		Session session = run(frame(true, WebSocketCodec.TEXT, "a".getBytes()));
+		assertEquals(List.of("open", "text:a", "close:1006:"), session.events);
+		assertTrue(session.frames.isEmpty());
+	}
+
+	private static void assertFrame(boolean fin, int opcode, byte[] payload, WebSocketCodec.Frame frame) {
+		assertEquals(fin, frame.fin());
+		assertEquals(opcode, frame.opcode());
+		assertArrayEquals(payload, frame.payload());
+	}
+
+	private static void assertFrameError(int code, String frame, boolean masked, String message) {
+		WebSocketException e = assertThrows(WebSocketException.class, () -> WebSocketCodec.readFrame(in(frame), masked, 255), message);
+		assertEquals(code, e.code(), message);
+	}
+
+	// the connection is closed with the code on both sides, and no message is delivered
+	private static void assertClosed(int code, Session session) {
+		assertEquals(2, session.events.size());
+		assertEquals("open", session.events.get(0));
+		assertTrue(session.events.get(1).startsWith("close:" + code + ":"), session.events.get(1));
+		assertEquals(1, session.frames.size());
+		WebSocketCodec.Frame frame = session.frames.get(0);
+		assertEquals(WebSocketCodec.CLOSE, frame.opcode());
+		assertEquals(code, (frame.payload()[0] & 0xFF) << 8 | frame.payload()[1] & 0xFF);
+		assertFalse(session.ws.isOpen());
+	}
+
+	private static Session run(byte[]... frames) throws IOException {
+		ByteArrayOutputStream in = new ByteArrayOutputStream();
+		for (byte[] frame : frames) {
+			in.writeBytes(frame);
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Socket socket = new Socket();
+		Request request = new Request("GET", "/ws", "/ws", null, new Headers(), 0, InputStream.nullInputStream());
+		HttpContext ctx = new HttpContext("ws-test", socket, out, Map.of(), request);
+		List<String> events = new ArrayList<>();
+		WebSocket ws = new WebSocket(ctx, socket, out, new WebSocketHandler() {
+			@Override
+			public void onOpen(WebSocket ws) {
+				events.add("open");
+			}
+
+			@Override
+			public void onText(WebSocket ws, String text) {
+				events.add("text:" + text);
+			}
+
+			@Override
+			public void onBinary(WebSocket ws, byte[] data) {
+				events.add("binary:" + data.length);
+			}
+
+			@Override
+			public void onClose(WebSocket ws, int code, String reason) {
+				events.add("close:" + code + ":" + reason);
+			}
+		});
+		ws.run(new ByteArrayInputStream(in.toByteArray()));
+		socket.close();
+
+		List<WebSocketCodec.Frame> sent = new ArrayList<>();
+		InputStream written = new ByteArrayInputStream(out.toByteArray());
+		while (written.available() > 0) {
+			sent.add(WebSocketCodec.readFrame(written, false, Long.MAX_VALUE));
+		}
+		return new Session(ws, events, sent);
+	}
+
+	private static byte[] frame(boolean fin, int opcode, byte[] payload) {
+		return WebSocketCodec.encode(fin, opcode, payload, 0, payload.length, MASK);
+	}
+
+	private static byte[] close(int code, String reason) {
+		byte[] data = reason.getBytes(StandardCharsets.UTF_8);
+		byte[] payload = new byte[data.length + 2];
+		payload[0] = (byte) (code >>> 8);
+		payload[1] = (byte) code;
+		System.arraycopy(data, 0, payload, 2, data.length);
+		return frame(true, WebSocketCodec.CLOSE, payload);
+	}
+
+	private static InputStream in(String frame) {
+		return new ByteArrayInputStream(hex(frame));
+	}
+
+	private static byte[] hex(String value) {
+		return HexFormat.of().parseHex(value);
+	}
+
+	private record Session(WebSocket ws, List<String> events, List<WebSocketCodec.Frame> frames) {}
+}